@@ -18,10 +18,17 @@
 package org.apache.pdfbox.jbig2;
 
 import java.awt.Rectangle;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * This class represents a bi-level image that is organized like a bitmap.
+ * <p>
+ * A bitmap can know which of its rows are identical to the row above them, e.g. the typical lines of a generic region
+ * decoded with TPGDON. Those rows are still stored, but blitting and the raster conversion process a run of identical
+ * rows once and copy the result. Every write through this class forgets these rows, so they are never stale; writers
+ * that set them again are responsible for their correctness.
  */
 public class Bitmap
 {
@@ -38,6 +45,9 @@ public class Bitmap
     /** 8 pixels per byte, 0 for white, 1 for black */
     private final byte[] bitmapBytes;
 
+    /** Rows which are known to be identical to the row above them, {@code null} if there are none. */
+    private BitSet duplicateRows;
+
     /**
      * Creates an instance of a blank image.<br>
      * The image data is stored in a byte array. Each pixels is stored as one bit, so that each byte
@@ -98,6 +108,7 @@ public class Bitmap
 
         final int shift = 7 - bitOffset;
 
+        duplicateRows = null;
         final int src = bitmapBytes[byteIndex] & 0xff; // convert to int for bitwise operations
         if ((pixelValue & 1) == 1)
         {
@@ -133,6 +144,8 @@ public class Bitmap
     @Deprecated
     public byte[] getByteArray()
     {
+        // the array may be written
+        duplicateRows = null;
         return bitmapBytes;
     }
 
@@ -161,6 +174,7 @@ public class Bitmap
      */
     public void setByte(int index, byte value)
     {
+        duplicateRows = null;
         this.bitmapBytes[index] = value;
     }
 
@@ -259,6 +273,77 @@ public class Bitmap
     public void fillBitmap(byte fillByte)
     {
         Arrays.fill(bitmapBytes, fillByte);
+        duplicateRows = new BitSet(height);
+        duplicateRows.set(1, Math.max(1, height));
+    }
+
+    /**
+     * Sets all pixels of the given rows to 0.
+     * 
+     * @param from - The first row.
+     * @param to - The row after the last row.
+     */
+    public void clearRows(int from, int to)
+    {
+        Arrays.fill(bitmapBytes, from * rowStride, to * rowStride, (byte) 0);
+        if (duplicateRows != null)
+        {
+            // the row after the cleared rows may differ from the last of them now
+            duplicateRows.clear(from, Math.min(to + 1, height));
+        }
+    }
+
+    /**
+     * Returns a view of the bytes of this bitmap, row by row, to read or write several bytes at a time. The view is
+     * big-endian. Duplicate rows aren't tracked through the view, callers writing into it have to set them, see
+     * {@link #setDuplicateRows(BitSet)}.
+     * 
+     * @return A buffer sharing the bytes of this bitmap.
+     */
+    public ByteBuffer asByteBuffer()
+    {
+        return ByteBuffer.wrap(bitmapBytes);
+    }
+
+    /**
+     * Tells whether the given row is known to be identical to the row above it. A row for which {@code false} is
+     * returned may still be identical.
+     * 
+     * @param row - The row.
+     * @return {@code true} if all bytes of the row are equal to those of the row above.
+     */
+    public boolean isDuplicateRow(int row)
+    {
+        return duplicateRows != null && duplicateRows.get(row);
+    }
+
+    /**
+     * Returns the rows which are known to be identical to the row above them.
+     * 
+     * @return A copy of the rows or {@code null} if no such row is known.
+     */
+    public BitSet getDuplicateRows()
+    {
+        return duplicateRows != null ? (BitSet) duplicateRows.clone() : null;
+    }
+
+    /**
+     * Sets the rows which are known to be identical to the row above them. All bytes of each given row must be equal to
+     * those of the row above, row 0 is ignored.
+     * 
+     * @param rows - The rows or {@code null} if no such row is known.
+     */
+    public void setDuplicateRows(BitSet rows)
+    {
+        if (rows == null || rows.nextSetBit(1) < 0)
+        {
+            duplicateRows = null;
+        }
+        else
+        {
+            duplicateRows = (BitSet) rows.clone();
+            duplicateRows.clear(0);
+        }
     }
 
     @Override
@@ -330,6 +415,7 @@ public class Bitmap
      */
     public static void arraycopy(Bitmap src, int srcPos, Bitmap dest, int destPos,  int length)
     {
+        dest.duplicateRows = null;
         System.arraycopy(src.bitmapBytes, srcPos, dest.bitmapBytes, destPos, length);
     }
 }
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link SegmentIndexStore} that keeps the index in a file, usually next to the JBIG2 file it belongs to.
+ */
+public class FileSegmentIndexStore implements SegmentIndexStore
+{
+    /** The suffix that {@link #forFile(File)} appends to the name of the JBIG2 file. */
+    public static final String SUFFIX = ".segidx";
+
+    private final File indexFile;
+
+    /**
+     * @param indexFile - The file that holds the index.
+     */
+    public FileSegmentIndexStore(File indexFile)
+    {
+        if (indexFile == null)
+            throw new IllegalArgumentException("File must not be null");
+
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Creates a store that keeps the index next to the given file, in a file whose name is the file's name followed by
+     * {@link #SUFFIX}.
+     * 
+     * @param jbig2File - The JBIG2 file.
+     * @return The store for the file's index.
+     */
+    public static FileSegmentIndexStore forFile(File jbig2File)
+    {
+        return new FileSegmentIndexStore(new File(jbig2File.getPath() + SUFFIX));
+    }
+
+    public File getIndexFile()
+    {
+        return indexFile;
+    }
+
+    @Override
+    public byte[] load() throws IOException
+    {
+        if (!indexFile.isFile())
+        {
+            return null;
+        }
+
+        final FileInputStream in = new FileInputStream(indexFile);
+        try
+        {
+            final byte[] index = new byte[(int) indexFile.length()];
+            int read = 0;
+            while (read < index.length)
+            {
+                final int n = in.read(index, read, index.length - read);
+                if (n < 0)
+                {
+                    break;
+                }
+                read += n;
+            }
+            return index;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    @Override
+    public void store(byte[] index) throws IOException
+    {
+        // write a temporary file first, so that readers never see a partially written index
+        final File tmp = new File(indexFile.getPath() + ".tmp");
+        final FileOutputStream out = new FileOutputStream(tmp);
+        try
+        {
+            out.write(index);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        if (!tmp.renameTo(indexFile))
+        {
+            // some platforms can't rename onto an existing file
+            indexFile.delete();
+            if (!tmp.renameTo(indexFile))
+            {
+                tmp.delete();
+                throw new IOException("Can't write " + indexFile);
+            }
+        }
+    }
+}
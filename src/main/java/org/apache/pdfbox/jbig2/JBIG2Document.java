@@ -22,10 +22,14 @@ import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.imageio.stream.ImageInputStream;
 
+import org.apache.pdfbox.jbig2.io.RandomAccessSource;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
 
 /**
@@ -89,29 +93,139 @@ class JBIG2Document
      */
     private JBIG2Globals globalSegments;
 
+    /**
+     * The length of the data or {@code -1} if it is unknown.
+     */
+    private final long dataLength;
+
+    /**
+     * Keeps the index of the segment headers between two openings of the document, may be {@code null}.
+     */
+    private final SegmentIndexStore segmentIndexStore;
+
+    /**
+     * The checksum of the data if a segment index is used, see {@link SegmentIndex#checksum(ImageInputStream, long)}.
+     */
+    private long checksum;
+
+    /**
+     * The segments mapped so far in the order of their headers.
+     */
+    private final List<SegmentHeader> segments = new LinkedList<SegmentHeader>();
+
+    /**
+     * The position of the next segment header that is mapped.
+     */
+    private long nextSegmentOffset;
+
+    /**
+     * {@code true} if all segment headers have been mapped.
+     */
+    private boolean completelyMapped;
+
+    /**
+     * The highest page association of all mapped segments.
+     */
+    private int lastPageAssociation;
+
+    /**
+     * The highest page association of all mapped end of page segments.
+     */
+    private int lastEndOfPage;
+
+    /**
+     * The default for {@link #segmentDataBufferThreshold}, 1 MB.
+     */
+    static final int DEFAULT_SEGMENT_DATA_BUFFER_THRESHOLD = 1 << 20;
+
+    /**
+     * Segments whose data part is not larger than this are read into memory with a single read before they are
+     * decoded.
+     */
+    private int segmentDataBufferThreshold = DEFAULT_SEGMENT_DATA_BUFFER_THRESHOLD;
+
     protected JBIG2Document(ImageInputStream input) throws IOException
     {
         this(input, null);
     }
 
     protected JBIG2Document(ImageInputStream input, JBIG2Globals globals) throws IOException
+    {
+        this(input, globals, null);
+    }
+
+    /**
+     * @param input - The JBIG2 data.
+     * @param globals - The global segments or {@code null}.
+     * @param segmentIndexStore - The store of the segment index or {@code null} to read all segment headers.
+     * @throws IOException if the segment headers can't be read.
+     */
+    JBIG2Document(ImageInputStream input, JBIG2Globals globals, SegmentIndexStore segmentIndexStore)
+            throws IOException
     {
         if (input == null)
             throw new IllegalArgumentException("imageInputStream must not be null");
 
         this.subInputStream = new SubInputStream(input, 0, Long.MAX_VALUE);
+        this.dataLength = input.length();
         this.globalSegments = globals;
+        this.segmentIndexStore = segmentIndexStore;
 
         mapStream();
     }
 
+    protected JBIG2Document(RandomAccessSource input) throws IOException
+    {
+        this(input, null);
+    }
+
+    protected JBIG2Document(RandomAccessSource input, JBIG2Globals globals) throws IOException
+    {
+        this(input, globals, null);
+    }
+
+    /**
+     * @param input - The JBIG2 data.
+     * @param globals - The global segments or {@code null}.
+     * @param segmentIndexStore - The store of the segment index or {@code null} to read all segment headers.
+     * @throws IOException if the segment headers can't be read.
+     */
+    JBIG2Document(RandomAccessSource input, JBIG2Globals globals, SegmentIndexStore segmentIndexStore)
+            throws IOException
+    {
+        if (input == null)
+            throw new IllegalArgumentException("source must not be null");
+
+        this.subInputStream = new SubInputStream(input, 0, input.length());
+        this.dataLength = input.length();
+        this.globalSegments = globals;
+        this.segmentIndexStore = segmentIndexStore;
+
+        mapStream();
+    }
+
+    /**
+     * Creates a document without input whose segments are added one by one with {@link #add(SegmentHeader)}, see
+     * {@link JBIG2StreamDecoder}.
+     * 
+     * @param globals - The global segments or {@code null}.
+     */
+    JBIG2Document(JBIG2Globals globals)
+    {
+        this.subInputStream = null;
+        this.dataLength = -1;
+        this.globalSegments = globals != null ? globals : new JBIG2Globals();
+        this.segmentIndexStore = null;
+        this.completelyMapped = true;
+    }
+
     /**
      * Retrieves the segment with the given segment number considering only segments that aren't associated with a page.
      * 
      * @param segmentNr - The number of the wanted segment.
      * @return The requested {@link SegmentHeader}.
      */
-    SegmentHeader getGlobalSegment(int segmentNr)
+    synchronized SegmentHeader getGlobalSegment(int segmentNr)
     {
         if (null != globalSegments)
         {
@@ -121,32 +235,45 @@ class JBIG2Document
     }
 
     /**
-     * Retrieves a {@link JBIG2Page} specified by the given page number.
+     * Retrieves a {@link JBIG2Page} specified by the given page number. The segment headers are mapped up to the last
+     * segment of the page if that hasn't happened yet. Mapping is synchronized on the document, so pages can be
+     * retrieved and decoded on several threads.
+     * 
+     * @param pageNumber - The page number of the wanted {@link JBIG2Page}.
+     * 
+     * @return The requested {@link JBIG2Page} or {@code null} if there is no such page.
+     * @throws IOException if the segment headers can't be read.
+     */
+    protected synchronized JBIG2Page getPage(int pageNumber) throws IOException
+    {
+        mapPage(pageNumber);
+        return pages.get(pageNumber);
+    }
+
+    /**
+     * Retrieves a {@link JBIG2Page} without mapping further segment headers.
      * 
      * @param pageNumber - The page number of the wanted {@link JBIG2Page}.
      * 
-     * @return The requested {@link JBIG2Page}.
+     * @return The requested {@link JBIG2Page} or {@code null} if no segment of the page has been mapped yet.
      */
-    protected JBIG2Page getPage(int pageNumber)
+    synchronized JBIG2Page getMappedPage(int pageNumber)
     {
         return pages.get(pageNumber);
     }
 
     /**
-     * Retrieves the amount of pages in this JBIG2 document. If the pages are striped, the document will be completely
-     * parsed and the amount of pages will be gathered.
+     * Retrieves the amount of pages in this JBIG2 document. If the amount isn't given in the file header, the document
+     * will be completely mapped and the amount of pages will be gathered.
      * 
      * @return The amount of pages in this JBIG2 document.
      * @throws IOException
      */
-    protected int getAmountOfPages() throws IOException
+    protected synchronized int getAmountOfPages() throws IOException
     {
         if (amountOfPagesUnknown || amountOfPages == 0)
         {
-            if (pages.isEmpty())
-            {
-                mapStream();
-            }
+            mapAll();
 
             return pages.size();
         }
@@ -157,14 +284,12 @@ class JBIG2Document
     }
 
     /**
-     * This method maps the stream and stores all segments.
+     * This method starts mapping the stream. Segment headers of sequentially organized data are mapped on demand,
+     * unless a segment index has to be created. All others are mapped right away.
      */
     private void mapStream() throws IOException
     {
-        final List<SegmentHeader> segments = new LinkedList<SegmentHeader>();
-
-        long offset = 0;
-        int segmentType = 0;
+        nextSegmentOffset = 0;
 
         /*
          * Parse the file header if there is one.
@@ -172,7 +297,7 @@ class JBIG2Document
         if (isFileHeaderPresent())
         {
             parseFileHeader();
-            offset += fileHeaderLength;
+            nextSegmentOffset += fileHeaderLength;
         }
 
         if (globalSegments == null)
@@ -180,54 +305,222 @@ class JBIG2Document
             globalSegments = new JBIG2Globals();
         }
 
+        if (segmentIndexStore != null && dataLength >= 0)
+        {
+            checksum = SegmentIndex.checksum(subInputStream, dataLength);
+            final SegmentIndex index = loadSegmentIndex();
+            if (index != null)
+            {
+                mapSegments(index);
+                checkFirstPage();
+                return;
+            }
+            // the index is created from all segments
+            mapAll();
+        }
+        else if (organisationType == RANDOM)
+        {
+            // the data offsets are known after all segment headers have been read
+            mapAll();
+        }
+    }
+
+    /**
+     * Maps segment headers until all segments of the given page have been mapped. These are complete if an end of page
+     * segment of the page or a segment of a later page has been mapped.
+     * 
+     * @param pageNumber - The number of the page.
+     */
+    private synchronized void mapPage(int pageNumber) throws IOException
+    {
+        while (!completelyMapped && lastEndOfPage < pageNumber
+                && lastPageAssociation <= pageNumber)
+        {
+            mapNextSegment();
+        }
+        checkFirstPage();
+    }
+
+    /**
+     * Maps all remaining segment headers.
+     */
+    private synchronized void mapAll() throws IOException
+    {
+        while (!completelyMapped)
+        {
+            mapNextSegment();
+        }
+        checkFirstPage();
+    }
+
+    /**
+     * Maps the segment header at {@link #nextSegmentOffset}. If it is the last one, the data offsets of random-access
+     * organised data are determined and the segment index is stored.
+     */
+    private synchronized void mapNextSegment() throws IOException
+    {
+        /*
+         * Walk through the segment headers until EOF segment appears (specified with segment number 51)
+         */
+        if (reachedEndOfStream(nextSegmentOffset))
+        {
+            finishMapping();
+            return;
+        }
+
+        SegmentHeader segment = new SegmentHeader(this, subInputStream, nextSegmentOffset,
+                organisationType);
+
+        add(segment);
+        segments.add(segment);
+
+        nextSegmentOffset = subInputStream.getStreamPosition();
+
+        // Sequential organization skips data part and sets the offset
+        if (organisationType == SEQUENTIAL)
+        {
+            nextSegmentOffset += segment.getSegmentDataLength();
+        }
+
+        final int associatedPage = segment.getPageAssociation();
+        lastPageAssociation = Math.max(lastPageAssociation, associatedPage);
+        if (segment.getSegmentType() == 49)
+        {
+            lastEndOfPage = Math.max(lastEndOfPage, associatedPage);
+        }
+        else if (segment.getSegmentType() == 51)
+        {
+            finishMapping();
+        }
+    }
+
+    private void finishMapping()
+    {
+        completelyMapped = true;
+
         /*
-         * If organisation type is random-access: walk through the segment headers until EOF segment appears (specified
-         * with segment number 51)
+         * Random organization: segment headers are finished. Data part starts and the offset can be set.
          */
-        while (segmentType != 51 && !reachedEndOfStream(offset))
+        determineRandomDataOffsets(segments, nextSegmentOffset);
+
+        storeSegmentIndex();
+    }
+
+    /**
+     * PDFBOX-6147: abort if first page isn't 1, however a purely empty document is valid when calling
+     * "new JBIG2Document(globals)"
+     */
+    private void checkFirstPage() throws IOException
+    {
+        if (!pages.isEmpty() && pages.get(1) == null)
         {
-            SegmentHeader segment = new SegmentHeader(this, subInputStream, offset,
-                    organisationType);
+            throw new IOException("Page 1 missing");
+        }
+    }
 
-            final int associatedPage = segment.getPageAssociation();
-            segmentType = segment.getSegmentType();
+    /**
+     * Creates the segments from a segment index.
+     * 
+     * @param index - An index that matches the data.
+     */
+    private void mapSegments(SegmentIndex index)
+    {
+        for (SegmentIndex.Entry entry : index.getEntries())
+        {
+            add(new SegmentHeader(this, subInputStream, entry));
+        }
+        completelyMapped = true;
+    }
 
-            if (associatedPage != 0)
+    /**
+     * Loads the segment index from the store.
+     * 
+     * @return The index or {@code null} if there is no index or the index doesn't match the data.
+     */
+    private SegmentIndex loadSegmentIndex()
+    {
+        try
+        {
+            final byte[] data = segmentIndexStore.load();
+            if (data != null)
             {
-                JBIG2Page page = getPage(associatedPage);
-                if (page == null)
+                final SegmentIndex index = SegmentIndex.fromByteArray(data);
+                if (index.matches(dataLength, checksum))
                 {
-                    page = new JBIG2Page(this, associatedPage);
-                    pages.put(associatedPage, page);
+                    return index;
                 }
-                page.add(segment);
-            }
-            else
-            {
-                globalSegments.addSegment(segment.getSegmentNr(), segment);
             }
-            segments.add(segment);
+        }
+        catch (IOException e)
+        {
+            Logger.getLogger(JBIG2Document.class.getName()).log(Level.FINE,
+                    "Ignoring unreadable segment index", e);
+        }
+        return null;
+    }
 
-            offset = subInputStream.getStreamPosition();
+    private void storeSegmentIndex()
+    {
+        if (segmentIndexStore == null || dataLength < 0)
+        {
+            return;
+        }
 
-            // Sequential organization skips data part and sets the offset
-            if (organisationType == SEQUENTIAL)
+        try
+        {
+            segmentIndexStore.store(new SegmentIndex(dataLength, checksum, segments).toByteArray());
+        }
+        catch (IOException e)
+        {
+            Logger.getLogger(JBIG2Document.class.getName()).log(Level.WARNING,
+                    "Can't store segment index", e);
+        }
+    }
+
+    /**
+     * Adds the segment to the page it is associated with or to the global segments.
+     * 
+     * @param segment - The segment to add.
+     */
+    synchronized void add(SegmentHeader segment)
+    {
+        final int associatedPage = segment.getPageAssociation();
+
+        if (associatedPage != 0)
+        {
+            JBIG2Page page = pages.get(associatedPage);
+            if (page == null)
             {
-                offset += segment.getSegmentDataLength();
+                page = new JBIG2Page(this, associatedPage);
+                pages.put(associatedPage, page);
             }
+            page.add(segment);
         }
-
-        // PDFBOX-6147: abort if first page isn't 1, however
-        // a purely empty document is valid when calling "new JBIG2Document(globals)"
-        if (!pages.isEmpty() && pages.get(1) == null)
+        else
         {
-            throw new IOException("Page 1 missing");
+            globalSegments.addSegment(segment.getSegmentNr(), segment);
         }
+    }
 
-        /*
-         * Random organization: segment headers are finished. Data part starts and the offset can be set.
-         */
-        determineRandomDataOffsets(segments, offset);
+    /**
+     * Removes a page together with its segments from this document.
+     * 
+     * @param pageNumber - The number of the page to remove.
+     * @return The removed page or {@code null} if there is no such page.
+     */
+    synchronized JBIG2Page removePage(int pageNumber)
+    {
+        return pages.remove(pageNumber);
+    }
+
+    /**
+     * Returns the numbers of all pages of this document in ascending order.
+     * 
+     * @return The page numbers.
+     */
+    Set<Integer> getPageNumbers()
+    {
+        return pages.keySet();
     }
 
     private boolean isFileHeaderPresent() throws IOException
@@ -282,34 +575,50 @@ class JBIG2Document
         /*
          * D.4.2 Header flag (1 byte)
          */
+        parseFileHeaderFlags(subInputStream.read());
 
+        /*
+         * D.4.3 Number of pages (field is only present if amount of pages are 'NOT unknown')
+         */
+        if (!amountOfPagesUnknown)
+        {
+            amountOfPages = (int) subInputStream.readUnsignedInt();
+        }
+
+    }
+
+    /**
+     * Interprets the header flags of the file header, see D.4.2.
+     * 
+     * @param flags - The header flags byte.
+     * @return The length of the file header, which includes the number of pages field if it is present.
+     */
+    int parseFileHeaderFlags(int flags)
+    {
         // Bit 3-7 are reserved and must be 0
-        subInputStream.readBits(5);
 
         // Bit 2 - Indicates if extended templates are used
-        if (subInputStream.readBit() == 1)
+        if ((flags & 0x04) != 0)
         {
             gbUseExtTemplate = true;
         }
 
         // Bit 1 - Indicates if amount of pages are unknown
-        if (subInputStream.readBit() != 1)
+        if ((flags & 0x02) == 0)
         {
             amountOfPagesUnknown = false;
+            fileHeaderLength = 13;
         }
 
         // Bit 0 - Indicates file organisation type
-        organisationType = (short) subInputStream.readBit();
+        organisationType = (short) (flags & 0x01);
 
-        /*
-         * D.4.3 Number of pages (field is only present if amount of pages are 'NOT unknown')
-         */
-        if (!amountOfPagesUnknown)
-        {
-            amountOfPages = (int) subInputStream.readUnsignedInt();
-            fileHeaderLength = 13;
-        }
+        return fileHeaderLength;
+    }
 
+    short getOrganisationType()
+    {
+        return organisationType;
     }
 
     /**
@@ -339,8 +648,15 @@ class JBIG2Document
         }
     }
 
-    protected JBIG2Globals getGlobalSegments()
+    /**
+     * Returns the segments that aren't associated with a page. The document is completely mapped before.
+     * 
+     * @return The global segments.
+     * @throws IOException if the segment headers can't be read.
+     */
+    protected synchronized JBIG2Globals getGlobalSegments() throws IOException
     {
+        mapAll();
         return globalSegments;
     }
 
@@ -354,4 +670,24 @@ class JBIG2Document
         return gbUseExtTemplate;
     }
 
+    int getSegmentDataBufferThreshold()
+    {
+        return segmentDataBufferThreshold;
+    }
+
+    /**
+     * Sets the size up to which the data part of a segment is read into memory with a single read when decoding of
+     * the segment starts. Larger segments are read from the input as they are decoded. Data that is already held in
+     * memory is never copied.
+     * 
+     * @param segmentDataBufferThreshold - The size in bytes, 0 disables reading ahead.
+     */
+    void setSegmentDataBufferThreshold(int segmentDataBufferThreshold)
+    {
+        if (segmentDataBufferThreshold < 0)
+            throw new IllegalArgumentException("Threshold must be >= 0");
+
+        this.segmentDataBufferThreshold = segmentDataBufferThreshold;
+    }
+
 }
@@ -21,7 +21,10 @@ import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -33,13 +36,23 @@ import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.stream.ImageInputStream;
 
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticStatistics;
 import org.apache.pdfbox.jbig2.err.JBIG2Exception;
 import org.apache.pdfbox.jbig2.image.Bitmaps;
 import org.apache.pdfbox.jbig2.image.FilterType;
+import org.apache.pdfbox.jbig2.io.ByteBufferSource;
+import org.apache.pdfbox.jbig2.io.MappedFileSource;
+import org.apache.pdfbox.jbig2.io.RandomAccessSource;
 import org.apache.pdfbox.jbig2.util.cache.CacheFactory;
 
 /**
  * {@inheritDoc}
+ * <p>
+ * Besides an {@link ImageInputStream}, the input may be a {@code byte[]} or a {@link ByteBuffer} holding the complete
+ * JBIG2 data. Such input is decoded in place without being copied. A slice of an array can be passed as
+ * {@code ByteBuffer.wrap(array, offset, length)}. A {@link File} or {@link FileChannel} input is mapped read-only into
+ * memory, see {@link MappedFileSource}. Any other positional backend can be supplied as a {@link RandomAccessSource}, for
+ * example a {@link org.apache.pdfbox.jbig2.io.FileChannelSource}.
  */
 public class JBIG2ImageReader extends ImageReader
 {
@@ -49,6 +62,15 @@ public class JBIG2ImageReader extends ImageReader
     /** Globals are JBIG2 segments for PDF wide use. */
     private JBIG2Globals globals;
 
+    /** Keeps the segment index of the input between two openings, may be {@code null}. */
+    private SegmentIndexStore segmentIndexStore;
+
+    /** Segments up to this size are read into memory with a single read before decoding. */
+    private int segmentDataBufferThreshold = JBIG2Document.DEFAULT_SEGMENT_DATA_BUFFER_THRESHOLD;
+
+    /** The counters of the arithmetic decoders of the last read, {@code null} if counting is switched off. */
+    private ArithmeticStatistics statistics;
+
     /**
      * {@inheritDoc}
      * 
@@ -78,7 +100,7 @@ public class JBIG2ImageReader extends ImageReader
 
         try
         {
-            final int index = (imageIndex < getDocument().getAmountOfPages()) ? imageIndex : 0;
+            final int index = getDocument().getPage(imageIndex + 1) != null ? imageIndex : 0;
             width = getWidth(index);
             height = getHeight(index);
         }
@@ -164,23 +186,7 @@ public class JBIG2ImageReader extends ImageReader
             param = getDefaultReadParam(imageIndex);
         }
 
-        JBIG2Page page = getPage(imageIndex);
-
-        Bitmap pageBitmap = (Bitmap) CacheFactory.getCache().get(page);
-
-        if (pageBitmap == null)
-        {
-            try
-            {
-                pageBitmap = page.getBitmap();
-                CacheFactory.getCache().put(page, pageBitmap, pageBitmap.getLength());
-                page.clearPageData();
-            }
-            catch (JBIG2Exception e)
-            {
-                throw new IOException(e.getMessage());
-            }
-        }
+        final Bitmap pageBitmap = getPageBitmap(imageIndex);
 
         return Bitmaps.asBufferedImage(pageBitmap, param, FilterType.Gaussian);
     }
@@ -199,24 +205,52 @@ public class JBIG2ImageReader extends ImageReader
             param = getDefaultReadParam(imageIndex);
         }
 
+        final Bitmap pageBitmap = getPageBitmap(imageIndex);
+
+        return Bitmaps.asRaster(pageBitmap, param, FilterType.Gaussian);
+    }
+
+    /**
+     * Returns the decoded page from the cache or decodes it. If {@link ArithmeticStatistics} are enabled, the counters
+     * of the decoding are kept for {@link #getArithmeticStatistics()}.
+     */
+    private Bitmap getPageBitmap(int imageIndex) throws IOException
+    {
         JBIG2Page page = getPage(imageIndex);
 
-        Bitmap pageBitmap = (Bitmap) CacheFactory.getCache().get(page);
-        if (pageBitmap == null)
+        ArithmeticStatistics.reset();
+        try
         {
-            try
+            Bitmap pageBitmap = (Bitmap) CacheFactory.getCache().get(page);
+            if (pageBitmap == null)
             {
                 pageBitmap = page.getBitmap();
                 CacheFactory.getCache().put(page, pageBitmap, pageBitmap.getLength());
                 page.clearPageData();
             }
-            catch (JBIG2Exception e)
-            {
-                throw new IOException(e.getMessage());
-            }
+            return pageBitmap;
+        }
+        catch (JBIG2Exception e)
+        {
+            throw new IOException(e.getMessage());
         }
+        finally
+        {
+            statistics = ArithmeticStatistics.snapshot();
+        }
+    }
 
-        return Bitmaps.asRaster(pageBitmap, param, FilterType.Gaussian);
+    /**
+     * Returns the counters of the arithmetic decoders of the last call of {@link #read(int, ImageReadParam)} or
+     * {@link #readRaster(int, ImageReadParam)}, broken down per segment type, decoding procedure and template. A page
+     * which was taken from the cache has no counters. Counting has to be switched on with the system property
+     * {@value ArithmeticStatistics#PROPERTY}.
+     * 
+     * @return The counters or {@code null} if counting is switched off or nothing has been read yet.
+     */
+    public ArithmeticStatistics getArithmeticStatistics()
+    {
+        return statistics;
     }
 
     /**
@@ -231,6 +265,22 @@ public class JBIG2ImageReader extends ImageReader
     public JBIG2Globals processGlobals(ImageInputStream globalsInputStream) throws IOException
     {
         JBIG2Document doc = new JBIG2Document(globalsInputStream);
+        doc.setSegmentDataBufferThreshold(segmentDataBufferThreshold);
+        return doc.getGlobalSegments();
+    }
+
+    /**
+     * Decodes and returns the global segments held in memory. The data is not copied.
+     * 
+     * @param globalsData - The globals data between the buffer's position and its limit.
+     * 
+     * @return The decoded {@link JBIG2Globals}.
+     * 
+     * @throws IOException if an error occurs reading the globals data.
+     */
+    public JBIG2Globals processGlobals(ByteBuffer globalsData) throws IOException
+    {
+        JBIG2Document doc = new JBIG2Document(new ByteBufferSource(globalsData));
         return doc.getGlobalSegments();
     }
 
@@ -247,6 +297,53 @@ public class JBIG2ImageReader extends ImageReader
         this.document = null;
     }
 
+    /**
+     * Sets the size up to which the data part of a segment is read into memory with a single read when decoding of
+     * the segment starts, instead of being read from the input piecewise while it is decoded. This pays off for
+     * inputs with expensive reads, e.g. files on network storage. Inputs which are already held in memory are never
+     * copied. The default is 1 MB.
+     * 
+     * @param segmentDataBufferThreshold - The size in bytes, 0 disables reading segments into memory.
+     */
+    public void setSegmentDataBufferThreshold(int segmentDataBufferThreshold)
+    {
+        if (segmentDataBufferThreshold < 0)
+            throw new IllegalArgumentException("Threshold must be >= 0");
+
+        this.segmentDataBufferThreshold = segmentDataBufferThreshold;
+        if (document != null)
+        {
+            document.setSegmentDataBufferThreshold(segmentDataBufferThreshold);
+        }
+    }
+
+    public int getSegmentDataBufferThreshold()
+    {
+        return segmentDataBufferThreshold;
+    }
+
+    /**
+     * Sets the store for the segment index of the input. If the store holds an index that matches the input, the
+     * segment headers are taken from it and the input isn't scanned for them. Otherwise the headers are read from the
+     * input and their index is passed to the store. This makes reopening inputs with many segments considerably faster.
+     * The index can only be validated against inputs of known length.
+     * <p>
+     * A store is responsible for a single input, so it has to be set again together with a new input, e.g. with
+     * {@link FileSegmentIndexStore#forFile(File)}.
+     * 
+     * @param segmentIndexStore - The store or {@code null} to always scan the input.
+     */
+    public void setSegmentIndexStore(SegmentIndexStore segmentIndexStore)
+    {
+        this.segmentIndexStore = segmentIndexStore;
+        this.document = null;
+    }
+
+    public SegmentIndexStore getSegmentIndexStore()
+    {
+        return segmentIndexStore;
+    }
+
     @Override
     public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata)
     {
@@ -263,11 +360,53 @@ public class JBIG2ImageReader extends ImageReader
                 throw new IOException("Input not set.");
             }
 
-            this.document = new JBIG2Document((ImageInputStream) this.input, this.globals);
+            if (this.input instanceof ImageInputStream)
+            {
+                this.document = new JBIG2Document((ImageInputStream) this.input, this.globals,
+                        this.segmentIndexStore);
+            }
+            else
+            {
+                this.document = new JBIG2Document(createSource(this.input), this.globals,
+                        this.segmentIndexStore);
+            }
+            this.document.setSegmentDataBufferThreshold(segmentDataBufferThreshold);
         }
         return this.document;
     }
 
+    /**
+     * Creates the source for all input types other than {@link ImageInputStream}.
+     * 
+     * @param input - The input as set by {@link #setInput(Object, boolean, boolean)}.
+     * @return The source to decode from.
+     * @throws IOException if a file input can't be mapped.
+     */
+    private static RandomAccessSource createSource(Object input) throws IOException
+    {
+        if (input instanceof RandomAccessSource)
+        {
+            return (RandomAccessSource) input;
+        }
+        else if (input instanceof byte[])
+        {
+            return new ByteBufferSource((byte[]) input);
+        }
+        else if (input instanceof ByteBuffer)
+        {
+            return new ByteBufferSource((ByteBuffer) input);
+        }
+        else if (input instanceof File)
+        {
+            return new MappedFileSource((File) input);
+        }
+        else if (input instanceof FileChannel)
+        {
+            return new MappedFileSource((FileChannel) input);
+        }
+        throw new IOException("Unsupported input type " + input.getClass().getName());
+    }
+
     /**
      * Return the page.
      *
@@ -17,7 +17,11 @@
 
 package org.apache.pdfbox.jbig2;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,6 +30,8 @@ import javax.imageio.ImageReader;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.stream.ImageInputStream;
 
+import org.apache.pdfbox.jbig2.io.RandomAccessSource;
+
 /**
  * Necessary extension for ImageIO standard.
  * 
@@ -40,7 +46,8 @@ public class JBIG2ImageReaderSpi extends ImageReaderSpi
     private static final String[] NAMES = { "jbig2", "JBIG2" };
     private static final String[] SUFFIXES = { "jb2", "jbig2", "JB2", "JBIG2" };
     private static final String[] MIME_TYPES = { "image/x-jbig2", "image/x-jb2" };
-    private static final Class<?>[] INPUT_TYPES = { ImageInputStream.class };
+    private static final Class<?>[] INPUT_TYPES = { ImageInputStream.class, byte[].class,
+            ByteBuffer.class, File.class, FileChannel.class, RandomAccessSource.class };
 
     /**
      * According to D.4.1:
@@ -91,6 +98,41 @@ public class JBIG2ImageReaderSpi extends ImageReaderSpi
         if (source == null)
             throw new IllegalArgumentException("source must not be null");
 
+        if (source instanceof byte[])
+        {
+            return hasFileHeaderPreamble(ByteBuffer.wrap((byte[]) source));
+        }
+
+        if (source instanceof ByteBuffer)
+        {
+            return hasFileHeaderPreamble((ByteBuffer) source);
+        }
+
+        if (source instanceof File)
+        {
+            final RandomAccessFile raf = new RandomAccessFile((File) source, "r");
+            try
+            {
+                return hasFileHeaderPreamble(raf.getChannel());
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+
+        if (source instanceof FileChannel)
+        {
+            return hasFileHeaderPreamble((FileChannel) source);
+        }
+
+        if (source instanceof RandomAccessSource)
+        {
+            final byte[] preamble = new byte[FILEHEADER_PREAMBLE.length];
+            final int read = ((RandomAccessSource) source).read(0, preamble, 0, preamble.length);
+            return read == preamble.length && hasFileHeaderPreamble(ByteBuffer.wrap(preamble));
+        }
+
         if (!(source instanceof ImageInputStream))
         {
             Logger.getLogger(JBIG2ImageReaderSpi.class.getName()).log(Level.WARNING, "source is not an ImageInputStream: {0}", source);
@@ -113,6 +155,47 @@ public class JBIG2ImageReaderSpi extends ImageReaderSpi
         return true;
     }
 
+    /**
+     * Checks the preamble at the start of the channel, i.e. at offset 0 regardless of the channel's current position,
+     * which is not changed.
+     * 
+     * @param channel - The channel to check.
+     * @return {@code true} if the channel starts with the preamble.
+     */
+    private boolean hasFileHeaderPreamble(FileChannel channel) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(FILEHEADER_PREAMBLE.length);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0)
+        {
+            // positional reads leave the channel position untouched
+        }
+        buffer.flip();
+        return hasFileHeaderPreamble(buffer);
+    }
+
+    /**
+     * Checks the preamble at the buffer's current position without changing the position.
+     * 
+     * @param buffer - The buffer to check.
+     * @return {@code true} if the buffer starts with the preamble.
+     */
+    private boolean hasFileHeaderPreamble(ByteBuffer buffer)
+    {
+        if (buffer.remaining() < FILEHEADER_PREAMBLE.length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < FILEHEADER_PREAMBLE.length; i++)
+        {
+            if ((buffer.get(buffer.position() + i) & 0xFF) != FILEHEADER_PREAMBLE[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public ImageReader createReaderInstance(Object extension) throws IOException
     {
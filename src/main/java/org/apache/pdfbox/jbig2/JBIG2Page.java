@@ -17,8 +17,10 @@
 
 package org.apache.pdfbox.jbig2;
 
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -29,6 +31,7 @@ import org.apache.pdfbox.jbig2.err.JBIG2Exception;
 import org.apache.pdfbox.jbig2.image.Bitmaps;
 import org.apache.pdfbox.jbig2.segments.EndOfStripe;
 import org.apache.pdfbox.jbig2.segments.GenericRefinementRegion;
+import org.apache.pdfbox.jbig2.segments.GenericRegion;
 import org.apache.pdfbox.jbig2.segments.PageInformation;
 import org.apache.pdfbox.jbig2.segments.RegionSegmentInformation;
 import org.apache.pdfbox.jbig2.util.CombinationOperator;
@@ -159,11 +162,12 @@ class JBIG2Page
         pageBitmap = new Bitmap(pageInformation.getWidth(), pageInformation.getHeight());
 
         // Page 79, 3)
-        // If default pixel value is not 0, byte will be filled with 0xff
-        if (pageInformation.getDefaultPixelValue() != 0)
-        {
-            pageBitmap.fillBitmap((byte) 0xff);
-        }
+        // If default pixel value is not 0, byte will be filled with 0xff. Filling a blank page as well tells the
+        // bitmap that all rows are alike, so that blitting runs of duplicate rows onto it is cheap.
+        pageBitmap.fillBitmap(pageInformation.getDefaultPixelValue() != 0 ? (byte) 0xff : 0);
+
+        // the areas of the page which regions have been combined with, outside of them the page is blank
+        final List<Rectangle> composedAreas = new ArrayList<Rectangle>();
 
         for (SegmentHeader s : segments.values())
         {
@@ -185,20 +189,36 @@ class JBIG2Page
                     ((GenericRefinementRegion) r).setPageBitmap(pageBitmap);
                 }
 
-                final Bitmap regionBitmap = r.getRegionBitmap();
+                final RegionSegmentInformation regionInfo = r.getRegionInfo();
+                final CombinationOperator op = getCombinationOperator(pageInformation,
+                        regionInfo.getCombinationOperator());
+                final Rectangle area = new Rectangle(regionInfo.getXLocation(),
+                        regionInfo.getYLocation(), regionInfo.getBitmapWidth(),
+                        regionInfo.getBitmapHeight());
 
-                if (fitsPage(pageInformation, regionBitmap))
+                if (fitsPage(pageInformation, regionInfo))
                 {
-                    pageBitmap = regionBitmap;
+                    pageBitmap = r.getRegionBitmap();
+                }
+                else if (r instanceof GenericRegion && replaces(op,
+                        pageInformation.getDefaultPixelValue(), area, composedAreas))
+                {
+                    // the rows are stored into the page as they are decoded, the region's bitmap isn't needed
+                    final Bitmap page = pageBitmap;
+                    ((GenericRegion) r).getRegionRows(new RowSink()
+                    {
+                        @Override
+                        public void putRows(Bitmap bitmap, int row, int y, int count)
+                        {
+                            Bitmaps.replaceRows(bitmap, row, count, page, area.x, area.y + y);
+                        }
+                    });
                 }
                 else
                 {
-                    final RegionSegmentInformation regionInfo = r.getRegionInfo();
-                    final CombinationOperator op = getCombinationOperator(pageInformation,
-                            regionInfo.getCombinationOperator());
-                    Bitmaps.blit(regionBitmap, pageBitmap, regionInfo.getXLocation(),
-                            regionInfo.getYLocation(), op);
+                    Bitmaps.blit(r.getRegionBitmap(), pageBitmap, area.x, area.y, op);
                 }
+                composedAreas.add(area);
 
                 break;
             default:
@@ -213,14 +233,48 @@ class JBIG2Page
      * bitmap (see Issue 6).
      * 
      * @param pageInformation
-     * @param regionBitmap
+     * @param regionInfo
      * @return
      */
-    private boolean fitsPage(PageInformation pageInformation, final Bitmap regionBitmap)
+    private boolean fitsPage(PageInformation pageInformation,
+            final RegionSegmentInformation regionInfo)
     {
         return countRegions() == 1 && pageInformation.getDefaultPixelValue() == 0
-                && pageInformation.getWidth() == regionBitmap.getWidth()
-                && pageInformation.getHeight() == regionBitmap.getHeight();
+                && pageInformation.getWidth() == regionInfo.getBitmapWidth()
+                && pageInformation.getHeight() == regionInfo.getBitmapHeight();
+    }
+
+    /**
+     * Checks whether combining a region with the page is the same as replacing the page's pixels with the region's
+     * pixels. This is the case for {@link CombinationOperator#REPLACE}, and for operators which keep the pixels of
+     * the region where the page is still blank: OR and XOR on white pixels, AND and XNOR on black pixels.
+     * 
+     * @param op - The combination operator of the region.
+     * @param defaultPixelValue - The default pixel value of the page.
+     * @param area - The area of the region.
+     * @param composedAreas - The areas regions have been combined with before.
+     * @return {@code true} if the region's pixels replace the page's pixels.
+     */
+    private boolean replaces(CombinationOperator op, short defaultPixelValue, Rectangle area,
+            List<Rectangle> composedAreas)
+    {
+        if (op == CombinationOperator.REPLACE)
+        {
+            return true;
+        }
+        if (defaultPixelValue == 0 ? op != CombinationOperator.OR && op != CombinationOperator.XOR
+                : op != CombinationOperator.AND && op != CombinationOperator.XNOR)
+        {
+            return false;
+        }
+        for (Rectangle composed : composedAreas)
+        {
+            if (composed.intersects(area))
+            {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void createStripedPage(PageInformation pageInformation)
@@ -0,0 +1,363 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.LinkedList;
+
+import org.apache.pdfbox.jbig2.err.JBIG2Exception;
+import org.apache.pdfbox.jbig2.io.ByteBufferSource;
+import org.apache.pdfbox.jbig2.io.SubInputStream;
+
+/**
+ * Decodes JBIG2 data with sequential organisation from an {@link InputStream} in a single forward pass.
+ * <p>
+ * Segments are read one after another. A page is composed and returned by {@link #nextPage()} as soon as its end of
+ * page segment has been read, or at the end of the data if the page has none, e.g. if the data is embedded in a PDF.
+ * The data of each segment is held in memory only as long as the segment is needed: the segments of a page are
+ * released once the page has been returned, global segments are kept because later pages may refer to them. Data parts
+ * of segments that are never decoded are skipped. Nothing is written to temporary storage.
+ * <p>
+ * Files with random-access organisation can't be decoded in one pass. Use the {@link JBIG2ImageReader} for those.
+ */
+public class JBIG2StreamDecoder
+{
+    /** The data length of segments whose data length isn't known in advance, see 7.2.7. */
+    private static final long UNKNOWN_LENGTH = 0xffffffffL;
+
+    private final PushbackInputStream pushbackStream;
+
+    private final DataInputStream input;
+
+    /** Collects the segments read so far that are still needed. */
+    private final JBIG2Document document;
+
+    /** Numbers of the pages that are complete but haven't been returned yet. */
+    private final LinkedList<Integer> completedPages = new LinkedList<Integer>();
+
+    private boolean fileHeaderParsed;
+
+    private boolean endOfData;
+
+    private int pageNumber;
+
+    /** The number of the page whose page information segment has been read last. */
+    private int currentPage;
+
+    /**
+     * Creates a decoder for the given stream. The stream is read on demand and isn't closed by the decoder.
+     * 
+     * @param input - The JBIG2 data, either a complete file with sequential organisation or an embedded stream.
+     */
+    public JBIG2StreamDecoder(InputStream input)
+    {
+        this(input, null);
+    }
+
+    /**
+     * Creates a decoder for the given stream. The stream is read on demand and isn't closed by the decoder.
+     * 
+     * @param input - The JBIG2 data, either a complete file with sequential organisation or an embedded stream.
+     * @param globals - Global segments the data may refer to, e.g. from a PDF's {@code JBIG2Globals}, or {@code null}.
+     */
+    public JBIG2StreamDecoder(InputStream input, JBIG2Globals globals)
+    {
+        if (input == null)
+            throw new IllegalArgumentException("Input stream must not be null");
+
+        this.pushbackStream = new PushbackInputStream(input, 8);
+        this.input = new DataInputStream(pushbackStream);
+        this.document = new JBIG2Document(globals);
+    }
+
+    /**
+     * Reads segments until the next page is complete and returns its bitmap.
+     * 
+     * @return The bitmap of the next page or {@code null} if there are no more pages.
+     * @throws IOException if the data can't be read or decoded.
+     */
+    public Bitmap nextPage() throws IOException
+    {
+        if (!fileHeaderParsed)
+        {
+            parseFileHeader();
+            fileHeaderParsed = true;
+        }
+
+        while (completedPages.isEmpty() && !endOfData)
+        {
+            readSegment();
+        }
+
+        if (completedPages.isEmpty())
+        {
+            return null;
+        }
+
+        pageNumber = completedPages.removeFirst();
+        final JBIG2Page page = document.removePage(pageNumber);
+        try
+        {
+            return page.getBitmap();
+        }
+        catch (JBIG2Exception e)
+        {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of the page returned by the last call of {@link #nextPage()}.
+     * 
+     * @return The page number, 0 if no page has been returned yet.
+     */
+    public int getPageNumber()
+    {
+        return pageNumber;
+    }
+
+    /**
+     * Parses the file header if there is one, see D.4.
+     */
+    private void parseFileHeader() throws IOException
+    {
+        final byte[] id = new byte[8];
+        final int read = readAtMost(id);
+
+        if (read == id.length && isFileHeaderId(id))
+        {
+            if (document.parseFileHeaderFlags(input.readUnsignedByte()) > 9)
+            {
+                // the number of pages isn't needed
+                input.readInt();
+            }
+            if (document.getOrganisationType() != JBIG2Document.SEQUENTIAL)
+            {
+                throw new IOException("Files with random-access organisation can't be decoded from a stream");
+            }
+        }
+        else if (read > 0)
+        {
+            // embedded data without file header
+            pushbackStream.unread(id, 0, read);
+        }
+    }
+
+    private static boolean isFileHeaderId(byte[] id)
+    {
+        final int[] fileHeaderId = { 0x97, 0x4A, 0x42, 0x32, 0x0D, 0x0A, 0x1A, 0x0A };
+        for (int i = 0; i < fileHeaderId.length; i++)
+        {
+            if ((id[i] & 0xff) != fileHeaderId[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next segment and adds it to the document.
+     */
+    private void readSegment() throws IOException
+    {
+        final byte[] header = readSegmentHeader();
+        if (header == null)
+        {
+            finishAllPages();
+            return;
+        }
+
+        final long dataLength = readUnsignedInt(header, header.length - 4);
+        if (dataLength == UNKNOWN_LENGTH)
+            throw new IOException("Segments with unknown data length are not supported");
+
+        final int segmentType = header[4] & 0x3f;
+        final byte[] segment;
+        if (SegmentHeader.hasDecodableData(segmentType))
+        {
+            if (dataLength > Integer.MAX_VALUE - header.length)
+                throw new IOException("Segment data length " + dataLength + " is too large");
+
+            segment = new byte[header.length + (int) dataLength];
+            System.arraycopy(header, 0, segment, 0, header.length);
+            input.readFully(segment, header.length, (int) dataLength);
+        }
+        else
+        {
+            segment = header;
+            skipFully(dataLength);
+        }
+
+        final SubInputStream sis = new SubInputStream(new ByteBufferSource(segment), 0, segment.length);
+        final SegmentHeader segmentHeader = new SegmentHeader(document, sis, 0, JBIG2Document.SEQUENTIAL);
+        switch (segmentType)
+        {
+        case 49: // End of page
+            // some encoders associate the end of page segment with page 0 or with the previous page
+            final int page = segmentHeader.getPageAssociation();
+            completePage(isPending(page) ? page : currentPage);
+            break;
+        case 51: // End of file
+            finishAllPages();
+            break;
+        case 48: // Page information
+            currentPage = segmentHeader.getPageAssociation();
+            document.add(segmentHeader);
+            break;
+        default:
+            document.add(segmentHeader);
+            break;
+        }
+    }
+
+    /**
+     * Marks all pages which haven't been returned yet as complete and stops reading.
+     */
+    private void finishAllPages()
+    {
+        for (Integer page : document.getPageNumbers())
+        {
+            completePage(page);
+        }
+        endOfData = true;
+    }
+
+    private void completePage(int page)
+    {
+        if (isPending(page) && !completedPages.contains(page))
+        {
+            completedPages.add(page);
+        }
+    }
+
+    /**
+     * Tells whether the page has been started but not yet returned.
+     */
+    private boolean isPending(int pageNumber)
+    {
+        final JBIG2Page page = document.getMappedPage(pageNumber);
+        return page != null && page.getPageInformationSegment() != null;
+    }
+
+    /**
+     * Reads the bytes of a segment header, see 7.2.
+     * 
+     * @return The segment header or {@code null} if the end of the data has been reached.
+     */
+    private byte[] readSegmentHeader() throws IOException
+    {
+        // segment number, flags and the first byte of the referred-to segment count
+        byte[] header = new byte[6];
+        final int read = readAtMost(header);
+        if (read == 0)
+        {
+            return null;
+        }
+        if (read < header.length)
+        {
+            throw new EOFException("Incomplete segment header");
+        }
+
+        final int segmentNr = (int) readUnsignedInt(header, 0);
+        final boolean longPageAssociation = (header[4] & 0x40) != 0;
+
+        long countOfRTS = (header[5] >> 5) & 0x07;
+        int length = header.length;
+        if (countOfRTS > 4)
+        {
+            // long format: 29 bit count followed by the retention flags
+            header = grow(header, length + 3);
+            input.readFully(header, length, 3);
+            countOfRTS = readUnsignedInt(header, length - 1) & 0x1fffffff;
+            length += 3;
+
+            final int retainBytes = (int) ((countOfRTS + 8) >> 3);
+            header = grow(header, length + retainBytes);
+            input.readFully(header, length, retainBytes);
+            length += retainBytes;
+        }
+
+        final int rtsSize = segmentNr > 65536 ? 4 : segmentNr > 256 ? 2 : 1;
+        final long remaining = countOfRTS * rtsSize + (longPageAssociation ? 4 : 1) + 4;
+        if (remaining > Integer.MAX_VALUE - length)
+            throw new IOException("Segment header of segment " + segmentNr + " is too large");
+
+        header = grow(header, length + (int) remaining);
+        input.readFully(header, length, (int) remaining);
+
+        return header;
+    }
+
+    private static byte[] grow(byte[] array, int length)
+    {
+        final byte[] grown = new byte[length];
+        System.arraycopy(array, 0, grown, 0, Math.min(array.length, length));
+        return grown;
+    }
+
+    private static long readUnsignedInt(byte[] b, int offset)
+    {
+        return ((b[offset] & 0xffL) << 24) | ((b[offset + 1] & 0xff) << 16)
+                | ((b[offset + 2] & 0xff) << 8) | (b[offset + 3] & 0xff);
+    }
+
+    /**
+     * Reads until the array is full or the end of the stream is reached.
+     * 
+     * @return The number of bytes read.
+     */
+    private int readAtMost(byte[] b) throws IOException
+    {
+        int read = 0;
+        while (read < b.length)
+        {
+            final int n = input.read(b, read, b.length - read);
+            if (n < 0)
+            {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    private void skipFully(long n) throws IOException
+    {
+        while (n > 0)
+        {
+            final long skipped = input.skip(n);
+            if (skipped <= 0)
+            {
+                if (input.read() < 0)
+                {
+                    throw new EOFException();
+                }
+                n--;
+            }
+            else
+            {
+                n -= skipped;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a region while it is decoded, so that the region doesn't need to be kept as a whole. Rows are
+ * handed over in bands, top to bottom, each row exactly once.
+ */
+public interface RowSink
+{
+
+    /**
+     * Receives a band of finished rows. The bitmap holding them is reused for the following rows, so the rows are only
+     * valid during this call and must not be modified. Rows of the band which are copies of the row above may be
+     * marked as {@link Bitmap#isDuplicateRow(int) duplicate rows} of the bitmap.
+     * 
+     * @param bitmap - A bitmap as wide as the region which holds the rows.
+     * @param row - The row of {@code bitmap} which holds the first row of the band.
+     * @param y - The row of the region which is the first row of the band.
+     * @param count - The number of rows in the band.
+     * @throws IOException if the rows can't be consumed.
+     */
+    void putRows(Bitmap bitmap, int row, int y, int count) throws IOException;
+}
@@ -25,6 +25,8 @@ import java.util.Map;
 
 import javax.imageio.stream.ImageInputStream;
 
+import org.apache.pdfbox.jbig2.io.BitReader;
+import org.apache.pdfbox.jbig2.io.ByteBufferSource;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
 import org.apache.pdfbox.jbig2.segments.EndOfStripe;
 import org.apache.pdfbox.jbig2.segments.GenericRefinementRegion;
@@ -68,20 +70,56 @@ public class SegmentHeader
     private int pageAssociation;
     private byte pageAssociationFieldSize;
     private SegmentHeader[] rtSegments;
+    private int[] rtsNumbers;
+    private long segmentHeaderOffset;
     private long segmentHeaderLength;
     private long segmentDataLength;
     private long segmentDataStartOffset;
     private final SubInputStream subInputStream;
+    private final JBIG2Document document;
 
     private Reference<SegmentData> segmentData;
 
+    /** The data part the current {@link #segmentData} is decoded from. */
+    private SubInputStream segmentDataInputStream;
+
     SegmentHeader(JBIG2Document document, SubInputStream sis, long offset, int organisationType)
             throws IOException
     {
         this.subInputStream = sis;
+        this.document = document;
         parse(document, sis, offset, organisationType);
     }
 
+    /**
+     * Creates a segment header from an entry of a {@link SegmentIndex} instead of parsing it.
+     * 
+     * @param document - The document the segment belongs to.
+     * @param sis - The stream the document is read from.
+     * @param entry - The indexed header fields.
+     */
+    SegmentHeader(JBIG2Document document, SubInputStream sis, SegmentIndex.Entry entry)
+    {
+        this.subInputStream = sis;
+        this.document = document;
+
+        segmentNr = entry.segmentNr;
+        segmentType = entry.segmentType;
+        retainFlag = entry.retainFlag;
+        pageAssociation = entry.pageAssociation;
+        rtsNumbers = entry.referredToSegments;
+        segmentHeaderOffset = entry.headerOffset;
+        segmentHeaderLength = entry.headerLength;
+        segmentDataStartOffset = entry.dataOffset;
+        segmentDataLength = entry.dataLength;
+
+        if (rtsNumbers.length > 0)
+        {
+            rtSegments = new SegmentHeader[rtsNumbers.length];
+            resolveReferredToSegments(document);
+        }
+    }
+
     /**
      * 
      * 
@@ -95,68 +133,73 @@ public class SegmentHeader
             int organisationType) throws IOException
     {
         subInputStream.seek(offset);
+        segmentHeaderOffset = offset;
+        final BitReader reader = new BitReader(subInputStream);
 
         /* 7.2.2 Segment number */
-        readSegmentNumber(subInputStream);
+        readSegmentNumber(reader);
 
         /* 7.2.3 Segment header flags */
-        readSegmentHeaderFlag(subInputStream);
+        readSegmentHeaderFlag(reader);
 
         /* 7.2.4 Amount of referred-to segments */
-        int countOfRTS = readAmountOfReferredToSegments(subInputStream);
+        int countOfRTS = readAmountOfReferredToSegments(reader);
 
         /* 7.2.5 Referred-to segments numbers */
-        int[] rtsNumbers = readReferredToSegmentsNumbers(subInputStream, countOfRTS);
+        int[] rtsNumbers = readReferredToSegmentsNumbers(reader, countOfRTS);
 
         /* 7.2.6 Segment page association (Checks how big the page association field is.) */
-        readSegmentPageAssociation(document, subInputStream, countOfRTS, rtsNumbers);
+        readSegmentPageAssociation(document, reader, countOfRTS, rtsNumbers);
 
         /* 7.2.7 Segment data length (Contains the length of the data part (in bytes).) */
-        readSegmentDataLength(subInputStream);
+        readSegmentDataLength(reader);
 
-        readDataStartOffset(subInputStream, organisationType);
-        readSegmentHeaderLength(subInputStream, offset);
+        readDataStartOffset(reader, organisationType);
+        readSegmentHeaderLength(reader, offset);
+
+        // leave the stream behind the header
+        reader.updateStream();
     }
 
     /**
      * 7.2.2 Segment number
      * 
-     * @param subInputStream
+     * @param reader
      * @throws IOException
      */
-    private void readSegmentNumber(ImageInputStream subInputStream) throws IOException
+    private void readSegmentNumber(BitReader reader) throws IOException
     {
-        segmentNr = (int) (subInputStream.readBits(32) & 0xffffffff);
+        segmentNr = (int) (reader.readBits(32) & 0xffffffff);
     }
 
     /**
      * 7.2.3 Segment header flags
      * 
-     * @param subInputStream
+     * @param reader
      * @throws IOException
      */
-    private void readSegmentHeaderFlag(ImageInputStream subInputStream) throws IOException
+    private void readSegmentHeaderFlag(BitReader reader) throws IOException
     {
         // Bit 7: Retain Flag, if 1, this segment is flagged as retained
-        retainFlag = (byte) subInputStream.readBit();
+        retainFlag = (byte) reader.readBit();
 
         // Bit 6: Size of the page association field. One byte if 0, four bytes if 1
-        pageAssociationFieldSize = (byte) subInputStream.readBit();
+        pageAssociationFieldSize = (byte) reader.readBit();
 
         // Bit 5-0: Contains the values (between 0 and 62 with gaps) for segment types, specified in 7.3
-        segmentType = (int) (subInputStream.readBits(6) & 0xff);
+        segmentType = (int) (reader.readBits(6) & 0xff);
     }
 
     /**
      * 7.2.4 Amount of referred-to segments
      * 
-     * @param subInputStream
+     * @param reader
      * @return The amount of referred-to segments.
      * @throws IOException
      */
-    private int readAmountOfReferredToSegments(ImageInputStream subInputStream) throws IOException
+    private int readAmountOfReferredToSegments(BitReader reader) throws IOException
     {
-        int countOfRTS = (int) (subInputStream.readBits(3) & 0xf);
+        int countOfRTS = (int) (reader.readBits(3) & 0xf);
 
         byte[] retainBit;
 
@@ -166,13 +209,13 @@ public class SegmentHeader
             retainBit = new byte[5];
             for (int i = 0; i <= 4; i++)
             {
-                retainBit[i] = (byte) subInputStream.readBit();
+                retainBit[i] = (byte) reader.readBit();
             }
         }
         else
         {
             /* long format */
-            countOfRTS = (int) (subInputStream.readBits(29) & 0xffffffff);
+            countOfRTS = (int) (reader.readBits(29) & 0xffffffff);
 
             int arrayLength = (countOfRTS + 8) >> 3;
             arrayLength <<= 3;
@@ -180,7 +223,7 @@ public class SegmentHeader
 
             for (int i = 0; i < arrayLength; i++)
             {
-                retainBit[i] = (byte) subInputStream.readBit();
+                retainBit[i] = (byte) reader.readBit();
             }
         }
         return countOfRTS;
@@ -192,17 +235,17 @@ public class SegmentHeader
      * Gathers all segment numbers of referred-to segments. The segments itself are stored in the {@link #rtSegments}
      * array.
      * 
-     * @param subInputStream - Wrapped source data input stream.
+     * @param reader - Reads the segment header.
      * @param countOfRTS - The amount of referred-to segments.
      * 
      * @return An array with the segment number of all referred-to segments.
      * 
      * @throws IOException
      */
-    private int[] readReferredToSegmentsNumbers(ImageInputStream subInputStream, int countOfRTS)
+    private int[] readReferredToSegmentsNumbers(BitReader reader, int countOfRTS)
             throws IOException
     {
-        int[] rtsNumbers = new int[countOfRTS];
+        rtsNumbers = new int[countOfRTS];
 
         if (countOfRTS > 0)
         {
@@ -220,7 +263,7 @@ public class SegmentHeader
 
             for (int i = 0; i < countOfRTS; i++)
             {
-                rtsNumbers[i] = (int) (subInputStream.readBits(rtsSize << 3) & 0xffffffff);
+                rtsNumbers[i] = (int) (reader.readBits(rtsSize << 3) & 0xffffffff);
             }
         }
 
@@ -231,33 +274,38 @@ public class SegmentHeader
      * 7.2.6 Segment page association
      * 
      * @param document
-     * @param subInputStream
+     * @param reader
      * @param countOfRTS
      * @param rtsNumbers
      * @throws IOException
      */
-    private void readSegmentPageAssociation(JBIG2Document document, ImageInputStream subInputStream,
+    private void readSegmentPageAssociation(JBIG2Document document, BitReader reader,
             int countOfRTS, int[] rtsNumbers) throws IOException
     {
         if (pageAssociationFieldSize == 0)
         {
             // Short format
-            pageAssociation = (short) (subInputStream.readBits(8) & 0xff);
+            pageAssociation = (short) (reader.readBits(8) & 0xff);
         }
         else
         {
             // Long format
-            pageAssociation = (int) (subInputStream.readBits(32) & 0xffffffff);
+            pageAssociation = (int) (reader.readBits(32) & 0xffffffff);
         }
 
         if (countOfRTS > 0)
         {
-            final JBIG2Page page = document.getPage(pageAssociation);
-            for (int i = 0; i < countOfRTS; i++)
-            {
-                rtSegments[i] = (null != page ? page.getSegment(rtsNumbers[i])
-                        : document.getGlobalSegment(rtsNumbers[i]));
-            }
+            resolveReferredToSegments(document);
+        }
+    }
+
+    private void resolveReferredToSegments(JBIG2Document document)
+    {
+        final JBIG2Page page = document.getMappedPage(pageAssociation);
+        for (int i = 0; i < rtsNumbers.length; i++)
+        {
+            rtSegments[i] = (null != page ? page.getSegment(rtsNumbers[i])
+                    : document.getGlobalSegment(rtsNumbers[i]));
         }
     }
 
@@ -266,35 +314,46 @@ public class SegmentHeader
      * <p>
      * Contains the length of the data part in bytes.
      * 
-     * @param subInputStream
+     * @param reader
      * @throws IOException
      */
-    private void readSegmentDataLength(ImageInputStream subInputStream) throws IOException
+    private void readSegmentDataLength(BitReader reader) throws IOException
     {
-        segmentDataLength = (subInputStream.readBits(32) & 0xffffffff);
+        segmentDataLength = (reader.readBits(32) & 0xffffffff);
     }
 
     /**
      * Sets the offset only if organization type is SEQUENTIAL. If random, data starts after segment headers and can be
      * determined when all segment headers are parsed and allocated.
      * 
-     * @param subInputStream
+     * @param reader
      * @param organisationType
      * @throws IOException
      */
-    private void readDataStartOffset(ImageInputStream subInputStream, int organisationType)
+    private void readDataStartOffset(BitReader reader, int organisationType)
             throws IOException
     {
         if (organisationType == JBIG2Document.SEQUENTIAL)
         {
-            segmentDataStartOffset = subInputStream.getStreamPosition();
+            segmentDataStartOffset = reader.getStreamPosition();
         }
     }
 
-    private void readSegmentHeaderLength(ImageInputStream subInputStream, long offset)
+    private void readSegmentHeaderLength(BitReader reader, long offset)
             throws IOException
     {
-        segmentHeaderLength = subInputStream.getStreamPosition() - offset;
+        segmentHeaderLength = reader.getStreamPosition() - offset;
+    }
+
+    /**
+     * Tells whether segments of the given type have a data part that is decoded into {@link SegmentData}.
+     * 
+     * @param segmentType - The segment type.
+     * @return {@code true} if the data part of such segments is decoded.
+     */
+    static boolean hasDecodableData(int segmentType)
+    {
+        return SEGMENT_TYPE_MAP.containsKey(segmentType);
     }
 
     public int getSegmentNr()
@@ -307,6 +366,22 @@ public class SegmentHeader
         return segmentType;
     }
 
+    /**
+     * @return The position of the segment header in the document's data.
+     */
+    long getSegmentHeaderOffset()
+    {
+        return segmentHeaderOffset;
+    }
+
+    /**
+     * @return The numbers of the referred-to segments, see 7.2.5.
+     */
+    int[] getReferredToSegmentNumbers()
+    {
+        return rtsNumbers;
+    }
+
     public long getSegmentHeaderLength()
     {
         return segmentHeaderLength;
@@ -353,6 +428,38 @@ public class SegmentHeader
         return new SubInputStream(subInputStream, segmentDataStartOffset, segmentDataLength);
     }
 
+    /**
+     * Returns the data part of this segment for decoding. If the data part is not held in memory and is not larger
+     * than the document's segment data buffer threshold, it is read into memory with a single read, so that the
+     * segment can be decoded without further accesses to the input.
+     * 
+     * @return The {@link SubInputStream} that represents the data part of the segment.
+     * @throws IOException if the data part can't be read.
+     */
+    private SubInputStream getBufferedDataInputStream() throws IOException
+    {
+        final SubInputStream dataInputStream = getDataInputStream();
+        if (dataInputStream.isInMemory() || document == null
+                || segmentDataLength > document.getSegmentDataBufferThreshold())
+        {
+            return dataInputStream;
+        }
+
+        final byte[] data = new byte[(int) segmentDataLength];
+        int length = 0;
+        while (length < data.length)
+        {
+            final int read = dataInputStream.read(data, length, data.length - length);
+            if (read < 0)
+            {
+                break;
+            }
+            length += read;
+        }
+        dataInputStream.close();
+        return new SubInputStream(new ByteBufferSource(data, 0, length), 0, length);
+    }
+
     /**
      * Retrieves the segments' data part.
      * 
@@ -377,7 +484,8 @@ public class SegmentHeader
             try
             {
                 segmentDataPart = segmentClass.getDeclaredConstructor().newInstance();
-                segmentDataPart.init(this, getDataInputStream());
+                segmentDataInputStream = getBufferedDataInputStream();
+                segmentDataPart.init(this, segmentDataInputStream);
 
                 segmentData = new SoftReference<SegmentData>(segmentDataPart);
             }
@@ -397,6 +505,19 @@ public class SegmentHeader
         {
             segmentData = null;
         }
+        if (segmentDataInputStream != null)
+        {
+            try
+            {
+                // returns the read buffer to the pool
+                segmentDataInputStream.close();
+            }
+            catch (IOException e)
+            {
+                // closing a view doesn't touch the input
+            }
+            segmentDataInputStream = null;
+        }
     }
 
     @Override
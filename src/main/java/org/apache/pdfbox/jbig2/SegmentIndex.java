@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A compact index of the segment headers of a JBIG2 document. It holds everything that is needed to locate and decode
+ * the segments, so that a document can be reopened without walking through all of its segment headers, see
+ * {@link SegmentIndexStore}.
+ * <p>
+ * An index is tied to the data it was created from by the data's length and a checksum of its first bytes.
+ */
+class SegmentIndex
+{
+    /** "JB2I" */
+    private static final int MAGIC = 0x4A423249;
+
+    private static final int VERSION = 1;
+
+    /** The amount of bytes at the start of the data that are covered by the checksum. */
+    static final int CHECKED_BYTES = 64 * 1024;
+
+    /**
+     * The header fields of a segment as stored in the index.
+     */
+    static class Entry
+    {
+        int segmentNr;
+        int segmentType;
+        byte retainFlag;
+        int pageAssociation;
+        int[] referredToSegments;
+        long headerOffset;
+        long headerLength;
+        long dataOffset;
+        long dataLength;
+    }
+
+    private final long length;
+
+    private final long checksum;
+
+    private final List<Entry> entries;
+
+    private SegmentIndex(long length, long checksum, List<Entry> entries)
+    {
+        this.length = length;
+        this.checksum = checksum;
+        this.entries = entries;
+    }
+
+    /**
+     * Creates the index of the given segments.
+     * 
+     * @param length - The length of the data the segments belong to.
+     * @param checksum - The checksum of the data, see {@link #checksum(ImageInputStream, long)}.
+     * @param segments - The segments in the order of their headers.
+     */
+    SegmentIndex(long length, long checksum, Iterable<SegmentHeader> segments)
+    {
+        this(length, checksum, new ArrayList<Entry>());
+
+        for (SegmentHeader s : segments)
+        {
+            final Entry e = new Entry();
+            e.segmentNr = s.getSegmentNr();
+            e.segmentType = s.getSegmentType();
+            e.retainFlag = (byte) s.getRetainFlag();
+            e.pageAssociation = s.getPageAssociation();
+            e.referredToSegments = s.getReferredToSegmentNumbers();
+            e.headerOffset = s.getSegmentHeaderOffset();
+            e.headerLength = s.getSegmentHeaderLength();
+            e.dataOffset = s.getSegmentDataStartOffset();
+            e.dataLength = s.getSegmentDataLength();
+            entries.add(e);
+        }
+    }
+
+    /**
+     * Tells whether this index was created from data with the given length and checksum.
+     * 
+     * @param length - The length of the data.
+     * @param checksum - The checksum of the data, see {@link #checksum(ImageInputStream, long)}.
+     * @return {@code true} if the index belongs to the data.
+     */
+    boolean matches(long length, long checksum)
+    {
+        return this.length == length && this.checksum == checksum;
+    }
+
+    /**
+     * Returns the segments in the order of their headers.
+     * 
+     * @return The index entries.
+     */
+    List<Entry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Computes the checksum of the first {@link #CHECKED_BYTES} bytes of the data.
+     * 
+     * @param input - The data.
+     * @param length - The length of the data.
+     * @return The checksum.
+     * @throws IOException if the data can't be read.
+     */
+    static long checksum(ImageInputStream input, long length) throws IOException
+    {
+        final byte[] buffer = new byte[(int) Math.min(length, CHECKED_BYTES)];
+        input.seek(0);
+        input.readFully(buffer);
+
+        final CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+
+    /**
+     * Serializes this index.
+     * 
+     * @return The serialized index.
+     */
+    byte[] toByteArray()
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + entries.size() * 40);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(checksum);
+            out.writeInt(entries.size());
+
+            for (Entry e : entries)
+            {
+                out.writeInt(e.segmentNr);
+                out.writeByte(e.segmentType);
+                out.writeByte(e.retainFlag);
+                out.writeInt(e.pageAssociation);
+                out.writeInt(e.referredToSegments.length);
+                for (int rts : e.referredToSegments)
+                {
+                    out.writeInt(rts);
+                }
+                out.writeLong(e.headerOffset);
+                out.writeInt((int) e.headerLength);
+                out.writeLong(e.dataOffset);
+                out.writeInt((int) e.dataLength);
+            }
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            // can't happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes an index.
+     * 
+     * @param data - The serialized index, see {@link #toByteArray()}.
+     * @return The index.
+     * @throws IOException if the data isn't a complete index of a supported version.
+     */
+    static SegmentIndex fromByteArray(byte[] data) throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a segment index");
+        final int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported segment index version " + version);
+
+        final long length = in.readLong();
+        final long checksum = in.readLong();
+        final int count = in.readInt();
+        if (count < 0 || count > data.length)
+            throw new IOException("Corrupt segment index");
+
+        final List<Entry> entries = new ArrayList<Entry>(count);
+        for (int i = 0; i < count; i++)
+        {
+            final Entry e = new Entry();
+            e.segmentNr = in.readInt();
+            e.segmentType = in.readUnsignedByte();
+            e.retainFlag = in.readByte();
+            e.pageAssociation = in.readInt();
+            final int countOfRTS = in.readInt();
+            if (countOfRTS < 0 || countOfRTS > data.length)
+                throw new IOException("Corrupt segment index");
+            e.referredToSegments = new int[countOfRTS];
+            for (int j = 0; j < countOfRTS; j++)
+            {
+                e.referredToSegments[j] = in.readInt();
+            }
+            e.headerOffset = in.readLong();
+            e.headerLength = in.readInt() & 0xffffffffL;
+            e.dataOffset = in.readLong();
+            e.dataLength = in.readInt() & 0xffffffffL;
+            entries.add(e);
+        }
+
+        if (in.read() != -1)
+            throw new IOException("Corrupt segment index");
+
+        return new SegmentIndex(length, checksum, entries);
+    }
+}
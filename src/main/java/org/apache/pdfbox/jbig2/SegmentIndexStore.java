@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2;
+
+import java.io.IOException;
+
+/**
+ * Keeps the segment index of a JBIG2 document between two openings of the document. When a document is opened with a
+ * store, the segment headers are taken from the stored index instead of being read one by one from the data, provided
+ * that the index still matches the data. Otherwise the headers are read and the resulting index is handed to the
+ * store.
+ * <p>
+ * The index is opaque binary data. A store is responsible for exactly one document.
+ * 
+ * @see FileSegmentIndexStore
+ */
+public interface SegmentIndexStore
+{
+    /**
+     * Returns the stored index.
+     * 
+     * @return The index or {@code null} if none has been stored yet.
+     * @throws IOException if the index can't be read.
+     */
+    byte[] load() throws IOException;
+
+    /**
+     * Stores the index, replacing a previously stored one.
+     * 
+     * @param index - The index.
+     * @throws IOException if the index can't be written.
+     */
+    void store(byte[] index) throws IOException;
+}
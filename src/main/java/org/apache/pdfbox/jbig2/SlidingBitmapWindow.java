@@ -36,16 +36,12 @@ package org.apache.pdfbox.jbig2;
  *
  * <p>All out-of-bounds accesses return 0 per §6.3.5.2.</p>
  *
- * <p><b>Current status:</b> this class is not yet used in production decoding
- * paths. It exists as a standalone, testable abstraction of the sliding window
- * bit-access mechanics that are currently inlined inside
- * {@link org.apache.pdfbox.jbig2.decoder.GenericRefinementRegionDecodingProcedure}
- * for the template 0 paths ({@code decodeTemplate},
- * {@code decodeTypicalPredictedLineTemplate0}). Its primary purpose is to
- * provide a test bed for verifying the correctness of those paths — in
- * particular at byte boundaries, edge rows, and non-zero reference offsets —
- * where latent bugs may exist that are not yet covered by the current test
- * suite.</p>
+ * <p><b>Current status:</b> this class is not used in production decoding
+ * paths. {@link org.apache.pdfbox.jbig2.decoder.GenericRefinementRegionDecodingProcedure}
+ * builds its contexts from registers of 64 pixels per row instead. This class
+ * remains a standalone, testable abstraction of the sliding window bit-access
+ * mechanics, in particular at byte boundaries, edge rows, and non-zero
+ * reference offsets.</p>
  */
 public class SlidingBitmapWindow
 {
@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.decoder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
+
+/**
+ * Scratch structures for decoding: arithmetic coding contexts, run arrays and line buffers. Decoding procedures take
+ * them from the arena of the current thread and give them back when they are done, so that decoding page after page
+ * doesn't allocate them again. Everything handed out is reset, contexts to their initial state and arrays to zero.
+ * <p>
+ * An arena belongs to one thread and is not synchronized. Structures that are not given back, e.g. the contexts a
+ * symbol dictionary retains for a later one, are left to the garbage collector. The arena keeps a bounded number of
+ * structures of each kind.
+ */
+public final class DecodingArena
+{
+    /** The maximum amount of contexts of one size that are kept. */
+    private static final int MAX_POOLED_CONTEXTS = 32;
+
+    /** The maximum amount of arrays of one type that are kept. */
+    private static final int MAX_POOLED_ARRAYS = 8;
+
+    private static final ThreadLocal<DecodingArena> ARENA = new ThreadLocal<DecodingArena>()
+    {
+        @Override
+        protected DecodingArena initialValue()
+        {
+            return new DecodingArena();
+        }
+    };
+
+    private final Map<Integer, ArrayDeque<CX>> contexts = new HashMap<Integer, ArrayDeque<CX>>();
+
+    private final ArrayList<int[]> intArrays = new ArrayList<int[]>();
+
+    private final ArrayList<byte[]> byteArrays = new ArrayList<byte[]>();
+
+    private long allocations;
+
+    /**
+     * @return The arena of the current thread.
+     */
+    public static DecodingArena get()
+    {
+        return ARENA.get();
+    }
+
+    /**
+     * Takes a context set from the arena or allocates a new one. All its contexts are in their initial state.
+     * 
+     * @param size - The number of contexts.
+     * @param index - The initial context index.
+     * @return A context set of the given size.
+     */
+    public CX acquireCX(int size, int index)
+    {
+        final ArrayDeque<CX> pool = contexts.get(size);
+        final CX cx = pool != null ? pool.pollLast() : null;
+        if (cx == null)
+        {
+            allocations++;
+            return new CX(size, index);
+        }
+        cx.reset(index);
+        return cx;
+    }
+
+    /**
+     * Takes a context set from the arena and copies the state of the given one into it.
+     * 
+     * @param source - The context set to copy.
+     * @return A context set with the same state as {@code source}.
+     */
+    public CX copyCX(CX source)
+    {
+        final CX cx = acquireCX(source.size(), 0);
+        cx.copyFrom(source);
+        return cx;
+    }
+
+    /**
+     * Gives a context set back to the arena. It must not be used afterwards.
+     * 
+     * @param cx - The context set, may be {@code null}.
+     */
+    public void release(CX cx)
+    {
+        if (cx == null)
+        {
+            return;
+        }
+        ArrayDeque<CX> pool = contexts.get(cx.size());
+        if (pool == null)
+        {
+            pool = new ArrayDeque<CX>();
+            contexts.put(cx.size(), pool);
+        }
+        if (pool.size() < MAX_POOLED_CONTEXTS)
+        {
+            pool.addLast(cx);
+        }
+    }
+
+    /**
+     * Takes an int array from the arena or allocates a new one. All its elements are zero.
+     * 
+     * @param length - The length.
+     * @return An array of the given length.
+     */
+    public int[] acquireInts(int length)
+    {
+        for (int i = intArrays.size() - 1; i >= 0; i--)
+        {
+            if (intArrays.get(i).length == length)
+            {
+                final int[] array = intArrays.remove(i);
+                Arrays.fill(array, 0);
+                return array;
+            }
+        }
+        allocations++;
+        return new int[length];
+    }
+
+    /**
+     * Gives an int array back to the arena. It must not be used afterwards. If the arena is full, the array that was
+     * given back first is dropped.
+     * 
+     * @param array - The array, may be {@code null}.
+     */
+    public void release(int[] array)
+    {
+        if (array != null)
+        {
+            if (intArrays.size() == MAX_POOLED_ARRAYS)
+            {
+                intArrays.remove(0);
+            }
+            intArrays.add(array);
+        }
+    }
+
+    /**
+     * Takes a byte array from the arena or allocates a new one. The array may be longer than requested, its first
+     * {@code length} elements are zero.
+     * 
+     * @param length - The minimum length.
+     * @return An array of at least the given length.
+     */
+    public byte[] acquireBytes(int length)
+    {
+        final int index = bestFit(byteArrays, length);
+        if (index < 0)
+        {
+            allocations++;
+            return new byte[length];
+        }
+        final byte[] array = byteArrays.remove(index);
+        Arrays.fill(array, 0, length, (byte) 0);
+        return array;
+    }
+
+    /**
+     * Gives a byte array back to the arena. It must not be used afterwards. If the arena is full, the array that was
+     * given back first is dropped.
+     * 
+     * @param array - The array, may be {@code null}.
+     */
+    public void release(byte[] array)
+    {
+        if (array != null)
+        {
+            if (byteArrays.size() == MAX_POOLED_ARRAYS)
+            {
+                byteArrays.remove(0);
+            }
+            byteArrays.add(array);
+        }
+    }
+
+    /**
+     * @return The number of structures this arena had to allocate since it was created.
+     */
+    public long getAllocationCount()
+    {
+        return allocations;
+    }
+
+    /**
+     * Drops all structures kept by this arena.
+     */
+    public void clear()
+    {
+        contexts.clear();
+        intArrays.clear();
+        byteArrays.clear();
+    }
+
+    /**
+     * @return The index of the shortest array with at least the given length or -1 if there is none.
+     */
+    private static int bestFit(ArrayList<byte[]> arrays, int length)
+    {
+        int best = -1;
+        for (int i = 0; i < arrays.size(); i++)
+        {
+            final int l = arrays.get(i).length;
+            if (l >= length && (best < 0 || l < arrays.get(best).length))
+            {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
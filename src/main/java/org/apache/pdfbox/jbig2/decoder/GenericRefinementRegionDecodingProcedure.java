@@ -22,6 +22,7 @@ import java.util.Objects;
 
 import org.apache.pdfbox.jbig2.Bitmap;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticDecoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticStatistics;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
 
 /**
@@ -45,40 +46,35 @@ import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
  * </ul>
  *
  * <p>This class cannot be instantiated by callers. The private constructor and
- * the internal {@link #run} method exist solely to let the many private helper
- * methods share state through fields rather than through long parameter lists.</p>
+ * the internal {@link #run} method exist to hold the parameters of one region in
+ * fields while {@link #run} decodes it line by line: {@link #decodeLine} forms
+ * the contexts of both templates from registers holding 64 pixels of each row
+ * involved.</p>
  */
 public class GenericRefinementRegionDecodingProcedure
 {
     // -------------------------------------------------------------------------
-    // Template strategy — bit-context formation for each template type
+    // Template strategy — SLTP context of each template type
     // -------------------------------------------------------------------------
 
     private static final int SLTP_CONTEXT_TEMPLATE0 = 0x100; // §6.3.5.6, Figure 14
     private static final int SLTP_CONTEXT_TEMPLATE1 = 0x008; // §6.3.5.6, Figure 15
 
     /**
-     * Encapsulates the template-specific operations: context bit formation
-     * ({@link #form}) and initial CX index selection ({@link #setIndex}).
+     * Encapsulates the template-specific CX index selection for decoding SLTP
+     * ({@link #setIndex}). The contexts of the pixels are formed by
+     * {@link GenericRefinementRegionDecodingProcedure#decodeLine}.
      *
      * <p>The two concrete implementations ({@link #T0}, {@link #T1}) correspond
      * to GRTEMPLATE values 0 and 1 as defined in §6.3.3 / Figures 14–15.</p>
      */
     public abstract static class Template
     {
-        protected abstract short form(short c1, short c2, short c3, short c4, short c5);
-
         protected abstract void setIndex(CX cx);
     }
 
     private static class Template0 extends Template
     {
-        @Override
-        protected short form(short c1, short c2, short c3, short c4, short c5)
-        {
-            return (short) ((c1 << 10) | (c2 << 7) | (c3 << 4) | (c4 << 1) | c5);
-        }
-
         @Override
         protected void setIndex(CX cx)
         {
@@ -88,12 +84,6 @@ public class GenericRefinementRegionDecodingProcedure
 
     private static class Template1 extends Template
     {
-        @Override
-        protected short form(short c1, short c2, short c3, short c4, short c5)
-        {
-            return (short) (((c1 & 0x02) << 8) | (c2 << 6) | ((c3 & 0x03) << 4) | (c4 << 1) | c5);
-        }
-
         @Override
         protected void setIndex(CX cx)
         {
@@ -149,9 +139,9 @@ public class GenericRefinementRegionDecodingProcedure
      * Executes the Generic Refinement Region decoding procedure (§6.3.5.6) and
      * returns the decoded bitmap.
      *
-     * <p>A short-lived instance is created internally so that the many private
-     * helper methods can share state through fields rather than through long
-     * parameter lists. No state survives the return of this method.</p>
+     * <p>A short-lived instance is created internally to hold the parameters
+     * while the lines are decoded. No state survives the return of this
+     * method.</p>
      *
      * @param arithDecoder    the arithmetic decoder — shared with the parent
      *                        when called from a symbol dictionary or text region,
@@ -204,9 +194,13 @@ public class GenericRefinementRegionDecodingProcedure
                     "width and height must be > 0, got: " + width + "x" + height);
         }
 
-        return new GenericRefinementRegionDecodingProcedure(arithDecoder, cx)
+        final ArithmeticStatistics.Key statisticsKey = ArithmeticStatistics.enter(-1,
+                ArithmeticStatistics.REFINEMENT, grTemplate);
+        final Bitmap regionBitmap = new GenericRefinementRegionDecodingProcedure(arithDecoder, cx)
                 .run(width, height, grTemplate, isTPGROn, referenceBitmap,
                         referenceDX, referenceDY, grAtX, grAtY);
+        ArithmeticStatistics.exit(statisticsKey);
+        return regionBitmap;
     }
 
     // -------------------------------------------------------------------------
@@ -237,10 +231,6 @@ public class GenericRefinementRegionDecodingProcedure
             updateOverride();
         }
 
-        final int paddedWidth = (width + 7) & -8;
-        final int deltaRefStride = isTPGROn ? -referenceDY * referenceBitmap.getRowStride() : 0;
-        final int yOffset = deltaRefStride + 1;
-
         /* 6.3.5.6 - 1) */
         int isLineTypicalPredicted = 0; // LTP
 
@@ -253,28 +243,8 @@ public class GenericRefinementRegionDecodingProcedure
                 isLineTypicalPredicted ^= decodeSLTP();
             }
 
-            if (templateID == 1)
-            {
-                if (isLineTypicalPredicted == 0)
-                {
-                    decodeLineExplicitT1(y, width);
-                }
-                else
-                {
-                    decodeLineTPGRT1(y, width);
-                }
-            }
-            else
-            {
-                // existing template 0 paths unchanged
-                if (isLineTypicalPredicted == 0) {
-                    decodeOptimized(y, width, regionBitmap.getRowStride(),
-                            referenceBitmap.getRowStride(), paddedWidth, deltaRefStride, yOffset);
-                } else {
-                    decodeTypicalPredictedLine(y, width, regionBitmap.getRowStride(),
-                            referenceBitmap.getRowStride(), paddedWidth, deltaRefStride);
-                }
-            }
+            /* 6.3.5.6 - 3 c) and d) */
+            decodeLine(y, width, isLineTypicalPredicted == 1);
         }
 
         /* 6.3.5.6 - 4) */
@@ -282,323 +252,181 @@ public class GenericRefinementRegionDecodingProcedure
     }
 
     // -------------------------------------------------------------------------
-    // Pixel accessors — §6.3.5.2 out-of-bounds rule: all outside pixels = 0
+    // Private decoding helpers (§6.3.5.6 sub-steps)
     // -------------------------------------------------------------------------
 
-    private int getPixelSafe(final Bitmap bitmap, final int x, final int y)
-    {
-        if (x < 0 || y < 0)
-            return 0;
-        if (x >= bitmap.getWidth() || y >= bitmap.getHeight())
-            return 0;
-        return bitmap.getPixel(x, y);
-    }
-
-    private int getReferenceBit(final int x, final int y)
-    {
-        return getPixelSafe(referenceBitmap, x - referenceDX, y - referenceDY);
-    }
-
-    private int getRegionBit(final int x, final int y)
+    private int decodeSLTP() throws IOException
     {
-        return getPixelSafe(regionBitmap, x, y);
+        template.setIndex(cx);
+        return arithDecoder.decode(cx);
     }
 
-    // -------------------------------------------------------------------------
-    // Template 1 context formation — §6.3.5.6, Figure 13
-    // Pixels gathered in reading order, GRREG before GRREFERENCE:
-    //   GRREG:      (x-2,y-1) (x-1,y-1) (x,y-1) (x-1,y)           → bits 9-6
-    //   GRREFERENCE:(x,y-1) (x-1,y) (x,y) (x+1,y) (x,y+1) (x+1,y+1) → bits 5-0
-    // Spec example: only ⊗=(x,y)=1 → CX="GR0000001000"=0x08 → bit 3 ✓
-    // -------------------------------------------------------------------------
-
-    private int buildContextT1(final int x, final int y)
+    /**
+     * Decodes a line, 56 pixels at a time. The context pixels are taken from registers holding 64 pixels of each row
+     * involved: the row above in the region bitmap, the three rows around the line in the reference bitmap and the
+     * rows of moved AT pixels. The registers of the rows around the line start with the pixel left of the first of the
+     * 56, so that the three pixels around a pixel are shifted out of them at once.
+     * <p>
+     * In a typical predicted line the pixels whose 3 x 3 neighbourhood in the reference is uniform are found for all
+     * 56 pixels at once by combining the shifted reference registers. They are copied from the reference, only the
+     * other pixels are decoded.
+     * <p>
+     * The context of template 0 holds, from the most significant bit, the pixels (x-1, y-1) to (x+1, y-1), (x-1, y)
+     * to (x+1, y) and (x-1, y+1) to (x+1, y+1) of the reference and the pixels (x-1, y-1), (x, y-1), (x+1, y-1) and
+     * (x-1, y) of the region. Moved AT pixels replace the region pixel (x-1, y-1) and the reference pixel (x-1, y-1).
+     * The context of template 1 holds, from the most significant bit, the pixels (x-1, y-1), (x, y-1), (x+1, y-1) and
+     * (x-1, y) of the region and the pixels (x, y-1), (x-1, y), (x, y), (x+1, y), (x, y+1) and (x+1, y+1) of the
+     * reference.
+     * 
+     * @param y - The line.
+     * @param width - The width of the region.
+     * @param isTypical - Whether the line is typical predicted (LTP), see 6.3.5.6 - 3 d).
+     */
+    private void decodeLine(final int y, final int width, final boolean isTypical)
+            throws IOException
     {
-        return (getRegionBit(x - 1, y - 1) << 9)
-            | (getRegionBit(x,     y - 1) << 8)
-            | (getRegionBit(x + 1, y - 1) << 7)
-            | (getRegionBit(x - 1, y    ) << 6)
-            | (getReferenceBit(x    , y - 1) << 5)
-            | (getReferenceBit(x - 1, y    ) << 4)
-            | (getReferenceBit(x    , y    ) << 3)
-            | (getReferenceBit(x + 1, y    ) << 2)
-            | (getReferenceBit(x,     y + 1) << 1)
-            | (getReferenceBit(x + 1, y + 1));
-    }
-
-    // -------------------------------------------------------------------------
-    // Template 1 — explicit decode (LTP=0 path, §6.3.5.6 step 3c)
-    // -------------------------------------------------------------------------
+        final int referenceY = y - referenceDY;
+        final boolean isTemplate0 = templateID == 0;
+        final boolean overrideAt1 = override && grAtOverride[0];
+        final boolean overrideAt2 = override && grAtOverride[1];
+        // an AT pixel in the current line is left of the pixel, it is taken from the pixels decoded so far
+        final boolean isAt1InLine = overrideAt1 && grAtY[0] == 0;
+        final int lineStart = y * regionBitmap.getRowStride();
+
+        int left = 0;
+        for (int x = 0; x < width; x += 56)
+        {
+            final int count = Math.min(56, width - x);
+            final int referenceX = x - referenceDX;
+
+            final long above = loadPixels(regionBitmap, y - 1, x - 1);
+            final long reference0 = loadPixels(referenceBitmap, referenceY - 1, referenceX - 1);
+            final long reference1 = loadPixels(referenceBitmap, referenceY, referenceX - 1);
+            final long reference2 = loadPixels(referenceBitmap, referenceY + 1, referenceX - 1);
+            long at1 = overrideAt1 ? loadPixels(regionBitmap, y + grAtY[0], x + grAtX[0]) : 0;
+            final long at2 = overrideAt2
+                    ? loadPixels(referenceBitmap, referenceY + grAtY[1], referenceX + grAtX[1]) : 0;
+
+            // the pixels to decode, the first one in the most significant bit
+            long toDecode = -1L << 64 - count;
+            long pixels = 0;
+            if (isTypical)
+            {
+                /* 6.3.5.6 - 3 d) i) */
+                final long black = allOf3(reference0) & allOf3(reference1) & allOf3(reference2);
+                final long white = ~(anyOf3(reference0) | anyOf3(reference1) | anyOf3(reference2));
+                pixels = black & toDecode;
+                toDecode &= ~(black | white);
+                if (isAt1InLine && -grAtX[0] < 64)
+                {
+                    at1 |= pixels >>> -grAtX[0];
+                }
+            }
 
-    private void decodeLineExplicitT1(final int y, final int width) throws IOException
-    {
-        for (int x = 0; x < width; x++)
-        {
-            cx.setIndex(buildContextT1(x, y));
-            regionBitmap.setPixel(x, y, (byte) arithDecoder.decode(cx));
-        }
-    }
+            while (toDecode != 0)
+            {
+                final int i = Long.numberOfLeadingZeros(toDecode);
+                toDecode &= ~(Long.MIN_VALUE >>> i);
+                if (i > 0)
+                {
+                    left = (int) (pixels >>> 64 - i) & 1;
+                }
 
-    // -------------------------------------------------------------------------
-    // Template 1 — typical prediction decode (LTP=1 path, §6.3.5.6 step 3d)
-    // TPGRPIX=1 when the 3×3 reference neighbourhood is uniform (§6.3.5.6 3d-i)
-    // -------------------------------------------------------------------------
+                final int shift = 61 - i;
+                final int n0 = (int) (reference0 >>> shift) & 7;
+                final int n1 = (int) (reference1 >>> shift) & 7;
+                final int n2 = (int) (reference2 >>> shift) & 7;
+                final int up = (int) (above >>> shift) & 7;
 
-    private void decodeLineTPGRT1(final int y, final int width) throws IOException
-    {
-        for (int x = 0; x < width; x++)
-        {
-            final int center = getReferenceBit(x, y);
-            boolean uniform = true;
-            outer:
-            for (int dy = -1; dy <= 1; dy++)
-            {
-                for (int dx = -1; dx <= 1; dx++)
+                int context;
+                if (isTemplate0)
                 {
-                    if (getReferenceBit(x + dx, y + dy) != center)
+                    context = n0 << 10 | n1 << 7 | n2 << 4 | up << 1 | left;
+                    if (overrideAt1)
                     {
-                        uniform = false;
-                        break outer;
+                        context = context & ~0x8 | (int) (at1 >>> 63 - i) << 3 & 0x8;
+                    }
+                    if (overrideAt2)
+                    {
+                        context = context & ~0x1000 | (int) (at2 >>> 63 - i) << 12 & 0x1000;
                     }
                 }
-            }
+                else
+                {
+                    context = up << 7 | left << 6 | (n0 & 2) << 4 | n1 << 2 | n2 & 3;
+                }
+                cx.setIndex(context);
+                final int bit = arithDecoder.decode(cx);
 
-            final int bit;
-            if (uniform)
-            {
-                bit = center;
+                pixels |= (long) bit << 63 - i;
+                if (isAt1InLine && i - grAtX[0] < 64)
+                {
+                    at1 |= (long) bit << 63 - (i - grAtX[0]);
+                }
             }
-            else
+            left = (int) (pixels >>> 64 - count) & 1;
+
+            for (int b = 0; b < count; b += 8)
             {
-                cx.setIndex(buildContextT1(x, y));
-                bit = arithDecoder.decode(cx);
+                regionBitmap.setByte(lineStart + ((x + b) >> 3), (byte) (pixels >>> 56 - b));
             }
-            regionBitmap.setPixel(x, y, (byte) bit);
         }
     }
 
-    // -------------------------------------------------------------------------
-    // Private decoding helpers (§6.3.5.6 sub-steps)
-    // -------------------------------------------------------------------------
-
-    private int decodeSLTP() throws IOException
+    /**
+     * Sets the bit of each pixel of a register whose pixel and the two following pixels are all 1.
+     */
+    private static long allOf3(final long pixels)
     {
-        template.setIndex(cx);
-        return arithDecoder.decode(cx);
+        return pixels & pixels << 1 & pixels << 2;
     }
 
-    private void decodeOptimized(final int lineNumber, final int width, final int rowStride,
-            final int refRowStride, final int paddedWidth, final int deltaRefStride,
-            final int lineOffset) throws IOException
+    /**
+     * Sets the bit of each pixel of a register whose pixel or one of the two following pixels is 1.
+     */
+    private static long anyOf3(final long pixels)
     {
-        // Offset of the reference bitmap with respect to the bitmap being decoded.
-        // For example: if referenceDY = -1, y is 1 HIGHER than currY.
-        final int currentLine = lineNumber - referenceDY;
-        final int referenceByteIndex = referenceBitmap.getByteIndex(Math.max(0, -referenceDX),
-                currentLine);
-        final int byteIndex = regionBitmap.getByteIndex(Math.max(0, referenceDX), lineNumber);
-
-        switch (templateID)
-        {
-        case 0:
-            decodeTemplate(lineNumber, width, rowStride, refRowStride, paddedWidth, deltaRefStride,
-                    lineOffset, byteIndex, currentLine, referenceByteIndex, T0);
-            break;
-        case 1:
-            decodeTemplate(lineNumber, width, rowStride, refRowStride, paddedWidth, deltaRefStride,
-                    lineOffset, byteIndex, currentLine, referenceByteIndex, T1);
-            break;
-        default:
-            break;
-        }
+        return pixels | pixels << 1 | pixels << 2;
     }
 
-    private void decodeTemplate(final int lineNumber, final int width, final int rowStride,
-            final int refRowStride, final int paddedWidth, final int deltaRefStride,
-            final int lineOffset, int byteIndex, final int currentLine, int refByteIndex,
-            Template templateFormation) throws IOException
+    /**
+     * Reads 64 pixels of a row starting at the given x coordinate. Pixels outside of the bitmap are read as 0 (see
+     * 6.3.5.2).
+     * 
+     * @param bitmap - The bitmap.
+     * @param y - The row, may be outside of the bitmap.
+     * @param x - The x coordinate of the first pixel, may be negative.
+     * @return The pixels, the first one in the most significant bit.
+     */
+    private static long loadPixels(final Bitmap bitmap, final int y, final int x)
     {
-        short c1;
-        short c2;
-        short c3;
-        short c4;
-        short c5;
-
-        int w1;
-        int w2;
-        int w3;
-        int w4;
-        w1 = w2 = w3 = w4 = 0;
-
-        if (currentLine >= 1 && (currentLine - 1) < referenceBitmap.getHeight())
-            w1 = referenceBitmap.getByteAsInteger(refByteIndex - refRowStride);
-        if (currentLine >= 0 && currentLine < referenceBitmap.getHeight())
-            w2 = referenceBitmap.getByteAsInteger(refByteIndex);
-        if (currentLine >= -1 && currentLine + 1 < referenceBitmap.getHeight())
-            w3 = referenceBitmap.getByteAsInteger(refByteIndex + refRowStride);
-        refByteIndex++;
-
-        if (lineNumber >= 1)
+        final int width = bitmap.getWidth();
+        if (y < 0 || y >= bitmap.getHeight() || x >= width || x <= -64)
         {
-            w4 = regionBitmap.getByteAsInteger(byteIndex - rowStride);
+            return 0;
         }
-        byteIndex++;
-
-        final int modReferenceDX = referenceDX % 8;
-        final int shiftOffset = 6 + modReferenceDX;
-        final int modRefByteIdx = refByteIndex % refRowStride;
-
-        if (shiftOffset >= 0)
+        final int rowStride = bitmap.getRowStride();
+        final int lineStart = y * rowStride;
+        final int first = x >> 3;
+        long pixels = 0;
+        for (int i = first; i < first + 8; i++)
         {
-            c1 = (short) ((shiftOffset >= 8 ? 0 : w1 >>> shiftOffset) & 0x07);
-            c2 = (short) ((shiftOffset >= 8 ? 0 : w2 >>> shiftOffset) & 0x07);
-            c3 = (short) ((shiftOffset >= 8 ? 0 : w3 >>> shiftOffset) & 0x07);
-            if (shiftOffset == 6 && modRefByteIdx > 1)
-            {
-                if (currentLine >= 1 && (currentLine - 1) < referenceBitmap.getHeight())
-                {
-                    c1 |= referenceBitmap.getByteAsInteger(refByteIndex - refRowStride - 2) << 2
-                            & 0x04;
-                }
-                if (currentLine >= 0 && currentLine < referenceBitmap.getHeight())
-                {
-                    c2 |= referenceBitmap.getByteAsInteger(refByteIndex - 2) << 2 & 0x04;
-                }
-                if (currentLine >= -1 && currentLine + 1 < referenceBitmap.getHeight())
-                {
-                    c3 |= referenceBitmap.getByteAsInteger(refByteIndex + refRowStride - 2) << 2
-                            & 0x04;
-                }
-            }
-            if (shiftOffset == 0)
-            {
-                w1 = w2 = w3 = 0;
-                if (modRefByteIdx < refRowStride - 1)
-                {
-                    if (currentLine >= 1 && (currentLine - 1) < referenceBitmap.getHeight())
-                        w1 = referenceBitmap.getByteAsInteger(refByteIndex - refRowStride);
-                    if (currentLine >= 0 && currentLine < referenceBitmap.getHeight())
-                        w2 = referenceBitmap.getByteAsInteger(refByteIndex);
-                    if (currentLine >= -1 && currentLine + 1 < referenceBitmap.getHeight())
-                        w3 = referenceBitmap.getByteAsInteger(refByteIndex + refRowStride);
-                }
-                refByteIndex++;
-            }
+            pixels = pixels << 8
+                    | (i >= 0 && i < rowStride ? bitmap.getByteAsInteger(lineStart + i) : 0);
         }
-        else
+        final int shift = x & 7;
+        if (shift != 0)
         {
-            c1 = (short) ((w1 << 1) & 0x07);
-            c2 = (short) ((w2 << 1) & 0x07);
-            c3 = (short) ((w3 << 1) & 0x07);
-            w1 = w2 = w3 = 0;
-            if (modRefByteIdx < refRowStride - 1)
-            {
-                if (currentLine >= 1 && (currentLine - 1) < referenceBitmap.getHeight())
-                    w1 = referenceBitmap.getByteAsInteger(refByteIndex - refRowStride);
-                if (currentLine >= 0 && currentLine < referenceBitmap.getHeight())
-                    w2 = referenceBitmap.getByteAsInteger(refByteIndex);
-                if (currentLine >= -1 && currentLine + 1 < referenceBitmap.getHeight())
-                    w3 = referenceBitmap.getByteAsInteger(refByteIndex + refRowStride);
-                refByteIndex++;
-            }
-            c1 |= (short) ((w1 >>> 7) & 0x07);
-            c2 |= (short) ((w2 >>> 7) & 0x07);
-            c3 |= (short) ((w3 >>> 7) & 0x07);
+            final int next = first + 8;
+            pixels = pixels << shift | (next >= 0 && next < rowStride
+                    ? bitmap.getByteAsInteger(lineStart + next) >>> 8 - shift : 0);
         }
-
-        c4 = (short) (w4 >>> 6);
-        c5 = 0;
-
-        final int modBitsToTrim = (2 - modReferenceDX) % 8;
-        w1 <<= modBitsToTrim;
-        w2 <<= modBitsToTrim;
-        w3 <<= modBitsToTrim;
-
-        w4 <<= 2;
-
-        for (int x = 0; x < width; x++)
+        if (width - x < 64)
         {
-            final int minorX = x & 0x07;
-
-            final short tval = templateFormation.form(c1, c2, c3, c4, c5);
-
-            if (override)
-            {
-                cx.setIndex(overrideAtTemplate0(tval, x, lineNumber,
-                        regionBitmap.getByte(regionBitmap.getByteIndex(x, lineNumber)), minorX));
-            }
-            else
-            {
-                cx.setIndex(tval);
-            }
-            final int bit = arithDecoder.decode(cx);
-            regionBitmap.setPixel(x, lineNumber, (byte) bit);
-
-            c1 = (short) (((c1 << 1) | 0x01 & (w1 >>> 7)) & 0x07);
-            c2 = (short) (((c2 << 1) | 0x01 & (w2 >>> 7)) & 0x07);
-            c3 = (short) (((c3 << 1) | 0x01 & (w3 >>> 7)) & 0x07);
-            c4 = (short) (((c4 << 1) | 0x01 & (w4 >>> 7)) & 0x07);
-            c5 = (short) bit;
-
-            if ((x - referenceDX) % 8 == 5)
-            {
-                if (((x - referenceDX) / 8) + 1 >= referenceBitmap.getRowStride())
-                {
-                    w1 = w2 = w3 = 0;
-                }
-                else
-                {
-                    if (currentLine >= 1 && (currentLine - 1 < referenceBitmap.getHeight()))
-                    {
-                        w1 = referenceBitmap.getByteAsInteger(refByteIndex - refRowStride);
-                    }
-                    else
-                    {
-                        w1 = 0;
-                    }
-                    if (currentLine >= 0 && currentLine < referenceBitmap.getHeight())
-                    {
-                        w2 = referenceBitmap.getByteAsInteger(refByteIndex);
-                    }
-                    else
-                    {
-                        w2 = 0;
-                    }
-                    if (currentLine >= -1 && (currentLine + 1) < referenceBitmap.getHeight())
-                    {
-                        w3 = referenceBitmap.getByteAsInteger(refByteIndex + refRowStride);
-                    }
-                    else
-                    {
-                        w3 = 0;
-                    }
-                }
-                refByteIndex++;
-            }
-            else
-            {
-                w1 <<= 1;
-                w2 <<= 1;
-                w3 <<= 1;
-            }
-
-            if (minorX == 5 && lineNumber >= 1)
-            {
-                if ((x >> 3) + 1 >= regionBitmap.getRowStride())
-                {
-                    w4 = 0;
-                }
-                else
-                {
-                    w4 = regionBitmap.getByteAsInteger(byteIndex - rowStride);
-                }
-                byteIndex++;
-            }
-            else
-            {
-                w4 <<= 1;
-            }
+            // the bits behind the last pixel of the row
+            pixels &= -1L << 64 - (width - x);
         }
+        return pixels;
     }
 
     private void updateOverride()
@@ -637,330 +465,4 @@ public class GenericRefinementRegionDecodingProcedure
             break;
         }
     }
-
-    private void decodeTypicalPredictedLine(final int lineNumber, final int width,
-            final int rowStride, final int refRowStride, final int paddedWidth,
-            final int deltaRefStride) throws IOException
-    {
-        // Offset of the reference bitmap with respect to the bitmap being decoded.
-        // For example: if grReferenceDY = -1, y is 1 HIGHER than currY.
-        final int currentLine = lineNumber - referenceDY;
-        final int refByteIndex = referenceBitmap.getByteIndex(0, currentLine);
-        final int byteIndex = regionBitmap.getByteIndex(0, lineNumber);
-
-        switch (templateID)
-        {
-        case 0:
-            decodeTypicalPredictedLineTemplate0(lineNumber, width, rowStride, refRowStride,
-                    paddedWidth, deltaRefStride, byteIndex, currentLine, refByteIndex);
-            break;
-        case 1:
-            decodeTypicalPredictedLineTemplate1(lineNumber, width, rowStride, refRowStride,
-                    paddedWidth, deltaRefStride, byteIndex, currentLine, refByteIndex);
-            break;
-        default:
-            break;
-        }
-    }
-
-    private void decodeTypicalPredictedLineTemplate0(final int lineNumber, final int width,
-            final int rowStride, final int refRowStride, final int paddedWidth,
-            final int deltaRefStride, int byteIndex, final int currentLine, int refByteIndex)
-            throws IOException
-    {
-        int context;
-        int overriddenContext;
-
-        int previousLine;
-        int previousReferenceLine;
-        int currentReferenceLine;
-        int nextReferenceLine;
-
-        if (lineNumber > 0)
-        {
-            previousLine = regionBitmap.getByteAsInteger(byteIndex - rowStride);
-        }
-        else
-        {
-            previousLine = 0;
-        }
-
-        if (currentLine > 0 && currentLine <= referenceBitmap.getHeight())
-        {
-            previousReferenceLine = referenceBitmap
-                    .getByteAsInteger(refByteIndex - refRowStride + deltaRefStride) << 4;
-        }
-        else
-        {
-            previousReferenceLine = 0;
-        }
-
-        if (currentLine >= 0 && currentLine < referenceBitmap.getHeight())
-        {
-            currentReferenceLine = referenceBitmap
-                    .getByteAsInteger(refByteIndex + deltaRefStride) << 1;
-        }
-        else
-        {
-            currentReferenceLine = 0;
-        }
-
-        if (currentLine > -2 && currentLine < (referenceBitmap.getHeight() - 1))
-        {
-            nextReferenceLine = referenceBitmap
-                    .getByteAsInteger(refByteIndex + refRowStride + deltaRefStride);
-        }
-        else
-        {
-            nextReferenceLine = 0;
-        }
-
-        context = ((previousLine >> 5) & 0x6) | ((nextReferenceLine >> 2) & 0x30)
-                | (currentReferenceLine & 0x180) | (previousReferenceLine & 0xc00);
-
-        int nextByte;
-        for (int x = 0; x < paddedWidth; x = nextByte)
-        {
-            byte result = 0;
-            nextByte = x + 8;
-            final int minorWidth = width - x > 8 ? 8 : width - x;
-            final boolean readNextByte = nextByte < width;
-            final boolean refReadNextByte = nextByte < referenceBitmap.getWidth();
-
-            final int yOffset = deltaRefStride + 1;
-
-            if (lineNumber > 0)
-            {
-                previousLine = (previousLine << 8) | (readNextByte
-                        ? regionBitmap.getByteAsInteger(byteIndex - rowStride + 1) : 0);
-            }
-
-            if (currentLine > 0 && currentLine <= referenceBitmap.getHeight())
-            {
-                previousReferenceLine = (previousReferenceLine << 8)
-                        | (refReadNextByte ? referenceBitmap
-                                .getByteAsInteger(refByteIndex - refRowStride + yOffset) << 4 : 0);
-            }
-
-            if (currentLine >= 0 && currentLine < referenceBitmap.getHeight())
-            {
-                currentReferenceLine = (currentReferenceLine << 8) | (refReadNextByte
-                        ? referenceBitmap.getByteAsInteger(refByteIndex + yOffset) << 1 : 0);
-            }
-
-            if (currentLine > -2 && currentLine < (referenceBitmap.getHeight() - 1))
-            {
-                nextReferenceLine = (nextReferenceLine << 8) | (refReadNextByte
-                        ? referenceBitmap.getByteAsInteger(refByteIndex + refRowStride + yOffset)
-                        : 0);
-            }
-
-            for (int minorX = 0; minorX < minorWidth; minorX++)
-            {
-                boolean isPixelTypicalPredicted = false;
-                int bit = 0;
-
-                // i)
-                final int bitmapValue = (context >> 4) & 0x1FF;
-
-                if (bitmapValue == 0x1ff)
-                {
-                    isPixelTypicalPredicted = true;
-                    bit = 1;
-                }
-                else if (bitmapValue == 0x00)
-                {
-                    isPixelTypicalPredicted = true;
-                    bit = 0;
-                }
-
-                if (!isPixelTypicalPredicted)
-                {
-                    // iii) - is like 3 c) but for one pixel only
-                    if (override)
-                    {
-                        overriddenContext = overrideAtTemplate0(context, x + minorX, lineNumber,
-                                result, minorX);
-                        cx.setIndex(overriddenContext);
-                    }
-                    else
-                    {
-                        cx.setIndex(context);
-                    }
-                    bit = arithDecoder.decode(cx);
-                }
-
-                final int toShift = 7 - minorX;
-                result |= bit << toShift;
-
-                context = ((context & 0xdb6) << 1) | bit | ((previousLine >> toShift + 5) & 0x002)
-                        | ((nextReferenceLine >> toShift + 2) & 0x010)
-                        | ((currentReferenceLine >> toShift) & 0x080)
-                        | ((previousReferenceLine >> toShift) & 0x400);
-            }
-            regionBitmap.setByte(byteIndex++, result);
-            refByteIndex++;
-        }
-    }
-
-    private void decodeTypicalPredictedLineTemplate1(final int lineNumber, final int width,
-            final int rowStride, final int refRowStride, final int paddedWidth,
-            final int deltaRefStride, int byteIndex, final int currentLine, int refByteIndex)
-            throws IOException
-    {
-        int context;
-        int grReferenceValue;
-
-        int previousLine;
-        int previousReferenceLine;
-        int currentReferenceLine;
-        int nextReferenceLine;
-
-        if (lineNumber > 0)
-        {
-            previousLine = regionBitmap.getByteAsInteger(byteIndex - rowStride);
-        }
-        else
-        {
-            previousLine = 0;
-        }
-
-        if (currentLine > 0 && currentLine <= referenceBitmap.getHeight())
-        {
-            previousReferenceLine = referenceBitmap
-                    .getByteAsInteger(refByteIndex - refRowStride + deltaRefStride) << 2;
-        }
-        else
-        {
-            previousReferenceLine = 0;
-        }
-
-        if (currentLine >= 0 && currentLine < referenceBitmap.getHeight())
-        {
-            currentReferenceLine = referenceBitmap.getByteAsInteger(refByteIndex + deltaRefStride);
-        }
-        else
-        {
-            currentReferenceLine = 0;
-        }
-
-        if (currentLine > -2 && currentLine < (referenceBitmap.getHeight() - 1))
-        {
-            nextReferenceLine = referenceBitmap
-                    .getByteAsInteger(refByteIndex + refRowStride + deltaRefStride);
-        }
-        else
-        {
-            nextReferenceLine = 0;
-        }
-
-        context = ((previousLine >> 5) & 0x6) | ((nextReferenceLine >> 2) & 0x30)
-                | (currentReferenceLine & 0xc0) | (previousReferenceLine & 0x200);
-
-        grReferenceValue = ((nextReferenceLine >> 2) & 0x70) | (currentReferenceLine & 0xc0)
-                | (previousReferenceLine & 0x700);
-
-        int nextByte;
-        for (int x = 0; x < paddedWidth; x = nextByte)
-        {
-            byte result = 0;
-            nextByte = x + 8;
-            final int minorWidth = width - x > 8 ? 8 : width - x;
-            final boolean readNextByte = nextByte < width;
-            final boolean refReadNextByte = nextByte < referenceBitmap.getWidth();
-
-            final int yOffset = deltaRefStride + 1;
-
-            if (lineNumber > 0)
-            {
-                previousLine = (previousLine << 8) | (readNextByte
-                        ? regionBitmap.getByteAsInteger(byteIndex - rowStride + 1) : 0);
-            }
-
-            if (currentLine > 0 && currentLine <= referenceBitmap.getHeight())
-            {
-                previousReferenceLine = (previousReferenceLine << 8)
-                        | (refReadNextByte ? referenceBitmap
-                                .getByteAsInteger(refByteIndex - refRowStride + yOffset) << 2 : 0);
-            }
-
-            if (currentLine >= 0 && currentLine < referenceBitmap.getHeight())
-            {
-                currentReferenceLine = (currentReferenceLine << 8) | (refReadNextByte
-                        ? referenceBitmap.getByteAsInteger(refByteIndex + yOffset) : 0);
-            }
-
-            if (currentLine > -2 && currentLine < (referenceBitmap.getHeight() - 1))
-            {
-                nextReferenceLine = (nextReferenceLine << 8) | (refReadNextByte
-                        ? referenceBitmap.getByteAsInteger(refByteIndex + refRowStride + yOffset)
-                        : 0);
-            }
-
-            for (int minorX = 0; minorX < minorWidth; minorX++)
-            {
-                int bit;
-
-                // i)
-                final int bitmapValue = (grReferenceValue >> 4) & 0x1ff;
-
-                switch (bitmapValue)
-                {
-                    case 0x1ff:
-                        bit = 1;
-                        break;
-                    case 0x00:
-                        bit = 0;
-                        break;
-                    default:
-                        cx.setIndex(context);
-                        bit = arithDecoder.decode(cx);
-                        break;
-                }
-
-                final int toShift = 7 - minorX;
-                result |= bit << toShift;
-
-                context = ((context & 0x0d6) << 1) | bit | ((previousLine >> toShift + 5) & 0x002)
-                        | ((nextReferenceLine >> toShift + 2) & 0x010)
-                        | ((currentReferenceLine >> toShift) & 0x040)
-                        | ((previousReferenceLine >> toShift) & 0x200);
-
-                grReferenceValue = ((grReferenceValue & 0x0db) << 1)
-                        | ((nextReferenceLine >> toShift + 2) & 0x010)
-                        | ((currentReferenceLine >> toShift) & 0x080)
-                        | ((previousReferenceLine >> toShift) & 0x400);
-            }
-            regionBitmap.setByte(byteIndex++, result);
-            refByteIndex++;
-        }
-    }
-
-    private int overrideAtTemplate0(int context, final int x, final int y, final int result,
-            final int minorX)
-    {
-        if (grAtOverride[0])
-        {
-            context &= 0xfff7;
-            if (grAtY[0] == 0 && grAtX[0] >= -minorX)
-            {
-                context |= (result >> (7 - (minorX + grAtX[0])) & 0x1) << 3;
-            }
-            else
-            {
-                context |= getPixelSafe(regionBitmap, x + grAtX[0], y + grAtY[0]) << 3;
-            }
-        }
-
-        if (grAtOverride[1])
-        {
-            context &= 0xefff;
-            // 6.3.5.3
-            // The AT pixel RA2 can be located anywhere in the range (–128, –128) to (127, 127)
-            // in the reference bitmap. Make sure that we do use the reference bitmap.
-            context |= getPixelSafe(referenceBitmap, x + grAtX[1] + referenceDX,
-                    y + grAtY[1] + referenceDY) << 12;
-        }
-        return context;
-    }
 }
@@ -18,15 +18,26 @@
 package org.apache.pdfbox.jbig2.decoder.arithmetic;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import javax.imageio.stream.ImageInputStream;
 
+import org.apache.pdfbox.jbig2.io.SubInputStream;
+
 /**
  * This class represents the arithmetic decoder, described in ISO/IEC 14492:2001 in E.3
+ * <p>
+ * The decoder reads its input from a window of bytes with a plain index. The window is either the given byte array or
+ * buffer, the in-memory data behind a {@link SubInputStream}, or a buffer which is refilled from an
+ * {@link ImageInputStream} in blocks.
  */
 public class ArithmeticDecoder
 {
 
+    /**
+     * The probability estimation table, one row per state: Qe, NMPS, NLPS and SWITCH. Only used to build
+     * {@link #STATES}.
+     */
     private static final int[][] QE = { { 0x5601, 1, 1, 1 }, { 0x3401, 2, 6, 0 },
             { 0x1801, 3, 9, 0 }, { 0x0AC1, 4, 12, 0 }, { 0x0521, 5, 29, 0 }, { 0x0221, 38, 33, 0 },
             { 0x5601, 7, 6, 1 }, { 0x5401, 8, 14, 0 }, { 0x4801, 9, 14, 0 }, { 0x3801, 10, 14, 0 },
@@ -44,30 +55,151 @@ public class ArithmeticDecoder
             { 0x0009, 44, 41, 0 }, { 0x0005, 45, 42, 0 }, { 0x0001, 45, 43, 0 },
             { 0x5601, 46, 46, 0 } };
 
+    /**
+     * The probability estimation table packed into one word per state: Qe in bits 0-15, NMPS in bits 16-21, NLPS in
+     * bits 22-27 and SWITCH in bit 28. A decision needs a single load.
+     */
+    private static final int[] STATES = new int[QE.length];
+
+    private static final int NMPS_SHIFT = 16;
+    private static final int NLPS_SHIFT = 22;
+    private static final int STATE_MASK = 0x3f;
+    private static final int SWITCH = 1 << 28;
+
+    static
+    {
+        for (int i = 0; i < QE.length; i++)
+        {
+            STATES[i] = QE[i][0] | QE[i][1] << NMPS_SHIFT | QE[i][2] << NLPS_SHIFT | QE[i][3] * SWITCH;
+        }
+    }
+
+    /** Size of the buffer used to read ahead from an {@link ImageInputStream}. */
+    private static final int STREAM_BUFFER_SIZE = 4096;
+
     private int a;
-    private long c;
+
+    /** The C register. Only its low 32 bits are significant, so it is kept in an int and compared unsigned. */
+    private int c;
     private int ct;
 
+    /** The current byte, i.e. the byte at index {@link #bp}, or -1 if the input is empty. */
     private int b;
 
-    private long streamPos0;
+    /** The bytes read by the decoder, if they are held in an array. */
+    private byte[] array;
+
+    /** The bytes read by the decoder, if they are not held in an array. */
+    private ByteBuffer buffer;
+
+    /** The index of the current byte. */
+    private int bp;
 
+    /** The index behind the last available byte. */
+    private int end;
+
+    /** The position of index 0 with respect to the start of the input. */
+    private long base;
+
+    /** The stream the buffer is refilled from, or {@code null} if the decoder reads a fixed window. */
     private final ImageInputStream iis;
 
+    /** The counters of the thread which created the decoder, {@code null} if counting is switched off. */
+    private final ArithmeticStatistics.Recorder statistics = ArithmeticStatistics.ENABLED
+            ? ArithmeticStatistics.recorder() : null;
+
+    /**
+     * Creates a decoder which reads the given stream, starting at its current position. If the stream is a
+     * {@link SubInputStream} of in-memory data, the decoder reads that data in place, otherwise it reads the stream
+     * ahead in blocks. The position of the stream after decoding is therefore unspecified, use
+     * {@link #getStreamPosition()} to find out how far the decoder got.
+     *
+     * @param iis - The stream to read the compressed data from.
+     * @throws IOException if an I/O error occurs.
+     */
     public ArithmeticDecoder(ImageInputStream iis) throws IOException
     {
-        this.iis = iis;
+        final long streamPosition = iis.getStreamPosition();
+        final ByteBuffer remainingBytes = iis instanceof SubInputStream
+                ? ((SubInputStream) iis).remainingBytes() : null;
+        if (remainingBytes != null)
+        {
+            this.iis = null;
+            setWindow(remainingBytes);
+            base += streamPosition;
+        }
+        else
+        {
+            this.iis = iis;
+            array = new byte[STREAM_BUFFER_SIZE];
+            base = streamPosition;
+            bp = -1;
+            end = 0;
+            // the first two bytes initialize the registers
+            while (end < 2 && fill())
+            {
+            }
+        }
         init();
     }
 
-    private void init() throws IOException
+    /**
+     * Creates a decoder which reads the given bytes in place.
+     *
+     * @param data - The compressed data.
+     * @param offset - The index of the first byte of the compressed data.
+     * @param length - The number of bytes of the compressed data.
+     */
+    public ArithmeticDecoder(byte[] data, int offset, int length)
     {
-        this.streamPos0 = iis.getStreamPosition();
-        b = this.iis.read();
+        this(ByteBuffer.wrap(data, offset, length));
+    }
 
-        c = b << 16;
+    /**
+     * Creates a decoder which reads the bytes between the position and the limit of the given buffer in place. The
+     * buffer's position and limit are not changed.
+     *
+     * @param data - The compressed data.
+     */
+    public ArithmeticDecoder(ByteBuffer data)
+    {
+        this.iis = null;
+        setWindow(data);
+        init();
+    }
 
-        byteIn();
+    private void setWindow(ByteBuffer data)
+    {
+        if (data.hasArray())
+        {
+            array = data.array();
+            final int start = data.arrayOffset() + data.position();
+            base = -start;
+            bp = start - 1;
+            end = data.arrayOffset() + data.limit();
+        }
+        else
+        {
+            buffer = data.slice();
+            base = 0;
+            bp = -1;
+            end = buffer.limit();
+        }
+    }
+
+    /**
+     * Initializes the registers from the first two bytes, which are in the buffer already, see figure E.20.
+     */
+    private void init()
+    {
+        b = byteAt(bp + 1);
+        if (b >= 0)
+        {
+            bp++;
+        }
+
+        c = b << 16;
+        c += byteIn(byteAt(bp + 1));
 
         c <<= 7;
         ct -= 7;
@@ -76,130 +208,349 @@ public class ArithmeticDecoder
 
     public int decode(CX cx) throws IOException
     {
-        int d;
-        final int qeValue = QE[cx.cx()][0];
-        final int icx = cx.cx();
-
-        a -= qeValue;
-
-        if ((c >> 16) < qeValue)
+        final int cxState = cx.state();
+        final int mps = cxState & 1;
+        final int state = STATES[cxState >>> 1];
+        final int qe = state & 0xffff;
+        int a = this.a - qe;
+        int c = this.c;
+        final int d;
+
+        if ((c >>> 16) < qe)
         {
-            d = lpsExchange(cx, icx, qeValue);
-            renormalize();
+            // LPS path with conditional exchange
+            d = a < qe ? mps(cx, state, mps) : lps(cx, state, mps);
+            a = qe;
+            if (ArithmeticStatistics.ENABLED)
+            {
+                count(true, a);
+            }
         }
         else
         {
-            c -= (qeValue << 16);
-            if ((a & 0x8000) == 0)
+            c -= qe << 16;
+            if ((a & 0x8000) != 0)
             {
-                d = mpsExchange(cx, icx);
-                renormalize();
+                this.a = a;
+                this.c = c;
+                if (ArithmeticStatistics.ENABLED)
+                {
+                    statistics.current.decisions++;
+                }
+                return mps;
             }
-            else
+            // MPS path with conditional exchange
+            d = a < qe ? lps(cx, state, mps) : mps(cx, state, mps);
+            if (ArithmeticStatistics.ENABLED)
+            {
+                count(false, a);
+            }
+        }
+
+        // renormalize, shifting as many bits at once as the current byte provides
+        int ct = this.ct;
+        int shift = Integer.numberOfLeadingZeros(a) - 16;
+        while (true)
+        {
+            if (ct == 0)
             {
-                return cx.mps();
+                c += byteIn();
+                ct = this.ct;
+            }
+            final int n = shift < ct ? shift : ct;
+            a <<= n;
+            c <<= n;
+            ct -= n;
+            shift -= n;
+            if (shift == 0)
+            {
+                break;
             }
         }
 
+        this.a = a;
+        this.c = c;
+        this.ct = ct;
         return d;
     }
 
-    private void byteIn() throws IOException
+    /**
+     * Takes consecutive decisions in the current context of {@code cx} as long as each of them yields the MPS without
+     * renormalization, i.e. without changing the context or reading input. Their number follows from A and C directly:
+     * each decision subtracts Qe from both. The result is the same as calling {@link #decode(CX)} that many times.
+     *
+     * @param cx - The contexts, the current index selects the context.
+     * @param maxCount - The maximum number of decisions to take.
+     * @return The number of decisions taken, all of them are the MPS of the context.
+     */
+    public int decodeRunOfMPS(CX cx, int maxCount)
     {
-        if (iis.getStreamPosition() > streamPos0)
+        if (maxCount <= 0)
         {
-            iis.seek(iis.getStreamPosition() - 1);
+            return 0;
         }
+        final int qe = STATES[cx.state() >>> 1] & 0xffff;
 
-        b = iis.read();
-
-        if (b == 0xFF)
+        // A must stay >= 0x8000 and the upper half of C >= Qe for each decision
+        int n;
+        if (maxCount <= 0x8000 && a - maxCount * qe >= 0x8000 && (c >>> 16) >= maxCount * qe)
         {
-            final int b1 = iis.read();
-            if (b1 > 0x8f)
+            n = maxCount;
+        }
+        else
+        {
+            n = (a - 0x8000) / qe;
+            final int cRun = (c >>> 16) / qe;
+            if (cRun < n)
             {
-                c += 0xff00;
-                ct = 8;
-                iis.seek(iis.getStreamPosition() - 2);
+                n = cRun;
             }
-            else
+            if (maxCount < n)
             {
-                c += b1 << 9;
-                ct = 7;
+                n = maxCount;
             }
         }
-        else
+
+        if (n > 0)
         {
-            b = iis.read();
-            c += b << 8;
-            ct = 8;
+            a -= n * qe;
+            c -= (n * qe) << 16;
+            if (ArithmeticStatistics.ENABLED)
+            {
+                statistics.current.decisions += n;
+            }
         }
-
-        c &= 0xffffffffL;
+        return n;
     }
 
-    private void renormalize() throws IOException
+    /**
+     * Decodes a sequence of decisions whose contexts don't depend on the preceding decisions. The registers are kept
+     * in locals for the whole sequence, so this is cheaper than calling {@link #decode(CX)} for each decision.
+     *
+     * @param cx - The contexts, its index is changed.
+     * @param indices - The context index of each decision.
+     * @param decisions - Receives the decisions.
+     * @param offset - The index of the first decision in {@code indices} and {@code decisions}.
+     * @param length - The number of decisions.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void decode(CX cx, int[] indices, int[] decisions, int offset, int length) throws IOException
     {
-        do
+        int a = this.a;
+        int c = this.c;
+        int ct = this.ct;
+
+        for (int i = offset, end = offset + length; i < end; i++)
         {
-            if (ct == 0)
+            cx.setIndex(indices[i]);
+            final int cxState = cx.state();
+            final int mps = cxState & 1;
+            final int state = STATES[cxState >>> 1];
+            final int qe = state & 0xffff;
+            a -= qe;
+
+            if ((c >>> 16) < qe)
             {
-                byteIn();
+                decisions[i] = a < qe ? mps(cx, state, mps) : lps(cx, state, mps);
+                a = qe;
+                if (ArithmeticStatistics.ENABLED)
+                {
+                    count(true, a);
+                }
+            }
+            else
+            {
+                c -= qe << 16;
+                if ((a & 0x8000) != 0)
+                {
+                    decisions[i] = mps;
+                    if (ArithmeticStatistics.ENABLED)
+                    {
+                        statistics.current.decisions++;
+                    }
+                    continue;
+                }
+                decisions[i] = a < qe ? lps(cx, state, mps) : mps(cx, state, mps);
+                if (ArithmeticStatistics.ENABLED)
+                {
+                    count(false, a);
+                }
             }
 
-            a <<= 1;
-            c <<= 1;
-            ct--;
-
-        } while ((a & 0x8000) == 0);
+            int shift = Integer.numberOfLeadingZeros(a) - 16;
+            while (true)
+            {
+                if (ct == 0)
+                {
+                    c += byteIn();
+                    ct = this.ct;
+                }
+                final int n = shift < ct ? shift : ct;
+                a <<= n;
+                c <<= n;
+                ct -= n;
+                shift -= n;
+                if (shift == 0)
+                {
+                    break;
+                }
+            }
+        }
 
-        c &= 0xffffffffL;
+        this.a = a;
+        this.c = c;
+        this.ct = ct;
     }
 
-    private int mpsExchange(CX cx, int icx)
+    /**
+     * Reads the next byte into the C register, see figure E.19.
+     *
+     * @return the value to add to the C register. {@link #ct} is set to the number of bits it provides.
+     */
+    private int byteIn() throws IOException
     {
-        final int mps = cx.mps();
+        return byteIn(peek());
+    }
 
-        if (a < QE[icx][0])
+    /**
+     * Reads the given byte following the current byte into the C register, see {@link #byteIn()}.
+     *
+     * @param b1 - The next byte or -1 at the end of the input.
+     * @return the value to add to the C register.
+     */
+    private int byteIn(final int b1)
+    {
+        if (ArithmeticStatistics.ENABLED)
         {
-
-            if (QE[icx][3] == 1)
+            statistics.current.bytes++;
+        }
+        if (b == 0xFF)
+        {
+            if (b1 > 0x8f)
             {
-                cx.toggleMps();
+                ct = 8;
+                return 0xff00;
             }
+            if (b1 >= 0)
+            {
+                bp++;
+                b = b1;
+            }
+            ct = 7;
+            return b1 << 9;
+        }
 
-            cx.setCx(QE[icx][2]);
-            return 1 - mps;
+        if (b1 >= 0)
+        {
+            bp++;
+            b = b1;
         }
-        else
+        ct = 8;
+        return b1 << 8;
+    }
+
+    /**
+     * Returns the byte following the current byte without consuming it.
+     *
+     * @return the next byte or -1 at the end of the input.
+     */
+    private int peek() throws IOException
+    {
+        if (bp + 1 >= end && !fill())
         {
-            cx.setCx(QE[icx][1]);
-            return mps;
+            return -1;
         }
+        return 0xff & (array != null ? array[bp + 1] : buffer.get(bp + 1));
     }
 
-    private int lpsExchange(CX cx, int icx, int qeValue)
+    /**
+     * Returns the byte at the given index of the buffer.
+     *
+     * @param index - The index.
+     * @return the byte or -1 if the index is at or behind the end of the buffer.
+     */
+    private int byteAt(int index)
     {
-        final int mps = cx.mps();
+        if (index >= end)
+        {
+            return -1;
+        }
+        return 0xff & (array != null ? array[index] : buffer.get(index));
+    }
 
-        if (a < qeValue)
+    /**
+     * Reads the next block of the stream into the buffer, keeping the current byte.
+     *
+     * @return {@code true} if at least one byte was read.
+     */
+    private boolean fill() throws IOException
+    {
+        if (iis == null)
+        {
+            return false;
+        }
+        if (bp > 0)
         {
-            cx.setCx(QE[icx][1]);
-            a = qeValue;
+            System.arraycopy(array, bp, array, 0, end - bp);
+            base += bp;
+            end -= bp;
+            bp = 0;
+        }
+        iis.seek(base + end);
+        final int read = iis.read(array, end, array.length - end);
+        if (read <= 0)
+        {
+            return false;
+        }
+        end += read;
+        return true;
+    }
 
-            return mps;
+    /**
+     * Counts a decision which needs renormalization.
+     *
+     * @param lps - Whether the decision took the LPS path.
+     * @param a - The A register before renormalization.
+     */
+    private void count(boolean lps, int a)
+    {
+        final ArithmeticStatistics.Counters counters = statistics.current;
+        counters.decisions++;
+        if (lps)
+        {
+            counters.lpsExchanges++;
         }
         else
         {
-            if (QE[icx][3] == 1)
-            {
-                cx.toggleMps();
-            }
-
-            cx.setCx(QE[icx][2]);
-            a = qeValue;
-            return 1 - mps;
+            counters.mpsExchanges++;
         }
+        counters.renormalizations += Integer.numberOfLeadingZeros(a) - 16;
+    }
+
+    /** Takes the MPS branch of the state: returns the MPS and moves to NMPS. */
+    private static int mps(CX cx, int state, int mps)
+    {
+        cx.setState(((state >>> NMPS_SHIFT) & STATE_MASK) << 1 | mps);
+        return mps;
+    }
+
+    /** Takes the LPS branch of the state: returns the LPS, switches the MPS if required and moves to NLPS. */
+    private static int lps(CX cx, int state, int mps)
+    {
+        final int newMps = (state & SWITCH) != 0 ? 1 - mps : mps;
+        cx.setState(((state >>> NLPS_SHIFT) & STATE_MASK) << 1 | newMps);
+        return 1 - mps;
+    }
+
+    /**
+     * Returns the position of the first byte the decoder has not consumed yet, with respect to the start of the stream
+     * or, if the decoder reads a byte array or buffer, to the first byte of the compressed data.
+     *
+     * @return the position following the last consumed byte.
+     */
+    public long getStreamPosition()
+    {
+        return base + bp + 1;
     }
 
     int getA()
@@ -209,6 +560,6 @@ public class ArithmeticDecoder
 
     long getC()
     {
-        return c;
+        return c & 0xffffffffL;
     }
 }
@@ -25,8 +25,21 @@ import java.io.IOException;
 public class ArithmeticIntegerDecoder
 {
 
+    /** The number of value bits for each number of 1 bits in the prefix, Table A.1. */
+    private static final int[] VALUE_BITS = { 2, 4, 6, 8, 12, 32 };
+
+    /** The offset added to the value for each number of 1 bits in the prefix, Table A.1. */
+    private static final int[] VALUE_OFFSETS = { 0, 4, 20, 84, 340, 4436 };
+
     private final ArithmeticDecoder decoder;
 
+    /** Whether the last value decoded by {@link #decodeInt(CX)} was OOB. */
+    private boolean oob;
+
+    /** The counters of the thread which created the decoder, {@code null} if counting is switched off. */
+    private final ArithmeticStatistics.Recorder statistics = ArithmeticStatistics.ENABLED
+            ? ArithmeticStatistics.recorder() : null;
+
     public ArithmeticIntegerDecoder(ArithmeticDecoder decoder)
     {
         this.decoder = decoder;
@@ -36,11 +49,36 @@ public class ArithmeticIntegerDecoder
      * Arithmetic Integer Decoding Procedure, Annex A.2.
      * 
      * @param cxIAx to be decoded value
-     * @return Decoded value.
+     * @return Decoded value or {@link Long#MAX_VALUE} for OOB.
      * @throws IOException if an underlying IO operation fails
+     * 
+     * @deprecated use {@link #decodeInt(CX)} and {@link #isOOB()}, will be removed in a future release.
      */
+    @Deprecated
     public long decode(CX cxIAx) throws IOException
     {
+        if (cxIAx == null)
+        {
+            cxIAx = new CX(512, 1);
+        }
+
+        final int value = decodeInt(cxIAx);
+        return oob ? Long.MAX_VALUE : value;
+    }
+
+    /**
+     * Arithmetic Integer Decoding Procedure, Annex A.2. Whether the result is OOB is told by {@link #isOOB()}.
+     * 
+     * @param cxIAx - The contexts of the integer coder.
+     * @return Decoded value, {@code 0} for OOB.
+     * @throws IOException if an underlying IO operation fails
+     */
+    public int decodeInt(CX cxIAx) throws IOException
+    {
+        if (ArithmeticStatistics.ENABLED)
+        {
+            statistics.current.integers++;
+        }
 
         // A.2.
         // CX is identified by … the rightmost 9 bits of PREV
@@ -48,118 +86,65 @@ public class ArithmeticIntegerDecoder
         // plus a leading 1 bit, which is used to indicate the number of bits decoded so far.
         int prev = 1;
 
-        int v = 0;
-        int d;
-        int s;
-
-        int bitsToRead;
-        int offset;
-
-        if (cxIAx == null)
-        {
-            cxIAx = new CX(512, 1);
-        }
-
-        cxIAx.setIndex(prev & 0x1FF);
-        s = decoder.decode(cxIAx);
-        prev = setPrev(prev, s);
+        cxIAx.setIndex(prev);
+        final int s = decoder.decode(cxIAx);
+        prev = prev << 1 | s;
 
-        cxIAx.setIndex(prev & 0x1FF);
-        d = decoder.decode(cxIAx);
-        prev = setPrev(prev, d);
-
-        if (d == 1)
+        // the prefix is a run of at most five 1 bits, terminated by a 0 bit unless it has five
+        int prefix = 0;
+        while (prefix < 5)
         {
-            cxIAx.setIndex(prev & 0x1FF);
-            d = decoder.decode(cxIAx);
-            prev = setPrev(prev, d);
-
-            if (d == 1)
-            {
-                cxIAx.setIndex(prev & 0x1FF);
-                d = decoder.decode(cxIAx);
-                prev = setPrev(prev, d);
-
-                if (d == 1)
-                {
-                    cxIAx.setIndex(prev & 0x1FF);
-                    d = decoder.decode(cxIAx);
-                    prev = setPrev(prev, d);
-
-                    if (d == 1)
-                    {
-                        cxIAx.setIndex(prev & 0x1FF);
-                        d = decoder.decode(cxIAx);
-                        prev = setPrev(prev, d);
-
-                        if (d == 1)
-                        {
-                            bitsToRead = 32;
-                            offset = 4436;
-                        }
-                        else
-                        {
-                            bitsToRead = 12;
-                            offset = 340;
-                        }
-                    }
-                    else
-                    {
-                        bitsToRead = 8;
-                        offset = 84;
-                    }
-                }
-                else
-                {
-                    bitsToRead = 6;
-                    offset = 20;
-                }
-            }
-            else
+            cxIAx.setIndex(prev);
+            final int d = decoder.decode(cxIAx);
+            prev = prev << 1 | d;
+            if (d == 0)
             {
-                bitsToRead = 4;
-                offset = 4;
+                break;
             }
-        }
-        else
-        {
-            bitsToRead = 2;
-            offset = 0;
-        }
-
-        for (int i = 0; i < bitsToRead; i++)
-        {
-            cxIAx.setIndex(prev & 0x1FF);
-            d = decoder.decode(cxIAx);
-            prev = setPrev(prev, d);
-            v = (v << 1) | d;
+            prefix++;
         }
 
-        v += offset;
+        // at most seven bits are decoded so far, PREV doesn't overflow yet
+        final int v = decodeBits(cxIAx, prev, VALUE_BITS[prefix], 0x1ff, 0x100)
+                + VALUE_OFFSETS[prefix];
 
+        oob = s == 1 && v <= 0;
         if (s == 0)
         {
             return v;
         }
-        else if (s == 1 && v > 0)
-        {
-            return -v;
-        }
+        return oob ? 0 : -v;
+    }
 
-        return Long.MAX_VALUE;
+    /**
+     * @return {@code true} if the last value decoded by {@link #decodeInt(CX)} was OOB.
+     */
+    public boolean isOOB()
+    {
+        return oob;
     }
 
-    private int setPrev(int prev, int bit)
-    {        
-        if (prev < 256)
-        {
-            prev = ((prev << 1) | bit) & 0x1ff;
-        }
-        else
+    /**
+     * Decodes a number of bits, most significant first, using PREV as context index, see A.2 and A.3.
+     * 
+     * @param cx - The contexts.
+     * @param prev - The initial value of PREV.
+     * @param count - The number of bits.
+     * @param mask - The bits of PREV which are shifted.
+     * @param sticky - The bits of PREV which are kept once they are set.
+     * @return The decoded bits.
+     */
+    private int decodeBits(CX cx, int prev, int count, int mask, int sticky) throws IOException
+    {
+        int v = 0;
+        for (int i = 0; i < count; i++)
         {
-            prev = ((((prev << 1) | bit) & 511) | 256) & 0x1ff;
+            cx.setIndex(prev);
+            final int d = decoder.decode(cx);
+            prev = ((prev << 1) | d) & mask | prev & sticky;
+            v = (v << 1) | d;
         }
-        return prev;
+        return v;
     }
 
     /**
@@ -174,25 +159,14 @@ public class ArithmeticIntegerDecoder
      */
     public int decodeIAID(CX cxIAID, long symCodeLen) throws IOException
     {
-        // A.3 1)
-        long prev = 1;
-
-
-        // A.3 2)
-        // The spec says: "the rightmost SBSYMCODELEN + 1 bits of PREV are used"
-        // But also: "The number of contexts required is 2^SBSYMCODELEN"
-        // The resolution: the leading 1 bit is not used for context
-        // identification—only the lower N bits are.
-
-        long mask = (1L << symCodeLen) - 1;
-        
-        for (int i = 0; i < symCodeLen; i++)
+        if (ArithmeticStatistics.ENABLED)
         {
-            cxIAID.setIndex((int) (prev & mask));
-            prev = (prev << 1) | decoder.decode(cxIAID);
+            statistics.current.symbolIds++;
         }
 
-        // A.3 3) & 4)
-        return (int) (prev - (1L << symCodeLen));
+        // A.3 1) - 4)
+        // PREV is the leading 1 bit followed by the bits decoded so far, it never exceeds the number of contexts
+        // (2^SBSYMCODELEN), so all of its bits are used as context index.
+        return decodeBits(cxIAID, 1, (int) symCodeLen, -1, 0);
     }
 }
@@ -0,0 +1,386 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.decoder.arithmetic;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counters of the arithmetic decoders, broken down per segment type, decoding procedure and template. A snapshot of
+ * them is taken with {@link #snapshot()}, {@code JBIG2ImageReader} takes one after each read.
+ * <p>
+ * Counting is switched off unless the system property {@value #PROPERTY} is {@code true} when this class is loaded.
+ * The switch is a constant, so the counting code is removed by the compiler when it is off. Counting happens per
+ * thread: a decoder counts for the thread that created it.
+ */
+public final class ArithmeticStatistics
+{
+    /** The system property which switches counting on. */
+    public static final String PROPERTY = "org.apache.pdfbox.jbig2.arithmeticStatistics";
+
+    /** Whether counting is switched on. */
+    public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    /** Procedure of generic region decoding, 6.2. */
+    public static final String GENERIC = "generic";
+
+    /** Procedure of generic refinement region decoding, 6.3. */
+    public static final String REFINEMENT = "refinement";
+
+    /** Procedure of text region decoding, 6.4. */
+    public static final String TEXT = "text";
+
+    /** Procedure of symbol dictionary decoding, 6.5. */
+    public static final String SYMBOL = "symbol";
+
+    /** Procedure of pattern dictionary decoding, 6.7. */
+    public static final String PATTERN = "pattern";
+
+    /** Procedure of halftone region decoding, 6.6. */
+    public static final String HALFTONE = "halftone";
+
+    /** The key of decisions taken outside of any procedure. */
+    private static final Key UNKNOWN = new Key(-1, null, -1);
+
+    private static final ThreadLocal<Recorder> RECORDER = new ThreadLocal<Recorder>()
+    {
+        @Override
+        protected Recorder initialValue()
+        {
+            return new Recorder();
+        }
+    };
+
+    private final Map<Key, Counters> counters;
+
+    private ArithmeticStatistics(Map<Key, Counters> counters)
+    {
+        this.counters = Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * Attributes the following decisions of the current thread to the given procedure, until {@link #exit(Key)} is
+     * called. Does nothing if counting is switched off.
+     * 
+     * @param segmentType - The type of the segment being decoded or -1 if the procedure is used by another one, in
+     *            which case the segment type of the calling procedure is taken.
+     * @param procedure - The decoding procedure, one of the constants of this class.
+     * @param template - The template used by the procedure or -1 if it has none.
+     * @return The key to pass to {@link #exit(Key)}, {@code null} if counting is switched off.
+     */
+    public static Key enter(int segmentType, String procedure, int template)
+    {
+        if (!ENABLED)
+        {
+            return null;
+        }
+        final Recorder recorder = RECORDER.get();
+        final Key previous = recorder.key;
+        recorder.setKey(new Key(segmentType >= 0 ? segmentType : previous.segmentType, procedure,
+                template));
+        return previous;
+    }
+
+    /**
+     * Ends the procedure entered with {@link #enter(int, String, int)}. Does nothing if counting is switched off.
+     * 
+     * @param previous - The key returned by {@link #enter(int, String, int)}.
+     */
+    public static void exit(Key previous)
+    {
+        if (ENABLED)
+        {
+            RECORDER.get().setKey(previous != null ? previous : UNKNOWN);
+        }
+    }
+
+    /**
+     * Discards the counters of the current thread.
+     */
+    public static void reset()
+    {
+        if (ENABLED)
+        {
+            RECORDER.get().clear();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the counters of the current thread.
+     * 
+     * @return The snapshot or {@code null} if counting is switched off.
+     */
+    public static ArithmeticStatistics snapshot()
+    {
+        if (!ENABLED)
+        {
+            return null;
+        }
+        final Map<Key, Counters> copy = new LinkedHashMap<Key, Counters>();
+        for (Map.Entry<Key, Counters> entry : RECORDER.get().counters.entrySet())
+        {
+            if (entry.getValue().decisions > 0)
+            {
+                copy.put(entry.getKey(), new Counters(entry.getValue()));
+            }
+        }
+        return new ArithmeticStatistics(copy);
+    }
+
+    /**
+     * @return The recorder of the current thread.
+     */
+    static Recorder recorder()
+    {
+        return RECORDER.get();
+    }
+
+    /**
+     * @return The counters per procedure, in the order the procedures were first entered.
+     */
+    public Map<Key, Counters> getCounters()
+    {
+        return counters;
+    }
+
+    /**
+     * @return The sum of all counters.
+     */
+    public Counters getTotal()
+    {
+        final Counters total = new Counters();
+        for (Counters c : counters.values())
+        {
+            total.add(c);
+        }
+        return total;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Key, Counters> entry : counters.entrySet())
+        {
+            sb.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return sb.append("total: ").append(getTotal()).toString();
+    }
+
+    /**
+     * Identifies a decoding procedure within a segment type.
+     */
+    public static final class Key
+    {
+        private final int segmentType;
+        private final String procedure;
+        private final int template;
+
+        Key(int segmentType, String procedure, int template)
+        {
+            this.segmentType = segmentType;
+            this.procedure = procedure;
+            this.template = template;
+        }
+
+        /**
+         * @return The segment type or -1 if unknown.
+         */
+        public int getSegmentType()
+        {
+            return segmentType;
+        }
+
+        /**
+         * @return The decoding procedure or {@code null} if unknown.
+         */
+        public String getProcedure()
+        {
+            return procedure;
+        }
+
+        /**
+         * @return The template or -1 if the procedure has none.
+         */
+        public int getTemplate()
+        {
+            return template;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return segmentType == other.segmentType && template == other.template
+                    && (procedure == null ? other.procedure == null
+                            : procedure.equals(other.procedure));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (segmentType * 31 + template) * 31
+                    + (procedure == null ? 0 : procedure.hashCode());
+        }
+
+        @Override
+        public String toString()
+        {
+            return "segment type " + segmentType + ", " + procedure + ", template " + template;
+        }
+    }
+
+    /**
+     * The counters of a procedure.
+     */
+    public static final class Counters
+    {
+        long decisions;
+        long lpsExchanges;
+        long mpsExchanges;
+        long renormalizations;
+        long bytes;
+        long integers;
+        long symbolIds;
+
+        Counters()
+        {
+        }
+
+        Counters(Counters other)
+        {
+            add(other);
+        }
+
+        void add(Counters other)
+        {
+            decisions += other.decisions;
+            lpsExchanges += other.lpsExchanges;
+            mpsExchanges += other.mpsExchanges;
+            renormalizations += other.renormalizations;
+            bytes += other.bytes;
+            integers += other.integers;
+            symbolIds += other.symbolIds;
+        }
+
+        /**
+         * @return The number of decisions decoded.
+         */
+        public long getDecisions()
+        {
+            return decisions;
+        }
+
+        /**
+         * @return The number of decisions which took the LPS path of the decoder (LPS_EXCHANGE, E.3.2).
+         */
+        public long getLpsExchanges()
+        {
+            return lpsExchanges;
+        }
+
+        /**
+         * @return The number of decisions which took the MPS path with renormalization (MPS_EXCHANGE, E.3.2).
+         */
+        public long getMpsExchanges()
+        {
+            return mpsExchanges;
+        }
+
+        /**
+         * @return The number of bits shifted by renormalization (RENORMD, E.3.3).
+         */
+        public long getRenormalizations()
+        {
+            return renormalizations;
+        }
+
+        /**
+         * @return The number of bytes consumed from the input (BYTEIN, E.3.4).
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * @return The number of integers decoded with the integer decoder, A.2.
+         */
+        public long getIntegers()
+        {
+            return integers;
+        }
+
+        /**
+         * @return The number of symbol IDs decoded with the IAID decoder, A.3.
+         */
+        public long getSymbolIds()
+        {
+            return symbolIds;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "decisions " + decisions + ", LPS exchanges " + lpsExchanges + ", MPS exchanges "
+                    + mpsExchanges + ", renormalizations " + renormalizations + ", bytes " + bytes
+                    + ", integers " + integers + ", symbol IDs " + symbolIds;
+        }
+    }
+
+    /**
+     * The counters of a thread and the counters decisions are currently attributed to.
+     */
+    static final class Recorder
+    {
+        private final Map<Key, Counters> counters = new LinkedHashMap<Key, Counters>();
+
+        private Key key;
+
+        /** The counters of {@link #key}. */
+        Counters current;
+
+        Recorder()
+        {
+            setKey(UNKNOWN);
+        }
+
+        private void clear()
+        {
+            counters.clear();
+            setKey(UNKNOWN);
+        }
+
+        private void setKey(Key key)
+        {
+            this.key = key;
+            Counters c = counters.get(key);
+            if (c == null)
+            {
+                c = new Counters();
+                counters.put(key, c);
+            }
+            current = c;
+        }
+    }
+}
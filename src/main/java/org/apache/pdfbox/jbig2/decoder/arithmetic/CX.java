@@ -17,6 +17,8 @@
 
 package org.apache.pdfbox.jbig2.decoder.arithmetic;
 
+import java.util.Arrays;
+
 /**
  * Arithmetic coding context used during JBIG2 bitstream decoding.
  * 
@@ -26,8 +28,8 @@ package org.apache.pdfbox.jbig2.decoder.arithmetic;
  * 
  * <p><b>Context State:</b></p>
  * <ul>
- *   <li>{@code cx} array: Stores the probability estimate index (0-127) for each context state</li>
- *   <li>{@code mps} array: Stores the most probable symbol (0 or 1) for each context state</li>
+ *   <li>{@code state} array: Stores one byte per context state, the probability estimate index (0-127) in bits 1-7
+ *       and the most probable symbol (0 or 1) in bit 0, so that a single load yields both</li>
  *   <li>{@code index}: Current context index, selected based on the neighborhood pattern
  *       (template-specific arrangement of previously decoded pixels)</li>
  * </ul>
@@ -46,8 +48,7 @@ public final class CX
 {
     private int index;
 
-    private final byte[] cx;
-    private final byte[] mps;
+    private final byte[] state;
 
     /**
      * Creates a new context with the specified number of context states.
@@ -59,26 +60,42 @@ public final class CX
     public CX(int size, int index)
     {
         this.index = index;
-        cx = new byte[size];
-        mps = new byte[size];
+        state = new byte[size];
+    }
+
+    /**
+     * @return The packed state of the current context: the probability estimate index shifted left by one, or'ed
+     *         with the MPS.
+     */
+    int state()
+    {
+        return state[index] & 0xff;
+    }
+
+    /**
+     * @param value - The packed state of the current context, see {@link #state()}.
+     */
+    void setState(int value)
+    {
+        state[index] = (byte) value;
     }
 
     int cx()
     {
-        return cx[index] & 0x7f;
+        return (state[index] & 0xff) >>> 1;
     }
 
     void setCx(int value)
     {
-        cx[index] = (byte) (value & 0x7f);
+        state[index] = (byte) ((value & 0x7f) << 1 | state[index] & 1);
     }
 
     /**
-     * @return The decision. Possible values are {@code 0} or {@code 1}.
+     * @return The more probable symbol of the current context. Possible values are {@code 0} or {@code 1}.
      */
-    byte mps()
+    public byte mps()
     {
-        return mps[index];
+        return (byte) (state[index] & 1);
     }
 
     /**
@@ -86,7 +103,7 @@ public final class CX
      */
     void toggleMps()
     {
-        mps[index] ^= 1;
+        state[index] ^= 1;
     }
 
     int getIndex()
@@ -108,6 +125,38 @@ public final class CX
         this.index = index;
     }
 
+    /**
+     * @return The number of context states.
+     */
+    public int size()
+    {
+        return state.length;
+    }
+
+    /**
+     * Resets all context states to their initial state, as if this object had just been created.
+     * 
+     * @param index the context index
+     */
+    public void reset(int index)
+    {
+        Arrays.fill(state, (byte) 0);
+        this.index = index;
+    }
+
+    /**
+     * Copies the context states and the current index of another {@code CX} of the same size into this object.
+     * 
+     * @param other the context to copy
+     */
+    public void copyFrom(CX other)
+    {
+        if (other.state.length != state.length)
+            throw new IllegalArgumentException("Context sizes differ: " + other.state.length + " != " + state.length);
+        System.arraycopy(other.state, 0, state, 0, state.length);
+        index = other.index;
+    }
+
     /**
      * Creates and returns a deep copy of this {@code CX} object.
      * The new instance will have the same context values, probability estimates,
@@ -120,9 +169,8 @@ public final class CX
      * @return A new {@code CX} object with the same internal state as this object.
      */
     public CX copy() {
-        CX result = new CX(cx.length, index);
-        System.arraycopy(cx, 0, result.cx, 0, cx.length);
-        System.arraycopy(mps, 0, result.mps, 0, mps.length);
+        CX result = new CX(state.length, index);
+        System.arraycopy(state, 0, result.state, 0, state.length);
         return result;
     }
 }
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.pdfbox.jbig2.io.BitReader;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
 import org.apache.pdfbox.jbig2.segments.Table;
 
@@ -43,6 +44,10 @@ public class EncodedTable extends HuffmanTable
 
         SubInputStream sis = table.getSubInputStream();
 
+        // the table lines follow the code table flags, HTLOW and HTHIGH (B.2.1 - B.2.3)
+        sis.seek(9);
+        BitReader reader = new BitReader(sis);
+
         List<Code> codeTable = new ArrayList<Code>();
 
         int prefLen;
@@ -53,8 +58,8 @@ public class EncodedTable extends HuffmanTable
         /* Annex B.2 5) - decode table lines */
         while (curRangeLow < table.getHtHigh())
         {
-            prefLen = (int) sis.readBits(table.getHtPS());
-            rangeLen = (int) sis.readBits(table.getHtRS());
+            prefLen = (int) reader.readBits(table.getHtPS());
+            rangeLen = (int) reader.readBits(table.getHtRS());
             rangeLow = curRangeLow;
 
             codeTable.add(new Code(prefLen, rangeLen, rangeLow, false));
@@ -63,7 +68,7 @@ public class EncodedTable extends HuffmanTable
         }
 
         /* Annex B.2 6) */
-        prefLen = (int) sis.readBits(table.getHtPS());
+        prefLen = (int) reader.readBits(table.getHtPS());
 
         /*
          * Annex B.2 7) - lower range table line
@@ -75,7 +80,7 @@ public class EncodedTable extends HuffmanTable
         codeTable.add(new Code(prefLen, rangeLen, rangeLow, true));
 
         /* Annex B.2 8) */
-        prefLen = (int) sis.readBits(table.getHtPS());
+        prefLen = (int) reader.readBits(table.getHtPS());
 
         /* Annex B.2 9) - upper range table line */
         rangeLen = 32;
@@ -85,7 +90,7 @@ public class EncodedTable extends HuffmanTable
         /* Annex B.2 10) - out-of-band table line */
         if (table.getHtOOB() == 1)
         {
-            prefLen = (int) sis.readBits(table.getHtPS());
+            prefLen = (int) reader.readBits(table.getHtPS());
             codeTable.add(new Code(prefLen, -1, -1, false));
         }
 
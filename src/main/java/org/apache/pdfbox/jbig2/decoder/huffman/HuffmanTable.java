@@ -22,6 +22,8 @@ import java.util.List;
 
 import javax.imageio.stream.ImageInputStream;
 
+import org.apache.pdfbox.jbig2.io.BitReader;
+
 /**
  * This abstract class is the base class for all types of huffman tables.
  */
@@ -55,21 +57,92 @@ public abstract class HuffmanTable
         }
     }
 
+    /** The maximum number of code bits resolved with a single table lookup. */
+    private static final int LOOKUP_BITS = 8;
+
     private InternalNode rootNode = new InternalNode();
 
+    /** The number of bits used as index into {@link #lookupNodes}. */
+    private int lookupBits;
+
+    /** The node reached from the root with the bits of the index, {@code null} for bits that start no code. */
+    private Node[] lookupNodes;
+
+    /** The number of bits consumed to reach the node in {@link #lookupNodes}. */
+    private byte[] lookupLengths;
+
     public void initTree(List<Code> codeTable)
     {
         preprocessCodes(codeTable);
 
+        int maxPrefixLength = 0;
         for (Code c : codeTable)
         {
             rootNode.append(c);
+            maxPrefixLength = Math.max(maxPrefixLength, c.prefixLength);
         }
+
+        initLookup(Math.min(maxPrefixLength, LOOKUP_BITS));
     }
 
+    /**
+     * Resolves the first code bits of all codes in advance: for every combination of the next {@code bits} bits, the
+     * node reached by walking the tree with these bits is stored, stopping early at leaf nodes.
+     */
+    private void initLookup(int bits)
+    {
+        lookupBits = bits;
+        lookupNodes = new Node[1 << bits];
+        lookupLengths = new byte[1 << bits];
+
+        for (int i = 0; i < lookupNodes.length; i++)
+        {
+            Node node = rootNode;
+            int length = 0;
+            while (length < bits && node instanceof InternalNode)
+            {
+                node = ((InternalNode) node).getChild((i >> (bits - 1 - length)) & 1);
+                length++;
+            }
+            lookupNodes[i] = node;
+            lookupLengths[i] = (byte) length;
+        }
+    }
+
+    /**
+     * Decodes the next value from the given stream. The stream is left at the position behind the decoded code.
+     * Decoding many values is faster with {@link #decode(BitReader)}.
+     * 
+     * @param iis - The stream to decode from.
+     * @return The decoded value or {@link Long#MAX_VALUE} for out-of-band.
+     * @throws IOException if an I/O error occurs.
+     */
     public long decode(ImageInputStream iis) throws IOException
     {
-        return rootNode.decode(iis);
+        final BitReader reader = new BitReader(iis);
+        final long value = decode(reader);
+        reader.updateStream();
+        return value;
+    }
+
+    /**
+     * Decodes the next value from the given reader.
+     * 
+     * @param reader - The reader to decode from.
+     * @return The decoded value or {@link Long#MAX_VALUE} for out-of-band.
+     * @throws IOException if an I/O error occurs.
+     */
+    public long decode(BitReader reader) throws IOException
+    {
+        final int index = (int) reader.peek(lookupBits);
+        final Node node = lookupNodes[index];
+        if (node == null)
+        {
+            // not a valid code, let the tree report it as before
+            return rootNode.decode(reader);
+        }
+        reader.skip(lookupLengths[index]);
+        return node.decode(reader);
     }
 
     @Override
@@ -19,9 +19,8 @@ package org.apache.pdfbox.jbig2.decoder.huffman;
 
 import java.io.IOException;
 
-import javax.imageio.stream.ImageInputStream;
-
 import org.apache.pdfbox.jbig2.decoder.huffman.HuffmanTable.Code;
+import org.apache.pdfbox.jbig2.io.BitReader;
 
 /**
  * This class represents an internal node of a huffman tree. It contains two child nodes.
@@ -109,11 +108,20 @@ class InternalNode extends Node
     }
 
     @Override
-    protected long decode(ImageInputStream iis) throws IOException
+    protected long decode(BitReader reader) throws IOException
     {
-        int b = iis.readBit();
+        int b = reader.readBit();
         Node n = b == 0 ? zero : one;
-        return n.decode(iis);
+        return n.decode(reader);
+    }
+
+    /**
+     * @param bit - The next bit of a code.
+     * @return The child node for the given bit, {@code null} if no code continues with this bit.
+     */
+    Node getChild(int bit)
+    {
+        return bit == 0 ? zero : one;
     }
 
     @Override
@@ -19,12 +19,12 @@ package org.apache.pdfbox.jbig2.decoder.huffman;
 
 import java.io.IOException;
 
-import javax.imageio.stream.ImageInputStream;
+import org.apache.pdfbox.jbig2.io.BitReader;
 
 /**
  * Base class for all nodes in a huffman tree.
  */
 abstract class Node
 {
-    protected abstract long decode(ImageInputStream iis) throws IOException;
+    protected abstract long decode(BitReader reader) throws IOException;
 }
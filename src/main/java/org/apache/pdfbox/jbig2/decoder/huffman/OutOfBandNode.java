@@ -19,7 +19,7 @@ package org.apache.pdfbox.jbig2.decoder.huffman;
 
 import java.io.IOException;
 
-import javax.imageio.stream.ImageInputStream;
+import org.apache.pdfbox.jbig2.io.BitReader;
 
 import org.apache.pdfbox.jbig2.decoder.huffman.HuffmanTable.Code;
 
@@ -34,7 +34,7 @@ class OutOfBandNode extends Node
     }
 
     @Override
-    protected long decode(ImageInputStream iis) throws IOException
+    protected long decode(BitReader reader) throws IOException
     {
         return Long.MAX_VALUE;
     }
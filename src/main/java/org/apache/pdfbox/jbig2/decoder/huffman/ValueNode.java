@@ -19,9 +19,8 @@ package org.apache.pdfbox.jbig2.decoder.huffman;
 
 import java.io.IOException;
 
-import javax.imageio.stream.ImageInputStream;
-
 import org.apache.pdfbox.jbig2.decoder.huffman.HuffmanTable.Code;
+import org.apache.pdfbox.jbig2.io.BitReader;
 
 /**
  * Represents a value node in a huffman tree. It is a leaf of a tree.
@@ -40,18 +39,18 @@ class ValueNode extends Node
     }
 
     @Override
-    protected long decode(ImageInputStream iis) throws IOException
+    protected long decode(BitReader reader) throws IOException
     {
 
         if (isLowerRange)
         {
             /* B.4 4) */
-            return (rangeLow - iis.readBits(rangeLen));
+            return (rangeLow - reader.readBits(rangeLen));
         }
         else
         {
             /* B.4 5) */
-            return rangeLow + iis.readBits(rangeLen);
+            return rangeLow + reader.readBits(rangeLen);
         }
     }
 
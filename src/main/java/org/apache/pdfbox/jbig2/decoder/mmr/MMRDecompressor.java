@@ -26,6 +26,8 @@ import java.util.logging.Logger;
 import javax.imageio.stream.ImageInputStream;
 
 import org.apache.pdfbox.jbig2.Bitmap;
+import org.apache.pdfbox.jbig2.RowSink;
+import org.apache.pdfbox.jbig2.decoder.DecodingArena;
 
 /**
  * A decompressor for MMR compression.
@@ -33,9 +35,19 @@ import org.apache.pdfbox.jbig2.Bitmap;
 public class MMRDecompressor
 {
 
+    /** The number of rows pushed into a {@link RowSink} at a time. */
+    private static final int BAND_HEIGHT = 32;
+
     private final int width;
     private final int height;
 
+    /** The changing elements of the line being decoded and of the line above, while lines are decoded. */
+    private int[] currentOffsets;
+    private int[] referenceOffsets;
+
+    /** The amount of changing elements of the line above or {@link MMRConstants#EOF} if the data has ended. */
+    private int refRunLength;
+
     /**
      * A class encapsulating the compressed raw data.
      */
@@ -61,23 +73,36 @@ public class MMRDecompressor
             this.stream = stream;
             offset = 0;
             lastOffset = 1;
+        }
 
+        /**
+         * Takes the buffer from the arena and fills it at the current offset.
+         */
+        private void acquireBuffer(DecodingArena arena)
+        {
             try
             {
                 long len = stream.length();
 
                 len = Math.min(Math.max(MIN_RUN_DATA_BUFFER, len), MAX_RUN_DATA_BUFFER);
 
-                buffer = new byte[(int) len];
-                fillBuffer(0);
+                buffer = arena.acquireBytes((int) len);
+                fillBuffer(offset >> 3);
             }
             catch (IOException e)
             {
-                buffer = new byte[10];
+                arena.release(buffer);
+                buffer = arena.acquireBytes(10);
                 Logger.getLogger(MMRDecompressor.class.getName()).log(Level.WARNING, e.getMessage(), e);
             }
         }
 
+        private void releaseBuffer(DecodingArena arena)
+        {
+            arena.release(buffer);
+            buffer = null;
+        }
+
         private Code uncompressGetCode(Code[] table)
         {
             return uncompressGetCodeLittleEndian(table);
@@ -513,25 +538,98 @@ public class MMRDecompressor
     {
         final Bitmap result = new Bitmap(width, height);
 
-        int[] currentOffsets = new int[width + 5];
-        int[] referenceOffsets = new int[width + 5];
+        final DecodingArena arena = DecodingArena.get();
+        startLines(arena);
+        try
+        {
+            decodeLines(result, 0);
+
+            detectAndSkipEOL();
+
+            data.align();
+        }
+        finally
+        {
+            releaseLines(arena);
+        }
+        return result;
+    }
+
+    /**
+     * Decompresses the data into a band of rows at a time and pushes each band into the given sink. Lines are decoded
+     * from the changing elements of the line above, so no more than the band is kept.
+     * 
+     * @param sink - The sink receiving the rows.
+     * @throws IOException if the sink fails.
+     */
+    public void uncompress(RowSink sink) throws IOException
+    {
+        final Bitmap band = new Bitmap(width, Math.min(height, BAND_HEIGHT));
+
+        final DecodingArena arena = DecodingArena.get();
+        startLines(arena);
+        try
+        {
+            for (int base = 0; base < height; base += band.getHeight())
+            {
+                // lines missing at the end of the data are white
+                decodeLines(band, base);
+                sink.putRows(band, 0, base, Math.min(band.getHeight(), height - base));
+                band.clearRows(0, band.getHeight());
+            }
+
+            detectAndSkipEOL();
+
+            data.align();
+        }
+        finally
+        {
+            releaseLines(arena);
+        }
+    }
+
+    private void startLines(final DecodingArena arena)
+    {
+        data.acquireBuffer(arena);
+        currentOffsets = arena.acquireInts(width + 5);
+        referenceOffsets = arena.acquireInts(width + 5);
         referenceOffsets[0] = width;
-        int refRunLength = 1;
+        refRunLength = 1;
+    }
 
-        int count;
+    private void releaseLines(final DecodingArena arena)
+    {
+        arena.release(currentOffsets);
+        arena.release(referenceOffsets);
+        data.releaseBuffer(arena);
+        currentOffsets = null;
+        referenceOffsets = null;
+    }
 
-        for (int line = 0; line < height; line++)
+    /**
+     * Decodes the lines from the given line on into the rows of the given bitmap, until its last row or the end of the
+     * data is reached.
+     * 
+     * @param result - The bitmap, its first row receives the given line.
+     * @param base - The first line to decode.
+     */
+    private void decodeLines(final Bitmap result, final int base)
+    {
+        final int end = Math.min(height, base + result.getHeight());
+        for (int line = base; line < end && refRunLength != MMRConstants.EOF; line++)
         {
-            count = uncompress2D(data, referenceOffsets, refRunLength, currentOffsets, width);
+            final int count = uncompress2D(data, referenceOffsets, refRunLength, currentOffsets,
+                    width);
 
             if (count == MMRConstants.EOF)
             {
+                refRunLength = count;
                 break;
             }
 
             if (count > 0)
             {
-                fillBitmap(result, line, currentOffsets, count);
+                fillBitmap(result, line - base, currentOffsets, count);
             }
 
             // Swap lines
@@ -540,12 +638,6 @@ public class MMRDecompressor
             currentOffsets = tempOffsets;
             refRunLength = count;
         }
-
-        detectAndSkipEOL();
-
-        data.align();
-
-        return result;
     }
 
     private void detectAndSkipEOL()
@@ -27,6 +27,7 @@ import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.util.BitSet;
 
 import javax.imageio.ImageReadParam;
 
@@ -196,10 +197,17 @@ public class Bitmaps
             // extra care is taken to ensure padding bits are set to zero
             final int bytes = width / 8;
             final int bits = (~0xff >> (width & 7)) & 0xff;
-            final byte[] dst = new byte[height * bitmap.getRowStride()];
+            final int rowStride = bitmap.getRowStride();
+            final byte[] dst = new byte[height * rowStride];
             int idx = 0;
-            for (int row = height; row > 0; row--)
+            for (int row = 0; row < height; row++)
             {
+                if (bitmap.isDuplicateRow(row))
+                {
+                    System.arraycopy(dst, idx - rowStride, dst, idx, rowStride);
+                    idx += rowStride;
+                    continue;
+                }
                 for ( int count = bytes; count>0; count-- ) 
                 {
                     dst[idx] = (byte)~bitmap.getByte(idx++);
@@ -570,6 +578,9 @@ public class Bitmaps
         final int padding = src.getWidth() & 0x07;
         final int toShift = shiftVal2 - padding;
 
+        // the writes below make dst forget its duplicate rows, they are restored afterwards
+        final BitSet duplicateRows = dst.getDuplicateRows();
+
         if ((shiftVal1 != 0 || padding != 0) && 
             !(x1 == 0 && src.getWidth() >= dst.getWidth()))
         {
@@ -578,6 +589,7 @@ public class Bitmaps
             // not needed if both have the same size (or if src larger) and x starts at 0 
             // but needed if start or end not at byte boundary
             blitByPixel(src, dst, x1, y1, combinationOperator);
+            restoreDuplicateRows(dst, duplicateRows, y1, y1 + src.getHeight(), null);
             return;
         }
 
@@ -588,31 +600,239 @@ public class Bitmaps
 
         final int lastLine = Math.min(src.getHeight(), startLine + dst.getHeight());
 
+        // a line combines to the same result as the line before if both its source and its destination rows are
+        // duplicates, such lines are copied instead of combined
+        final int dstRow = dstStartIdx / dst.getRowStride();
+        final int srcRow = srcStartIdx / src.getRowStride();
+        final BitSet copiedLines = duplicateRows != null
+                ? sharedLines(src, srcRow, duplicateRows, dstRow, lastLine - startLine) : null;
+
         if (!useShift)
         {
             blitUnshifted(src, dst, startLine, lastLine, dstStartIdx, srcStartIdx, srcEndIdx,
-                    combinationOperator);
+                    combinationOperator, copiedLines);
         }
         else if (specialCase)
         {
             blitSpecialShifted(src, dst, startLine, lastLine, dstStartIdx, srcStartIdx, srcEndIdx,
-                    toShift, shiftVal1, shiftVal2, combinationOperator);
+                    toShift, shiftVal1, shiftVal2, combinationOperator, copiedLines);
         }
         else
         {
             blitShifted(src, dst, startLine, lastLine, dstStartIdx, srcStartIdx, srcEndIdx, toShift,
-                    shiftVal1, shiftVal2, combinationOperator, padding);
+                    shiftVal1, shiftVal2, combinationOperator, padding, copiedLines);
+        }
+
+        restoreDuplicateRows(dst, duplicateRows, dstRow, dstRow + lastLine - startLine, copiedLines);
+    }
+
+    /**
+     * Replaces pixels of the destination bitmap with rows of the source bitmap, like a
+     * {@link CombinationOperator#REPLACE} blit of these rows. The pixels of the destination left and right of the rows
+     * are kept, parts of the rows outside of the destination are ignored.
+     * <p>
+     * A destination row stays a duplicate of the row above if its source row is a duplicate too and the rows cover
+     * the destination's row or the row was a duplicate before. The first row is never kept as duplicate, its row
+     * above is not part of the source rows.
+     * 
+     * @param src - The bitmap holding the rows.
+     * @param srcRow - The row of {@code src} of the first row.
+     * @param count - The number of rows.
+     * @param dst - The destination bitmap.
+     * @param x - The x coordinate where the rows start in the destination.
+     * @param y - The row of the destination which receives the first row.
+     */
+    public static void replaceRows(Bitmap src, int srcRow, int count, Bitmap dst, int x, int y)
+    {
+        final int left = Math.max(0, x);
+        final int right = Math.min(dst.getWidth(), x + src.getWidth());
+        final int firstLine = Math.max(0, -y);
+        final int endLine = Math.min(count, dst.getHeight() - y);
+        if (left >= right || firstLine >= endLine)
+        {
+            return;
+        }
+
+        // the writes below make dst forget its duplicate rows, they are restored afterwards
+        final BitSet duplicateRows = dst.getDuplicateRows();
+
+        final int srcStride = src.getRowStride();
+        final int dstStride = dst.getRowStride();
+        final int firstByte = left >> 3;
+        final int lastByte = (right - 1) >> 3;
+        final int firstMask = 0xff >>> (left & 7);
+        final int lastMask = 0xff << (7 - ((right - 1) & 7)) & 0xff;
+
+        // byte j of a destination row starts with source pixel 8 * j - x, that is with pixel shift of source byte
+        // j + byteOffset
+        final int shift = -x & 7;
+        final int byteOffset = (-x) >> 3;
+
+        // whole bytes which don't need to be shifted are copied as they are
+        final int copyFrom = shift == 0 && firstMask == 0xff ? firstByte : firstByte + 1;
+        final int copyTo = shift == 0 && lastMask == 0xff ? lastByte + 1 : lastByte;
+
+        for (int line = firstLine; line < endLine; line++)
+        {
+            final int srcStart = (srcRow + line) * srcStride;
+            final int dstStart = (y + line) * dstStride;
+            if (shift == 0 && copyFrom < copyTo)
+            {
+                replaceByte(src, srcStart, dst, dstStart, firstByte, byteOffset, shift,
+                        firstByte == copyFrom ? 0 : firstMask);
+                Bitmap.arraycopy(src, srcStart + copyFrom + byteOffset, dst, dstStart + copyFrom,
+                        copyTo - copyFrom);
+                replaceByte(src, srcStart, dst, dstStart, lastByte, byteOffset, shift,
+                        lastByte < copyTo ? 0 : lastMask);
+            }
+            else
+            {
+                for (int j = firstByte; j <= lastByte; j++)
+                {
+                    replaceByte(src, srcStart, dst, dstStart, j, byteOffset, shift,
+                            (j == firstByte ? firstMask : 0xff) & (j == lastByte ? lastMask : 0xff));
+                }
+            }
+        }
+
+        if (duplicateRows != null)
+        {
+            final boolean coversRows = left == 0 && right == dst.getWidth();
+            for (int line = firstLine; line < endLine; line++)
+            {
+                final boolean duplicate = line > firstLine && src.isDuplicateRow(srcRow + line)
+                        && (coversRows || duplicateRows.get(y + line));
+                duplicateRows.set(y + line, duplicate);
+            }
+            if (y + endLine < dst.getHeight())
+            {
+                // the row below may differ from the replaced row above it now
+                duplicateRows.clear(y + endLine);
+            }
+            dst.setDuplicateRows(duplicateRows);
         }
     }
 
+    /**
+     * Replaces the pixels of a destination byte given by a mask with the source pixels at the same place.
+     * 
+     * @param src - The source bitmap.
+     * @param srcStart - The index of the first byte of the source row.
+     * @param dst - The destination bitmap.
+     * @param dstStart - The index of the first byte of the destination row.
+     * @param j - The byte of the destination row.
+     * @param byteOffset - The source byte holding the first pixel of destination byte 0.
+     * @param shift - The position of that pixel in the source byte.
+     * @param mask - The pixels to replace, nothing is done if it is 0.
+     */
+    private static void replaceByte(Bitmap src, int srcStart, Bitmap dst, int dstStart, int j,
+            int byteOffset, int shift, int mask)
+    {
+        if (mask == 0)
+        {
+            return;
+        }
+        final int srcStride = src.getRowStride();
+        final int k = j + byteOffset;
+        final int high = k >= 0 && k < srcStride ? src.getByteAsInteger(srcStart + k) : 0;
+        final int low = k + 1 >= 0 && k + 1 < srcStride ? src.getByteAsInteger(srcStart + k + 1)
+                : 0;
+        final int value = (high << 8 | low) >>> (8 - shift);
+        final int old = dst.getByteAsInteger(dstStart + j);
+        dst.setByte(dstStart + j, (byte) (old & ~mask | value & mask));
+    }
+
+    /**
+     * Finds the lines of a blit whose source row and destination row are both duplicates of the row above. Line 0 is
+     * never included, its row above is not part of the blit.
+     * 
+     * @param src - The source bitmap.
+     * @param srcRow - The source row of line 0.
+     * @param duplicateRows - The duplicate rows of the destination bitmap.
+     * @param dstRow - The destination row of line 0.
+     * @param lines - The number of lines.
+     * @return The lines or {@code null} if there are none.
+     */
+    private static BitSet sharedLines(Bitmap src, int srcRow, BitSet duplicateRows, int dstRow,
+            int lines)
+    {
+        BitSet sharedLines = null;
+        for (int line = 1; line < lines; line++)
+        {
+            if (src.isDuplicateRow(srcRow + line) && duplicateRows.get(dstRow + line))
+            {
+                if (sharedLines == null)
+                {
+                    sharedLines = new BitSet(lines);
+                }
+                sharedLines.set(line);
+            }
+        }
+        return sharedLines;
+    }
+
+    /**
+     * Gives the destination of a blit back the duplicate rows it had before. Rows from {@code firstRow} up to and
+     * including {@code endRow} may have changed, of these only the copied lines are still known to be duplicates.
+     * 
+     * @param dst - The destination bitmap.
+     * @param duplicateRows - The duplicate rows of {@code dst} before the blit or {@code null}.
+     * @param firstRow - The first destination row of the blit.
+     * @param endRow - The destination row after the last one of the blit.
+     * @param copiedLines - The lines of the blit which were copied from the line before or {@code null}.
+     */
+    private static void restoreDuplicateRows(Bitmap dst, BitSet duplicateRows, int firstRow,
+            int endRow, BitSet copiedLines)
+    {
+        if (duplicateRows == null)
+        {
+            return;
+        }
+        final int from = Math.max(0, firstRow);
+        final int to = Math.min(dst.getHeight(), endRow + 1);
+        if (from < to)
+        {
+            duplicateRows.clear(from, to);
+        }
+        if (copiedLines != null)
+        {
+            for (int line = copiedLines.nextSetBit(0); line >= 0; line = copiedLines.nextSetBit(line + 1))
+            {
+                duplicateRows.set(firstRow + line);
+            }
+        }
+        dst.setDuplicateRows(duplicateRows);
+    }
+
+    /**
+     * Copies the row above to the row containing the given byte.
+     * 
+     * @param bitmap - The bitmap.
+     * @param index - The index of a byte in the row.
+     */
+    private static void copyRowAbove(Bitmap bitmap, int index)
+    {
+        final int rowStride = bitmap.getRowStride();
+        final int rowStart = index - index % rowStride;
+        Bitmap.arraycopy(bitmap, rowStart - rowStride, bitmap, rowStart, rowStride);
+    }
+
     private static void blitUnshifted(Bitmap src, Bitmap dst, int startLine, int lastLine,
-            int dstStartIdx, int srcStartIdx, int srcEndIdx, CombinationOperator op)
+            int dstStartIdx, int srcStartIdx, int srcEndIdx, CombinationOperator op,
+            BitSet copiedLines)
     {
         final int length = srcEndIdx - srcStartIdx + 1; // srcEndIdx is inclusive 
         int srcStartOffset = srcStartIdx;
         int dstStartOffset = dstStartIdx;
-        for ( int lines = lastLine - startLine; lines > 0; lines-- ) 
+        for ( int line = 0; line < lastLine - startLine; line++ ) 
         {
+            if (copiedLines != null && copiedLines.get(line))
+            {
+                copyRowAbove(dst, dstStartOffset);
+                srcStartOffset += src.getRowStride();
+                dstStartOffset += dst.getRowStride();
+                continue;
+            }
             int srcIdx = srcStartOffset;
             int dstIdx = dstStartOffset;
             int count = length;
@@ -641,12 +861,17 @@ public class Bitmaps
 
     private static void blitSpecialShifted(Bitmap src, Bitmap dst, int startLine, int lastLine,
             int dstStartIdx, int srcStartIdx, int srcEndIdx, int toShift, int shiftVal1,
-            int shiftVal2, CombinationOperator op)
+            int shiftVal2, CombinationOperator op, BitSet copiedLines)
     {
 
         for (int dstLine = startLine; dstLine < lastLine; dstLine++, dstStartIdx += dst
                 .getRowStride(), srcStartIdx += src.getRowStride(), srcEndIdx += src.getRowStride())
         {
+            if (copiedLines != null && copiedLines.get(dstLine - startLine))
+            {
+                copyRowAbove(dst, dstStartIdx);
+                continue;
+            }
             short register = 0;
             int dstIdx = dstStartIdx;
 
@@ -670,12 +895,17 @@ public class Bitmaps
 
     private static void blitShifted(Bitmap src, Bitmap dst, int startLine, int lastLine,
             int dstStartIdx, int srcStartIdx, int srcEndIdx, int toShift, int shiftVal1,
-            int shiftVal2, CombinationOperator op, int padding)
+            int shiftVal2, CombinationOperator op, int padding, BitSet copiedLines)
     {
 
         for (int dstLine = startLine; dstLine < lastLine; dstLine++, dstStartIdx += dst
                 .getRowStride(), srcStartIdx += src.getRowStride(), srcEndIdx += src.getRowStride())
         {
+            if (copiedLines != null && copiedLines.get(dstLine - startLine))
+            {
+                copyRowAbove(dst, dstStartIdx);
+                continue;
+            }
             short register = 0;
             int dstIdx = dstStartIdx;
 
@@ -0,0 +1,281 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads bit fields, most significant bit first, through a 64 bit accumulator which is refilled from the bytes of a
+ * stream. Reading bits this way is much cheaper than through {@link ImageInputStream#readBits(int)}, which maintains
+ * the stream position and bit offset for every call. If the stream is a {@link SubInputStream} of in-memory data, the
+ * reader refills the accumulator from that data in place.
+ * <p>
+ * The reader keeps its own position and leaves the stream's position undefined. Call {@link #updateStream()} to
+ * position the stream at the reader's position before others read the stream, and {@link #seek(long)} to continue
+ * reading at a given position afterwards.
+ */
+public class BitReader
+{
+    /** The maximum number of bits which can be peeked at once. */
+    public static final int MAX_PEEK_BITS = 56;
+
+    private final ImageInputStream stream;
+
+    /** The bytes of the stream from position {@link #base} on, if they are in memory, otherwise {@code null}. */
+    private ByteBuffer data;
+
+    /** Receives the bytes read from the stream if they are not in memory. */
+    private final byte[] buffer = new byte[8];
+
+    /** The stream position of index 0 of {@link #data}. */
+    private long base;
+
+    /** The next bits to be read, left aligned. Bits behind the valid bits are 0. */
+    private long accumulator;
+
+    /** The number of valid bits in the accumulator. */
+    private int accumulatorBits;
+
+    /** The stream position of the next byte to be loaded into the accumulator. */
+    private long nextByte;
+
+    /**
+     * Creates a reader which starts reading at the current position and bit offset of the given stream.
+     * 
+     * @param stream - The stream to read from.
+     * @throws IOException if the stream position can't be determined.
+     */
+    public BitReader(ImageInputStream stream) throws IOException
+    {
+        if (stream == null) throw new IllegalArgumentException("Stream must not be null");
+
+        this.stream = stream;
+        final int bitOffset = stream.getBitOffset();
+        seek(stream.getStreamPosition());
+        skip(bitOffset);
+    }
+
+    /**
+     * Returns the next {@code n} bits without consuming them. Bits behind the end of the stream read as 0.
+     * 
+     * @param n - The number of bits, between 0 and {@link #MAX_PEEK_BITS}.
+     * @return The bits as the least significant bits of the result.
+     * @throws IOException if an I/O error occurs.
+     */
+    public long peek(int n) throws IOException
+    {
+        if (n < 0 || n > MAX_PEEK_BITS) throw new IllegalArgumentException("Can't peek " + n + " bits");
+
+        if (n == 0)
+        {
+            return 0;
+        }
+        if (accumulatorBits < n)
+        {
+            refill();
+        }
+        return accumulator >>> (64 - n);
+    }
+
+    /**
+     * Consumes the next {@code n} bits.
+     * 
+     * @param n - The number of bits, 0 or more.
+     * @throws IOException if an I/O error occurs or if the stream ends before.
+     */
+    public void skip(long n) throws IOException
+    {
+        if (n < 0) throw new IllegalArgumentException("Can't skip " + n + " bits");
+
+        if (n <= accumulatorBits)
+        {
+            consume((int) n);
+            return;
+        }
+
+        n -= accumulatorBits;
+        seek(nextByte + (n >> 3));
+        readBits((int) (n & 7));
+    }
+
+    /**
+     * Reads the next {@code n} bits.
+     * 
+     * @param n - The number of bits, between 0 and 64.
+     * @return The bits as the least significant bits of the result.
+     * @throws IOException if an I/O error occurs or if the stream ends before.
+     */
+    public long readBits(int n) throws IOException
+    {
+        if (n < 0 || n > 64) throw new IllegalArgumentException("Can't read " + n + " bits");
+
+        if (n > MAX_PEEK_BITS)
+        {
+            return readBits(n - 32) << 32 | readBits(32);
+        }
+        if (n == 0)
+        {
+            return 0;
+        }
+        if (accumulatorBits < n)
+        {
+            refill();
+            if (accumulatorBits < n)
+            {
+                throw new EOFException();
+            }
+        }
+        final long bits = accumulator >>> (64 - n);
+        consume(n);
+        return bits;
+    }
+
+    /**
+     * Reads the next bit.
+     * 
+     * @return The bit, 0 or 1.
+     * @throws IOException if an I/O error occurs or if the stream has ended.
+     */
+    public int readBit() throws IOException
+    {
+        if (accumulatorBits == 0)
+        {
+            refill();
+            if (accumulatorBits == 0)
+            {
+                throw new EOFException();
+            }
+        }
+        final int bit = (int) (accumulator >>> 63);
+        accumulator <<= 1;
+        accumulatorBits--;
+        return bit;
+    }
+
+    /**
+     * Reads the next 8 bits as a signed byte.
+     * 
+     * @return The byte.
+     * @throws IOException if an I/O error occurs or if the stream ends before.
+     */
+    public byte readByte() throws IOException
+    {
+        return (byte) readBits(8);
+    }
+
+    /**
+     * Skips the remaining bits of the current byte, if any.
+     */
+    public void alignToByte()
+    {
+        consume(accumulatorBits & 7);
+    }
+
+    /**
+     * Returns the position of the byte holding the next bit, with respect to the start of the stream.
+     * 
+     * @return The stream position.
+     */
+    public long getStreamPosition()
+    {
+        return (nextByte * 8 - accumulatorBits) >> 3;
+    }
+
+    /**
+     * Returns the position of the next bit within its byte, 0 being the most significant bit.
+     * 
+     * @return The bit offset.
+     */
+    public int getBitOffset()
+    {
+        return (int) ((nextByte * 8 - accumulatorBits) & 7);
+    }
+
+    /**
+     * Continues reading at the given stream position, with a bit offset of 0.
+     * 
+     * @param position - The stream position.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void seek(long position) throws IOException
+    {
+        stream.seek(position);
+        accumulator = 0;
+        accumulatorBits = 0;
+        nextByte = position;
+        base = position;
+        data = stream instanceof SubInputStream ? ((SubInputStream) stream).remainingBytes() : null;
+    }
+
+    /**
+     * Positions the stream at the reader's position and bit offset, so that it can be read by others.
+     * 
+     * @throws IOException if an I/O error occurs.
+     */
+    public void updateStream() throws IOException
+    {
+        stream.seek(getStreamPosition());
+        stream.setBitOffset(getBitOffset());
+    }
+
+    private void consume(int n)
+    {
+        accumulator <<= n;
+        accumulatorBits -= n;
+    }
+
+    /**
+     * Loads whole bytes into the accumulator until it holds more than {@link #MAX_PEEK_BITS} bits or the stream ends.
+     */
+    private void refill() throws IOException
+    {
+        if (data != null)
+        {
+            final int limit = data.limit();
+            int index = (int) (nextByte - base);
+            while (accumulatorBits <= MAX_PEEK_BITS && index < limit)
+            {
+                accumulator |= (long) (data.get(index++) & 0xff) << (56 - accumulatorBits);
+                accumulatorBits += 8;
+            }
+            nextByte = base + index;
+        }
+        else
+        {
+            stream.seek(nextByte);
+            while (accumulatorBits <= MAX_PEEK_BITS)
+            {
+                final int read = stream.read(buffer, 0, (64 - accumulatorBits) >> 3);
+                if (read <= 0)
+                {
+                    break;
+                }
+                for (int i = 0; i < read; i++)
+                {
+                    accumulator |= (long) (buffer[i] & 0xff) << (56 - accumulatorBits);
+                    accumulatorBits += 8;
+                }
+                nextByte += read;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of read buffers. Buffer sizes are powers of two between {@link #MIN_SIZE} and {@link #MAX_SIZE}, each
+ * size has its own pool. Buffers that are released while the pool of their size is full are left to the garbage
+ * collector, so are buffers that are never released.
+ */
+final class BufferPool
+{
+    static final int MIN_SIZE = 256;
+
+    static final int MAX_SIZE = 64 * 1024;
+
+    /** The maximum amount of bytes that are kept in the pool of one size. */
+    private static final int MAX_POOLED_BYTES = 256 * 1024;
+
+    /** The maximum amount of buffers that are kept in the pool of one size. */
+    private static final int MAX_POOLED_BUFFERS = 32;
+
+    private static final ArrayDeque<byte[]>[] POOLS = createPools();
+
+    private BufferPool()
+    {
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static ArrayDeque<byte[]>[] createPools()
+    {
+        final ArrayDeque<byte[]>[] pools = new ArrayDeque[indexOf(MAX_SIZE) + 1];
+        for (int i = 0; i < pools.length; i++)
+        {
+            pools[i] = new ArrayDeque<byte[]>();
+        }
+        return pools;
+    }
+
+    /**
+     * Rounds the requested size up to the size of a pooled buffer.
+     * 
+     * @param size - The requested size.
+     * @return A power of two between {@link #MIN_SIZE} and {@link #MAX_SIZE}.
+     */
+    static int bufferSize(long size)
+    {
+        if (size <= MIN_SIZE)
+        {
+            return MIN_SIZE;
+        }
+        if (size >= MAX_SIZE)
+        {
+            return MAX_SIZE;
+        }
+        return Integer.highestOneBit((int) size - 1) << 1;
+    }
+
+    /**
+     * Takes a buffer from the pool or allocates a new one.
+     * 
+     * @param size - The size of the buffer, see {@link #bufferSize(long)}.
+     * @return A buffer of the given size.
+     */
+    static byte[] acquire(int size)
+    {
+        final ArrayDeque<byte[]> pool = POOLS[indexOf(size)];
+        synchronized (pool)
+        {
+            final byte[] buffer = pool.pollFirst();
+            if (buffer != null)
+            {
+                return buffer;
+            }
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     * 
+     * @param buffer - A buffer obtained from {@link #acquire(int)}.
+     */
+    static void release(byte[] buffer)
+    {
+        if (buffer.length != bufferSize(buffer.length))
+        {
+            // not a pooled size
+            return;
+        }
+
+        final ArrayDeque<byte[]> pool = POOLS[indexOf(buffer.length)];
+        synchronized (pool)
+        {
+            if (pool.size() < Math.min(MAX_POOLED_BUFFERS, MAX_POOLED_BYTES / buffer.length))
+            {
+                pool.addFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return The number of pooled buffers of the given size.
+     */
+    static int pooled(int size)
+    {
+        final ArrayDeque<byte[]> pool = POOLS[indexOf(size)];
+        synchronized (pool)
+        {
+            return pool.size();
+        }
+    }
+
+    private static int indexOf(int size)
+    {
+        return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link RandomAccessSource} over data that is already in memory. The bytes are neither copied on construction nor
+ * on access, so decoding works directly on the caller's {@code byte[]} or {@link ByteBuffer}.
+ */
+public class ByteBufferSource implements RandomAccessSource
+{
+    /** The data, starting at index 0. Only absolute accessors are used so that the buffer can be shared. */
+    private final ByteBuffer data;
+
+    /**
+     * Creates a source for the whole array.
+     * 
+     * @param data - The source data.
+     */
+    public ByteBufferSource(byte[] data)
+    {
+        this(data, 0, data.length);
+    }
+
+    /**
+     * Creates a source for a part of an array.
+     * 
+     * @param data - The array containing the source data.
+     * @param offset - The index of the first byte of the source data.
+     * @param length - The number of bytes of the source data.
+     */
+    public ByteBufferSource(byte[] data, int offset, int length)
+    {
+        this(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Creates a source for the bytes between the buffer's current position and its limit. Later changes of position or
+     * limit of the given buffer don't affect this source.
+     * 
+     * @param data - The buffer containing the source data.
+     */
+    public ByteBufferSource(ByteBuffer data)
+    {
+        if (data == null)
+            throw new IllegalArgumentException("Buffer must not be null");
+
+        this.data = data.slice();
+    }
+
+    @Override
+    public long length()
+    {
+        return data.capacity();
+    }
+
+    @Override
+    public int read(long position, byte[] b, int off, int len)
+    {
+        if (position >= data.capacity())
+        {
+            return -1;
+        }
+
+        final int toRead = (int) Math.min(len, data.capacity() - position);
+        copy(data, (int) position, b, off, toRead);
+        return toRead;
+    }
+
+    @Override
+    public ByteBuffer slice(long position, long length)
+    {
+        final int start = (int) Math.min(position, data.capacity());
+        final int end = start + (int) Math.min(length, data.capacity() - start);
+
+        final ByteBuffer view = data.duplicate();
+        view.limit(end);
+        view.position(start);
+        return view.slice();
+    }
+
+    /**
+     * Copies bytes out of a buffer without touching its position, so that the buffer can be shared between readers.
+     * 
+     * @param src - The buffer to copy from.
+     * @param index - The index of the first byte in {@code src}.
+     * @param dst - The destination array.
+     * @param off - The start offset in {@code dst}.
+     * @param len - The number of bytes to copy.
+     */
+    static void copy(ByteBuffer src, int index, byte[] dst, int off, int len)
+    {
+        if (src.hasArray())
+        {
+            System.arraycopy(src.array(), src.arrayOffset() + index, dst, off, len);
+        }
+        else
+        {
+            final ByteBuffer view = src.duplicate();
+            view.position(index);
+            view.get(dst, off, len);
+        }
+    }
+}
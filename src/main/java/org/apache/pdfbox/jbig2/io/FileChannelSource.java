@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link RandomAccessSource} that reads a file through positional {@link FileChannel} reads. Positional reads neither
+ * use nor change the channel's position, so views over this source can be read from several threads at once without
+ * any locking. Use {@link MappedFileSource} instead if the file may be mapped into memory.
+ */
+public class FileChannelSource implements RandomAccessSource
+{
+    private final FileChannel channel;
+
+    private final long size;
+
+    /**
+     * Creates a source for the file behind the given channel. The channel is neither repositioned nor closed.
+     * 
+     * @param channel - The channel to read from.
+     * @throws IOException if the size of the file can't be determined.
+     */
+    public FileChannelSource(FileChannel channel) throws IOException
+    {
+        if (channel == null)
+            throw new IllegalArgumentException("Channel must not be null");
+
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    @Override
+    public long length()
+    {
+        return size;
+    }
+
+    @Override
+    public int read(long position, byte[] b, int off, int len) throws IOException
+    {
+        if (position >= size)
+        {
+            return -1;
+        }
+
+        final ByteBuffer dst = ByteBuffer.wrap(b, off, (int) Math.min(len, size - position));
+        while (dst.hasRemaining())
+        {
+            final int read = channel.read(dst, position + dst.position() - off);
+            if (read < 0)
+            {
+                break;
+            }
+        }
+
+        final int read = dst.position() - off;
+        return read > 0 ? read : -1;
+    }
+
+    @Override
+    public ByteBuffer slice(long position, long length)
+    {
+        return null;
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link RandomAccessSource} that maps a file read-only into memory. Files larger than the chunk size (1 GiB by
+ * default) are mapped in several chunks. Reading a segment then costs page faults instead of seek and read calls, which
+ * makes random page access to large multi-page files cheap.
+ * <p>
+ * Views that lie within one chunk are handed out as direct slices of the mapping; only views that cross a chunk
+ * boundary are copied.
+ */
+public class MappedFileSource implements RandomAccessSource
+{
+    /** The default size of a mapped chunk. */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    private final ByteBuffer[] chunks;
+
+    private final int chunkSize;
+
+    private final long size;
+
+    /**
+     * Maps the given file. The file is closed right away, the mapping stays valid until it is garbage collected.
+     * 
+     * @param file - The file to map.
+     * @throws IOException if the file can't be opened or mapped.
+     */
+    public MappedFileSource(File file) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            this.chunkSize = DEFAULT_CHUNK_SIZE;
+            this.size = raf.length();
+            this.chunks = map(raf.getChannel(), size, chunkSize);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps the whole file behind the given channel. The channel is neither repositioned nor closed.
+     * 
+     * @param channel - The channel to map.
+     * @throws IOException if the file can't be mapped.
+     */
+    public MappedFileSource(FileChannel channel) throws IOException
+    {
+        this(channel, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Maps the whole file behind the given channel in chunks of the given size. The channel is neither repositioned
+     * nor closed.
+     * 
+     * @param channel - The channel to map.
+     * @param chunkSize - The maximum size of a single mapping.
+     * @throws IOException if the file can't be mapped.
+     */
+    public MappedFileSource(FileChannel channel, int chunkSize) throws IOException
+    {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be > 0");
+
+        this.chunkSize = chunkSize;
+        this.size = channel.size();
+        this.chunks = map(channel, size, chunkSize);
+    }
+
+    private static ByteBuffer[] map(FileChannel channel, long size, int chunkSize)
+            throws IOException
+    {
+        final ByteBuffer[] chunks = new ByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+        for (int i = 0; i < chunks.length; i++)
+        {
+            final long position = (long) i * chunkSize;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(chunkSize, size - position));
+        }
+        return chunks;
+    }
+
+    @Override
+    public long length()
+    {
+        return size;
+    }
+
+    @Override
+    public int read(long position, byte[] b, int off, int len)
+    {
+        if (position >= size)
+        {
+            return -1;
+        }
+
+        final int toRead = (int) Math.min(len, size - position);
+        int read = 0;
+        while (read < toRead)
+        {
+            final ByteBuffer chunk = chunks[(int) (position / chunkSize)];
+            final int index = (int) (position % chunkSize);
+            final int n = Math.min(toRead - read, chunk.capacity() - index);
+            ByteBufferSource.copy(chunk, index, b, off + read, n);
+            position += n;
+            read += n;
+        }
+        return read;
+    }
+
+    @Override
+    public ByteBuffer slice(long position, long length)
+    {
+        final long start = Math.min(position, size);
+        final long end = start + Math.min(length, size - start);
+
+        final int chunkIndex = (int) (start / chunkSize);
+        if (chunkIndex == chunks.length)
+        {
+            // empty view at the end of the file
+            return ByteBuffer.allocate(0);
+        }
+
+        final long chunkStart = (long) chunkIndex * chunkSize;
+        if (end - chunkStart > chunks[chunkIndex].capacity())
+        {
+            // the view crosses a chunk boundary
+            return null;
+        }
+
+        final ByteBuffer view = chunks[chunkIndex].duplicate();
+        view.limit((int) (end - chunkStart));
+        view.position((int) (start - chunkStart));
+        return view.slice();
+    }
+}
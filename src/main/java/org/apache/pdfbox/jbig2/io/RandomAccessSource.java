@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A source of JBIG2 data that is read at absolute positions. Implementations keep no read position of their own, so
+ * one instance can back any number of {@link SubInputStream} views at the same time.
+ */
+public interface RandomAccessSource
+{
+    /**
+     * @return The number of bytes available from this source.
+     */
+    public long length();
+
+    /**
+     * Reads up to {@code len} bytes starting at the given absolute position.
+     * 
+     * @param position - The absolute position of the first byte to read.
+     * @param b - The buffer into which the data is read.
+     * @param off - The start offset in {@code b}.
+     * @param len - The maximum number of bytes to read.
+     * @return The number of bytes read or {@code -1} if {@code position} is at or beyond the end of the source.
+     * @throws IOException if an underlying IO operation fails
+     */
+    public int read(long position, byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Returns a view of the given range that can be indexed directly, without copying. Index {@code 0} of the returned
+     * buffer corresponds to {@code position}.
+     * 
+     * @param position - The absolute position at which the view starts.
+     * @param length - The length of the view.
+     * @return The view or {@code null} if the range is not directly addressable.
+     */
+    public ByteBuffer slice(long position, long length);
+}
@@ -18,6 +18,7 @@
 package org.apache.pdfbox.jbig2.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageInputStreamImpl;
@@ -26,14 +27,39 @@ import javax.imageio.stream.ImageInputStreamImpl;
  * A wrapper for an {@link ImageInputStream} which is able to provide a view of a specific part of the wrapped stream.
  * Read accesses to the wrapped stream are synchronized, so that users of this stream need to deal with synchronization
  * against other users of the same instance, but not against other users of the wrapped stream.
+ * <p>
+ * A view created from another view doesn't read through it. It wraps the stream or source of its parent directly at
+ * an absolute offset, so a read costs the same at any nesting depth and doesn't move the parent's position. A view of a
+ * stream takes bytes that a parent has buffered already from the parent.
+ * <p>
+ * A view can also be backed by a {@link RandomAccessSource}. Views created from such a view read the same source. If
+ * the source is directly addressable in memory, a view reads the source's bytes in place. Reads from a source are
+ * positional and never lock, views of a source don't share their buffers either. So any number of views of the same
+ * source can be read concurrently; only the views' own positions and buffers are mutable state.
  */
 public class SubInputStream extends ImageInputStreamImpl
 {
 
+    /**
+     * The wrapped stream or {@code null} if this view is backed by a {@link RandomAccessSource}. Never a
+     * {@link SubInputStream}: views of views wrap the stream of their parent.
+     */
     protected final ImageInputStream wrappedStream;
 
     /**
-     * The position in the wrapped stream at which the window starts. Offset is an absolut value.
+     * The source backing this view or {@code null} if this view reads from {@link #wrappedStream}.
+     */
+    private final RandomAccessSource source;
+
+    /**
+     * The bytes of this view if they are directly addressable, index 0 being the first byte of the view, otherwise
+     * {@code null}.
+     */
+    private final ByteBuffer data;
+
+    /**
+     * The position in the wrapped stream (or in the source) at which the window starts. Offset is an absolut value,
+     * also for views of views.
      */
     protected final long offset;
 
@@ -43,9 +69,23 @@ public class SubInputStream extends ImageInputStreamImpl
     protected final long length;
 
     /**
-     * A buffer which is used to improve read performance.
+     * The view this view was created from if both read a wrapped stream, otherwise {@code null}. Its buffered bytes are
+     * shared with this view.
      */
-    private final byte[] buffer = new byte[4096];
+    private final SubInputStream parent;
+
+    /**
+     * The position in {@link #parent} at which this view starts.
+     */
+    private final long parentOffset;
+
+    /**
+     * A buffer which is used to improve read performance. Taken from the {@link BufferPool} on first use and returned
+     * on {@link #close()}, views of in-memory data don't need it. Its size adapts to the view: a view that fits into a
+     * buffer is read with a single fill, larger views start with a small buffer which grows while they are read
+     * sequentially.
+     */
+    private byte[] buffer;
 
     /**
      * Location of the first byte in the buffer with respect to the start of the stream.
@@ -70,9 +110,48 @@ public class SubInputStream extends ImageInputStreamImpl
         if (offset < 0)  throw new IllegalArgumentException("Offset must be >= 0");
         if (length < 0)  throw new IllegalArgumentException("Length must be >= 0");
 
-        this.wrappedStream = iis;
+        if (iis instanceof SubInputStream)
+        {
+            // a view of a view: read the root source or stream directly instead of reading through the parent
+            final SubInputStream parent = (SubInputStream) iis;
+            this.source = parent.source;
+            this.wrappedStream = parent.wrappedStream;
+            this.offset = parent.offset + offset;
+            this.length = Math.max(0, Math.min(length, parent.length - offset));
+            this.data = source != null ? source.slice(this.offset, this.length) : null;
+        }
+        else
+        {
+            this.source = null;
+            this.wrappedStream = iis;
+            this.offset = offset;
+            this.length = length;
+            this.data = null;
+        }
+        this.parent = iis instanceof SubInputStream && source == null ? (SubInputStream) iis : null;
+        this.parentOffset = offset;
+    }
+
+    /**
+     * Construct a new SubInputStream which provides a view of the given source.
+     * 
+     * @param source - The source to be wrapped.
+     * @param offset - The absolute position in the source at which the sub-stream starts.
+     * @param length - The length of the sub-stream.
+     */
+    public SubInputStream(RandomAccessSource source, long offset, long length)
+    {
+        if (source == null) throw new IllegalArgumentException("Source must not be null");
+        if (offset < 0)  throw new IllegalArgumentException("Offset must be >= 0");
+        if (length < 0)  throw new IllegalArgumentException("Length must be >= 0");
+
+        this.wrappedStream = null;
+        this.source = source;
         this.offset = offset;
         this.length = length;
+        this.data = source.slice(offset, length);
+        this.parent = null;
+        this.parentOffset = 0;
     }
 
     @Override
@@ -84,6 +163,11 @@ public class SubInputStream extends ImageInputStreamImpl
             return -1;
         }
 
+        if (data != null)
+        {
+            return streamPos < data.limit() ? 0xff & data.get((int) streamPos++) : -1;
+        }
+
         if (streamPos >= bufferTop || streamPos < bufferBase)
         {
             if (!fillBuffer())
@@ -112,6 +196,30 @@ public class SubInputStream extends ImageInputStreamImpl
             return -1;
         }
 
+        if (source != null)
+        {
+            final int toRead = (int) Math.min(len, length - streamPos);
+            final int read;
+            if (data != null)
+            {
+                read = (int) Math.min(toRead, data.limit() - streamPos);
+                if (read <= 0)
+                {
+                    return -1;
+                }
+                ByteBufferSource.copy(data, (int) streamPos, b, off, read);
+            }
+            else
+            {
+                read = source.read(offset + streamPos, b, off, toRead);
+            }
+            if (read > 0)
+            {
+                streamPos += read;
+            }
+            return read;
+        }
+
         synchronized (wrappedStream)
         {
             long targetPos = streamPos + offset;
@@ -138,6 +246,75 @@ public class SubInputStream extends ImageInputStreamImpl
      * @return Boolean flag. {@code true} if successful, {@code false} if not.
      */
     private boolean fillBuffer() throws IOException
+    {
+        final int size;
+        if (length <= BufferPool.MAX_SIZE)
+        {
+            size = BufferPool.bufferSize(length);
+        }
+        else if (buffer != null && streamPos == bufferTop)
+        {
+            // sequential read, read ahead further
+            size = BufferPool.bufferSize(buffer.length * 2L);
+        }
+        else
+        {
+            size = BufferPool.MIN_SIZE;
+        }
+
+        final int toRead = (int) Math.min(size, length - streamPos);
+
+        if (source != null)
+        {
+            // the buffer isn't shared with other views, fill it without locking
+            checkClosed();
+            acquireBuffer(size);
+            bufferBase = streamPos;
+            final int read = source.read(offset + streamPos, buffer, 0, toRead);
+            bufferTop = bufferBase + Math.max(0, read);
+            return read > 0;
+        }
+
+        synchronized (this)
+        {
+            checkClosed();
+            acquireBuffer(size);
+
+            bufferBase = streamPos;
+            bufferTop = streamPos;
+
+            int read = parent != null ? parent.readBuffered(parentOffset + streamPos, buffer, 0, toRead)
+                    : 0;
+            if (read == 0)
+            {
+                read = readUnbuffered(buffer, toRead);
+            }
+            if (read > 0)
+            {
+                bufferTop = bufferBase + read;
+            }
+            return read > 0;
+        }
+    }
+
+    /**
+     * Makes sure that the buffer has the given size.
+     * 
+     * @param size - The size of the buffer, see {@link BufferPool#bufferSize(long)}.
+     */
+    private void acquireBuffer(int size)
+    {
+        if (buffer == null || buffer.length != size)
+        {
+            if (buffer != null)
+            {
+                BufferPool.release(buffer);
+            }
+            buffer = BufferPool.acquire(size);
+        }
+    }
+
+    private int readUnbuffered(byte[] b, int toRead) throws IOException
     {
         synchronized (wrappedStream)
         {
@@ -147,14 +324,58 @@ public class SubInputStream extends ImageInputStreamImpl
                 wrappedStream.seek(targetPos);
             }
 
-            bufferBase = streamPos;
-            int toRead = (int) Math.min(buffer.length, length - streamPos);
-            int read = wrappedStream.read(buffer, 0, toRead);
-            if (read > 0) {
-                bufferTop = bufferBase + read;
+            return wrappedStream.read(b, 0, toRead);
+        }
+    }
+
+    /**
+     * Copies bytes that this view or one of its parents has buffered already, without reading.
+     * 
+     * @param position - The position in this view of the first byte to copy.
+     * @param b - The destination.
+     * @param off - The start offset in {@code b}.
+     * @param len - The maximum number of bytes to copy.
+     * @return The number of bytes copied, {@code 0} if the byte at {@code position} isn't buffered.
+     */
+    private int readBuffered(long position, byte[] b, int off, int len)
+    {
+        synchronized (this)
+        {
+            if (buffer != null && position >= bufferBase && position < bufferTop)
+            {
+                final int n = (int) Math.min(len, bufferTop - position);
+                System.arraycopy(buffer, (int) (position - bufferBase), b, off, n);
+                return n;
             }
-            return read > 0;
         }
+        return parent != null ? parent.readBuffered(parentOffset + position, b, off, len) : 0;
+    }
+
+    /**
+     * Closes this view and returns its buffer to the pool. The wrapped stream or source is not closed.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        super.close();
+        synchronized (this)
+        {
+            if (buffer != null)
+            {
+                BufferPool.release(buffer);
+                buffer = null;
+                bufferBase = 0;
+                bufferTop = 0;
+            }
+        }
+    }
+
+    /**
+     * @return The size of the current read buffer, {@code 0} if there is none.
+     */
+    synchronized int getBufferSize()
+    {
+        return buffer != null ? buffer.length : 0;
     }
 
     @Override
@@ -163,6 +384,34 @@ public class SubInputStream extends ImageInputStreamImpl
         return length;
     }
 
+    /**
+     * Tells whether this view reads directly addressable memory, i.e. whether its bytes are available through
+     * {@link #remainingBytes()}.
+     *
+     * @return {@code true} if this view is backed by memory.
+     */
+    public boolean isInMemory()
+    {
+        return data != null;
+    }
+
+    /**
+     * Returns the bytes of this view from the current stream position to its end, sharing the memory of the backing
+     * source. The stream position is not changed.
+     *
+     * @return the remaining bytes or {@code null} if this view is not backed by directly addressable memory.
+     */
+    public ByteBuffer remainingBytes()
+    {
+        if (data == null)
+        {
+            return null;
+        }
+        final ByteBuffer remaining = data.duplicate();
+        remaining.position((int) Math.min(streamPos, data.limit()));
+        return remaining.slice();
+    }
+
     /**
      * Skips remaining bits in the current byte.
      */
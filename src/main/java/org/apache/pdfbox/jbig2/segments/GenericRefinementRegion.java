@@ -23,8 +23,10 @@ import java.io.IOException;
 import org.apache.pdfbox.jbig2.Bitmap;
 import org.apache.pdfbox.jbig2.Region;
 import org.apache.pdfbox.jbig2.SegmentHeader;
+import org.apache.pdfbox.jbig2.decoder.DecodingArena;
 import org.apache.pdfbox.jbig2.decoder.GenericRefinementRegionDecodingProcedure;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticDecoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticStatistics;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
 import org.apache.pdfbox.jbig2.err.IntegerMaxValueException;
 import org.apache.pdfbox.jbig2.err.InvalidHeaderValueException;
@@ -208,15 +210,27 @@ public class GenericRefinementRegion implements Region
             arithDecoder = new ArithmeticDecoder(subInputStream);
         }
 
-        if (cx == null) {
-            cx = new CX(8192, 1);
+        // contexts supplied by the caller are not ours to give back
+        final boolean ownsCx = cx == null;
+        if (ownsCx) {
+            cx = DecodingArena.get().acquireCX(8192, 1);
         }
 
-        return GenericRefinementRegionDecodingProcedure.decode(
+        final ArithmeticStatistics.Key statisticsKey = ArithmeticStatistics.enter(
+                segmentHeader != null ? segmentHeader.getSegmentType() : -1,
+                ArithmeticStatistics.REFINEMENT, templateID);
+        final Bitmap regionBitmap = GenericRefinementRegionDecodingProcedure.decode(
                 arithDecoder, cx,
                 regionInfo.getBitmapWidth(), regionInfo.getBitmapHeight(),
                 templateID, isTPGROn, referenceBitmap, referenceDX, referenceDY,
                 grAtX, grAtY);
+        ArithmeticStatistics.exit(statisticsKey);
+
+        if (ownsCx) {
+            DecodingArena.get().release(cx);
+            cx = null;
+        }
+        return regionBitmap;
     }
 
     /**
@@ -18,11 +18,16 @@
 package org.apache.pdfbox.jbig2.segments;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
 
 import org.apache.pdfbox.jbig2.Bitmap;
 import org.apache.pdfbox.jbig2.Region;
+import org.apache.pdfbox.jbig2.RowSink;
 import org.apache.pdfbox.jbig2.SegmentHeader;
+import org.apache.pdfbox.jbig2.decoder.DecodingArena;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticDecoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticStatistics;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
 import org.apache.pdfbox.jbig2.decoder.mmr.MMRDecompressor;
 import org.apache.pdfbox.jbig2.err.InvalidHeaderValueException;
@@ -35,6 +40,23 @@ import org.apache.pdfbox.jbig2.io.SubInputStream;
  */
 public class GenericRegion implements Region
 {
+    /**
+     * For template 0 (without extended templates), 1, 2 and 3 as decoded a word at a time: the bits of the context
+     * kept when it is shifted, and for each line above the bit where its pixels enter the context and how far these
+     * pixels lie ahead of the current pixel, see 6.2.5.3. Template 3 doesn't use the second line above.
+     */
+    private static final int[] WORD_MASK = { 0x7bf7, 0xefb, 0x1bd, 0x1f7 };
+    private static final int[] WORD_SHIFT1 = { 4, 3, 2, 4 };
+    private static final int[] WORD_AHEAD1 = { 3, 3, 2, 2 };
+    private static final int[] WORD_SHIFT2 = { 11, 9, 7, 0 };
+    private static final int[] WORD_AHEAD2 = { 2, 2, 1, 0 };
+
+    /** The bits of the context holding the AT pixels of template 0 (without extended templates), 1, 2 and 3. */
+    private static final int[][] AT_BITS = { { 4, 10, 11, 15 }, { 3 }, { 2 }, { 4 } };
+
+    /** The number of rows pushed into a {@link RowSink} at a time. */
+    private static final int BAND_HEIGHT = 32;
+
     private SubInputStream subInputStream;
     private long dataHeaderOffset;
     private long dataHeaderLength;
@@ -60,17 +82,47 @@ public class GenericRegion implements Region
      */
     private boolean override;
 
+    /**
+     * The overridden AT pixels of template 0 (without extended templates), 1, 2 or 3 if lines are decoded a word at a
+     * time, see {@link #prepareAtRegisters()}: their offsets, the bits of the context they are put into, and whether
+     * they lie in the current line. Unused entries have no bit.
+     */
+    private final int[] atRegisterX = new int[4];
+    private final int[] atRegisterY = new int[4];
+    private final int[] atRegisterBit = new int[4];
+
+    /** The bits of the context which are replaced by overridden AT pixels. */
+    private int atContextMask;
+
     /** Decoded data as pixel values (use row stride/width to wrap line) */
     private Bitmap regionBitmap;
 
     private ArithmeticDecoder arithDecoder;
     private CX cx;
 
+    /** Whether {@link #cx} was taken from the {@link DecodingArena} by this region. */
+    private boolean ownsCx;
+
+    /** Whether this region is a segment of its own, i.e. nobody else shares its decoding state. */
+    private boolean isSegment;
+
+    /** The segment type if this region is a segment of its own and its header is known, otherwise -1. */
+    private int segmentType = -1;
+
     private MMRDecompressor mmrDecompressor;
 
     private boolean useSkip = false;
     private Bitmap hSkip = null;
 
+    /** The bytes of {@link #hSkip} while lines are decoded a word at a time with skipped pixels, otherwise {@code null}. */
+    private ByteBuffer skipWords;
+
+    /**
+     * The line held by the first row of {@link #regionBitmap}. It is 0 unless the region is decoded into a window of
+     * rows for a {@link RowSink}.
+     */
+    private int windowBase;
+
     public GenericRegion()
     {
     }
@@ -164,86 +216,220 @@ public class GenericRegion implements Region
     {
         if (null == regionBitmap)
         {
+            decode(null);
+        }
 
-            if (isMMREncoded)
-            {
+        // if (JBIG2ImageReader.DEBUG)
+        // if (header != null && header.getSegmentNr() == 3)
+        // new Testbild(gbReg.getByteArray(), (int) gbReg.getWidth(), (int) gbReg.getHeight(),
+        // gbReg.getRowStride());
 
-                /*
-                 * MMR DECODER CALL
-                 */
-                if (null == mmrDecompressor)
-                {
-                    mmrDecompressor = new MMRDecompressor(regionInfo.getBitmapWidth(),
-                            regionInfo.getBitmapHeight(),
-                            new SubInputStream(subInputStream, dataOffset, dataLength));
-                }
+        /* 4 */
+        return regionBitmap;
+    }
 
-                /* 6.2.6 */
-                regionBitmap = mmrDecompressor.uncompress();
+    /**
+     * Decodes this region and pushes its rows into the given sink as they are finished, instead of keeping the bitmap
+     * of the region. Only a band of rows and the rows above it which the templates refer to are kept. If the bitmap of
+     * the region has been decoded already, it is pushed as a whole.
+     * 
+     * @param sink - The sink receiving the rows.
+     * @throws IOException if an underlying IO operation or the sink fails.
+     */
+    public void getRegionRows(final RowSink sink) throws IOException
+    {
+        if (null != regionBitmap)
+        {
+            sink.putRows(regionBitmap, 0, 0, regionBitmap.getHeight());
+        }
+        else
+        {
+            decode(sink);
+            regionBitmap = null;
+        }
+    }
+
+    /**
+     * Decodes this region into {@link #regionBitmap}, or into a window of rows which moves down the region if a sink
+     * is given.
+     */
+    private void decode(final RowSink sink) throws IOException
+    {
+        if (isSegment && (arithDecoder != null || mmrDecompressor != null))
+        {
+            // decoding again, e.g. rows after the bitmap: start over from the data
+            subInputStream.seek(dataOffset);
+            arithDecoder = null;
+            mmrDecompressor = null;
+        }
+
+        if (isMMREncoded)
+        {
 
+            /*
+             * MMR DECODER CALL
+             */
+            if (null == mmrDecompressor)
+            {
+                mmrDecompressor = new MMRDecompressor(regionInfo.getBitmapWidth(),
+                        regionInfo.getBitmapHeight(),
+                        new SubInputStream(subInputStream, dataOffset, dataLength));
+            }
+
+            /* 6.2.6 */
+            if (sink == null)
+            {
+                regionBitmap = mmrDecompressor.uncompress();
             }
             else
             {
+                mmrDecompressor.uncompress(sink);
+            }
 
-                /*
-                 * ARITHMETIC DECODER PROCEDURE for generic region segments
-                 */
+        }
+        else
+        {
 
-                updateOverrideFlags();
+            /*
+             * ARITHMETIC DECODER PROCEDURE for generic region segments
+             */
 
-                /* 6.2.5.7 - 1) */
-                int ltp = 0;
+            updateOverrideFlags();
 
-                if (arithDecoder == null)
-                {
-                    arithDecoder = new ArithmeticDecoder(subInputStream);
-                }
-                if (cx == null)
-                {
-                    cx = new CX(65536, 1);
-                }
+            final ArithmeticStatistics.Key statisticsKey = ArithmeticStatistics
+                    .enter(segmentType, ArithmeticStatistics.GENERIC, gbTemplate);
+
+            /* 6.2.5.7 - 1) */
+            int ltp = 0;
+
+            if (arithDecoder == null)
+            {
+                arithDecoder = new ArithmeticDecoder(subInputStream);
+            }
+            if (cx == null)
+            {
+                cx = DecodingArena.get().acquireCX(65536, 1);
+                ownsCx = true;
+            }
 
-                /* 6.2.5.7 - 2) */
-                regionBitmap = new Bitmap(regionInfo.getBitmapWidth(),
-                        regionInfo.getBitmapHeight());
+            final int height = regionInfo.getBitmapHeight();
 
-                final int paddedWidth = (regionBitmap.getWidth() + 7) & -8;
+            // the rows a window keeps above the line when it moves down
+            final int reach = sink == null ? 0 : getReach();
 
-                /* 6.2.5.7 - 3 */
-                for (int line = 0; line < regionBitmap.getHeight(); line++)
+            /* 6.2.5.7 - 2) */
+            regionBitmap = new Bitmap(regionInfo.getBitmapWidth(),
+                    sink == null ? height : Math.min(height, reach + BAND_HEIGHT));
+            windowBase = 0;
+            int sent = 0;
+
+            final int paddedWidth = (regionBitmap.getWidth() + 7) & -8;
+
+            // without extended templates lines are decoded a word at a time, unless AT pixels are overridden
+            // with offsets which don't fit the registers or together with skipped pixels
+            final ByteBuffer words = gbTemplate == 0 && useExtTemplates
+                    || override && (useSkip || !prepareAtRegisters()) ? null
+                            : regionBitmap.asByteBuffer();
+            skipWords = words != null && useSkip ? hSkip.asByteBuffer() : null;
+
+            // typical lines are copies of the line above, downstream consumers process them only once
+            final BitSet typicalLines = isTPGDon ? new BitSet(height) : null;
+
+            /* 6.2.5.7 - 3 */
+            for (int line = 0; line < height; line++)
+            {
+                int row = line - windowBase;
+                if (row == regionBitmap.getHeight())
                 {
+                    putRows(sink, sent, line, typicalLines);
+                    sent = line;
+                    moveWindow(reach);
+                    row = reach;
+                }
 
-                    /* 6.2.5.7 - 3 b) */
-                    if (isTPGDon)
-                    {
-                        ltp ^= decodeSLTP();
-                    }
+                /* 6.2.5.7 - 3 b) */
+                if (isTPGDon)
+                {
+                    ltp ^= decodeSLTP();
+                }
 
-                    /* 6.2.5.7 - 3 c) */
-                    if (ltp == 1)
-                    {
-                        if (line > 0)
-                        {
-                            copyLineAbove(line);
-                        }
-                    }
-                    else
+                /* 6.2.5.7 - 3 c) */
+                if (ltp == 1)
+                {
+                    if (line > 0)
                     {
-                        /* 6.2.5.7 - 3 d) */
-                        decodeLine(line, regionBitmap.getWidth(), regionBitmap.getRowStride(),
-                                paddedWidth);
+                        copyLineAbove(row);
+                        typicalLines.set(line);
                     }
                 }
+                else
+                {
+                    /* 6.2.5.7 - 3 d) */
+                    decodeLine(row, regionBitmap.getWidth(), regionBitmap.getRowStride(),
+                            paddedWidth, words);
+                }
             }
+
+            if (sink != null)
+            {
+                putRows(sink, sent, height, typicalLines);
+            }
+            else
+            {
+                // set last, the lines are decoded through writes which forget duplicate rows
+                regionBitmap.setDuplicateRows(typicalLines);
+            }
+
+            ArithmeticStatistics.exit(statisticsKey);
         }
 
-        // if (JBIG2ImageReader.DEBUG)
-        // if (header != null && header.getSegmentNr() == 3)
-        // new Testbild(gbReg.getByteArray(), (int) gbReg.getWidth(), (int) gbReg.getHeight(),
-        // gbReg.getRowStride());
+        if (isSegment)
+        {
+            release();
+        }
+    }
 
-        /* 4 */
-        return regionBitmap;
+    /**
+     * Pushes the lines from {@code from} up to {@code to} (exclusive) held by the window into the sink. The window
+     * tells which of its rows are typical lines, as the whole bitmap does when decoded without a sink.
+     */
+    private void putRows(final RowSink sink, final int from, final int to,
+            final BitSet typicalLines) throws IOException
+    {
+        if (typicalLines != null)
+        {
+            regionBitmap.setDuplicateRows(
+                    typicalLines.get(windowBase, windowBase + regionBitmap.getHeight()));
+        }
+        sink.putRows(regionBitmap, from - windowBase, from, to - from);
+    }
+
+    /**
+     * Returns how many rows above a line its decoding refers to: two for the nominal templates, and as many as the
+     * AT pixel furthest up.
+     */
+    private int getReach()
+    {
+        int reach = 2;
+        for (int i = 0; gbAtY != null && i < gbAtY.length; i++)
+        {
+            reach = Math.max(reach, -gbAtY[i]);
+        }
+        return reach;
+    }
+
+    /**
+     * Moves the window of rows down, so that the last {@code reach} rows become its first rows and the other rows
+     * are white.
+     */
+    private void moveWindow(final int reach)
+    {
+        final int rowStride = regionBitmap.getRowStride();
+        final int height = regionBitmap.getHeight();
+        Bitmap.arraycopy(regionBitmap, (height - reach) * rowStride, regionBitmap, 0,
+                reach * rowStride);
+        regionBitmap.clearRows(reach, height);
+        windowBase += height - reach;
     }
 
     private int decodeSLTP() throws IOException
@@ -269,8 +455,21 @@ public class GenericRegion implements Region
     }
 
     private void decodeLine(final int lineNumber, final int width, final int rowStride,
-            final int paddedWidth) throws IOException
+            final int paddedWidth, final ByteBuffer words) throws IOException
     {
+        if (words != null)
+        {
+            if (override)
+            {
+                decodeLineWordsAt(lineNumber, width, rowStride, words);
+            }
+            else
+            {
+                decodeLineWords(lineNumber, width, rowStride, words);
+            }
+            return;
+        }
+
         final int byteIndex = regionBitmap.getByteIndex(0, lineNumber);
         final int idx = byteIndex - rowStride;
 
@@ -300,6 +499,338 @@ public class GenericRegion implements Region
         }
     }
 
+    /**
+     * Decodes a line with template 0 (without extended templates), 1, 2 or 3 and nominal AT pixels, 64 pixels at a
+     * time. The pixels of the lines above that enter the context are shifted out of 64-bit registers which are loaded
+     * a word at a time, and the decoded pixels are collected in a register which is stored a word at a time. Skipped
+     * pixels are shifted out of a register of the skip bitmap, they are white and don't reach the decoder.
+     */
+    private void decodeLineWords(final int lineNumber, final int width, final int rowStride,
+            final ByteBuffer words) throws IOException
+    {
+        final int mask = WORD_MASK[gbTemplate];
+        final int shift1 = WORD_SHIFT1[gbTemplate];
+        final int ahead1 = WORD_AHEAD1[gbTemplate];
+        final int shift2 = WORD_SHIFT2[gbTemplate];
+        final int ahead2 = WORD_AHEAD2[gbTemplate];
+
+        final int rowStart = lineNumber * rowStride;
+        final int line1Start = rowStart - rowStride;
+        final int line2Start = line1Start - rowStride;
+        final boolean hasLine1 = lineNumber >= 1;
+        final boolean hasLine2 = lineNumber >= 2 && gbTemplate != 3;
+        final int skipStride = skipWords != null ? hSkip.getRowStride() : 0;
+        final int skipStart = (windowBase + lineNumber) * skipStride;
+
+        long next1 = hasLine1 ? loadWord(words, line1Start, line1Start, rowStart) : 0;
+        long next2 = hasLine2 ? loadWord(words, line2Start, line2Start, line1Start) : 0;
+
+        int context = (int) (next1 >>> 63 - ahead1) << shift1
+                | (int) (next2 >>> 63 - ahead2) << shift2;
+
+        for (int x = 0; x < width; x += 64)
+        {
+            final int offset = x >> 3;
+            final long word1 = next1;
+            final long word2 = next2;
+            next1 = hasLine1 ? loadWord(words, line1Start + offset + 8, line1Start, rowStart) : 0;
+            next2 = hasLine2 ? loadWord(words, line2Start + offset + 8, line2Start, line1Start) : 0;
+
+            // the most significant bits are the pixels entering the context after the current pixel
+            long line1 = word1 << ahead1 + 1 | next1 >>> 63 - ahead1;
+            long line2 = word2 << ahead2 + 1 | next2 >>> 63 - ahead2;
+
+            // the most significant bit tells whether the current pixel is skipped
+            long skip = skipWords != null
+                    ? loadWord(skipWords, skipStart + offset, skipStart, skipStart + skipStride) : 0;
+
+            final int count = width - x < 64 ? width - x : 64;
+            long result = 0;
+            for (int i = 0; i < count;)
+            {
+                if (context == 0 && skip >= 0)
+                {
+                    // the context stays 0 while white pixels are decoded and white pixels enter it
+                    final int maxCount = Math.min(Long.numberOfLeadingZeros(line1 | line2) + 1,
+                            Long.numberOfLeadingZeros(skip));
+                    final int n = decodeWhiteRun(count - i < maxCount ? count - i : maxCount);
+                    if (n > 0)
+                    {
+                        result <<= n;
+                        line1 <<= n - 1;
+                        line2 <<= n - 1;
+                        context = (int) (line1 >>> 63) << shift1 | (int) (line2 >>> 63) << shift2;
+                        line1 <<= 1;
+                        line2 <<= 1;
+                        skip <<= n;
+                        i += n;
+                        continue;
+                    }
+                }
+
+                final int bit;
+                if (skip < 0)
+                {
+                    bit = 0;
+                }
+                else
+                {
+                    cx.setIndex(context);
+                    bit = arithDecoder.decode(cx);
+                }
+                result = result << 1 | bit;
+                context = ((context & mask) << 1) | bit | (int) (line1 >>> 63) << shift1
+                        | (int) (line2 >>> 63) << shift2;
+                line1 <<= 1;
+                line2 <<= 1;
+                skip <<= 1;
+                i++;
+            }
+
+            storeWord(words, rowStart + offset, rowStart + rowStride, result << 64 - count);
+        }
+    }
+
+    /**
+     * Decodes a line like {@link #decodeLineWords(int, int, int, ByteBuffer)}, with overridden AT pixels prepared by
+     * {@link #prepareAtRegisters()}. The context is formed as with nominal AT pixels, and the bits of the overridden
+     * ones are replaced by the pixels shifted out of one more register per AT pixel. These registers are loaded a word
+     * at a time, too. The register of an AT pixel in the current line has the pixels decoded in the meantime put into
+     * it.
+     */
+    private void decodeLineWordsAt(final int lineNumber, final int width, final int rowStride,
+            final ByteBuffer words) throws IOException
+    {
+        final int mask = WORD_MASK[gbTemplate];
+        final int shift1 = WORD_SHIFT1[gbTemplate];
+        final int ahead1 = WORD_AHEAD1[gbTemplate];
+        final int shift2 = WORD_SHIFT2[gbTemplate];
+        final int ahead2 = WORD_AHEAD2[gbTemplate];
+        final int keep = ~atContextMask;
+
+        final int rowStart = lineNumber * rowStride;
+        final int line1Start = rowStart - rowStride;
+        final int line2Start = line1Start - rowStride;
+        final boolean hasLine1 = lineNumber >= 1;
+        final boolean hasLine2 = lineNumber >= 2 && gbTemplate != 3;
+
+        // the line of each AT pixel, negative if it lies above the region or the entry is unused
+        final int atStart0 = atLineStart(0, lineNumber, rowStride);
+        final int atStart1 = atLineStart(1, lineNumber, rowStride);
+        final int atStart2 = atLineStart(2, lineNumber, rowStride);
+        final int atStart3 = atLineStart(3, lineNumber, rowStride);
+        final int atX0 = atRegisterX[0];
+        final int atX1 = atRegisterX[1];
+        final int atX2 = atRegisterX[2];
+        final int atX3 = atRegisterX[3];
+        final int atBit0 = atRegisterBit[0];
+        final int atBit1 = atRegisterBit[1];
+        final int atBit2 = atRegisterBit[2];
+        final int atBit3 = atRegisterBit[3];
+
+        // where a decoded pixel is put into the register of an AT pixel in the current line, 0 for other registers
+        final int put0 = atRegisterY[0] == 0 && atBit0 != 0 ? 1 : 0;
+        final int put1 = atRegisterY[1] == 0 && atBit1 != 0 ? 1 : 0;
+        final int put2 = atRegisterY[2] == 0 && atBit2 != 0 ? 1 : 0;
+        final int put3 = atRegisterY[3] == 0 && atBit3 != 0 ? 1 : 0;
+        final int putShift0 = 64 + atX0;
+        final int putShift1 = 64 + atX1;
+        final int putShift2 = 64 + atX2;
+        final int putShift3 = 64 + atX3;
+
+        long next1 = hasLine1 ? loadWord(words, line1Start, line1Start, rowStart) : 0;
+        long next2 = hasLine2 ? loadWord(words, line2Start, line2Start, line1Start) : 0;
+
+        int context = (int) (next1 >>> 63 - ahead1) << shift1
+                | (int) (next2 >>> 63 - ahead2) << shift2;
+
+        for (int x = 0; x < width; x += 64)
+        {
+            final int offset = x >> 3;
+            final long word1 = next1;
+            final long word2 = next2;
+            next1 = hasLine1 ? loadWord(words, line1Start + offset + 8, line1Start, rowStart) : 0;
+            next2 = hasLine2 ? loadWord(words, line2Start + offset + 8, line2Start, line1Start) : 0;
+
+            long line1 = word1 << ahead1 + 1 | next1 >>> 63 - ahead1;
+            long line2 = word2 << ahead2 + 1 | next2 >>> 63 - ahead2;
+
+            // the most significant bits are the AT pixels of the current pixel
+            long at0 = loadPixels(words, atStart0, rowStride, x + atX0);
+            long at1 = loadPixels(words, atStart1, rowStride, x + atX1);
+            long at2 = loadPixels(words, atStart2, rowStride, x + atX2);
+            long at3 = loadPixels(words, atStart3, rowStride, x + atX3);
+
+            final int count = width - x < 64 ? width - x : 64;
+            long result = 0;
+            for (int i = 0; i < count;)
+            {
+                final int index = context & keep | (int) (at0 >>> 63) << atBit0
+                        | (int) (at1 >>> 63) << atBit1 | (int) (at2 >>> 63) << atBit2
+                        | (int) (at3 >>> 63) << atBit3;
+
+                if ((context | index) == 0)
+                {
+                    // pixels not decoded yet are white in the registers of AT pixels in the current line
+                    final int atCount = Long.numberOfLeadingZeros(at0 | at1 | at2 | at3);
+                    final int lineCount = Long.numberOfLeadingZeros(line1 | line2) + 1;
+                    final int maxCount = Math.min(count - i, Math.min(atCount, lineCount));
+                    final int n = decodeWhiteRun(maxCount);
+                    if (n > 0)
+                    {
+                        result <<= n;
+                        line1 <<= n - 1;
+                        line2 <<= n - 1;
+                        context = (int) (line1 >>> 63) << shift1 | (int) (line2 >>> 63) << shift2;
+                        line1 <<= 1;
+                        line2 <<= 1;
+                        at0 <<= n;
+                        at1 <<= n;
+                        at2 <<= n;
+                        at3 <<= n;
+                        i += n;
+                        continue;
+                    }
+                }
+
+                cx.setIndex(index);
+                final int bit = arithDecoder.decode(cx);
+                result = result << 1 | bit;
+                context = ((context & mask) << 1) | bit | (int) (line1 >>> 63) << shift1
+                        | (int) (line2 >>> 63) << shift2;
+                line1 <<= 1;
+                line2 <<= 1;
+                at0 = at0 << 1 | (long) (bit & put0) << putShift0;
+                at1 = at1 << 1 | (long) (bit & put1) << putShift1;
+                at2 = at2 << 1 | (long) (bit & put2) << putShift2;
+                at3 = at3 << 1 | (long) (bit & put3) << putShift3;
+                i++;
+            }
+
+            storeWord(words, rowStart + offset, rowStart + rowStride, result << 64 - count);
+        }
+    }
+
+    /**
+     * Determines the overridden AT pixels for {@link #decodeLineWordsAt(int, int, int, ByteBuffer)}. Each AT pixel
+     * needs a register: pixels in lines above the current line fit any offset, pixels in the current line must lie at
+     * most 64 pixels to the left.
+     * 
+     * @return {@code true} if the lines can be decoded a word at a time.
+     */
+    private boolean prepareAtRegisters()
+    {
+        final int[] bits = AT_BITS[gbTemplate];
+        atContextMask = 0;
+        for (int i = 0; i < atRegisterBit.length; i++)
+        {
+            atRegisterX[i] = 0;
+            atRegisterY[i] = 0;
+            atRegisterBit[i] = 0;
+            if (i < bits.length && gbAtOverride[i])
+            {
+                final int x = gbAtX[i];
+                final int y = gbAtY[i];
+                if (y > 0 || y == 0 && (x >= 0 || x < -64))
+                {
+                    return false;
+                }
+                atRegisterX[i] = x;
+                atRegisterY[i] = y;
+                atRegisterBit[i] = bits[i];
+                atContextMask |= 1 << bits[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the first byte of the line of the given AT pixel, or -1 if the line lies above the region
+     * or the AT pixel isn't overridden.
+     */
+    private int atLineStart(final int i, final int lineNumber, final int rowStride)
+    {
+        final int line = lineNumber + atRegisterY[i];
+        return atRegisterBit[i] != 0 && line >= 0 ? line * rowStride : -1;
+    }
+
+    /**
+     * Reads 64 pixels of a line starting at the given x coordinate, pixels outside of the line are read as 0.
+     * 
+     * @param words - The bitmap.
+     * @param lineStart - The index of the first byte of the line, negative if all pixels are 0.
+     * @param rowStride - The number of bytes per line.
+     * @param x - The x coordinate of the first pixel, may be negative.
+     * @return The pixels, the first one in the most significant bit.
+     */
+    private static long loadPixels(final ByteBuffer words, final int lineStart, final int rowStride,
+            final int x)
+    {
+        if (lineStart < 0)
+        {
+            return 0;
+        }
+        final int index = lineStart + (x >> 3);
+        final int lineEnd = lineStart + rowStride;
+        final int shift = x & 7;
+        final long word = loadWord(words, index, lineStart, lineEnd);
+        if (shift == 0)
+        {
+            return word;
+        }
+        final int last = index + 8;
+        final int next = last >= lineStart && last < lineEnd ? words.get(last) & 0xff : 0;
+        return word << shift | next >>> 8 - shift;
+    }
+
+    /**
+     * Reads 8 bytes as big-endian word, bytes before {@code start} or at or behind {@code limit} are read as 0.
+     */
+    private static long loadWord(final ByteBuffer words, final int index, final int start,
+            final int limit)
+    {
+        if (index >= start && index + 8 <= limit)
+        {
+            return words.getLong(index);
+        }
+        long word = 0;
+        for (int i = index; i < index + 8; i++)
+        {
+            word = word << 8 | (i >= start && i < limit ? words.get(i) & 0xff : 0);
+        }
+        return word;
+    }
+
+    /**
+     * Writes a word as 8 big-endian bytes, bytes at or behind {@code limit} are not written.
+     */
+    private static void storeWord(final ByteBuffer words, final int index, final int limit,
+            final long word)
+    {
+        if (index + 8 <= limit)
+        {
+            words.putLong(index, word);
+            return;
+        }
+        for (int i = index; i < limit; i++)
+        {
+            words.put(i, (byte) (word >>> 56 - ((i - index) << 3)));
+        }
+    }
+
+    /**
+     * Decodes white pixels at once while the context of the next pixel is 0 and its neighbourhood in the lines above
+     * is white, so that the context stays 0 as long as the decoded pixels are white.
+     * 
+     * @param maxCount - The maximum number of pixels to decode.
+     * @return The number of white pixels decoded.
+     */
+    private int decodeWhiteRun(final int maxCount)
+    {
+        cx.setIndex(0);
+        return cx.mps() == 0 ? arithDecoder.decodeRunOfMPS(cx, maxCount) : 0;
+    }
+
     /**
      * Each pixel gets the value from the corresponding pixel of the row above. Line 0 cannot get copied values (source
      * will be -1, doesn't exist).
@@ -308,14 +839,10 @@ public class GenericRegion implements Region
      */
     private void copyLineAbove(final int lineNumber)
     {
-        int targetByteIndex = lineNumber * regionBitmap.getRowStride();
-        int sourceByteIndex = targetByteIndex - regionBitmap.getRowStride();
+        final int rowStride = regionBitmap.getRowStride();
+        final int targetByteIndex = lineNumber * rowStride;
 
-        for (int i = 0; i < regionBitmap.getRowStride(); i++)
-        {
-            // Get the byte that should be copied and put it into Bitmap
-            regionBitmap.setByte(targetByteIndex++, regionBitmap.getByte(sourceByteIndex++));
-        }
+        Bitmap.arraycopy(regionBitmap, targetByteIndex - rowStride, regionBitmap, targetByteIndex, rowStride);
     }
 
     private void decodeTemplate0a(final int lineNumber, final int width, final int rowStride,
@@ -345,6 +872,8 @@ public class GenericRegion implements Region
             byte result = 0;
             nextByte = x + 8;
             final int minorWidth = width - x > 8 ? 8 : width - x;
+            final int skipByte = useSkip
+                    ? hSkip.getByteAsInteger(hSkip.getByteIndex(x, windowBase + lineNumber)) : 0;
 
             if (lineNumber > 0)
             {
@@ -373,7 +902,7 @@ public class GenericRegion implements Region
                 }
 
                 final int bit;
-                if (useSkip && hSkip.getPixel(x + minorX, lineNumber) == 1)
+                if ((skipByte << minorX & 0x80) != 0)
                 {
                     bit = 0;
                 }
@@ -420,6 +949,8 @@ public class GenericRegion implements Region
             byte result = 0;
             nextByte = x + 8;
             final int minorWidth = width - x > 8 ? 8 : width - x;
+            final int skipByte = useSkip
+                    ? hSkip.getByteAsInteger(hSkip.getByteIndex(x, windowBase + lineNumber)) : 0;
 
             if (lineNumber > 0)
             {
@@ -448,7 +979,7 @@ public class GenericRegion implements Region
                 }
 
                 final int bit;
-                if (useSkip && hSkip.getPixel(x + minorX, lineNumber) == 1)
+                if ((skipByte << minorX & 0x80) != 0)
                 {
                     bit = 0;
                 }
@@ -496,6 +1027,8 @@ public class GenericRegion implements Region
             byte result = 0;
             nextByte = x + 8;
             final int minorWidth = width - x > 8 ? 8 : width - x;
+            final int skipByte = useSkip
+                    ? hSkip.getByteAsInteger(hSkip.getByteIndex(x, windowBase + lineNumber)) : 0;
 
             if (lineNumber >= 1)
             {
@@ -523,7 +1056,7 @@ public class GenericRegion implements Region
                 }
 
                 final int bit;
-                if (useSkip && hSkip.getPixel(x + minorX, lineNumber) == 1)
+                if ((skipByte << minorX & 0x80) != 0)
                 {
                     bit = 0;
                 }
@@ -572,6 +1105,8 @@ public class GenericRegion implements Region
             byte result = 0;
             nextByte = x + 8;
             final int minorWidth = width - x > 8 ? 8 : width - x;
+            final int skipByte = useSkip
+                    ? hSkip.getByteAsInteger(hSkip.getByteIndex(x, windowBase + lineNumber)) : 0;
 
             if (lineNumber >= 1)
             {
@@ -600,7 +1135,7 @@ public class GenericRegion implements Region
                 }
 
                 final int bit;
-                if (useSkip && hSkip.getPixel(x + minorX, lineNumber) == 1)
+                if ((skipByte << minorX & 0x80) != 0)
                 {
                     bit = 0;
                 }
@@ -643,6 +1178,8 @@ public class GenericRegion implements Region
             byte result = 0;
             nextByte = x + 8;
             final int minorWidth = width - x > 8 ? 8 : width - x;
+            final int skipByte = useSkip
+                    ? hSkip.getByteAsInteger(hSkip.getByteIndex(x, windowBase + lineNumber)) : 0;
 
             if (lineNumber >= 1)
             {
@@ -665,7 +1202,7 @@ public class GenericRegion implements Region
                 }
 
                 final int bit;
-                if (useSkip && hSkip.getPixel(x + minorX, lineNumber) == 1)
+                if ((skipByte << minorX & 0x80) != 0)
                 {
                     bit = 0;
                 }
@@ -685,6 +1222,8 @@ public class GenericRegion implements Region
 
     private void updateOverrideFlags()
     {
+        override = false;
+
         if (gbAtX == null || gbAtY == null)
         {
             return;
@@ -1013,7 +1552,10 @@ public class GenericRegion implements Region
         this.regionInfo.setBitmapWidth(symWidth);
         this.regionInfo.setBitmapHeight(hcHeight);
         if (null != cx)
+        {
+            release();
             this.cx = cx;
+        }
         if (null != arithmeticDecoder)
             this.arithDecoder = arithmeticDecoder;
 
@@ -1058,6 +1600,20 @@ public class GenericRegion implements Region
         this.hSkip = hSkip;
     }
 
+    /**
+     * Gives the contexts this region took from the {@link DecodingArena} back. Decoding again starts with fresh
+     * contexts.
+     */
+    void release()
+    {
+        if (ownsCx)
+        {
+            DecodingArena.get().release(cx);
+            cx = null;
+            ownsCx = false;
+        }
+    }
+
     /**
      * Simply sets the memory-critical bitmap of this region to {@code null}.
      */
@@ -1072,6 +1628,8 @@ public class GenericRegion implements Region
     {
         this.subInputStream = sis;
         this.regionInfo = new RegionSegmentInformation(subInputStream);
+        this.isSegment = true;
+        this.segmentType = header != null ? header.getSegmentType() : -1;
         parseHeader();
     }
 
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import org.apache.pdfbox.jbig2.Bitmap;
 import org.apache.pdfbox.jbig2.Region;
 import org.apache.pdfbox.jbig2.SegmentHeader;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticStatistics;
 import org.apache.pdfbox.jbig2.err.InvalidHeaderValueException;
 import org.apache.pdfbox.jbig2.image.Bitmaps;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
@@ -186,7 +187,11 @@ public class HalftoneRegion implements Region
             final int bitsPerValue = (int) Math.ceil(Math.log(patterns.size()) / Math.log(2));
 
             /* 4) */
+            final ArithmeticStatistics.Key statisticsKey = ArithmeticStatistics.enter(
+                    segmentHeader != null ? segmentHeader.getSegmentType() : -1,
+                    ArithmeticStatistics.HALFTONE, hTemplate);
             final int[][] grayScaleValues = grayScaleDecoding(bitsPerValue, hSkip);
+            ArithmeticStatistics.exit(statisticsKey);
 
             /* 5), rendering the pattern, described in 6.6.5.2 */
             renderPattern(grayScaleValues);
@@ -289,6 +294,7 @@ public class HalftoneRegion implements Region
             // 3) b)
             grayScalePlanes = combineGrayScalePlanes(grayScalePlanes, j);
         }
+        genericRegion.release();
 
         // 4)
         return computeGrayScaleValues(grayScalePlanes, bitsPerValue);
@@ -425,22 +431,93 @@ public class HalftoneRegion implements Region
     // 6.6.5.1 Computing HSKIP
     private Bitmap computeHSkip(int hPatternWidth, int hPatternHeight)
     {
-        Bitmap bitmap = new Bitmap(hGridWidth, hGridHeight); // HSKIP is HGW by HGH pixels
+        return computeHSkip(hGridWidth, hGridHeight, hGridX, hGridY, hRegionX, hRegionY,
+                hPatternWidth, hPatternHeight, halftoneRegionBitmap.getWidth(),
+                halftoneRegionBitmap.getHeight());
+    }
+
+    /**
+     * Computes HSKIP a row at a time. The grid position of a pattern, x = (HGX + m * HRY + n * HRX) >> 8 and y = (HGY +
+     * m * HRX - n * HRY) >> 8, is monotonic in n, so the patterns of row m which overlap the region form a single run.
+     * Its bounds are solved for, and the pixels before and after it are set a byte at a time.
+     * 
+     * @return HSKIP, HGW by HGH pixels.
+     */
+    static Bitmap computeHSkip(int hGridWidth, int hGridHeight, int hGridX, int hGridY,
+            int hRegionX, int hRegionY, int hPatternWidth, int hPatternHeight, int hbw, int hbh)
+    {
+        final Bitmap bitmap = new Bitmap(hGridWidth, hGridHeight);
+        final long[] run = new long[2];
         for (int m = 0; m < hGridHeight; ++m)
         {
-            for (int n = 0; n < hGridWidth; ++n)
+            run[0] = 0;
+            run[1] = hGridWidth - 1;
+            // a pattern overlaps the region if x + HPW > 0, x < HBW, y + HPH > 0 and y < HBH
+            narrowRun(run, hGridX + (long) m * hRegionY, hRegionX, 1 - hPatternWidth, hbw - 1);
+            narrowRun(run, hGridY + (long) m * hRegionX, -hRegionY, 1 - hPatternHeight, hbh - 1);
+
+            if (run[0] > run[1])
             {
-                int x = computeX(m, n);
-                int y = computeY(m, n);
-                // HBW = halftoneRegionBitmap.getWidth()
-                // HBH = halftoneRegionBitmap.getHeight()
-                if (x + hPatternWidth <= 0 || x >= halftoneRegionBitmap.getWidth() || y + hPatternHeight <= 0 || y >= halftoneRegionBitmap.getHeight())
-                {
-                    bitmap.setPixel(n, m, (byte) 1);
-                }
-                // else no need to set 0 pixels
+                setPixels(bitmap, m, 0, hGridWidth);
+            }
+            else
+            {
+                setPixels(bitmap, m, 0, (int) run[0]);
+                setPixels(bitmap, m, (int) run[1] + 1, hGridWidth);
             }
         }
         return bitmap;
     }
+
+    /**
+     * Narrows the run of n to those for which min &lt;= (a + n * r) &gt;&gt; 8 &lt;= max. An empty run starts behind
+     * its end.
+     */
+    private static void narrowRun(final long[] run, final long a, final long r, final long min,
+            final long max)
+    {
+        // (v >> 8) >= min is v >= min << 8, and (v >> 8) <= max is v < (max + 1) << 8
+        final long lower = (min << 8) - a;
+        final long upper = ((max + 1) << 8) - 1 - a;
+        if (r == 0)
+        {
+            if (lower > 0 || upper < 0)
+            {
+                run[0] = 1;
+                run[1] = 0;
+            }
+        }
+        else if (r > 0)
+        {
+            run[0] = Math.max(run[0], -floorDiv(-lower, r));
+            run[1] = Math.min(run[1], floorDiv(upper, r));
+        }
+        else
+        {
+            run[0] = Math.max(run[0], -floorDiv(-upper, r));
+            run[1] = Math.min(run[1], floorDiv(lower, r));
+        }
+    }
+
+    private static long floorDiv(final long x, final long y)
+    {
+        final long q = x / y;
+        return x % y != 0 && (x ^ y) < 0 ? q - 1 : q;
+    }
+
+    /**
+     * Sets the pixels from x = from (inclusive) to x = to (exclusive) in row y.
+     */
+    private static void setPixels(final Bitmap bitmap, final int y, final int from, final int to)
+    {
+        for (int x = from; x < to;)
+        {
+            final int index = bitmap.getByteIndex(x, y);
+            final int start = x & 7;
+            final int end = Math.min(8, start + to - x);
+            final int mask = 0xff >> start & 0xff << 8 - end;
+            bitmap.setByte(index, (byte) (bitmap.getByte(index) | mask));
+            x += end - start;
+        }
+    }
 }
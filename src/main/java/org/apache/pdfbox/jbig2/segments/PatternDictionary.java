@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import org.apache.pdfbox.jbig2.Bitmap;
 import org.apache.pdfbox.jbig2.Dictionary;
 import org.apache.pdfbox.jbig2.SegmentHeader;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticStatistics;
 import org.apache.pdfbox.jbig2.err.InvalidHeaderValueException;
 import org.apache.pdfbox.jbig2.image.Bitmaps;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
@@ -36,6 +37,9 @@ public class PatternDictionary implements Dictionary
 
     private SubInputStream subInputStream;
 
+    /** The segment type if the header is known, otherwise -1. */
+    private int segmentType = -1;
+
     /** Segment data structure (only necessary if MMR is used) */
     private long dataHeaderOffset;
     private long dataHeaderLength;
@@ -150,7 +154,11 @@ public class PatternDictionary implements Dictionary
             genericRegion.setParameters(isMMREncoded, dataOffset, dataLength, hdpHeight,
                     (grayMax + 1) * hdpWidth, hdTemplate, false, false, null, gbAtX, gbAtY);
 
+            final ArithmeticStatistics.Key statisticsKey = ArithmeticStatistics.enter(segmentType,
+                    ArithmeticStatistics.PATTERN, hdTemplate);
             final Bitmap collectiveBitmap = genericRegion.getRegionBitmap();
+            genericRegion.release();
+            ArithmeticStatistics.exit(statisticsKey);
 
             // 4)
             extractPatterns(collectiveBitmap);
@@ -208,6 +216,7 @@ public class PatternDictionary implements Dictionary
             throws InvalidHeaderValueException, IOException
     {
         this.subInputStream = sis;
+        this.segmentType = header != null ? header.getSegmentType() : -1;
         parseHeader();
     }
 
@@ -25,9 +25,11 @@ import org.apache.pdfbox.jbig2.Bitmap;
 import org.apache.pdfbox.jbig2.Dictionary;
 import org.apache.pdfbox.jbig2.Region;
 import org.apache.pdfbox.jbig2.SegmentHeader;
+import org.apache.pdfbox.jbig2.decoder.DecodingArena;
 import org.apache.pdfbox.jbig2.decoder.GenericRefinementRegionDecodingProcedure;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticDecoder;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticIntegerDecoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticStatistics;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
 import org.apache.pdfbox.jbig2.decoder.huffman.EncodedTable;
 import org.apache.pdfbox.jbig2.decoder.huffman.HuffmanTable;
@@ -35,6 +37,7 @@ import org.apache.pdfbox.jbig2.decoder.huffman.StandardTables;
 import org.apache.pdfbox.jbig2.err.IntegerMaxValueException;
 import org.apache.pdfbox.jbig2.err.InvalidHeaderValueException;
 import org.apache.pdfbox.jbig2.image.Bitmaps;
+import org.apache.pdfbox.jbig2.io.BitReader;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
 
 /**
@@ -46,6 +49,9 @@ public class SymbolDictionary implements Dictionary
 
     private SubInputStream subInputStream;
 
+    /** Reads the header and the Huffman coded data. */
+    private BitReader bitReader;
+
     /** Symbol dictionary flags, 7.4.2.1.1 */
     private short sdrTemplate;
     private byte sdTemplate;
@@ -107,6 +113,12 @@ public class SymbolDictionary implements Dictionary
     protected CX cxIAID;
     private int sbSymCodeLen;
 
+    /**
+     * The integer coder contexts this dictionary took from the {@link DecodingArena}, given back when the dictionary is
+     * decoded. The bitmap contexts {@link #cx} are given back separately unless they are retained.
+     */
+    private final ArrayList<CX> acquiredContexts = new ArrayList<CX>();
+
     private SymbolDictionary lastSymbolDictionary;
 
     public SymbolDictionary()
@@ -123,11 +135,17 @@ public class SymbolDictionary implements Dictionary
     private void parseHeader()
             throws IOException, InvalidHeaderValueException, IntegerMaxValueException
     {
+        bitReader = new BitReader(subInputStream);
+
         readRegionFlags();
         setAtPixels();
         setRefinementAtPixels();
         readAmountOfExportedSymbols();
         readAmountOfNewSymbols();
+
+        // arithmetic decoding continues with the stream
+        bitReader.updateStream();
+
         setInSyms();
 
         boolean isContextAdopted = false;
@@ -169,46 +187,46 @@ public class SymbolDictionary implements Dictionary
     private void readRegionFlags() throws IOException
     {
         /* Bit 13-15 */
-        subInputStream.readBits(3); // Dirty read... reserved bits must be 0
+        bitReader.readBits(3); // Dirty read... reserved bits must be 0
 
         /* Bit 12 */
-        sdrTemplate = (short) subInputStream.readBit();
+        sdrTemplate = (short) bitReader.readBit();
 
         /* Bit 10-11 */
-        sdTemplate = (byte) (subInputStream.readBits(2) & 0xf);
+        sdTemplate = (byte) (bitReader.readBits(2) & 0xf);
 
         /* Bit 9 */
-        if (subInputStream.readBit() == 1)
+        if (bitReader.readBit() == 1)
         {
             isCodingContextRetained = true;
         }
 
         /* Bit 8 */
-        if (subInputStream.readBit() == 1)
+        if (bitReader.readBit() == 1)
         {
             isCodingContextUsed = true;
         }
 
         /* Bit 7 */
-        sdHuffAggInstanceSelection = (short) subInputStream.readBit();
+        sdHuffAggInstanceSelection = (short) bitReader.readBit();
 
         /* Bit 6 */
-        sdHuffBMSizeSelection = (short) subInputStream.readBit();
+        sdHuffBMSizeSelection = (short) bitReader.readBit();
 
         /* Bit 4-5 */
-        sdHuffDecodeWidthSelection = (short) (subInputStream.readBits(2) & 0xf);
+        sdHuffDecodeWidthSelection = (short) (bitReader.readBits(2) & 0xf);
 
         /* Bit 2-3 */
-        sdHuffDecodeHeightSelection = (short) (subInputStream.readBits(2) & 0xf);
+        sdHuffDecodeHeightSelection = (short) (bitReader.readBits(2) & 0xf);
 
         /* Bit 1 */
-        if (subInputStream.readBit() == 1)
+        if (bitReader.readBit() == 1)
         {
             useRefinementAggregation = true;
         }
 
         /* Bit 0 */
-        if (subInputStream.readBit() == 1)
+        if (bitReader.readBit() == 1)
         {
             isHuffmanEncoded = true;
         }
@@ -244,8 +262,8 @@ public class SymbolDictionary implements Dictionary
 
         for (int i = 0; i < amountOfPixels; i++)
         {
-            sdATX[i] = subInputStream.readByte();
-            sdATY[i] = subInputStream.readByte();
+            sdATX[i] = bitReader.readByte();
+            sdATY[i] = bitReader.readByte();
         }
     }
 
@@ -256,19 +274,19 @@ public class SymbolDictionary implements Dictionary
 
         for (int i = 0; i < amountOfAtPixels; i++)
         {
-            sdrATX[i] = subInputStream.readByte();
-            sdrATY[i] = subInputStream.readByte();
+            sdrATX[i] = bitReader.readByte();
+            sdrATY[i] = bitReader.readByte();
         }
     }
 
     private void readAmountOfExportedSymbols() throws IOException
     {
-        amountOfExportSymbolss = (int) subInputStream.readBits(32); // & 0xffffffff;
+        amountOfExportSymbolss = (int) bitReader.readBits(32); // & 0xffffffff;
     }
 
     private void readAmountOfNewSymbols() throws IOException
     {
-        amountOfNewSymbols = (int) subInputStream.readBits(32); // & 0xffffffff;
+        amountOfNewSymbols = (int) bitReader.readBits(32); // & 0xffffffff;
     }
 
     private void setInSyms()
@@ -293,7 +311,7 @@ public class SymbolDictionary implements Dictionary
      */
     private void adoptRetainedCodingContexts(final SymbolDictionary sd)
     {
-        this.cx = sd.cx.copy();
+        this.cx = DecodingArena.get().copyCX(sd.cx);
     }
     
     /**
@@ -390,6 +408,10 @@ public class SymbolDictionary implements Dictionary
             // decodes all referred segments including lastSymbolDictionary
             setSymbolsArray();
 
+            final ArithmeticStatistics.Key statisticsKey = ArithmeticStatistics.enter(
+                    segmentHeader != null ? segmentHeader.getSegmentType() : -1,
+                    ArithmeticStatistics.SYMBOL, -1);
+
             // Bitmap CX needed for both arithmetic path and huffman+refinement path
             if (!isHuffmanEncoded || useRefinementAggregation) {
                 if (isCodingContextUsed) {
@@ -443,8 +465,9 @@ public class SymbolDictionary implements Dictionary
                      * The latter exit condition guards against pathological cases where a symbol's DW never contains
                      * OOB and thus never terminates.
                      */
-                    if (differenceWidth == Long.MAX_VALUE
-                            || amountOfDecodedSymbols >= amountOfNewSymbols)
+                    final boolean isOOB = isHuffmanEncoded ? differenceWidth == Long.MAX_VALUE
+                            : iDecoder.isOOB();
+                    if (isOOB || amountOfDecodedSymbols >= amountOfNewSymbols)
                     {
                         break;
                     }
@@ -481,19 +504,19 @@ public class SymbolDictionary implements Dictionary
                     final long bmSize;
                     if (sdHuffBMSizeSelection == 0)
                     {
-                        bmSize = StandardTables.getTable(1).decode(subInputStream);
+                        bmSize = StandardTables.getTable(1).decode(bitReader);
                     }
                     else
                     {
                         bmSize = huffDecodeBmSize();
                     }
 
-                    subInputStream.skipBits();
+                    bitReader.alignToByte();
 
                     final Bitmap heightClassCollectiveBitmap = decodeHeightClassCollectiveBitmap(
                             bmSize, heightClassHeight, totalWidth);
 
-                    subInputStream.skipBits();
+                    bitReader.alignToByte();
                     decodeHeightClassBitmap(heightClassCollectiveBitmap,
                             heightClassFirstSymbolIndex, heightClassHeight, newSymbolsWidths);
                 }
@@ -506,11 +529,49 @@ public class SymbolDictionary implements Dictionary
 
             /* 6.5.10 6) - 8) */
             setExportedSymbols(exFlags);
+
+            releaseContexts();
+
+            ArithmeticStatistics.exit(statisticsKey);
         }
 
         return exportSymbols;
     }
 
+    private CX acquireContexts(int size)
+    {
+        final CX contexts = DecodingArena.get().acquireCX(size, 1);
+        acquiredContexts.add(contexts);
+        return contexts;
+    }
+
+    /**
+     * Gives the contexts taken from the {@link DecodingArena} back once all symbols are decoded. The bitmap contexts
+     * are kept if a later dictionary may use them.
+     */
+    private void releaseContexts()
+    {
+        final DecodingArena arena = DecodingArena.get();
+        if (textRegion != null)
+        {
+            textRegion.releaseContexts();
+            textRegion = null;
+        }
+        genericRegion = null;
+        for (CX contexts : acquiredContexts)
+        {
+            arena.release(contexts);
+        }
+        acquiredContexts.clear();
+        cxIADT = cxIADH = cxIADW = cxIAAI = cxIAEX = cxIAID = cxIARDX = cxIARDY = null;
+
+        if (!isCodingContextRetained)
+        {
+            arena.release(cx);
+            cx = null;
+        }
+    }
+
     /**
      * Step 4 (§7.4.2.2): Reset arithmetic coding statistics for the generic
      * region and generic refinement region decoding procedures to zero.
@@ -518,7 +579,7 @@ public class SymbolDictionary implements Dictionary
      */
     private void resetBitmapCodingStatistics()
     {
-        cx = new CX(65536, 1);
+        cx = DecodingArena.get().acquireCX(65536, 1);
     }
 
     /**
@@ -527,17 +588,17 @@ public class SymbolDictionary implements Dictionary
      */
     private void resetIntegerCoderStatistics() throws IOException
     {
-        cxIADT = new CX(512, 1);
-        cxIADH = new CX(512, 1);
-        cxIADW = new CX(512, 1);
-        cxIAAI = new CX(512, 1);
-        cxIAEX = new CX(512, 1);
+        cxIADT = acquireContexts(512);
+        cxIADH = acquireContexts(512);
+        cxIADW = acquireContexts(512);
+        cxIAAI = acquireContexts(512);
+        cxIAEX = acquireContexts(512);
 
         if (useRefinementAggregation)
         {
-            cxIAID  = new CX(1 << sbSymCodeLen, 1);
-            cxIARDX = new CX(512, 1);
-            cxIARDY = new CX(512, 1);
+            cxIAID  = acquireContexts(1 << sbSymCodeLen);
+            cxIARDX = acquireContexts(512);
+            cxIARDY = acquireContexts(512);
         }
 
         arithmeticDecoder = new ArithmeticDecoder(subInputStream);
@@ -578,7 +639,7 @@ public class SymbolDictionary implements Dictionary
         }
         else
         {
-            amountOfRefinementAggregationInstances = iDecoder.decode(cxIAAI);
+            amountOfRefinementAggregationInstances = iDecoder.decodeInt(cxIAAI);
         }
 
         if (amountOfRefinementAggregationInstances > 1)
@@ -598,7 +659,7 @@ public class SymbolDictionary implements Dictionary
     {
         if (sdHuffAggInstanceSelection == 0)
         {
-            return StandardTables.getTable(1).decode(subInputStream);
+            return StandardTables.getTable(1).decode(bitReader);
         }
         else if (sdHuffAggInstanceSelection == 1)
         {
@@ -621,7 +682,7 @@ public class SymbolDictionary implements Dictionary
 
                 aggInstTable = getUserTable(aggregationInstanceNumber);
             }
-            return aggInstTable.decode(subInputStream);
+            return aggInstTable.decode(bitReader);
         }
         return 0;
     }
@@ -632,18 +693,18 @@ public class SymbolDictionary implements Dictionary
     {
         if (textRegion == null)
         {
-            textRegion = new TextRegion(subInputStream, null);
+            textRegion = new TextRegion(subInputStream, bitReader);
 
             textRegion.setContexts(cx, // default context
-                    new CX(512, 1), // IADT
-                    new CX(512, 1), // IAFS
-                    new CX(512, 1), // IADS
-                    new CX(512, 1), // IAIT
+                    acquireContexts(512), // IADT
+                    acquireContexts(512), // IAFS
+                    acquireContexts(512), // IADS
+                    acquireContexts(512), // IAIT
                     cxIAID, // IAID
-                    new CX(512, 1), // IARDW
-                    new CX(512, 1), // IARDH
-                    new CX(512, 1), // IARDX
-                    new CX(512, 1) // IARDY
+                    acquireContexts(512), // IARDW
+                    acquireContexts(512), // IARDH
+                    acquireContexts(512), // IARDX
+                    acquireContexts(512) // IARDY
             );
         }
 
@@ -673,29 +734,30 @@ public class SymbolDictionary implements Dictionary
         if (isHuffmanEncoded)
         {
             /* 2) - 4) */
-            id = (int) subInputStream.readBits(sbSymCodeLen);
-            rdx = (int) StandardTables.getTable(15).decode(subInputStream);
-            rdy = (int) StandardTables.getTable(15).decode(subInputStream);
+            id = (int) bitReader.readBits(sbSymCodeLen);
+            rdx = (int) StandardTables.getTable(15).decode(bitReader);
+            rdy = (int) StandardTables.getTable(15).decode(bitReader);
 
             /* 5) a) */
-            symInRefSize = StandardTables.getTable(1).decode(subInputStream);
+            symInRefSize = StandardTables.getTable(1).decode(bitReader);
 
             /* 5) b) - Skip over remaining bits */
-            subInputStream.skipBits();
+            bitReader.alignToByte();
 
-            streamPosition0 = subInputStream.getStreamPosition();
+            streamPosition0 = bitReader.getStreamPosition();
 
             // 5) c) - Initialize arithmetic decoder for refinement bitmap
             // Note that the same subInputStream is used for both symbol dictionary decoding
             // and refinement bitmap decoding.
+            bitReader.updateStream();
             arithmeticDecoder = new ArithmeticDecoder(subInputStream);
         }
         else
         {
             /* 2) - 4) */
             id = iDecoder.decodeIAID(cxIAID, sbSymCodeLen);
-            rdx = (int) iDecoder.decode(cxIARDX);
-            rdy = (int) iDecoder.decode(cxIARDY);
+            rdx = iDecoder.decodeInt(cxIARDX);
+            rdy = iDecoder.decodeInt(cxIARDY);
         }
 
         /* 6) */
@@ -707,12 +769,12 @@ public class SymbolDictionary implements Dictionary
         if (isHuffmanEncoded)
         {
             // Make sure that the processed bytes are not more than symInRefSize
-            if (subInputStream.getStreamPosition() > streamPosition0 + symInRefSize)
+            if (arithmeticDecoder.getStreamPosition() > streamPosition0 + symInRefSize)
             {
                 throw new IOException("Refinement bitmap bytes expected: " + symInRefSize +
-                        ", bytes read: " + (subInputStream.getStreamPosition() - streamPosition0));
+                        ", bytes read: " + (arithmeticDecoder.getStreamPosition() - streamPosition0));
             }
-            subInputStream.seek(streamPosition0 + symInRefSize); // needed if less
+            bitReader.seek(streamPosition0 + symInRefSize); // needed if less
         }
     }
 
@@ -785,9 +847,9 @@ public class SymbolDictionary implements Dictionary
             switch (sdHuffDecodeWidthSelection)
             {
             case 0:
-                return StandardTables.getTable(2).decode(subInputStream);
+                return StandardTables.getTable(2).decode(bitReader);
             case 1:
-                return StandardTables.getTable(3).decode(subInputStream);
+                return StandardTables.getTable(3).decode(bitReader);
             case 3:
                 if (dwTable == null)
                 {
@@ -800,14 +862,14 @@ public class SymbolDictionary implements Dictionary
                     dwTable = getUserTable(dwNr);
                 }
 
-                return dwTable.decode(subInputStream);
+                return dwTable.decode(bitReader);
             default:
                 break;
             }
         }
         else
         {
-            return iDecoder.decode(cxIADW);
+            return iDecoder.decodeInt(cxIADW);
         }
         return 0;
     }
@@ -820,7 +882,7 @@ public class SymbolDictionary implements Dictionary
         }
         else
         {
-            return iDecoder.decode(cxIADH);
+            return iDecoder.decodeInt(cxIADH);
         }
     }
 
@@ -835,15 +897,15 @@ public class SymbolDictionary implements Dictionary
         switch (sdHuffDecodeHeightSelection)
         {
         case 0:
-            return StandardTables.getTable(4).decode(subInputStream);
+            return StandardTables.getTable(4).decode(bitReader);
         case 1:
-            return StandardTables.getTable(5).decode(subInputStream);
+            return StandardTables.getTable(5).decode(bitReader);
         case 3:
             if (dhTable == null)
             {
                 dhTable = getUserTable(0);
             }
-            return dhTable.decode(subInputStream);
+            return dhTable.decode(bitReader);
         default:
             break;
         }
@@ -860,7 +922,7 @@ public class SymbolDictionary implements Dictionary
 
             for (int i = 0; i < heightClassCollectiveBitmap.getLength(); i++)
             {
-                heightClassCollectiveBitmap.setByte(i, subInputStream.readByte());
+                heightClassCollectiveBitmap.setByte(i, bitReader.readByte());
             }
 
             return heightClassCollectiveBitmap;
@@ -872,10 +934,16 @@ public class SymbolDictionary implements Dictionary
                 genericRegion = new GenericRegion(subInputStream);
             }
 
-            genericRegion.setParameters(true, subInputStream.getStreamPosition(), bmSize,
-                    heightClassHeight, totalWidth);
+            final long streamPosition0 = bitReader.getStreamPosition();
+            genericRegion.setParameters(true, streamPosition0, bmSize, heightClassHeight,
+                    totalWidth);
+
+            final Bitmap heightClassCollectiveBitmap = genericRegion.getRegionBitmap();
+
+            // the MMR decoder reads a view of its own, skip the BMSIZE bytes it consumed
+            bitReader.seek(streamPosition0 + bmSize);
 
-            return genericRegion.getRegionBitmap();
+            return heightClassCollectiveBitmap;
         }
     }
 
@@ -918,9 +986,13 @@ public class SymbolDictionary implements Dictionary
             long exRunLength;
 
             if (isHuffmanEncoded) {
-                exRunLength = StandardTables.getTable(1).decode(subInputStream);
+                exRunLength = StandardTables.getTable(1).decode(bitReader);
             } else {
-                exRunLength = iDecoder.decode(cxIAEX);
+                exRunLength = iDecoder.decodeInt(cxIAEX);
+                if (iDecoder.isOOB())
+                {
+                    throw new InvalidHeaderValueException("Invalid EXRUNLENGTH: OOB");
+                }
             }
 
             if (exRunLength < 0 || exRunLength > total - exIndex) {
@@ -957,7 +1029,7 @@ public class SymbolDictionary implements Dictionary
 
             bmSizeTable = getUserTable(bmNr);
         }
-        return bmSizeTable.decode(subInputStream);
+        return bmSizeTable.decode(bitReader);
     }
 
     /**
@@ -23,6 +23,7 @@ import org.apache.pdfbox.jbig2.SegmentData;
 import org.apache.pdfbox.jbig2.SegmentHeader;
 import org.apache.pdfbox.jbig2.err.IntegerMaxValueException;
 import org.apache.pdfbox.jbig2.err.InvalidHeaderValueException;
+import org.apache.pdfbox.jbig2.io.BitReader;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
 
 /**
@@ -46,26 +47,27 @@ public class Table implements SegmentData
 
     private void parseHeader() throws IOException, InvalidHeaderValueException
     {
+        final BitReader reader = new BitReader(subInputStream);
         int bit;
 
         /* Bit 7 */
-        if ((bit = subInputStream.readBit()) == 1)
+        if ((bit = reader.readBit()) == 1)
         {
             throw new InvalidHeaderValueException(
                     "B.2.1 Code table flags: Bit 7 must be zero, but was " + bit);
         }
 
         /* Bit 4-6 */
-        htRS = (int) ((subInputStream.readBits(3) + 1) & 0xf);
+        htRS = (int) ((reader.readBits(3) + 1) & 0xf);
 
         /* Bit 1-3 */
-        htPS = (int) ((subInputStream.readBits(3) + 1) & 0xf);
+        htPS = (int) ((reader.readBits(3) + 1) & 0xf);
 
         /* Bit 0 */
-        htOutOfBand = subInputStream.readBit();
+        htOutOfBand = reader.readBit();
 
-        htLow = (int) subInputStream.readBits(32); // & 0xffffffff);
-        htHigh = (int) subInputStream.readBits(32); // & 0xffffffff);
+        htLow = (int) reader.readBits(32); // & 0xffffffff);
+        htHigh = (int) reader.readBits(32); // & 0xffffffff);
     }
 
     @Override
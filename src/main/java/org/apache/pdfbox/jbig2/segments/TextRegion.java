@@ -24,9 +24,11 @@ import java.util.List;
 import org.apache.pdfbox.jbig2.Bitmap;
 import org.apache.pdfbox.jbig2.Region;
 import org.apache.pdfbox.jbig2.SegmentHeader;
+import org.apache.pdfbox.jbig2.decoder.DecodingArena;
 import org.apache.pdfbox.jbig2.decoder.GenericRefinementRegionDecodingProcedure;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticDecoder;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticIntegerDecoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticStatistics;
 import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
 import org.apache.pdfbox.jbig2.decoder.huffman.EncodedTable;
 import org.apache.pdfbox.jbig2.decoder.huffman.FixedSizeTable;
@@ -36,6 +38,7 @@ import org.apache.pdfbox.jbig2.decoder.huffman.StandardTables;
 import org.apache.pdfbox.jbig2.err.IntegerMaxValueException;
 import org.apache.pdfbox.jbig2.err.InvalidHeaderValueException;
 import org.apache.pdfbox.jbig2.image.Bitmaps;
+import org.apache.pdfbox.jbig2.io.BitReader;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
 import org.apache.pdfbox.jbig2.util.CombinationOperator;
 
@@ -46,6 +49,9 @@ public class TextRegion implements Region
 {
     private SubInputStream subInputStream;
 
+    /** Reads the header and the Huffman coded data. */
+    private BitReader bitReader;
+
     /** Region segment information field, 7.4.1 */
     private RegionSegmentInformation regionInfo;
 
@@ -100,6 +106,9 @@ public class TextRegion implements Region
     private CX cxIARDY;
     private CX cx;
 
+    /** The contexts this region took from the {@link DecodingArena}, given back by {@link #releaseContexts()}. */
+    private final List<CX> acquiredContexts = new ArrayList<CX>();
+
     /** codeTable including a code to each symbol used in that region */
     private int symbolCodeLength;
     private FixedSizeTable symbolCodeTable;
@@ -126,12 +135,24 @@ public class TextRegion implements Region
         this.segmentHeader = segmentHeader;
     }
 
+    /**
+     * Creates a text region which decodes Huffman coded data with the given reader, e.g. the reader of a symbol
+     * dictionary using refinement/aggregate coding.
+     */
+    TextRegion(SubInputStream subInputStream, BitReader bitReader)
+    {
+        this(subInputStream, (SegmentHeader) null);
+        this.bitReader = bitReader;
+    }
+
     private void parseHeader()
             throws IOException, InvalidHeaderValueException, IntegerMaxValueException
     {
 
         regionInfo.parseHeader();
 
+        bitReader = new BitReader(subInputStream);
+
         readRegionFlags();
 
         if (isHuffmanEncoded)
@@ -148,46 +169,49 @@ public class TextRegion implements Region
 
         computeSymbolCodeLength();
 
+        // arithmetic decoding continues with the stream
+        bitReader.updateStream();
+
         this.checkInput();
     }
 
     private void readRegionFlags() throws IOException
     {
         /* Bit 15 */
-        sbrTemplate = (short) subInputStream.readBit();
+        sbrTemplate = (short) bitReader.readBit();
 
         /* Bit 10-14 */
-        sbdsOffset = (short) (subInputStream.readBits(5));
+        sbdsOffset = (short) (bitReader.readBits(5));
         if (sbdsOffset > 0x0f)
         {
             sbdsOffset -= 0x20;
         }
 
         /* Bit 9 */
-        defaultPixel = (short) subInputStream.readBit();
+        defaultPixel = (short) bitReader.readBit();
 
         /* Bit 7-8 */
         combinationOperator = CombinationOperator
-                .translateOperatorCodeToEnum((short) (subInputStream.readBits(2) & 0x3));
+                .translateOperatorCodeToEnum((short) (bitReader.readBits(2) & 0x3));
 
         /* Bit 6 */
-        isTransposed = (short) subInputStream.readBit();
+        isTransposed = (short) bitReader.readBit();
 
         /* Bit 4-5 */
-        referenceCorner = (short) (subInputStream.readBits(2) & 0x3);
+        referenceCorner = (short) (bitReader.readBits(2) & 0x3);
 
         /* Bit 2-3 */
-        logSBStrips = (short) (subInputStream.readBits(2) & 0x3);
+        logSBStrips = (short) (bitReader.readBits(2) & 0x3);
         sbStrips = (1 << logSBStrips);
 
         /* Bit 1 */
-        if (subInputStream.readBit() == 1)
+        if (bitReader.readBit() == 1)
         {
             useRefinement = true;
         }
 
         /* Bit 0 */
-        if (subInputStream.readBit() == 1)
+        if (bitReader.readBit() == 1)
         {
             isHuffmanEncoded = true;
         }
@@ -196,31 +220,31 @@ public class TextRegion implements Region
     private void readHuffmanFlags() throws IOException
     {
         /* Bit 15 */
-        subInputStream.readBit(); // Dirty read...
+        bitReader.readBit(); // Dirty read...
 
         /* Bit 14 */
-        sbHuffRSize = (short) subInputStream.readBit();
+        sbHuffRSize = (short) bitReader.readBit();
 
         /* Bit 12-13 */
-        sbHuffRDY = (short) (subInputStream.readBits(2) & 0xf);
+        sbHuffRDY = (short) (bitReader.readBits(2) & 0xf);
 
         /* Bit 10-11 */
-        sbHuffRDX = (short) (subInputStream.readBits(2) & 0xf);
+        sbHuffRDX = (short) (bitReader.readBits(2) & 0xf);
 
         /* Bit 8-9 */
-        sbHuffRDHeight = (short) (subInputStream.readBits(2) & 0xf);
+        sbHuffRDHeight = (short) (bitReader.readBits(2) & 0xf);
 
         /* Bit 6-7 */
-        sbHuffRDWidth = (short) (subInputStream.readBits(2) & 0xf);
+        sbHuffRDWidth = (short) (bitReader.readBits(2) & 0xf);
 
         /* Bit 4-5 */
-        sbHuffDT = (short) (subInputStream.readBits(2) & 0xf);
+        sbHuffDT = (short) (bitReader.readBits(2) & 0xf);
 
         /* Bit 2-3 */
-        sbHuffDS = (short) (subInputStream.readBits(2) & 0xf);
+        sbHuffDS = (short) (bitReader.readBits(2) & 0xf);
 
         /* Bit 0-1 */
-        sbHuffFS = (short) (subInputStream.readBits(2) & 0xf);
+        sbHuffFS = (short) (bitReader.readBits(2) & 0xf);
     }
 
     private void readUseRefinement() throws IOException
@@ -231,22 +255,22 @@ public class TextRegion implements Region
             sbrATY = new short[2];
 
             /* Byte 0 */
-            sbrATX[0] = subInputStream.readByte();
+            sbrATX[0] = bitReader.readByte();
 
             /* Byte 1 */
-            sbrATY[0] = subInputStream.readByte();
+            sbrATY[0] = bitReader.readByte();
 
             /* Byte 2 */
-            sbrATX[1] = subInputStream.readByte();
+            sbrATX[1] = bitReader.readByte();
 
             /* Byte 3 */
-            sbrATY[1] = subInputStream.readByte();
+            sbrATY[1] = bitReader.readByte();
         }
     }
 
     private void readAmountOfSymbolInstances() throws IOException
     {
-        amountOfSymbolInstances = subInputStream.readBits(32) & 0xffffffff;
+        amountOfSymbolInstances = bitReader.readBits(32) & 0xffffffff;
 
         // sanity check: don't decode more than one symbol per pixel
         long pixels = regionInfo.getBitmapWidth() * (long) regionInfo.getBitmapHeight();
@@ -324,15 +348,29 @@ public class TextRegion implements Region
     public Bitmap getRegionBitmap()
             throws IOException, IntegerMaxValueException, InvalidHeaderValueException
     {
+        final ArithmeticStatistics.Key statisticsKey = ArithmeticStatistics.enter(
+                segmentHeader != null ? segmentHeader.getSegmentType() : -1,
+                ArithmeticStatistics.TEXT, -1);
 
         if (!isHuffmanEncoded)
         {
             setCodingStatistics();
         }
+        else if (bitReader == null)
+        {
+            bitReader = new BitReader(subInputStream);
+        }
 
         createRegionBitmap();
         decodeSymbolInstances();
 
+        ArithmeticStatistics.exit(statisticsKey);
+
+        if (segmentHeader != null)
+        {
+            releaseContexts();
+        }
+
         /* 4) */
         return regionBitmap;
     }
@@ -340,34 +378,34 @@ public class TextRegion implements Region
     private void setCodingStatistics() throws IOException
     {
         if (cxIADT == null)
-            cxIADT = new CX(512, 1);
+            cxIADT = acquireContexts(512);
 
         if (cxIAFS == null)
-            cxIAFS = new CX(512, 1);
+            cxIAFS = acquireContexts(512);
 
         if (cxIADS == null)
-            cxIADS = new CX(512, 1);
+            cxIADS = acquireContexts(512);
 
         if (cxIAIT == null)
-            cxIAIT = new CX(512, 1);
+            cxIAIT = acquireContexts(512);
 
         if (cxIARI == null)
-            cxIARI = new CX(512, 1);
+            cxIARI = acquireContexts(512);
 
         if (cxIARDW == null)
-            cxIARDW = new CX(512, 1);
+            cxIARDW = acquireContexts(512);
 
         if (cxIARDH == null)
-            cxIARDH = new CX(512, 1);
+            cxIARDH = acquireContexts(512);
 
         if (cxIAID == null)
-            cxIAID = new CX(1 << symbolCodeLength, 1);
+            cxIAID = acquireContexts(1 << symbolCodeLength);
 
         if (cxIARDX == null)
-            cxIARDX = new CX(512, 1);
+            cxIARDX = acquireContexts(512);
 
         if (cxIARDY == null)
-            cxIARDY = new CX(512, 1);
+            cxIARDY = acquireContexts(512);
 
         if (arithmeticDecoder == null)
             arithmeticDecoder = new ArithmeticDecoder(subInputStream);
@@ -418,16 +456,16 @@ public class TextRegion implements Region
 
                     table = getUserTable(dtNr);
                 }
-                stripT = table.decode(subInputStream);
+                stripT = table.decode(bitReader);
             }
             else
             {
-                stripT = StandardTables.getTable(11 + sbHuffDT).decode(subInputStream);
+                stripT = StandardTables.getTable(11 + sbHuffDT).decode(bitReader);
             }
         }
         else
         {
-            stripT = integerDecoder.decode(cxIADT);
+            stripT = integerDecoder.decodeInt(cxIADT);
         }
 
         return stripT * -(sbStrips);
@@ -480,7 +518,9 @@ public class TextRegion implements Region
                      * and thus never terminates as illustrated in
                      * https://bugs.chromium.org/p/chromium/issues/detail?id=450971 case pdfium-loop2.pdf.
                      */
-                    if (idS == Long.MAX_VALUE || instanceCounter >= amountOfSymbolInstances)
+                    final boolean isOOB = isHuffmanEncoded ? idS == Long.MAX_VALUE
+                            : integerDecoder.isOOB();
+                    if (isOOB || instanceCounter >= amountOfSymbolInstances)
                         break;
 
                     currentS += (idS + sbdsOffset);
@@ -515,16 +555,16 @@ public class TextRegion implements Region
         {
             if (sbHuffDT == 3)
             {
-                dT = table.decode(subInputStream);
+                dT = table.decode(bitReader);
             }
             else
             {
-                dT = StandardTables.getTable(11 + sbHuffDT).decode(subInputStream);
+                dT = StandardTables.getTable(11 + sbHuffDT).decode(bitReader);
             }
         }
         else
         {
-            dT = integerDecoder.decode(cxIADT);
+            dT = integerDecoder.decodeInt(cxIADT);
         }
 
         return (dT * sbStrips);
@@ -540,16 +580,16 @@ public class TextRegion implements Region
                 {
                     fsTable = getUserTable(0);
                 }
-                return fsTable.decode(subInputStream);
+                return fsTable.decode(bitReader);
             }
             else
             {
-                return StandardTables.getTable(6 + sbHuffFS).decode(subInputStream);
+                return StandardTables.getTable(6 + sbHuffFS).decode(bitReader);
             }
         }
         else
         {
-            return integerDecoder.decode(cxIAFS);
+            return integerDecoder.decodeInt(cxIAFS);
         }
     }
 
@@ -570,17 +610,17 @@ public class TextRegion implements Region
 
                     dsTable = getUserTable(dsNr);
                 }
-                return dsTable.decode(subInputStream);
+                return dsTable.decode(bitReader);
 
             }
             else
             {
-                return StandardTables.getTable(8 + sbHuffDS).decode(subInputStream);
+                return StandardTables.getTable(8 + sbHuffDS).decode(bitReader);
             }
         }
         else
         {
-            return integerDecoder.decode(cxIADS);
+            return integerDecoder.decodeInt(cxIADS);
         }
     }
 
@@ -590,11 +630,11 @@ public class TextRegion implements Region
         {
             if (isHuffmanEncoded)
             {
-                return subInputStream.readBits(logSBStrips);
+                return bitReader.readBits(logSBStrips);
             }
             else
             {
-                return integerDecoder.decode(cxIAIT);
+                return integerDecoder.decodeInt(cxIAIT);
             }
         }
 
@@ -607,10 +647,10 @@ public class TextRegion implements Region
         {
             if (symbolCodeTable == null)
             {
-                return subInputStream.readBits(symbolCodeLength);
+                return bitReader.readBits(symbolCodeLength);
             }
 
-            return symbolCodeTable.decode(subInputStream);
+            return symbolCodeTable.decode(bitReader);
         }
         else
         {
@@ -624,11 +664,11 @@ public class TextRegion implements Region
         {
             if (isHuffmanEncoded)
             {
-                return subInputStream.readBit();
+                return bitReader.readBit();
             }
             else
             {
-                return integerDecoder.decode(cxIARI);
+                return integerDecoder.decodeInt(cxIARI);
             }
         }
         return 0;
@@ -652,12 +692,13 @@ public class TextRegion implements Region
 
             /* 5) */
             long symInRefSize = 0;
+            long streamPosition0 = 0;
             if (isHuffmanEncoded)
             {
                 symInRefSize = decodeSymInRefSize();
-                subInputStream.skipBits();
+                bitReader.alignToByte();
+                streamPosition0 = bitReader.getStreamPosition();
             }
-            long streamPosition0 = subInputStream.getStreamPosition();
 
             /* 6) */
             final Bitmap ibo = symbols.get((int) id);
@@ -667,12 +708,15 @@ public class TextRegion implements Region
             final int genericRegionReferenceDX = (int) ((rdw >> 1) + rdx);
             final int genericRegionReferenceDY = (int) ((rdh >> 1) + rdy);
 
-            if (arithmeticDecoder == null) {
+            if (isHuffmanEncoded)
+            {
+                // each refinement bitmap is coded separately, starting at streamPosition0
+                bitReader.updateStream();
                 arithmeticDecoder = new ArithmeticDecoder(subInputStream);
             }
 
             if (cx == null) {
-                cx = new CX(65536, 1);
+                cx = acquireContexts(65536);
             }
 
             ib = GenericRefinementRegionDecodingProcedure.decode(
@@ -686,12 +730,12 @@ public class TextRegion implements Region
             if (isHuffmanEncoded)
             {
                 // Make sure that the processed bytes are not more than symInRefSize
-                if (subInputStream.getStreamPosition() > streamPosition0 + symInRefSize)
+                if (arithmeticDecoder.getStreamPosition() > streamPosition0 + symInRefSize)
                 {
                     throw new IOException("Refinement bitmap bytes expected: " + symInRefSize +
-                            ", bytes read: " + (subInputStream.getStreamPosition() - streamPosition0));
+                            ", bytes read: " + (arithmeticDecoder.getStreamPosition() - streamPosition0));
                 }
-                subInputStream.seek(streamPosition0 + symInRefSize); // needed if less
+                bitReader.seek(streamPosition0 + symInRefSize); // needed if less
             }
         }
         return ib;
@@ -724,17 +768,17 @@ public class TextRegion implements Region
 
                     rdwTable = getUserTable(rdwNr);
                 }
-                return rdwTable.decode(subInputStream);
+                return rdwTable.decode(bitReader);
 
             }
             else
             {
-                return StandardTables.getTable(14 + sbHuffRDWidth).decode(subInputStream);
+                return StandardTables.getTable(14 + sbHuffRDWidth).decode(bitReader);
             }
         }
         else
         {
-            return integerDecoder.decode(cxIARDW);
+            return integerDecoder.decodeInt(cxIARDW);
         }
     }
 
@@ -770,16 +814,16 @@ public class TextRegion implements Region
 
                     rdhTable = getUserTable(rdhNr);
                 }
-                return rdhTable.decode(subInputStream);
+                return rdhTable.decode(bitReader);
             }
             else
             {
-                return StandardTables.getTable(14 + sbHuffRDHeight).decode(subInputStream);
+                return StandardTables.getTable(14 + sbHuffRDHeight).decode(bitReader);
             }
         }
         else
         {
-            return integerDecoder.decode(cxIARDH);
+            return integerDecoder.decodeInt(cxIARDH);
         }
     }
 
@@ -819,16 +863,16 @@ public class TextRegion implements Region
 
                     rdxTable = getUserTable(rdxNr);
                 }
-                return rdxTable.decode(subInputStream);
+                return rdxTable.decode(bitReader);
             }
             else
             {
-                return StandardTables.getTable(14 + sbHuffRDX).decode(subInputStream);
+                return StandardTables.getTable(14 + sbHuffRDX).decode(bitReader);
             }
         }
         else
         {
-            return integerDecoder.decode(cxIARDX);
+            return integerDecoder.decodeInt(cxIARDX);
         }
     }
 
@@ -873,16 +917,16 @@ public class TextRegion implements Region
 
                     rdyTable = getUserTable(rdyNr);
                 }
-                return rdyTable.decode(subInputStream);
+                return rdyTable.decode(bitReader);
             }
             else
             {
-                return StandardTables.getTable(14 + sbHuffRDY).decode(subInputStream);
+                return StandardTables.getTable(14 + sbHuffRDY).decode(bitReader);
             }
         }
         else
         {
-            return integerDecoder.decode(cxIARDY);
+            return integerDecoder.decodeInt(cxIARDY);
         }
     }
 
@@ -890,7 +934,7 @@ public class TextRegion implements Region
     {
         if (sbHuffRSize == 0)
         {
-            return StandardTables.getTable(1).decode(subInputStream);
+            return StandardTables.getTable(1).decode(bitReader);
         }
         else
         {
@@ -935,7 +979,7 @@ public class TextRegion implements Region
 
                 rSizeTable = getUserTable(rSizeNr);
             }
-            return rSizeTable.decode(subInputStream);
+            return rSizeTable.decode(bitReader);
         }
 
     }
@@ -1044,7 +1088,7 @@ public class TextRegion implements Region
 
         for (int i = 0; i < 35; i++)
         {
-            final int prefLen = (int) (subInputStream.readBits(4) & 0xf);
+            final int prefLen = (int) (bitReader.readBits(4) & 0xf);
             if (prefLen > 0)
             {
                 runCodeTable.add(new Code(prefLen, 0, i, false));
@@ -1060,7 +1104,7 @@ public class TextRegion implements Region
         final List<Code> sbSymCodes = new ArrayList<Code>();
         while (counter < amountOfSymbols)
         {
-            final long code = ht.decode(subInputStream);
+            final long code = ht.decode(bitReader);
             if (code < 32)
             {
                 if (code > 0)
@@ -1078,7 +1122,7 @@ public class TextRegion implements Region
                 long currCodeLength = 0;
                 if (code == 32)
                 {
-                    runLength = 3 + subInputStream.readBits(2);
+                    runLength = 3 + bitReader.readBits(2);
                     if (counter > 0)
                     {
                         currCodeLength = previousCodeLength;
@@ -1086,11 +1130,11 @@ public class TextRegion implements Region
                 }
                 else if (code == 33)
                 {
-                    runLength = 3 + subInputStream.readBits(3);
+                    runLength = 3 + bitReader.readBits(3);
                 }
                 else if (code == 34)
                 {
-                    runLength = 11 + subInputStream.readBits(7);
+                    runLength = 11 + bitReader.readBits(7);
                 }
 
                 for (int j = 0; j < runLength; j++)
@@ -1105,7 +1149,7 @@ public class TextRegion implements Region
         }
 
         /* 6) - Skip over remaining bits in the last Byte read */
-        subInputStream.skipBits();
+        bitReader.alignToByte();
 
         /* 7) */
         symbolCodeTable = new FixedSizeTable(sbSymCodes);
@@ -1122,6 +1166,48 @@ public class TextRegion implements Region
         parseHeader();
     }
 
+    private CX acquireContexts(int size)
+    {
+        final CX contexts = DecodingArena.get().acquireCX(size, 1);
+        acquiredContexts.add(contexts);
+        return contexts;
+    }
+
+    /**
+     * Gives the contexts this region took from the {@link DecodingArena} back. Contexts set by
+     * {@link #setContexts} are left alone. Decoding again starts with fresh contexts.
+     */
+    void releaseContexts()
+    {
+        if (acquiredContexts.isEmpty())
+        {
+            return;
+        }
+        cxIADT = released(cxIADT);
+        cxIAFS = released(cxIAFS);
+        cxIADS = released(cxIADS);
+        cxIAIT = released(cxIAIT);
+        cxIARI = released(cxIARI);
+        cxIARDW = released(cxIARDW);
+        cxIARDH = released(cxIARDH);
+        cxIAID = released(cxIAID);
+        cxIARDX = released(cxIARDX);
+        cxIARDY = released(cxIARDY);
+        cx = released(cx);
+
+        final DecodingArena arena = DecodingArena.get();
+        for (CX contexts : acquiredContexts)
+        {
+            arena.release(contexts);
+        }
+        acquiredContexts.clear();
+    }
+
+    private CX released(CX contexts)
+    {
+        return acquiredContexts.contains(contexts) ? null : contexts;
+    }
+
     protected void setContexts(CX cx, CX cxIADT, CX cxIAFS, CX cxIADS, CX cxIAIT, CX cxIAID,
             CX cxIARDW, CX cxIARDH, CX cxIARDX, CX cxIARDY)
     {
@@ -19,6 +19,11 @@ package org.apache.pdfbox.jbig2;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
 
 import org.junit.Test;
 
@@ -105,4 +110,46 @@ public class BitmapTest
         assertEquals(width, bitmap.getWidth());
     }
 
+    @Test
+    public void duplicateRowsTest()
+    {
+        final Bitmap bitmap = new Bitmap(16, 4);
+        assertNull(bitmap.getDuplicateRows());
+
+        bitmap.fillBitmap((byte) 0xff);
+        assertFalse(bitmap.isDuplicateRow(0));
+        assertTrue(bitmap.isDuplicateRow(1));
+        assertTrue(bitmap.isDuplicateRow(3));
+
+        bitmap.setByte(5, (byte) 0);
+        assertNull(bitmap.getDuplicateRows());
+
+        final BitSet rows = new BitSet();
+        rows.set(0);
+        rows.set(2);
+        bitmap.setDuplicateRows(rows);
+        assertFalse(bitmap.isDuplicateRow(0));
+        assertTrue(bitmap.isDuplicateRow(2));
+
+        bitmap.setPixel(0, 0, (byte) 1);
+        assertFalse(bitmap.isDuplicateRow(2));
+    }
+
+    @Test
+    public void clearRowsTest()
+    {
+        final Bitmap bitmap = new Bitmap(16, 5);
+        bitmap.fillBitmap((byte) 0xff);
+
+        bitmap.clearRows(1, 3);
+        for (int i = 0; i < bitmap.getLength(); i++)
+        {
+            assertEquals(i >= 2 && i < 6 ? 0 : 0xff, bitmap.getByteAsInteger(i));
+        }
+        assertFalse(bitmap.isDuplicateRow(1));
+        assertFalse(bitmap.isDuplicateRow(2));
+        assertFalse(bitmap.isDuplicateRow(3));
+        assertTrue(bitmap.isDuplicateRow(4));
+    }
+
 }
@@ -21,6 +21,7 @@ import java.io.IOException;
 
 import javax.imageio.stream.ImageInputStream;
 import org.apache.pdfbox.jbig2.err.JBIG2Exception;
+import org.apache.pdfbox.jbig2.io.RandomAccessSource;
 
 public class JBIG2DocumentFacade extends JBIG2Document
 {
@@ -42,8 +43,13 @@ public class JBIG2DocumentFacade extends JBIG2Document
         super(input, globals);
     }
 
+    public JBIG2DocumentFacade(RandomAccessSource input) throws IOException
+    {
+        super(input);
+    }
+
     @Override
-    public JBIG2Page getPage(int pageNumber)
+    public JBIG2Page getPage(int pageNumber) throws IOException
     {
         return super.getPage(pageNumber);
     }
@@ -21,10 +21,13 @@ import static org.junit.Assume.assumeTrue;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
@@ -153,6 +156,177 @@ public class JBIG2ImageReaderTest
         Assert.assertEquals(17, numImages);
     }
 
+    @Test
+    public void testSegmentsAreMappedOnDemand() throws IOException
+    {
+        final byte[] data = readResource("/images/20123110002.jb2");
+        final long[] maxPosition = new long[1];
+        ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))
+        {
+            @Override
+            public int read() throws IOException
+            {
+                final int read = super.read();
+                maxPosition[0] = Math.max(maxPosition[0], getStreamPosition());
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                final int read = super.read(b, off, len);
+                maxPosition[0] = Math.max(maxPosition[0], getStreamPosition());
+                return read;
+            }
+        };
+
+        JBIG2ImageReader imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        imageReader.setInput(iis);
+        Assert.assertEquals(-1, imageReader.getNumImages(false));
+        imageReader.read(0);
+        final long firstPageEnd = maxPosition[0];
+        Assert.assertTrue(firstPageEnd < data.length / 2);
+
+        // the number of pages is taken from the file header
+        Assert.assertEquals(14, imageReader.getNumImages(true));
+        Assert.assertEquals(firstPageEnd, maxPosition[0]);
+
+        imageReader.read(13);
+        Assert.assertTrue(maxPosition[0] > firstPageEnd);
+    }
+
+    @Test
+    public void testGetNumImagesWithoutPageCount() throws IOException
+    {
+        final byte[] data = readResource("/images/002.jb2");
+
+        // remove the number of pages from the file header
+        final byte[] withoutPageCount = new byte[data.length - 4];
+        System.arraycopy(data, 0, withoutPageCount, 0, 9);
+        withoutPageCount[8] |= 0x02;
+        System.arraycopy(data, 13, withoutPageCount, 9, data.length - 13);
+
+        JBIG2ImageReader imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        imageReader.setInput(withoutPageCount);
+        Assert.assertEquals(17, imageReader.getNumImages(true));
+        Assert.assertNotNull(imageReader.read(16));
+    }
+
+    @Test
+    public void testReadFromByteArray() throws IOException
+    {
+        byte[] data = readResource("/images/002.jb2");
+
+        Assert.assertTrue(new JBIG2ImageReaderSpi().canDecodeInput(data));
+
+        JBIG2ImageReader imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        imageReader.setInput(data);
+        assertSameRasters(imageReader, "/images/002.jb2");
+    }
+
+    @Test
+    public void testReadFromByteBufferSlice() throws IOException
+    {
+        byte[] data = readResource("/images/002.jb2");
+
+        // embed the data in a larger array to make sure only the slice is read
+        byte[] embedding = new byte[data.length + 20];
+        System.arraycopy(data, 0, embedding, 7, data.length);
+        ByteBuffer slice = ByteBuffer.wrap(embedding, 7, data.length);
+
+        Assert.assertTrue(new JBIG2ImageReaderSpi().canDecodeInput(slice));
+
+        JBIG2ImageReader imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        imageReader.setInput(slice);
+        assertSameRasters(imageReader, "/images/002.jb2");
+        Assert.assertEquals(7, slice.position());
+    }
+
+    @Test
+    public void testReadFromFile() throws IOException
+    {
+        final File inputFile = new File("src/test/resources/images/002.jb2");
+        // skip test if input file isn't available
+        assumeTrue(inputFile.exists());
+
+        Assert.assertTrue(new JBIG2ImageReaderSpi().canDecodeInput(inputFile));
+
+        JBIG2ImageReader imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        imageReader.setInput(inputFile);
+        assertSameRasters(imageReader, "/images/002.jb2");
+    }
+
+    @Test
+    public void testSegmentDataBufferThreshold() throws IOException
+    {
+        final int[] reads = new int[1];
+        ImageInputStream iis = new MemoryCacheImageInputStream(
+                getClass().getResourceAsStream("/images/002.jb2"))
+        {
+            @Override
+            public int read() throws IOException
+            {
+                reads[0]++;
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                reads[0]++;
+                return super.read(b, off, len);
+            }
+        };
+
+        JBIG2ImageReader imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        imageReader.setSegmentDataBufferThreshold(0);
+        imageReader.setInput(iis);
+        assertSameRasters(imageReader, "/images/002.jb2");
+        final int unbufferedReads = reads[0];
+
+        iis.seek(0);
+        reads[0] = 0;
+        imageReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        imageReader.setInput(iis);
+        assertSameRasters(imageReader, "/images/002.jb2");
+        Assert.assertTrue(reads[0] < unbufferedReads);
+    }
+
+    private void assertSameRasters(JBIG2ImageReader imageReader, String filepath)
+            throws IOException
+    {
+        JBIG2ImageReader streamReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        streamReader.setInput(
+                new MemoryCacheImageInputStream(getClass().getResourceAsStream(filepath)));
+
+        int numImages = streamReader.getNumImages(true);
+        Assert.assertEquals(numImages, imageReader.getNumImages(true));
+
+        for (int i = 0; i < numImages; i++)
+        {
+            Raster expected = streamReader.readRaster(i, null);
+            Raster actual = imageReader.readRaster(i, null);
+            Assert.assertArrayEquals((byte[]) expected.getDataElements(0, 0, expected.getWidth(),
+                    expected.getHeight(), null),
+                    (byte[]) actual.getDataElements(0, 0, actual.getWidth(), actual.getHeight(),
+                            null));
+        }
+    }
+
+    private byte[] readResource(String filepath) throws IOException
+    {
+        InputStream inputStream = getClass().getResourceAsStream(filepath);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = inputStream.read(chunk)) != -1)
+        {
+            out.write(chunk, 0, read);
+        }
+        inputStream.close();
+        return out.toByteArray();
+    }
+
     @Test
     public void testCanReadRaster() throws IOException
     {
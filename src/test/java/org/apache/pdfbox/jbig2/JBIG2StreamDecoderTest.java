@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JBIG2StreamDecoderTest
+{
+    private static final String[] SEQUENTIAL_FILES = { "002.jb2", "003.jb2", "005.jb2", "006.jb2",
+            "20123110001.jb2", "20123110002.jb2", "20123110003.jb2", "20123110004.jb2",
+            "20123110005.jb2", "20123110006.jb2", "20123110007.jb2", "20123110008.jb2",
+            "20123110009.jb2", "20123110010.jb2" };
+
+    @Test
+    public void decodesLikeDocument() throws Exception
+    {
+        for (String name : SEQUENTIAL_FILES)
+        {
+            final byte[] data = readFile(name);
+            final JBIG2Document doc = new JBIG2Document(
+                    new MemoryCacheImageInputStream(new ByteArrayInputStream(data)));
+
+            final JBIG2StreamDecoder decoder = new JBIG2StreamDecoder(
+                    new ByteArrayInputStream(data));
+            int pages = 0;
+            Bitmap bitmap;
+            while ((bitmap = decoder.nextPage()) != null)
+            {
+                pages++;
+                Assert.assertEquals(name, pages, decoder.getPageNumber());
+                Assert.assertEquals(name, doc.getPage(pages).getBitmap(), bitmap);
+            }
+            Assert.assertEquals(name, doc.getAmountOfPages(), pages);
+            Assert.assertNull(decoder.nextPage());
+        }
+    }
+
+    @Test
+    public void decodesEmbeddedData() throws Exception
+    {
+        final byte[] data = readFile("003.jb2");
+        final JBIG2Document doc = new JBIG2Document(
+                new MemoryCacheImageInputStream(new ByteArrayInputStream(data)));
+
+        // the data without file header is what a PDF would embed
+        final int headerLength = (data[8] & 0x02) == 0 ? 13 : 9;
+        final byte[] embedded = Arrays.copyOfRange(data, headerLength, data.length);
+
+        final JBIG2StreamDecoder decoder = new JBIG2StreamDecoder(
+                new ByteArrayInputStream(embedded));
+        Assert.assertEquals(doc.getPage(1).getBitmap(), decoder.nextPage());
+        Assert.assertEquals(1, decoder.getPageNumber());
+    }
+
+    @Test
+    public void emptyStream() throws IOException
+    {
+        Assert.assertNull(new JBIG2StreamDecoder(new ByteArrayInputStream(new byte[0])).nextPage());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsRandomAccessOrganisation() throws IOException
+    {
+        final byte[] header = { (byte) 0x97, 0x4A, 0x42, 0x32, 0x0D, 0x0A, 0x1A, 0x0A, 0x02 };
+        new JBIG2StreamDecoder(new ByteArrayInputStream(header)).nextPage();
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedData() throws IOException
+    {
+        final byte[] data = readFile("002.jb2");
+        final JBIG2StreamDecoder decoder = new JBIG2StreamDecoder(
+                new ByteArrayInputStream(Arrays.copyOf(data, data.length / 2)));
+        while (decoder.nextPage() != null)
+        {
+            // the pages in the first half are complete
+        }
+    }
+
+    private static byte[] readFile(String name) throws IOException
+    {
+        final File file = new File("src/test/resources/images/" + name);
+        final byte[] data = new byte[(int) file.length()];
+        final InputStream is = new FileInputStream(file);
+        try
+        {
+            int read = 0;
+            while (read < data.length)
+            {
+                read += is.read(data, read, data.length - read);
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+        return data;
+    }
+}
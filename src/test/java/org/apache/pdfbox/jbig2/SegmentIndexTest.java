@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pdfbox.jbig2.io.ByteBufferSource;
+import org.apache.pdfbox.jbig2.io.RandomAccessSource;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentIndexTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexIsStoredAndUsed() throws Exception
+    {
+        final byte[] data = readResource("/images/002.jb2");
+        final MemoryStore store = new MemoryStore();
+
+        final CountingSource scanned = new CountingSource(data);
+        final JBIG2Document first = new JBIG2Document(scanned, null, store);
+        Assert.assertNotNull(store.index);
+
+        final CountingSource indexed = new CountingSource(data);
+        final JBIG2Document second = new JBIG2Document(indexed, null, store);
+        Assert.assertEquals(1, store.stores);
+        Assert.assertTrue(indexed.reads < scanned.reads);
+
+        assertSamePages(first, second);
+    }
+
+    @Test
+    public void staleIndexIsReplaced() throws Exception
+    {
+        final MemoryStore store = new MemoryStore();
+        new JBIG2Document(new ByteBufferSource(readResource("/images/003.jb2")), null, store);
+        final byte[] staleIndex = store.index;
+
+        final byte[] data = readResource("/images/002.jb2");
+        final JBIG2Document doc = new JBIG2Document(new ByteBufferSource(data), null, store);
+        Assert.assertEquals(2, store.stores);
+        Assert.assertFalse(Arrays.equals(staleIndex, store.index));
+
+        assertSamePages(new JBIG2Document(new ByteBufferSource(data)), doc);
+    }
+
+    @Test
+    public void corruptIndexIsIgnored() throws Exception
+    {
+        final byte[] data = readResource("/images/002.jb2");
+        final MemoryStore store = new MemoryStore();
+        new JBIG2Document(new ByteBufferSource(data), null, store);
+        store.index = Arrays.copyOf(store.index, store.index.length / 2);
+
+        final JBIG2Document doc = new JBIG2Document(new ByteBufferSource(data), null, store);
+
+        assertSamePages(new JBIG2Document(new ByteBufferSource(data)), doc);
+        Assert.assertEquals(2, store.stores);
+    }
+
+    @Test
+    public void serializationRoundTrip() throws Exception
+    {
+        final MemoryStore store = new MemoryStore();
+        final JBIG2Document doc = new JBIG2Document(
+                new ByteBufferSource(readResource("/images/006.jb2")), null, store);
+
+        final SegmentIndex index = SegmentIndex.fromByteArray(store.index);
+        Assert.assertArrayEquals(store.index, index.toByteArray());
+
+        final List<SegmentIndex.Entry> entries = index.getEntries();
+        final SegmentIndex.Entry first = entries.get(1);
+        final SegmentHeader header = doc.getPage(first.pageAssociation).getSegment(first.segmentNr);
+        Assert.assertEquals(header.getSegmentType(), first.segmentType);
+        Assert.assertEquals(header.getSegmentHeaderOffset(), first.headerOffset);
+        Assert.assertEquals(header.getSegmentDataStartOffset(), first.dataOffset);
+        Assert.assertEquals(header.getSegmentDataLength(), first.dataLength);
+    }
+
+    @Test
+    public void sidecarFile() throws Exception
+    {
+        final File file = folder.newFile("002.jb2");
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(readResource("/images/002.jb2"));
+        out.close();
+
+        final FileSegmentIndexStore store = FileSegmentIndexStore.forFile(file);
+        Assert.assertEquals(new File(file.getPath() + FileSegmentIndexStore.SUFFIX),
+                store.getIndexFile());
+        Assert.assertNull(store.load());
+
+        final JBIG2ImageReader reader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        reader.setInput(file);
+        reader.setSegmentIndexStore(store);
+        final int pages = reader.getNumImages(true);
+        Assert.assertTrue(store.getIndexFile().isFile());
+
+        final JBIG2ImageReader indexedReader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+        indexedReader.setInput(file);
+        indexedReader.setSegmentIndexStore(store);
+        Assert.assertEquals(pages, indexedReader.getNumImages(true));
+        Assert.assertEquals(reader.getWidth(pages - 1), indexedReader.getWidth(pages - 1));
+    }
+
+    private static void assertSamePages(JBIG2Document expected, JBIG2Document actual)
+            throws Exception
+    {
+        Assert.assertEquals(expected.getAmountOfPages(), actual.getAmountOfPages());
+        for (int i = 1; i <= expected.getAmountOfPages(); i++)
+        {
+            Assert.assertEquals(expected.getPage(i).getBitmap(), actual.getPage(i).getBitmap());
+        }
+    }
+
+    private byte[] readResource(String filepath) throws IOException
+    {
+        InputStream inputStream = getClass().getResourceAsStream(filepath);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = inputStream.read(chunk)) != -1)
+        {
+            out.write(chunk, 0, read);
+        }
+        inputStream.close();
+        return out.toByteArray();
+    }
+
+    private static class MemoryStore implements SegmentIndexStore
+    {
+        byte[] index;
+        int stores;
+
+        @Override
+        public byte[] load()
+        {
+            return index;
+        }
+
+        @Override
+        public void store(byte[] index)
+        {
+            this.index = index;
+            stores++;
+        }
+    }
+
+    /**
+     * A source which isn't addressable in memory and counts the reads.
+     */
+    private static class CountingSource implements RandomAccessSource
+    {
+        private final ByteBufferSource source;
+        int reads;
+
+        CountingSource(byte[] data)
+        {
+            source = new ByteBufferSource(data);
+        }
+
+        @Override
+        public long length()
+        {
+            return source.length();
+        }
+
+        @Override
+        public int read(long position, byte[] b, int off, int len) throws IOException
+        {
+            reads++;
+            return source.read(position, b, off, len);
+        }
+
+        @Override
+        public ByteBuffer slice(long position, long length)
+        {
+            return null;
+        }
+    }
+}
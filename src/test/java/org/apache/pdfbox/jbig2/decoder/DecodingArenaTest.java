@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.decoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.pdfbox.jbig2.Bitmap;
+import org.apache.pdfbox.jbig2.JBIG2StreamDecoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticDecoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
+import org.apache.pdfbox.jbig2.decoder.mmr.MMRDecompressor;
+import org.apache.pdfbox.jbig2.io.ByteBufferSource;
+import org.apache.pdfbox.jbig2.io.SubInputStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DecodingArenaTest
+{
+    private DecodingArena arena;
+
+    @Before
+    public void setUp()
+    {
+        arena = DecodingArena.get();
+        arena.clear();
+    }
+
+    @Test
+    public void arenaIsPerThread() throws Exception
+    {
+        final DecodingArena[] other = new DecodingArena[1];
+        final Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                other[0] = DecodingArena.get();
+            }
+        };
+        thread.start();
+        thread.join();
+
+        Assert.assertSame(arena, DecodingArena.get());
+        Assert.assertNotNull(other[0]);
+        Assert.assertNotSame(arena, other[0]);
+    }
+
+    @Test
+    public void contextsAreReusedAndReset() throws IOException
+    {
+        final byte[] data = new byte[256];
+        new Random(42).nextBytes(data);
+        final int[] expected = decode(new CX(512, 1), data);
+
+        final CX cx = arena.acquireCX(512, 1);
+        Assert.assertEquals(512, cx.size());
+        Assert.assertArrayEquals(expected, decode(cx, data));
+        arena.release(cx);
+
+        // the reused context set decodes like a new one
+        final long allocations = arena.getAllocationCount();
+        final CX reused = arena.acquireCX(512, 1);
+        Assert.assertSame(cx, reused);
+        Assert.assertArrayEquals(expected, decode(reused, data));
+        Assert.assertEquals(allocations, arena.getAllocationCount());
+
+        // other sizes are not mixed up
+        Assert.assertEquals(8192, arena.acquireCX(8192, 1).size());
+        Assert.assertEquals(allocations + 1, arena.getAllocationCount());
+    }
+
+    @Test
+    public void copiedContextsHaveTheSameState() throws IOException
+    {
+        final byte[] data = new byte[256];
+        new Random(42).nextBytes(data);
+
+        final CX source = arena.acquireCX(512, 1);
+        decode(source, data);
+        final CX copy = arena.copyCX(source);
+        Assert.assertNotSame(source, copy);
+        Assert.assertArrayEquals(decode(source, data), decode(copy, data));
+    }
+
+    private static int[] decode(CX cx, byte[] data) throws IOException
+    {
+        final ArithmeticDecoder decoder = new ArithmeticDecoder(data, 0, data.length);
+        final int[] decisions = new int[500];
+        for (int i = 0; i < decisions.length; i++)
+        {
+            cx.setIndex(i % 3);
+            decisions[i] = decoder.decode(cx);
+        }
+        return decisions;
+    }
+
+    @Test
+    public void intArraysHaveExactLengthAndAreZeroed()
+    {
+        final int[] array = arena.acquireInts(105);
+        Arrays.fill(array, 42);
+        arena.release(array);
+
+        Assert.assertEquals(55, arena.acquireInts(55).length);
+
+        final int[] reused = arena.acquireInts(105);
+        Assert.assertSame(array, reused);
+        for (int value : reused)
+        {
+            Assert.assertEquals(0, value);
+        }
+    }
+
+    @Test
+    public void byteArraysAreBestFit()
+    {
+        final long allocations = arena.getAllocationCount();
+        final byte[] small = arena.acquireBytes(100);
+        final byte[] large = arena.acquireBytes(1000);
+        Arrays.fill(large, (byte) 1);
+        arena.release(large);
+        arena.release(small);
+
+        Assert.assertSame(small, arena.acquireBytes(50));
+        final byte[] reused = arena.acquireBytes(200);
+        Assert.assertSame(large, reused);
+        for (int i = 0; i < 200; i++)
+        {
+            Assert.assertEquals(0, reused[i]);
+        }
+        Assert.assertEquals(allocations + 2, arena.getAllocationCount());
+    }
+
+    @Test
+    public void repeatedPageDecodingAllocatesNoScratch() throws Exception
+    {
+        final String[] files = { "002.jb2", "20123110001.jb2", "20123110007.jb2" };
+        final byte[][] data = new byte[files.length][];
+        for (int i = 0; i < files.length; i++)
+        {
+            data[i] = readFile(files[i]);
+        }
+
+        // MMR data of all one bits decodes to a white bitmap
+        final byte[] mmrData = new byte[4096];
+        Arrays.fill(mmrData, (byte) 0xff);
+
+        decodeAll(data, mmrData);
+        final long allocations = arena.getAllocationCount();
+        Assert.assertTrue(allocations > 0);
+
+        for (int i = 0; i < 3; i++)
+        {
+            decodeAll(data, mmrData);
+            Assert.assertEquals(allocations, arena.getAllocationCount());
+        }
+    }
+
+    private void decodeAll(byte[][] data, byte[] mmrData) throws Exception
+    {
+        for (byte[] file : data)
+        {
+            final JBIG2StreamDecoder decoder = new JBIG2StreamDecoder(
+                    new ByteArrayInputStream(file));
+            int pages = 0;
+            while (decoder.nextPage() != null)
+            {
+                pages++;
+            }
+            Assert.assertTrue(pages > 0);
+        }
+
+        final Bitmap bitmap = new MMRDecompressor(300, 200,
+                new SubInputStream(new ByteBufferSource(mmrData), 0, mmrData.length)).uncompress();
+        Assert.assertEquals(new Bitmap(300, 200), bitmap);
+    }
+
+    private byte[] readFile(String name) throws IOException
+    {
+        final InputStream is = getClass().getResourceAsStream("/images/" + name);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[4096];
+        int read;
+        while ((read = is.read(chunk)) != -1)
+        {
+            out.write(chunk, 0, read);
+        }
+        is.close();
+        return out.toByteArray();
+    }
+}
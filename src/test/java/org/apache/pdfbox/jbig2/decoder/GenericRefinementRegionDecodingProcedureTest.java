@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.decoder;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.pdfbox.jbig2.Bitmap;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticDecoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GenericRefinementRegionDecodingProcedureTest
+{
+
+    @Test
+    public void decodeEncodedRegionsTest() throws IOException
+    {
+        final Random random = new Random(24);
+        for (int template = 0; template < 2; template++)
+        {
+            for (int i = 0; i < 40; i++)
+            {
+                final int width = 1 + random.nextInt(150);
+                final int height = 1 + random.nextInt(40);
+                final int dx = random.nextInt(7) - 3;
+                final int dy = random.nextInt(7) - 3;
+                final Bitmap reference = createReference(random, width + random.nextInt(5) - 2,
+                        height + random.nextInt(5) - 2);
+                final Bitmap bitmap = refine(random, reference, width, height, dx, dy);
+
+                final short[] atX = { -1, -1 };
+                final short[] atY = { -1, -1 };
+                if (template == 0 && (i & 2) != 0)
+                {
+                    moveAtPixels(random, atX, atY);
+                }
+
+                assertDecodesTo(bitmap, template, (i & 1) != 0, reference, dx, dy, atX, atY);
+            }
+        }
+    }
+
+    @Test
+    public void decodeEncodedRegionsAtWordBoundariesTest() throws IOException
+    {
+        final Random random = new Random(25);
+        for (int template = 0; template < 2; template++)
+        {
+            for (int width : new int[] { 1, 7, 8, 31, 32, 33, 63, 64, 65, 96, 129 })
+            {
+                final Bitmap reference = createReference(random, width, 12);
+                final Bitmap bitmap = refine(random, reference, width, 12, 0, 0);
+                final short[] atX = { -1, -1 };
+                final short[] atY = { -1, -1 };
+                assertDecodesTo(bitmap, template, false, reference, 0, 0, atX, atY);
+                assertDecodesTo(bitmap, template, true, reference, 1, -1, atX, atY);
+            }
+        }
+    }
+
+    @Test
+    public void decodeTypicalPredictedRegionsTest() throws IOException
+    {
+        final Random random = new Random(26);
+        for (int template = 0; template < 2; template++)
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                final int width = 1 + random.nextInt(300);
+                final int height = 1 + random.nextInt(30);
+                final int dx = random.nextInt(3) - 1;
+                final int dy = random.nextInt(3) - 1;
+                final Bitmap reference = createReference(random, width, height);
+                final Bitmap bitmap = refineEdges(random, reference, width, height, dx, dy);
+
+                final short[] atX = { -1, -1 };
+                final short[] atY = { -1, -1 };
+                if (template == 0 && (i & 1) != 0)
+                {
+                    moveAtPixels(random, atX, atY);
+                }
+
+                assertDecodesTo(bitmap, template, true, reference, dx, dy, atX, atY);
+            }
+        }
+    }
+
+    private static void assertDecodesTo(Bitmap bitmap, int template, boolean isTPGROn,
+            Bitmap reference, int dx, int dy, short[] atX, short[] atY) throws IOException
+    {
+        final byte[] data = RefinementRegionEncoder.encode(bitmap, template, isTPGROn, reference,
+                dx, dy, atX, atY);
+        final Bitmap decoded = GenericRefinementRegionDecodingProcedure.decode(
+                new ArithmeticDecoder(data, 0, data.length), new CX(8192, 1), bitmap.getWidth(),
+                bitmap.getHeight(), (short) template, isTPGROn, reference, dx, dy, atX, atY);
+
+        Assert.assertArrayEquals("template " + template + ", TPGRON " + isTPGROn + ", offset " + dx
+                + ", " + dy + ", AT " + atX[0] + ", " + atY[0] + ", " + atX[1] + ", " + atY[1]
+                + ", size " + bitmap.getWidth() + " x " + bitmap.getHeight(),
+                bitmap.getByteArray(), decoded.getByteArray());
+    }
+
+    /**
+     * Moves the AT pixels of template 0: the first one to a pixel of the region decoded before, the second one
+     * anywhere in the reference.
+     */
+    private static void moveAtPixels(Random random, short[] atX, short[] atY)
+    {
+        if (random.nextBoolean())
+        {
+            // in the current line, also further left than a register
+            atX[0] = (short) -(1 + random.nextInt(128));
+            atY[0] = 0;
+        }
+        else
+        {
+            atX[0] = (short) (random.nextInt(256) - 128);
+            atY[0] = (short) -(1 + random.nextInt(random.nextBoolean() ? 3 : 128));
+        }
+        atX[1] = (short) (random.nextInt(256) - 128);
+        atY[1] = (short) (random.nextInt(256) - 128);
+        if (random.nextBoolean())
+        {
+            atX[1] = (short) (random.nextInt(7) - 3);
+            atY[1] = (short) (random.nextInt(7) - 3);
+        }
+    }
+
+    /**
+     * Creates a bitmap of a few black blobs, like a symbol.
+     */
+    private static Bitmap createReference(Random random, int width, int height)
+    {
+        final Bitmap bitmap = new Bitmap(Math.max(1, width), Math.max(1, height));
+        for (int i = bitmap.getWidth() * bitmap.getHeight() / 60; i >= 0; i--)
+        {
+            final int x0 = random.nextInt(bitmap.getWidth());
+            final int y0 = random.nextInt(bitmap.getHeight());
+            for (int y = y0; y < Math.min(bitmap.getHeight(), y0 + 1 + random.nextInt(8)); y++)
+            {
+                for (int x = x0; x < Math.min(bitmap.getWidth(), x0 + 1 + random.nextInt(8)); x++)
+                {
+                    bitmap.setPixel(x, y, (byte) 1);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Creates the bitmap the reference refines to: the reference at the given offset with some pixels flipped.
+     */
+    private static Bitmap refine(Random random, Bitmap reference, int width, int height, int dx,
+            int dy)
+    {
+        final Bitmap bitmap = new Bitmap(width, height);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                final int rx = x - dx;
+                final int ry = y - dy;
+                int pixel = rx >= 0 && ry >= 0 && rx < reference.getWidth()
+                        && ry < reference.getHeight() ? reference.getPixel(rx, ry) : 0;
+                if (random.nextInt(20) == 0)
+                {
+                    pixel ^= 1;
+                }
+                bitmap.setPixel(x, y, (byte) pixel);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Creates the bitmap the reference refines to with typical predicted lines only: the reference at the given offset
+     * with some of the pixels flipped whose neighbourhood in the reference isn't uniform.
+     */
+    private static Bitmap refineEdges(Random random, Bitmap reference, int width, int height,
+            int dx, int dy)
+    {
+        final Bitmap bitmap = new Bitmap(width, height);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                final int rx = x - dx;
+                final int ry = y - dy;
+                int pixel = referencePixel(reference, rx, ry);
+                boolean isUniform = true;
+                for (int j = -1; j <= 1; j++)
+                {
+                    for (int k = -1; k <= 1; k++)
+                    {
+                        isUniform &= referencePixel(reference, rx + k, ry + j) == pixel;
+                    }
+                }
+                if (!isUniform && random.nextInt(4) == 0)
+                {
+                    pixel ^= 1;
+                }
+                bitmap.setPixel(x, y, (byte) pixel);
+            }
+        }
+        return bitmap;
+    }
+
+    private static int referencePixel(Bitmap reference, int x, int y)
+    {
+        return x >= 0 && y >= 0 && x < reference.getWidth() && y < reference.getHeight()
+                ? reference.getPixel(x, y) : 0;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.decoder;
+
+import org.apache.pdfbox.jbig2.Bitmap;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticEncoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
+
+/**
+ * Encodes bitmaps as generic refinement regions with the arithmetic encoder, forming each context pixel by pixel as
+ * described in 6.3.5.3, so that tests have compressed data with known content for both templates, any AT pixels and
+ * reference offsets. The bit order of the contexts is the one of {@link GenericRefinementRegionDecodingProcedure}.
+ */
+final class RefinementRegionEncoder
+{
+
+    /** The SLTP contexts for templates 0 and 1. */
+    private static final int[] SLTP = { 0x100, 0x008 };
+
+    private RefinementRegionEncoder()
+    {
+    }
+
+    /**
+     * @param bitmap - The bitmap to encode.
+     * @param template - GRTEMPLATE, 0 or 1.
+     * @param isTPGROn - Whether typical prediction is used.
+     * @param reference - The reference bitmap.
+     * @param dx - GRREFERENCEDX.
+     * @param dy - GRREFERENCEDY.
+     * @param atX - The x coordinates of the AT pixels of template 0.
+     * @param atY - The y coordinates of the AT pixels of template 0.
+     * @return The encoded data, terminated with the marker 0xFFAC.
+     */
+    static byte[] encode(Bitmap bitmap, int template, boolean isTPGROn, Bitmap reference, int dx,
+            int dy, short[] atX, short[] atY)
+    {
+        final ArithmeticEncoder encoder = new ArithmeticEncoder();
+        final CX cx = new CX(8192, 1);
+        int ltp = 0;
+        for (int y = 0; y < bitmap.getHeight(); y++)
+        {
+            if (isTPGROn)
+            {
+                final int typical = isTypical(bitmap, y, reference, dx, dy) ? 1 : 0;
+                cx.setIndex(SLTP[template]);
+                encoder.encode(cx, typical ^ ltp);
+                ltp = typical;
+            }
+            for (int x = 0; x < bitmap.getWidth(); x++)
+            {
+                if (ltp == 1 && isUniform(reference, x - dx, y - dy))
+                {
+                    continue;
+                }
+                cx.setIndex(context(bitmap, template, x, y, reference, dx, dy, atX, atY));
+                encoder.encode(cx, pixel(bitmap, x, y));
+            }
+        }
+        return encoder.flush();
+    }
+
+    /**
+     * Forms the context of the pixel at (x, y).
+     */
+    static int context(Bitmap bitmap, int template, int x, int y, Bitmap reference, int dx, int dy,
+            short[] atX, short[] atY)
+    {
+        final int rx = x - dx;
+        final int ry = y - dy;
+        if (template == 0)
+        {
+            return pixel(reference, rx + atX[1], ry + atY[1]) << 12
+                    | pixel(reference, rx, ry - 1) << 11 | pixel(reference, rx + 1, ry - 1) << 10
+                    | pixel(reference, rx - 1, ry) << 9 | pixel(reference, rx, ry) << 8
+                    | pixel(reference, rx + 1, ry) << 7 | pixel(reference, rx - 1, ry + 1) << 6
+                    | pixel(reference, rx, ry + 1) << 5 | pixel(reference, rx + 1, ry + 1) << 4
+                    | pixel(bitmap, x + atX[0], y + atY[0]) << 3 | pixel(bitmap, x, y - 1) << 2
+                    | pixel(bitmap, x + 1, y - 1) << 1 | pixel(bitmap, x - 1, y);
+        }
+        return pixel(bitmap, x - 1, y - 1) << 9 | pixel(bitmap, x, y - 1) << 8
+                | pixel(bitmap, x + 1, y - 1) << 7 | pixel(bitmap, x - 1, y) << 6
+                | pixel(reference, rx, ry - 1) << 5 | pixel(reference, rx - 1, ry) << 4
+                | pixel(reference, rx, ry) << 3 | pixel(reference, rx + 1, ry) << 2
+                | pixel(reference, rx, ry + 1) << 1 | pixel(reference, rx + 1, ry + 1);
+    }
+
+    private static int pixel(Bitmap bitmap, int x, int y)
+    {
+        if (x < 0 || y < 0 || x >= bitmap.getWidth() || y >= bitmap.getHeight())
+        {
+            return 0;
+        }
+        return bitmap.getPixel(x, y);
+    }
+
+    /**
+     * Tells whether the 3 x 3 pixels around (x, y) have the same value.
+     */
+    private static boolean isUniform(Bitmap reference, int x, int y)
+    {
+        final int center = pixel(reference, x, y);
+        for (int j = -1; j <= 1; j++)
+        {
+            for (int i = -1; i <= 1; i++)
+            {
+                if (pixel(reference, x + i, y + j) != center)
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether every pixel of a line with a uniform neighbourhood in the reference has the value of that
+     * neighbourhood, so that the line can be typically predicted.
+     */
+    private static boolean isTypical(Bitmap bitmap, int y, Bitmap reference, int dx, int dy)
+    {
+        for (int x = 0; x < bitmap.getWidth(); x++)
+        {
+            if (isUniform(reference, x - dx, y - dy)
+                    && pixel(bitmap, x, y) != pixel(reference, x - dx, y - dy))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
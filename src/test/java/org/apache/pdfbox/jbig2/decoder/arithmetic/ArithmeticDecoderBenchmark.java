@@ -29,7 +29,9 @@ import java.io.InputStream;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Baseline benchmark for ArithmeticDecoder.
+ * Baseline benchmark for ArithmeticDecoder. Compares the decoder reading an ImageInputStream with the decoder
+ * reading the same bytes from a byte array, the decoder with the straightforward ReferenceArithmeticDecoder, and
+ * single decisions with the bulk decode.
  *
  * Run with: mvn clean test -Pbenchmark
  * Results:  target/benchmark-results.json
@@ -47,6 +49,12 @@ public class ArithmeticDecoderBenchmark {
 
     private byte[] encodedBytes;
     private ArithmeticDecoder decoder;
+    private ArithmeticDecoder arrayDecoder;
+    private ReferenceArithmeticDecoder referenceDecoder;
+    private ReferenceArithmeticDecoder referenceArrayDecoder;
+
+    private final int[] indices = new int[257];
+    private final int[] decisions = new int[257];
 
     private int symbolsDecoded;
     private volatile int expectedSymbolCount = -1;
@@ -76,6 +84,10 @@ public class ArithmeticDecoderBenchmark {
         ImageInputStream iis = new MemoryCacheImageInputStream(
                 new ByteArrayInputStream(encodedBytes));
         decoder = new ArithmeticDecoder(iis);
+        arrayDecoder = new ArithmeticDecoder(encodedBytes, 0, encodedBytes.length);
+        referenceDecoder = new ReferenceArithmeticDecoder(new MemoryCacheImageInputStream(
+                new ByteArrayInputStream(encodedBytes)));
+        referenceArrayDecoder = new ReferenceArithmeticDecoder(encodedBytes, 0, encodedBytes.length);
         symbolsDecoded = 0;
     }
 
@@ -105,6 +117,41 @@ public class ArithmeticDecoderBenchmark {
             symbolsDecoded++;
         }
     }
+
+    @Benchmark
+    public void decodeFullByteArray(Blackhole bh) throws IOException {
+        CX cx = new CX(1, 0);
+        for (int i = 0; i < 257; i++) {
+            bh.consume(arrayDecoder.decode(cx));
+            symbolsDecoded++;
+        }
+    }
+
+    @Benchmark
+    public void decodeFullByteArrayBulk(Blackhole bh) throws IOException {
+        CX cx = new CX(1, 0);
+        arrayDecoder.decode(cx, indices, decisions, 0, 257);
+        bh.consume(decisions);
+        symbolsDecoded += 257;
+    }
+
+    @Benchmark
+    public void referenceDecodeFullStream(Blackhole bh) throws IOException {
+        CX cx = new CX(1, 0);
+        for (int i = 0; i < 257; i++) {
+            bh.consume(referenceDecoder.decode(cx));
+            symbolsDecoded++;
+        }
+    }
+
+    @Benchmark
+    public void referenceDecodeFullByteArray(Blackhole bh) throws IOException {
+        CX cx = new CX(1, 0);
+        for (int i = 0; i < 257; i++) {
+            bh.consume(referenceArrayDecoder.decode(cx));
+            symbolsDecoded++;
+        }
+    }
     // -----------------------------------------------------------------------
     // Utility
     // -----------------------------------------------------------------------
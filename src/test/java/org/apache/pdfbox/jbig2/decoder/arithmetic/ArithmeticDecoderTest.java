@@ -17,10 +17,18 @@
 
 package org.apache.pdfbox.jbig2.decoder.arithmetic;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 
+import org.apache.pdfbox.jbig2.io.ByteBufferSource;
+import org.apache.pdfbox.jbig2.io.SubInputStream;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -190,4 +198,200 @@ public class ArithmeticDecoderTest
 
         }
     }
+
+    @Test
+    public void decodeByteArrayWithTracadataComparison() throws Throwable
+    {
+        final byte[] data = readTestSequence();
+        final byte[] padded = new byte[data.length + 10];
+        System.arraycopy(data, 0, padded, 5, data.length);
+
+        assertTracedata(new ArithmeticDecoder(padded, 5, data.length));
+    }
+
+    @Test
+    public void decodeShortReadsWithTracadataComparison() throws Throwable
+    {
+        InputStream is = getClass().getResourceAsStream("/images/arith/encoded testsequence");
+        ImageInputStream iis = new MemoryCacheImageInputStream(is)
+        {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                // forces the decoder to refill its buffer after every few bytes
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+
+        assertTracedata(new ArithmeticDecoder(iis));
+    }
+
+    @Test
+    public void decodersAgreeOnStreamPosition() throws Throwable
+    {
+        final byte[] data = readTestSequence();
+        final ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        direct.flip();
+        final SubInputStream view = new SubInputStream(new ByteBufferSource(data), 0, data.length);
+        view.seek(2);
+
+        final ArithmeticDecoder fromArray = new ArithmeticDecoder(data, 2, data.length - 2);
+        final ArithmeticDecoder fromDirectBuffer = new ArithmeticDecoder(
+                (ByteBuffer) direct.position(2));
+        final ArithmeticDecoder fromView = new ArithmeticDecoder(view);
+        final ArithmeticDecoder fromStream = new ArithmeticDecoder(new MemoryCacheImageInputStream(
+                new ByteArrayInputStream(data, 2, data.length - 2)));
+
+        CX cxArray = new CX(1, 0);
+        CX cxDirectBuffer = new CX(1, 0);
+        CX cxView = new CX(1, 0);
+        CX cxStream = new CX(1, 0);
+        for (int i = 0; i < 200; i++)
+        {
+            final int d = fromArray.decode(cxArray);
+            Assert.assertEquals(d, fromDirectBuffer.decode(cxDirectBuffer));
+            Assert.assertEquals(d, fromView.decode(cxView));
+            Assert.assertEquals(d, fromStream.decode(cxStream));
+
+            final long position = fromArray.getStreamPosition();
+            Assert.assertEquals(position, fromDirectBuffer.getStreamPosition());
+            Assert.assertEquals(position + 2, fromView.getStreamPosition());
+            Assert.assertEquals(position, fromStream.getStreamPosition());
+        }
+        Assert.assertEquals(2, view.getStreamPosition());
+    }
+
+    @Test
+    public void decodeIsBitExactWithReference() throws Throwable
+    {
+        final Random random = new Random(4711);
+        for (int run = 0; run < 50; run++)
+        {
+            // random data with runs of 0xff to exercise the marker handling of BYTEIN
+            final byte[] data = new byte[random.nextInt(2000)];
+            random.nextBytes(data);
+            for (int i = 0; i < data.length; i += 1 + random.nextInt(20))
+            {
+                data[i] = (byte) 0xff;
+            }
+
+            final int decisions = 20000;
+            final int[] indices = new int[decisions];
+            for (int i = 0; i < decisions; i++)
+            {
+                indices[i] = random.nextInt(64);
+            }
+
+            final ReferenceArithmeticDecoder reference = new ReferenceArithmeticDecoder(data, 0,
+                    data.length);
+            final ArithmeticDecoder decoder = new ArithmeticDecoder(data, 0, data.length);
+            final ArithmeticDecoder bulkDecoder = new ArithmeticDecoder(data, 0, data.length);
+            final CX referenceCx = new CX(64, 0);
+            final CX cx = new CX(64, 0);
+            final CX bulkCx = new CX(64, 0);
+            final int[] bulkDecisions = new int[decisions];
+
+            for (int i = 0; i < decisions; i += 1000)
+            {
+                bulkDecoder.decode(bulkCx, indices, bulkDecisions, i, 1000);
+                for (int j = i; j < i + 1000; j++)
+                {
+                    referenceCx.setIndex(indices[j]);
+                    cx.setIndex(indices[j]);
+                    final int d = reference.decode(referenceCx);
+                    Assert.assertEquals(d, decoder.decode(cx));
+                    Assert.assertEquals(d, bulkDecisions[j]);
+                    Assert.assertEquals(reference.getA(), decoder.getA());
+                    Assert.assertEquals(reference.getC(), decoder.getC());
+                }
+                Assert.assertEquals(reference.getA(), bulkDecoder.getA());
+                Assert.assertEquals(reference.getC(), bulkDecoder.getC());
+                Assert.assertEquals(reference.getStreamPosition(), bulkDecoder.getStreamPosition());
+            }
+        }
+    }
+
+    @Test
+    public void decodeRunOfMPSIsBitExactWithReference() throws Throwable
+    {
+        final Random random = new Random(815);
+        for (int run = 0; run < 20; run++)
+        {
+            // long runs of zeros in blocks of 64 decisions per context
+            final int count = 64 * 800;
+            final int[] decisions = new int[count];
+            final ArithmeticEncoder encoder = new ArithmeticEncoder();
+            final CX encoderCx = new CX(4, 0);
+            for (int i = 0; i < count; i++)
+            {
+                decisions[i] = random.nextInt(100) < 2 + run ? 1 : 0;
+                encoderCx.setIndex((i >> 6) & 3);
+                encoder.encode(encoderCx, decisions[i]);
+            }
+            final byte[] data = encoder.flush();
+
+            final ReferenceArithmeticDecoder reference = new ReferenceArithmeticDecoder(data, 0,
+                    data.length);
+            final ArithmeticDecoder decoder = new ArithmeticDecoder(data, 0, data.length);
+            final CX referenceCx = new CX(4, 0);
+            final CX cx = new CX(4, 0);
+            int runs = 0;
+            for (int i = 0; i < count;)
+            {
+                referenceCx.setIndex((i >> 6) & 3);
+                cx.setIndex((i >> 6) & 3);
+
+                final int maxCount = Math.min(random.nextInt(32), 64 - (i & 63));
+                final int n = decoder.decodeRunOfMPS(cx, maxCount);
+                Assert.assertTrue(n <= maxCount);
+                for (int j = 0; j < n; j++, i++)
+                {
+                    Assert.assertEquals(cx.mps(), reference.decode(referenceCx));
+                    Assert.assertEquals(cx.mps(), decisions[i]);
+                }
+                Assert.assertEquals(reference.getA(), decoder.getA());
+                Assert.assertEquals(reference.getC(), decoder.getC());
+                runs += n > 1 ? 1 : 0;
+
+                if (i < count)
+                {
+                    referenceCx.setIndex((i >> 6) & 3);
+                    cx.setIndex((i >> 6) & 3);
+                    Assert.assertEquals(decisions[i], reference.decode(referenceCx));
+                    Assert.assertEquals(decisions[i], decoder.decode(cx));
+                    Assert.assertEquals(reference.getA(), decoder.getA());
+                    Assert.assertEquals(reference.getC(), decoder.getC());
+                    i++;
+                }
+            }
+            Assert.assertTrue(runs > 0);
+        }
+    }
+
+    private void assertTracedata(ArithmeticDecoder decoder) throws IOException
+    {
+        CX cx = new CX(1, 0);
+
+        for (int i = 0; i < 255; i++)
+        {
+            Assert.assertEquals(tracedata[i][0], decoder.decode(cx));
+            Assert.assertEquals(tracedata[i + 1][1], decoder.getA());
+            Assert.assertEquals(tracedata[i + 1][2], decoder.getC());
+        }
+    }
+
+    private byte[] readTestSequence() throws IOException
+    {
+        InputStream is = getClass().getResourceAsStream("/images/arith/encoded testsequence");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = is.read(chunk)) != -1)
+        {
+            out.write(chunk, 0, read);
+        }
+        is.close();
+        return out.toByteArray();
+    }
 }
@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.decoder.arithmetic;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * The arithmetic encoder, following the flow charts of ISO/IEC 14492:2001 E.2. Used by tests to produce compressed
+ * data with known content for the decoders.
+ */
+public class ArithmeticEncoder
+{
+
+    private static final int[][] QE = { { 0x5601, 1, 1, 1 }, { 0x3401, 2, 6, 0 },
+            { 0x1801, 3, 9, 0 }, { 0x0AC1, 4, 12, 0 }, { 0x0521, 5, 29, 0 }, { 0x0221, 38, 33, 0 },
+            { 0x5601, 7, 6, 1 }, { 0x5401, 8, 14, 0 }, { 0x4801, 9, 14, 0 }, { 0x3801, 10, 14, 0 },
+            { 0x3001, 11, 17, 0 }, { 0x2401, 12, 18, 0 }, { 0x1C01, 13, 20, 0 },
+            { 0x1601, 29, 21, 0 }, { 0x5601, 15, 14, 1 }, { 0x5401, 16, 14, 0 },
+            { 0x5101, 17, 15, 0 }, { 0x4801, 18, 16, 0 }, { 0x3801, 19, 17, 0 },
+            { 0x3401, 20, 18, 0 }, { 0x3001, 21, 19, 0 }, { 0x2801, 22, 19, 0 },
+            { 0x2401, 23, 20, 0 }, { 0x2201, 24, 21, 0 }, { 0x1C01, 25, 22, 0 },
+            { 0x1801, 26, 23, 0 }, { 0x1601, 27, 24, 0 }, { 0x1401, 28, 25, 0 },
+            { 0x1201, 29, 26, 0 }, { 0x1101, 30, 27, 0 }, { 0x0AC1, 31, 28, 0 },
+            { 0x09C1, 32, 29, 0 }, { 0x08A1, 33, 30, 0 }, { 0x0521, 34, 31, 0 },
+            { 0x0441, 35, 32, 0 }, { 0x02A1, 36, 33, 0 }, { 0x0221, 37, 34, 0 },
+            { 0x0141, 38, 35, 0 }, { 0x0111, 39, 36, 0 }, { 0x0085, 40, 37, 0 },
+            { 0x0049, 41, 38, 0 }, { 0x0025, 42, 39, 0 }, { 0x0015, 43, 40, 0 },
+            { 0x0009, 44, 41, 0 }, { 0x0005, 45, 42, 0 }, { 0x0001, 45, 43, 0 },
+            { 0x5601, 46, 46, 0 } };
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private int a = 0x8000;
+    private int c = 0;
+    private int ct = 12;
+
+    /** The byte at BP, which may still be changed by a carry. */
+    private int b;
+
+    /** {@code false} while BP points to the byte before the first output byte. */
+    private boolean started;
+
+    /**
+     * Encodes a decision in the current context of {@code cx}, updating the context like the decoder does.
+     *
+     * @param cx - The contexts, the current index selects the context.
+     * @param d - The decision, {@code 0} or {@code 1}.
+     */
+    public void encode(CX cx, int d)
+    {
+        final int index = cx.cx();
+        final int qe = QE[index][0];
+        if (d == cx.mps())
+        {
+            // CODEMPS
+            a -= qe;
+            if ((a & 0x8000) == 0)
+            {
+                if (a < qe)
+                {
+                    a = qe;
+                }
+                else
+                {
+                    c += qe;
+                }
+                cx.setCx(QE[index][1]);
+                renormalize();
+            }
+            else
+            {
+                c += qe;
+            }
+        }
+        else
+        {
+            // CODELPS
+            a -= qe;
+            if (a < qe)
+            {
+                c += qe;
+            }
+            else
+            {
+                a = qe;
+            }
+            if (QE[index][3] == 1)
+            {
+                cx.toggleMps();
+            }
+            cx.setCx(QE[index][2]);
+            renormalize();
+        }
+    }
+
+    /**
+     * Terminates the code and returns it, including the trailing marker 0xFFAC.
+     *
+     * @return The encoded data.
+     */
+    public byte[] flush()
+    {
+        // SETBITS
+        final int tempC = c + a;
+        c |= 0xffff;
+        if (c >= tempC)
+        {
+            c -= 0x8000;
+        }
+
+        c <<= ct;
+        byteOut();
+        c <<= ct;
+        byteOut();
+        if (b != 0xff)
+        {
+            next(0xff);
+        }
+        next(0xac);
+        out.write(b);
+        return out.toByteArray();
+    }
+
+    private void renormalize()
+    {
+        do
+        {
+            a <<= 1;
+            c <<= 1;
+            ct--;
+            if (ct == 0)
+            {
+                byteOut();
+            }
+        }
+        while ((a & 0x8000) == 0);
+    }
+
+    private void byteOut()
+    {
+        if (b == 0xff)
+        {
+            stuffed();
+        }
+        else if (c < 0x8000000)
+        {
+            next((c >>> 19) & 0xff);
+            c &= 0x7ffff;
+            ct = 8;
+        }
+        else
+        {
+            b++;
+            if (b == 0xff)
+            {
+                c &= 0x7ffffff;
+                stuffed();
+            }
+            else
+            {
+                next((c >>> 19) & 0xff);
+                c &= 0x7ffff;
+                ct = 8;
+            }
+        }
+    }
+
+    private void stuffed()
+    {
+        next(c >>> 20);
+        c &= 0xfffff;
+        ct = 7;
+    }
+
+    /**
+     * Advances BP and sets the byte there.
+     */
+    private void next(int value)
+    {
+        if (started)
+        {
+            out.write(b);
+        }
+        started = true;
+        b = value;
+    }
+}
@@ -17,7 +17,9 @@
 
 package org.apache.pdfbox.jbig2.decoder.arithmetic;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Random;
 
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
@@ -41,4 +43,122 @@ public class ArithmeticIntegerDecoderTest
 
         Assert.assertEquals(1, result);
     }
+
+    @Test
+    public void decodeMatchesReference() throws Throwable
+    {
+        final Random random = new Random(815);
+        for (int run = 0; run < 20; run++)
+        {
+            final byte[] data = new byte[4096];
+            random.nextBytes(data);
+
+            final ArithmeticIntegerDecoder decoder = new ArithmeticIntegerDecoder(
+                    new ArithmeticDecoder(data, 0, data.length));
+            final ReferenceArithmeticDecoder reference = new ReferenceArithmeticDecoder(data, 0,
+                    data.length);
+            final CX cx = new CX(512, 1);
+            final CX referenceCx = new CX(512, 1);
+            final CX cxIAID = new CX(1 << 9, 1);
+            final CX referenceCxIAID = new CX(1 << 9, 1);
+
+            for (int i = 0; i < 2000; i++)
+            {
+                if (i % 5 == 4)
+                {
+                    Assert.assertEquals(referenceDecodeIAID(reference, referenceCxIAID, 9),
+                            decoder.decodeIAID(cxIAID, 9));
+                }
+                else if (i % 2 == 0)
+                {
+                    Assert.assertEquals(referenceDecode(reference, referenceCx), decoder.decode(cx));
+                }
+                else
+                {
+                    final long expected = referenceDecode(reference, referenceCx);
+                    final int value = decoder.decodeInt(cx);
+                    Assert.assertEquals(expected == Long.MAX_VALUE, decoder.isOOB());
+                    if (!decoder.isOOB())
+                    {
+                        Assert.assertEquals(expected, value);
+                    }
+                }
+            }
+        }
+    }
+
+    /** The integer decoding procedure of A.2, written down as in the standard. */
+    private static long referenceDecode(ReferenceArithmeticDecoder decoder, CX cx)
+            throws IOException
+    {
+        int prev = 1;
+        cx.setIndex(prev);
+        final int s = decoder.decode(cx);
+        prev = referenceSetPrev(prev, s);
+
+        int bitsToRead;
+        int offset;
+        final int[] bits = { 2, 4, 6, 8, 12, 32 };
+        final int[] offsets = { 0, 4, 20, 84, 340, 4436 };
+        int ones = 0;
+        while (true)
+        {
+            cx.setIndex(prev & 0x1ff);
+            final int d = decoder.decode(cx);
+            prev = referenceSetPrev(prev, d);
+            if (d == 0)
+            {
+                break;
+            }
+            if (++ones == 5)
+            {
+                break;
+            }
+        }
+        bitsToRead = bits[ones];
+        offset = offsets[ones];
+
+        int v = 0;
+        for (int i = 0; i < bitsToRead; i++)
+        {
+            cx.setIndex(prev & 0x1ff);
+            final int d = decoder.decode(cx);
+            prev = referenceSetPrev(prev, d);
+            v = (v << 1) | d;
+        }
+        v += offset;
+
+        if (s == 0)
+        {
+            return v;
+        }
+        else if (v > 0)
+        {
+            return -v;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static int referenceSetPrev(int prev, int bit)
+    {
+        if (prev < 256)
+        {
+            return ((prev << 1) | bit) & 0x1ff;
+        }
+        return ((((prev << 1) | bit) & 511) | 256) & 0x1ff;
+    }
+
+    /** The IAID decoding procedure of A.3. */
+    private static int referenceDecodeIAID(ReferenceArithmeticDecoder decoder, CX cx,
+            int symCodeLen) throws IOException
+    {
+        long prev = 1;
+        final long mask = (1L << symCodeLen) - 1;
+        for (int i = 0; i < symCodeLen; i++)
+        {
+            cx.setIndex((int) (prev & mask));
+            prev = (prev << 1) | decoder.decode(cx);
+        }
+        return (int) (prev - (1L << symCodeLen));
+    }
 }
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.decoder.arithmetic;
+
+import static org.junit.Assume.assumeFalse;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.apache.pdfbox.jbig2.JBIG2ImageReader;
+import org.apache.pdfbox.jbig2.JBIG2ImageReaderSpi;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArithmeticStatisticsTest
+{
+
+    @Test
+    public void disabledByDefault() throws Exception
+    {
+        assumeFalse(Boolean.getBoolean(ArithmeticStatistics.PROPERTY));
+
+        Assert.assertFalse(ArithmeticStatistics.ENABLED);
+        Assert.assertNull(ArithmeticStatistics.enter(0, ArithmeticStatistics.SYMBOL, -1));
+        Assert.assertNull(ArithmeticStatistics.snapshot());
+        Assert.assertTrue(new Probe().call().isEmpty());
+    }
+
+    @Test
+    public void countsPerSegmentTypeAndProcedure() throws Exception
+    {
+        final Map<String, long[]> counters = callEnabled(Probe.class);
+
+        // 002.jb2 consists of symbol dictionaries and text regions
+        final long[] symbol = counters.get("segment type 0, symbol, template -1");
+        Assert.assertNotNull(counters.keySet().toString(), symbol);
+        Assert.assertTrue(symbol[5] > 0);
+        final long[] generic = counters.get("segment type 0, generic, template 0");
+        Assert.assertNotNull(counters.keySet().toString(), generic);
+        Assert.assertTrue(generic[0] > 0 && generic[5] == 0);
+        final long[] text = counters.get("segment type 6, text, template -1");
+        Assert.assertNotNull(counters.keySet().toString(), text);
+        Assert.assertTrue(text[5] > 0 && text[6] > 0);
+
+        final long[] total = counters.remove("total");
+        long decisions = 0;
+        for (Map.Entry<String, long[]> entry : counters.entrySet())
+        {
+            final long[] c = entry.getValue();
+            Assert.assertFalse(entry.getKey(), entry.getKey().startsWith("segment type -1"));
+            Assert.assertTrue(entry.getKey(), c[0] >= c[1] + c[2]);
+            Assert.assertTrue(entry.getKey(), c[3] >= c[1] + c[2]);
+            decisions += c[0];
+        }
+        Assert.assertEquals(decisions, total[0]);
+    }
+
+    /**
+     * Runs the given probe with counting switched on. The decoder classes are loaded once more for it, as the switch
+     * is evaluated when they are loaded.
+     */
+    private static Map<String, long[]> callEnabled(Class<?> probe) throws Exception
+    {
+        final URL[] urls = { JBIG2ImageReader.class.getProtectionDomain().getCodeSource().getLocation(),
+                ArithmeticStatisticsTest.class.getProtectionDomain().getCodeSource().getLocation() };
+        final String previous = System.setProperty(ArithmeticStatistics.PROPERTY, "true");
+        final URLClassLoader loader = new URLClassLoader(urls,
+                ClassLoader.getSystemClassLoader().getParent());
+        try
+        {
+            @SuppressWarnings("unchecked")
+            final Callable<Map<String, long[]>> callable = (Callable<Map<String, long[]>>) loader
+                    .loadClass(probe.getName()).newInstance();
+            return callable.call();
+        }
+        finally
+        {
+            if (previous == null)
+            {
+                System.clearProperty(ArithmeticStatistics.PROPERTY);
+            }
+            else
+            {
+                System.setProperty(ArithmeticStatistics.PROPERTY, previous);
+            }
+            loader.close();
+        }
+    }
+
+    /**
+     * Reads a document and returns the counters of the reader, keyed by their description.
+     */
+    public static class Probe implements Callable<Map<String, long[]>>
+    {
+        @Override
+        public Map<String, long[]> call() throws Exception
+        {
+            final InputStream is = getClass().getResourceAsStream("/images/002.jb2");
+            final ImageInputStream iis = new MemoryCacheImageInputStream(is);
+            final JBIG2ImageReader reader = new JBIG2ImageReader(new JBIG2ImageReaderSpi());
+            reader.setInput(iis);
+            reader.read(0, reader.getDefaultReadParam());
+            iis.close();
+
+            final Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+            final ArithmeticStatistics statistics = reader.getArithmeticStatistics();
+            if (statistics != null)
+            {
+                for (Map.Entry<ArithmeticStatistics.Key, ArithmeticStatistics.Counters> entry : statistics
+                        .getCounters().entrySet())
+                {
+                    result.put(entry.getKey().toString(), toArray(entry.getValue()));
+                }
+                result.put("total", toArray(statistics.getTotal()));
+            }
+            return result;
+        }
+
+        private static long[] toArray(ArithmeticStatistics.Counters c)
+        {
+            return new long[] { c.getDecisions(), c.getLpsExchanges(), c.getMpsExchanges(),
+                    c.getRenormalizations(), c.getBytes(), c.getIntegers(), c.getSymbolIds() };
+        }
+    }
+}
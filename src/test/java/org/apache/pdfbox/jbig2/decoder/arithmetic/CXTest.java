@@ -203,4 +203,23 @@ public class CXTest
         cx.toggleMps();
         Assert.assertEquals(1, cx.mps());
     }
+
+    @Test
+    public void testPackedStateKeepsCxAndMpsApart()
+    {
+        CX cx = new CX(512, 3);
+
+        cx.setCx(127);
+        cx.toggleMps();
+        Assert.assertEquals(127, cx.cx());
+        Assert.assertEquals(1, cx.mps());
+        Assert.assertEquals(127 << 1 | 1, cx.state());
+
+        cx.setCx(46);
+        Assert.assertEquals(1, cx.mps());
+
+        cx.setState(5 << 1);
+        Assert.assertEquals(5, cx.cx());
+        Assert.assertEquals(0, cx.mps());
+    }
 }
@@ -0,0 +1,376 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.decoder.arithmetic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.pdfbox.jbig2.io.SubInputStream;
+
+/**
+ * The straightforward implementation of the arithmetic decoder, following the flow charts of ISO/IEC 14492:2001 E.3
+ * with a two-dimensional state table and a long C register. Kept as a reference for {@link ArithmeticDecoder}, whose
+ * output must be bit-exact with it, and as a baseline for {@link ArithmeticDecoderBenchmark}.
+ */
+class ReferenceArithmeticDecoder
+{
+
+    private static final int[][] QE = { { 0x5601, 1, 1, 1 }, { 0x3401, 2, 6, 0 },
+            { 0x1801, 3, 9, 0 }, { 0x0AC1, 4, 12, 0 }, { 0x0521, 5, 29, 0 }, { 0x0221, 38, 33, 0 },
+            { 0x5601, 7, 6, 1 }, { 0x5401, 8, 14, 0 }, { 0x4801, 9, 14, 0 }, { 0x3801, 10, 14, 0 },
+            { 0x3001, 11, 17, 0 }, { 0x2401, 12, 18, 0 }, { 0x1C01, 13, 20, 0 },
+            { 0x1601, 29, 21, 0 }, { 0x5601, 15, 14, 1 }, { 0x5401, 16, 14, 0 },
+            { 0x5101, 17, 15, 0 }, { 0x4801, 18, 16, 0 }, { 0x3801, 19, 17, 0 },
+            { 0x3401, 20, 18, 0 }, { 0x3001, 21, 19, 0 }, { 0x2801, 22, 19, 0 },
+            { 0x2401, 23, 20, 0 }, { 0x2201, 24, 21, 0 }, { 0x1C01, 25, 22, 0 },
+            { 0x1801, 26, 23, 0 }, { 0x1601, 27, 24, 0 }, { 0x1401, 28, 25, 0 },
+            { 0x1201, 29, 26, 0 }, { 0x1101, 30, 27, 0 }, { 0x0AC1, 31, 28, 0 },
+            { 0x09C1, 32, 29, 0 }, { 0x08A1, 33, 30, 0 }, { 0x0521, 34, 31, 0 },
+            { 0x0441, 35, 32, 0 }, { 0x02A1, 36, 33, 0 }, { 0x0221, 37, 34, 0 },
+            { 0x0141, 38, 35, 0 }, { 0x0111, 39, 36, 0 }, { 0x0085, 40, 37, 0 },
+            { 0x0049, 41, 38, 0 }, { 0x0025, 42, 39, 0 }, { 0x0015, 43, 40, 0 },
+            { 0x0009, 44, 41, 0 }, { 0x0005, 45, 42, 0 }, { 0x0001, 45, 43, 0 },
+            { 0x5601, 46, 46, 0 } };
+
+    /** Size of the buffer used to read ahead from an {@link ImageInputStream}. */
+    private static final int STREAM_BUFFER_SIZE = 4096;
+
+    private int a;
+    private long c;
+    private int ct;
+
+    /** The current byte, i.e. the byte at index {@link #bp}, or -1 if the input is empty. */
+    private int b;
+
+    /** The bytes read by the decoder, if they are held in an array. */
+    private byte[] array;
+
+    /** The bytes read by the decoder, if they are not held in an array. */
+    private ByteBuffer buffer;
+
+    /** The index of the current byte. */
+    private int bp;
+
+    /** The index behind the last available byte. */
+    private int end;
+
+    /** The position of index 0 with respect to the start of the input. */
+    private long base;
+
+    /** The stream the buffer is refilled from, or {@code null} if the decoder reads a fixed window. */
+    private final ImageInputStream iis;
+
+    /**
+     * Creates a decoder which reads the given stream, starting at its current position. If the stream is a
+     * {@link SubInputStream} of in-memory data, the decoder reads that data in place, otherwise it reads the stream
+     * ahead in blocks. The position of the stream after decoding is therefore unspecified, use
+     * {@link #getStreamPosition()} to find out how far the decoder got.
+     *
+     * @param iis - The stream to read the compressed data from.
+     * @throws IOException if an I/O error occurs.
+     */
+    ReferenceArithmeticDecoder(ImageInputStream iis) throws IOException
+    {
+        final long streamPosition = iis.getStreamPosition();
+        final ByteBuffer remainingBytes = iis instanceof SubInputStream
+                ? ((SubInputStream) iis).remainingBytes() : null;
+        if (remainingBytes != null)
+        {
+            this.iis = null;
+            setWindow(remainingBytes);
+            base += streamPosition;
+        }
+        else
+        {
+            this.iis = iis;
+            array = new byte[STREAM_BUFFER_SIZE];
+            base = streamPosition;
+            bp = -1;
+            end = 0;
+            // the first two bytes initialize the registers
+            while (end < 2 && fill())
+            {
+            }
+        }
+        init();
+    }
+
+    /**
+     * Creates a decoder which reads the given bytes in place.
+     *
+     * @param data - The compressed data.
+     * @param offset - The index of the first byte of the compressed data.
+     * @param length - The number of bytes of the compressed data.
+     */
+    ReferenceArithmeticDecoder(byte[] data, int offset, int length)
+    {
+        this(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Creates a decoder which reads the bytes between the position and the limit of the given buffer in place. The
+     * buffer's position and limit are not changed.
+     *
+     * @param data - The compressed data.
+     */
+    ReferenceArithmeticDecoder(ByteBuffer data)
+    {
+        this.iis = null;
+        setWindow(data);
+        init();
+    }
+
+    private void setWindow(ByteBuffer data)
+    {
+        if (data.hasArray())
+        {
+            array = data.array();
+            final int start = data.arrayOffset() + data.position();
+            base = -start;
+            bp = start - 1;
+            end = data.arrayOffset() + data.limit();
+        }
+        else
+        {
+            buffer = data.slice();
+            base = 0;
+            bp = -1;
+            end = buffer.limit();
+        }
+    }
+
+    private void init()
+    {
+        b = byteAt(bp + 1);
+        if (b >= 0)
+        {
+            bp++;
+        }
+
+        c = b << 16;
+
+        byteIn(byteAt(bp + 1));
+
+        c <<= 7;
+        ct -= 7;
+        a = 0x8000;
+    }
+
+    int decode(CX cx) throws IOException
+    {
+        int d;
+        final int qeValue = QE[cx.cx()][0];
+        final int icx = cx.cx();
+
+        a -= qeValue;
+
+        if ((c >> 16) < qeValue)
+        {
+            d = lpsExchange(cx, icx, qeValue);
+            renormalize();
+        }
+        else
+        {
+            c -= (qeValue << 16);
+            if ((a & 0x8000) == 0)
+            {
+                d = mpsExchange(cx, icx);
+                renormalize();
+            }
+            else
+            {
+                return cx.mps();
+            }
+        }
+
+        return d;
+    }
+
+    private void byteIn() throws IOException
+    {
+        byteIn(peek());
+    }
+
+    private void byteIn(final int b1)
+    {
+        if (b == 0xFF)
+        {
+            if (b1 > 0x8f)
+            {
+                c += 0xff00;
+                ct = 8;
+            }
+            else
+            {
+                if (b1 >= 0)
+                {
+                    bp++;
+                    b = b1;
+                }
+                c += b1 << 9;
+                ct = 7;
+            }
+        }
+        else
+        {
+            if (b1 >= 0)
+            {
+                bp++;
+                b = b1;
+            }
+            c += b1 << 8;
+            ct = 8;
+        }
+
+        c &= 0xffffffffL;
+    }
+
+    /**
+     * Returns the byte following the current byte without consuming it.
+     *
+     * @return the next byte or -1 at the end of the input.
+     */
+    private int peek() throws IOException
+    {
+        if (bp + 1 >= end && !fill())
+        {
+            return -1;
+        }
+        return byteAt(bp + 1);
+    }
+
+    private int byteAt(int index)
+    {
+        return index < end ? 0xff & (array != null ? array[index] : buffer.get(index)) : -1;
+    }
+
+    /**
+     * Reads the next block of the stream into the buffer, keeping the current byte.
+     *
+     * @return {@code true} if at least one byte was read.
+     */
+    private boolean fill() throws IOException
+    {
+        if (iis == null)
+        {
+            return false;
+        }
+        if (bp > 0)
+        {
+            System.arraycopy(array, bp, array, 0, end - bp);
+            base += bp;
+            end -= bp;
+            bp = 0;
+        }
+        iis.seek(base + end);
+        final int read = iis.read(array, end, array.length - end);
+        if (read <= 0)
+        {
+            return false;
+        }
+        end += read;
+        return true;
+    }
+
+    private void renormalize() throws IOException
+    {
+        do
+        {
+            if (ct == 0)
+            {
+                byteIn();
+            }
+
+            a <<= 1;
+            c <<= 1;
+            ct--;
+
+        } while ((a & 0x8000) == 0);
+
+        c &= 0xffffffffL;
+    }
+
+    private int mpsExchange(CX cx, int icx)
+    {
+        final int mps = cx.mps();
+
+        if (a < QE[icx][0])
+        {
+
+            if (QE[icx][3] == 1)
+            {
+                cx.toggleMps();
+            }
+
+            cx.setCx(QE[icx][2]);
+            return 1 - mps;
+        }
+        else
+        {
+            cx.setCx(QE[icx][1]);
+            return mps;
+        }
+    }
+
+    private int lpsExchange(CX cx, int icx, int qeValue)
+    {
+        final int mps = cx.mps();
+
+        if (a < qeValue)
+        {
+            cx.setCx(QE[icx][1]);
+            a = qeValue;
+
+            return mps;
+        }
+        else
+        {
+            if (QE[icx][3] == 1)
+            {
+                cx.toggleMps();
+            }
+
+            cx.setCx(QE[icx][2]);
+            a = qeValue;
+            return 1 - mps;
+        }
+    }
+
+    /**
+     * Returns the position of the first byte the decoder has not consumed yet, with respect to the start of the stream
+     * or, if the decoder reads a byte array or buffer, to the first byte of the compressed data.
+     *
+     * @return the position following the last consumed byte.
+     */
+    long getStreamPosition()
+    {
+        return base + bp + 1;
+    }
+
+    int getA()
+    {
+        return a;
+    }
+
+    long getC()
+    {
+        return c;
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.pdfbox.jbig2.decoder.mmr;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assume.assumeTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -29,8 +30,10 @@ import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import org.apache.pdfbox.jbig2.Bitmap;
+import org.apache.pdfbox.jbig2.RowSink;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 public class MMRDecompressorTest
@@ -65,4 +68,52 @@ public class MMRDecompressorTest
 
         assertEquals(expectedBitmap, b);
     }
+
+    @Test
+    public void uncompressIntoSinkTest() throws IOException
+    {
+        // a run of two black pixels which moves right and back left from line to line: the first line is coded in
+        // horizontal mode, the following ones in vertical mode
+        final StringBuilder bits = new StringBuilder("001" + "1011" + "11" + "1");
+        for (int line = 1; line < 100; line++)
+        {
+            bits.append(line % 2 == 1 ? "011" + "011" + "1" : "010" + "010" + "1");
+        }
+        final byte[] data = new byte[(bits.length() + 7) / 8];
+        for (int i = 0; i < bits.length(); i++)
+        {
+            if (bits.charAt(i) == '1')
+            {
+                data[i / 8] |= 0x80 >>> (i % 8);
+            }
+        }
+
+        final Bitmap expected = new Bitmap(20, 100);
+        for (int y = 0; y < 100; y++)
+        {
+            expected.setPixel(4 + y % 2, y, (byte) 1);
+            expected.setPixel(5 + y % 2, y, (byte) 1);
+        }
+
+        assertEquals(expected, new MMRDecompressor(20, 100,
+                new MemoryCacheImageInputStream(new ByteArrayInputStream(data))).uncompress());
+
+        final Bitmap streamed = new Bitmap(20, 100);
+        new MMRDecompressor(20, 100, new MemoryCacheImageInputStream(new ByteArrayInputStream(data)))
+                .uncompress(new RowSink()
+                {
+                    private int next;
+
+                    @Override
+                    public void putRows(Bitmap bitmap, int row, int y, int count)
+                    {
+                        Assert.assertEquals(next, y);
+                        System.arraycopy(bitmap.getByteArray(), row * bitmap.getRowStride(),
+                                streamed.getByteArray(), y * streamed.getRowStride(),
+                                count * streamed.getRowStride());
+                        next = y + count;
+                    }
+                });
+        assertEquals(expected, streamed);
+    }
 }
@@ -17,14 +17,18 @@
 
 package org.apache.pdfbox.jbig2.image;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assume.assumeTrue;
 
 import java.awt.Rectangle;
+import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.BitSet;
+import java.util.Random;
 
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
@@ -84,4 +88,152 @@ public class BitmapsBlitTest
         assertEquals(src, dstRegionBitmap);
     }
 
+    @Test
+    public void blitDuplicateRowsTest()
+    {
+        final Random random = new Random(19);
+        final int[][] positions = { { 0, 0 }, { 8, 5 }, { 16, -7 }, { 3, 11 }, { -5, 2 }, { 0, 60 } };
+        for (CombinationOperator op : CombinationOperator.values())
+        {
+            for (int[] position : positions)
+            {
+                for (int width : new int[] { 64, 77, 120 })
+                {
+                    final Bitmap src = createBitmapWithDuplicateRows(random, width, 50);
+                    final Bitmap dst = new Bitmap(200, 80);
+                    dst.fillBitmap((byte) 0);
+                    final Bitmap expected = new Bitmap(200, 80);
+
+                    // blit twice, the second blit sees the duplicate rows left by the first one
+                    for (int i = 0; i < 2; i++)
+                    {
+                        Bitmaps.blit(src, dst, position[0], position[1] + i * 3, op);
+                        final Bitmap plainSrc = copy(src);
+                        Bitmaps.blit(plainSrc, expected, position[0], position[1] + i * 3, op);
+                    }
+
+                    final String message = op + " at " + position[0] + ", " + position[1] + " width "
+                            + width;
+                    assertDuplicateRowsAreIdentical(message, dst);
+                    assertArrayEquals(message, expected.getByteArray(), copy(dst).getByteArray());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void replaceRowsTest()
+    {
+        final Random random = new Random(24);
+        final int[][] positions = { { 0, 0 }, { 8, 5 }, { 13, 20 }, { -11, -7 }, { 150, 3 },
+                { 67, 60 }, { 3, 0 } };
+        for (int[] position : positions)
+        {
+            for (int width : new int[] { 1, 8, 30, 64, 77, 120 })
+            {
+                final Bitmap src = createBitmapWithDuplicateRows(random, width, 50);
+                final Bitmap dst = createBitmapWithDuplicateRows(random, 200, 80);
+                final Bitmap expected = copy(dst);
+                final int srcRow = random.nextInt(10);
+                final int count = 1 + random.nextInt(40);
+
+                Bitmaps.replaceRows(src, srcRow, count, dst, position[0], position[1]);
+                for (int line = 0; line < count; line++)
+                {
+                    for (int x = 0; x < width; x++)
+                    {
+                        final int dstX = position[0] + x;
+                        final int dstY = position[1] + line;
+                        if (dstX >= 0 && dstX < 200 && dstY >= 0 && dstY < 80)
+                        {
+                            expected.setPixel(dstX, dstY, src.getPixel(x, srcRow + line));
+                        }
+                    }
+                }
+
+                final String message = "at " + position[0] + ", " + position[1] + " width " + width;
+                assertDuplicateRowsAreIdentical(message, dst);
+                assertArrayEquals(message, expected.getByteArray(), copy(dst).getByteArray());
+            }
+        }
+
+        // rows covering the destination's rows keep their duplicate rows
+        final Bitmap src = createBitmapWithDuplicateRows(random, 64, 50);
+        final Bitmap dst = new Bitmap(64, 50);
+        dst.fillBitmap((byte) 0);
+        Bitmaps.replaceRows(src, 0, 50, dst, 0, 0);
+        for (int y = 1; y < 50; y++)
+        {
+            assertEquals("row " + y, src.isDuplicateRow(y), dst.isDuplicateRow(y));
+        }
+    }
+
+    @Test
+    public void rasterOfDuplicateRowsTest()
+    {
+        final Random random = new Random(23);
+        for (int width : new int[] { 1, 8, 13, 64, 99 })
+        {
+            final Bitmap bitmap = createBitmapWithDuplicateRows(random, width, 40);
+            final byte[] expected = ((DataBufferByte) Bitmaps.asRaster(copy(bitmap)).getDataBuffer())
+                    .getData();
+            final byte[] actual = ((DataBufferByte) Bitmaps.asRaster(bitmap).getDataBuffer())
+                    .getData();
+            assertArrayEquals("width " + width, expected, actual);
+        }
+    }
+
+    /**
+     * Creates a random bitmap in which runs of rows are copies of the row above and which knows these rows.
+     */
+    private static Bitmap createBitmapWithDuplicateRows(Random random, int width, int height)
+    {
+        final Bitmap bitmap = new Bitmap(width, height);
+        final BitSet duplicateRows = new BitSet();
+        for (int y = 0; y < height; y++)
+        {
+            if (y > 0 && random.nextInt(3) != 0)
+            {
+                Bitmap.arraycopy(bitmap, (y - 1) * bitmap.getRowStride(), bitmap,
+                        y * bitmap.getRowStride(), bitmap.getRowStride());
+                duplicateRows.set(y);
+            }
+            else
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    bitmap.setPixel(x, y, (byte) random.nextInt(2));
+                }
+            }
+        }
+        bitmap.setDuplicateRows(duplicateRows);
+        return bitmap;
+    }
+
+    /**
+     * Copies the pixels of a bitmap, but not its duplicate rows.
+     */
+    private static Bitmap copy(Bitmap bitmap)
+    {
+        final Bitmap copy = new Bitmap(bitmap.getWidth(), bitmap.getHeight());
+        Bitmap.arraycopy(bitmap, 0, copy, 0, bitmap.getLength());
+        return copy;
+    }
+
+    private static void assertDuplicateRowsAreIdentical(String message, Bitmap bitmap)
+    {
+        final int rowStride = bitmap.getRowStride();
+        for (int y = 1; y < bitmap.getHeight(); y++)
+        {
+            if (bitmap.isDuplicateRow(y))
+            {
+                for (int i = 0; i < rowStride; i++)
+                {
+                    assertEquals(message + ", row " + y, bitmap.getByte((y - 1) * rowStride + i),
+                            bitmap.getByte(y * rowStride + i));
+                }
+            }
+        }
+    }
+
 }
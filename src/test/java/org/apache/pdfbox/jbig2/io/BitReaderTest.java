@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BitReaderTest
+{
+
+    private final byte[] data = new byte[1000];
+
+    public BitReaderTest()
+    {
+        new Random(42).nextBytes(data);
+    }
+
+    @Test
+    public void readBitsFromMemory() throws IOException
+    {
+        assertSameBits(new SubInputStream(new ByteBufferSource(data), 0, data.length));
+    }
+
+    @Test
+    public void readBitsFromStream() throws IOException
+    {
+        assertSameBits(new MemoryCacheImageInputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void startsAtBitOffset() throws IOException
+    {
+        final ImageInputStream iis = new SubInputStream(new ByteBufferSource(data), 0, data.length);
+        iis.seek(3);
+        iis.readBits(5);
+
+        final BitReader reader = new BitReader(iis);
+        Assert.assertEquals(bits(29, 40), reader.readBits(40));
+    }
+
+    @Test
+    public void peekSkipAndAlign() throws IOException
+    {
+        final ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(data));
+        final BitReader reader = new BitReader(iis);
+
+        final long peeked = reader.peek(BitReader.MAX_PEEK_BITS);
+        Assert.assertEquals(peeked, reader.peek(BitReader.MAX_PEEK_BITS));
+        Assert.assertEquals(peeked >>> 53, reader.readBits(3));
+
+        reader.skip(1000);
+        Assert.assertEquals(125, reader.getStreamPosition());
+        Assert.assertEquals(3, reader.getBitOffset());
+
+        reader.alignToByte();
+        Assert.assertEquals(126, reader.getStreamPosition());
+        Assert.assertEquals(0, reader.getBitOffset());
+        Assert.assertEquals(data[126], reader.readByte());
+
+        reader.readBits(2);
+        reader.updateStream();
+        Assert.assertEquals(127, iis.getStreamPosition());
+        Assert.assertEquals(2, iis.getBitOffset());
+
+        reader.seek(500);
+        Assert.assertEquals(data[500], reader.readByte());
+    }
+
+    @Test
+    public void endOfStream() throws IOException
+    {
+        final BitReader reader = new BitReader(
+                new SubInputStream(new ByteBufferSource(data), 0, data.length));
+        reader.skip(data.length * 8 - 4);
+
+        Assert.assertEquals((data[data.length - 1] & 0xf) << 4, reader.peek(8));
+        try
+        {
+            reader.readBits(5);
+            Assert.fail("EOFException expected");
+        }
+        catch (EOFException e)
+        {
+            // expected
+        }
+        Assert.assertEquals(data[data.length - 1] & 0xf, reader.readBits(4));
+    }
+
+    private void assertSameBits(ImageInputStream input) throws IOException
+    {
+        final BitReader reader = new BitReader(input);
+        final Random random = new Random(7);
+
+        long position = 0;
+        while (position < data.length * 8L)
+        {
+            final int n = (int) Math.min(random.nextInt(65), data.length * 8L - position);
+            Assert.assertEquals(bits(position, n), reader.readBits(n));
+            position += n;
+            Assert.assertEquals(position >> 3, reader.getStreamPosition());
+            Assert.assertEquals(position & 7, reader.getBitOffset());
+        }
+    }
+
+    /**
+     * Extracts bits from {@link #data} one by one, {@link ImageInputStream#readBits(int)} can't be used as reference
+     * as it drops leading bits when reading more than 57 bits.
+     */
+    private long bits(long position, int n)
+    {
+        long bits = 0;
+        for (long i = position; i < position + n; i++)
+        {
+            bits = bits << 1 | ((data[(int) (i >> 3)] >> (7 - (i & 7))) & 1);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileChannelSourceTest
+{
+
+    @Test
+    public void concurrentViews() throws Exception
+    {
+        final File inputFile = new File("src/test/resources/images/002.jb2");
+        // skip test if input file isn't available
+        assumeTrue(inputFile.exists());
+
+        final RandomAccessFile raf = new RandomAccessFile(inputFile, "r");
+        final byte[] content = new byte[(int) raf.length()];
+        raf.readFully(content);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final FileChannelSource source = new FileChannelSource(raf.getChannel());
+            final SubInputStream root = new SubInputStream(source, 0, source.length());
+
+            final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 8; t++)
+            {
+                final long seed = t;
+                results.add(executor.submit(new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call() throws Exception
+                    {
+                        final Random random = new Random(seed);
+                        for (int i = 0; i < 200; i++)
+                        {
+                            final int offset = random.nextInt(content.length);
+                            final int length = random.nextInt(10000);
+                            final SubInputStream view = new SubInputStream(root, offset, length);
+                            final int expected = Math.min(length, content.length - offset);
+                            for (int j = 0; j < expected; j++)
+                            {
+                                if ((content[offset + j] & 0xff) != view.read())
+                                {
+                                    return false;
+                                }
+                            }
+                            if (view.read() != -1)
+                            {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+
+            for (Future<Boolean> result : results)
+            {
+                Assert.assertTrue(result.get());
+            }
+            // positional reads leave the channel position alone
+            Assert.assertEquals(content.length, raf.getChannel().position());
+        }
+        finally
+        {
+            executor.shutdown();
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.apache.pdfbox.jbig2.Bitmap;
+import org.apache.pdfbox.jbig2.JBIG2DocumentFacade;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedFileSourceTest
+{
+
+    @Test
+    public void readAcrossChunks() throws IOException
+    {
+        final File file = File.createTempFile("jbig2", ".bin");
+        file.deleteOnExit();
+        final byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++)
+        {
+            content[i] = (byte) (i * 7);
+        }
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            final MappedFileSource source = new MappedFileSource(raf.getChannel(), 64);
+            Assert.assertEquals(content.length, source.length());
+
+            final byte[] b = new byte[200];
+            Assert.assertEquals(200, source.read(50, b, 0, 200));
+            for (int i = 0; i < b.length; i++)
+            {
+                Assert.assertEquals(content[50 + i], b[i]);
+            }
+            Assert.assertEquals(10, source.read(990, b, 0, 200));
+            Assert.assertEquals(-1, source.read(1000, b, 0, 200));
+
+            final ByteBuffer slice = source.slice(130, 20);
+            Assert.assertNotNull(slice);
+            Assert.assertEquals(20, slice.remaining());
+            Assert.assertEquals(content[130], slice.get(0));
+            Assert.assertNull(source.slice(120, 20));
+
+            final SubInputStream view = new SubInputStream(
+                    new SubInputStream(source, 0, source.length()), 100, 300);
+            for (int i = 0; i < 300; i++)
+            {
+                Assert.assertEquals(content[100 + i] & 0xff, view.read());
+            }
+            Assert.assertEquals(-1, view.read());
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void decodeWithSmallChunks() throws Exception
+    {
+        final File inputFile = new File("src/test/resources/images/002.jb2");
+        // skip test if input file isn't available
+        assumeTrue(inputFile.exists());
+
+        final RandomAccessFile raf = new RandomAccessFile(inputFile, "r");
+        try
+        {
+            final JBIG2DocumentFacade mapped = new JBIG2DocumentFacade(
+                    new MappedFileSource(raf.getChannel(), 4096));
+            final JBIG2DocumentFacade streamed = new JBIG2DocumentFacade(
+                    new MemoryCacheImageInputStream(getClass().getResourceAsStream("/images/002.jb2")));
+
+            for (int page = 1; page <= 17; page++)
+            {
+                final Bitmap expected = streamed.getPageBitmap(page);
+                final Bitmap actual = mapped.getPageBitmap(page);
+                Assert.assertArrayEquals(expected.getByteArray(), actual.getByteArray());
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+}
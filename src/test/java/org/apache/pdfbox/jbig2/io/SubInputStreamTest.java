@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SubInputStreamTest
+{
+
+    @Test
+    public void bufferSizeAdaptsToView() throws IOException
+    {
+        final CountingSource source = new CountingSource(1 << 20);
+
+        final SubInputStream header = new SubInputStream(source, 0, 20);
+        header.read();
+        Assert.assertEquals(BufferPool.MIN_SIZE, header.getBufferSize());
+
+        final SubInputStream region = new SubInputStream(source, 0, 5000);
+        region.read();
+        Assert.assertEquals(8192, region.getBufferSize());
+
+        // large views read ahead further while they are read sequentially
+        final SubInputStream large = new SubInputStream(source, 0, source.length());
+        large.read();
+        Assert.assertEquals(BufferPool.MIN_SIZE, large.getBufferSize());
+        for (int i = 1; i < 100000; i++)
+        {
+            Assert.assertEquals(source.data[i] & 0xff, large.read());
+        }
+        Assert.assertEquals(BufferPool.MAX_SIZE, large.getBufferSize());
+
+        // and fall back to a small buffer after a seek
+        large.seek(500000);
+        Assert.assertEquals(source.data[500000] & 0xff, large.read());
+        Assert.assertEquals(BufferPool.MIN_SIZE, large.getBufferSize());
+    }
+
+    @Test
+    public void closeReturnsBuffer() throws IOException
+    {
+        final CountingSource source = new CountingSource(10000);
+        final SubInputStream view = new SubInputStream(source, 0, 3000);
+        view.read();
+        Assert.assertEquals(4096, view.getBufferSize());
+
+        final int pooled = BufferPool.pooled(4096);
+        view.close();
+        Assert.assertEquals(0, view.getBufferSize());
+        Assert.assertEquals(pooled + 1, BufferPool.pooled(4096));
+    }
+
+    @Test
+    public void nestedSourceViewsDontLockTheirParents() throws Exception
+    {
+        final CountingSource source = new CountingSource(10000);
+        final SubInputStream parent = new SubInputStream(source, 1000, 1000);
+        Assert.assertEquals(source.data[1000] & 0xff, parent.read());
+        Assert.assertEquals(1, source.reads);
+
+        final SubInputStream child = new SubInputStream(parent, 100, 200);
+        final SubInputStream grandChild = new SubInputStream(child, 50, 100);
+        final int[] read = new int[101];
+        final Thread reader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (int i = 0; i < read.length; i++)
+                    {
+                        read[i] = grandChild.read();
+                    }
+                }
+                catch (IOException e)
+                {
+                    read[0] = -2;
+                }
+            }
+        };
+
+        // the grand child reads the source itself, also while its parents are locked
+        synchronized (parent)
+        {
+            reader.start();
+            reader.join(10000);
+        }
+        Assert.assertFalse(reader.isAlive());
+        for (int i = 0; i < 100; i++)
+        {
+            Assert.assertEquals(source.data[1150 + i] & 0xff, read[i]);
+        }
+        Assert.assertEquals(-1, read[100]);
+        Assert.assertEquals(2, source.reads);
+    }
+
+    @Test
+    public void nestedStreamViewsShareBufferedBytes() throws IOException
+    {
+        final byte[] data = new CountingSource(10000).data;
+        final int[] reads = new int[1];
+        final ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))
+        {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                reads[0]++;
+                return super.read(b, off, len);
+            }
+        };
+
+        final SubInputStream parent = new SubInputStream(iis, 2000, 3000);
+        parent.seek(500);
+        Assert.assertEquals(data[2500] & 0xff, parent.read());
+        final int parentReads = reads[0];
+
+        final SubInputStream child = new SubInputStream(parent, 600, 100);
+        for (int i = 0; i < 100; i++)
+        {
+            Assert.assertEquals(data[2600 + i] & 0xff, child.read());
+        }
+        Assert.assertEquals(parentReads, reads[0]);
+    }
+
+    @Test
+    public void nestedStreamViewsReadRootStream() throws IOException
+    {
+        final byte[] data = new CountingSource(10000).data;
+        final ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(data));
+
+        final SubInputStream parent = new SubInputStream(iis, 100, 5000);
+        final SubInputStream child = new SubInputStream(parent, 200, 1000);
+        final SubInputStream grandChild = new SubInputStream(child, 300, 2000);
+        Assert.assertEquals(700, grandChild.length());
+
+        final byte[] b = new byte[700];
+        grandChild.readFully(b);
+        for (int i = 0; i < b.length; i++)
+        {
+            Assert.assertEquals(data[600 + i], b[i]);
+        }
+        Assert.assertEquals(-1, grandChild.read());
+
+        // the parents' positions are untouched
+        Assert.assertEquals(0, parent.getStreamPosition());
+        Assert.assertEquals(0, child.getStreamPosition());
+        Assert.assertEquals(data[300], (byte) child.read());
+    }
+
+    /**
+     * A source which isn't addressable in memory and counts the reads.
+     */
+    private static class CountingSource implements RandomAccessSource
+    {
+        final byte[] data;
+        int reads;
+
+        CountingSource(int length)
+        {
+            data = new byte[length];
+            for (int i = 0; i < length; i++)
+            {
+                data[i] = (byte) (i * 31 + (i >> 8));
+            }
+        }
+
+        @Override
+        public long length()
+        {
+            return data.length;
+        }
+
+        @Override
+        public int read(long position, byte[] b, int off, int len)
+        {
+            reads++;
+            if (position >= data.length)
+            {
+                return -1;
+            }
+            final int n = (int) Math.min(len, data.length - position);
+            System.arraycopy(data, (int) position, b, off, n);
+            return n;
+        }
+
+        @Override
+        public ByteBuffer slice(long position, long length)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.jbig2.segments;
+
+import org.apache.pdfbox.jbig2.Bitmap;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticDecoder;
+import org.apache.pdfbox.jbig2.io.SubInputStream;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generic region decoding per template on a strip as wide as an A3 page at 600 dpi. With nominal AT pixels lines are
+ * decoded a word at a time; with a moved AT pixel the AT pixel is taken from a register of its own.
+ *
+ * Run with: mvn clean test -Pbenchmark
+ * Results:  target/benchmark-results.json
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+@Fork(0)
+public class GenericRegionDecoderBenchmark {
+
+    /** A3 at 600 dpi is 7016 x 9921 pixels. */
+    private static final int WIDTH = 7016;
+    private static final int HEIGHT = 1024;
+
+    @Param({ "0", "1", "2", "3" })
+    public int template;
+
+    private short[] atX;
+    private short[] atY;
+    private byte[] nominalData;
+
+    private short[] movedAtX;
+    private short[] movedAtY;
+    private byte[] movedAtData;
+
+    @Setup(Level.Trial)
+    public void encode() {
+        final Bitmap bitmap = GenericRegionTest.createTextLikeBitmap(new Random(600), WIDTH, HEIGHT);
+
+        atX = GenericRegionEncoder.nominalAtX(template);
+        atY = GenericRegionEncoder.nominalAtY(template);
+        nominalData = GenericRegionEncoder.encode(bitmap, template, false, atX, atY);
+
+        movedAtX = GenericRegionEncoder.nominalAtX(template);
+        movedAtY = GenericRegionEncoder.nominalAtY(template);
+        movedAtX[0] = -1;
+        movedAtY[0] = -2;
+        movedAtData = GenericRegionEncoder.encode(bitmap, template, false, movedAtX, movedAtY);
+    }
+
+    @Benchmark
+    public Bitmap decodeNominalAt() throws IOException {
+        return decode(nominalData, atX, atY);
+    }
+
+    @Benchmark
+    public Bitmap decodeMovedAt() throws IOException {
+        return decode(movedAtData, movedAtX, movedAtY);
+    }
+
+    private Bitmap decode(byte[] data, short[] x, short[] y) throws IOException {
+        final GenericRegion region = new GenericRegion(new SubInputStream(
+                new MemoryCacheImageInputStream(new ByteArrayInputStream(data)), 0, data.length));
+        region.setParameters(false, (byte) template, false, false, x, y, WIDTH, HEIGHT, null,
+                new ArithmeticDecoder(data, 0, data.length));
+        final Bitmap bitmap = region.getRegionBitmap();
+        region.release();
+        return bitmap;
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pdfbox.jbig2.segments;
+
+import org.apache.pdfbox.jbig2.Bitmap;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticEncoder;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.CX;
+
+/**
+ * Encodes bitmaps as generic regions with the arithmetic encoder, forming each context pixel by pixel as described
+ * in 6.2.5.3, so that tests have compressed data with known content for any template and AT configuration. The bit
+ * order of the contexts is the one of {@link GenericRegion}. Extended templates are not supported.
+ */
+final class GenericRegionEncoder
+{
+
+    /** The nominal positions of the AT pixels, x and y per pixel, for templates 0 to 3. */
+    static final short[][] NOMINAL_AT = { { 3, -1, -3, -1, 2, -2, -2, -2 }, { 3, -1 }, { 2, -1 },
+            { 2, -1 } };
+
+    /** The SLTP contexts for templates 0 to 3. */
+    private static final int[] SLTP = { 0x9b25, 0x795, 0xe5, 0x195 };
+
+    private GenericRegionEncoder()
+    {
+    }
+
+    static short[] nominalAtX(int template)
+    {
+        final short[] atX = new short[NOMINAL_AT[template].length / 2];
+        for (int i = 0; i < atX.length; i++)
+        {
+            atX[i] = NOMINAL_AT[template][2 * i];
+        }
+        return atX;
+    }
+
+    static short[] nominalAtY(int template)
+    {
+        final short[] atY = new short[NOMINAL_AT[template].length / 2];
+        for (int i = 0; i < atY.length; i++)
+        {
+            atY[i] = NOMINAL_AT[template][2 * i + 1];
+        }
+        return atY;
+    }
+
+    /**
+     * @param bitmap - The bitmap to encode.
+     * @param template - GBTEMPLATE, 0 to 3.
+     * @param isTPGDon - Whether typical prediction is used.
+     * @param atX - The x coordinates of the AT pixels.
+     * @param atY - The y coordinates of the AT pixels.
+     * @return The encoded data, terminated with the marker 0xFFAC.
+     */
+    static byte[] encode(Bitmap bitmap, int template, boolean isTPGDon, short[] atX, short[] atY)
+    {
+        return encode(bitmap, template, isTPGDon, atX, atY, null);
+    }
+
+    /**
+     * @param bitmap - The bitmap to encode, white where pixels are skipped.
+     * @param template - GBTEMPLATE, 0 to 3.
+     * @param isTPGDon - Whether typical prediction is used.
+     * @param atX - The x coordinates of the AT pixels.
+     * @param atY - The y coordinates of the AT pixels.
+     * @param skip - The pixels which are skipped (SKIP) or {@code null}.
+     * @return The encoded data, terminated with the marker 0xFFAC.
+     */
+    static byte[] encode(Bitmap bitmap, int template, boolean isTPGDon, short[] atX, short[] atY,
+            Bitmap skip)
+    {
+        final ArithmeticEncoder encoder = new ArithmeticEncoder();
+        final CX cx = new CX(65536, 1);
+        int ltp = 0;
+        for (int y = 0; y < bitmap.getHeight(); y++)
+        {
+            if (isTPGDon)
+            {
+                final int typical = isLineAboveEqual(bitmap, y) ? 1 : 0;
+                cx.setIndex(SLTP[template]);
+                encoder.encode(cx, typical ^ ltp);
+                ltp = typical;
+                if (ltp == 1)
+                {
+                    continue;
+                }
+            }
+            for (int x = 0; x < bitmap.getWidth(); x++)
+            {
+                if (skip != null && skip.getPixel(x, y) == 1)
+                {
+                    continue;
+                }
+                cx.setIndex(context(bitmap, template, x, y, atX, atY));
+                encoder.encode(cx, pixel(bitmap, x, y));
+            }
+        }
+        return encoder.flush();
+    }
+
+    /**
+     * Forms the context of the pixel at (x, y).
+     */
+    static int context(Bitmap bitmap, int template, int x, int y, short[] atX, short[] atY)
+    {
+        int context = 0;
+        switch (template)
+        {
+        case 0:
+            context = row(bitmap, x - 1, y, 4) | row(bitmap, x + 3, y - 1, 7) << 4
+                    | row(bitmap, x + 2, y - 2, 5) << 11;
+            context = at(context, bitmap, x, y, atX[0], atY[0], 4);
+            context = at(context, bitmap, x, y, atX[1], atY[1], 10);
+            context = at(context, bitmap, x, y, atX[2], atY[2], 11);
+            return at(context, bitmap, x, y, atX[3], atY[3], 15);
+        case 1:
+            context = row(bitmap, x - 1, y, 3) | row(bitmap, x + 3, y - 1, 6) << 3
+                    | row(bitmap, x + 2, y - 2, 4) << 9;
+            return at(context, bitmap, x, y, atX[0], atY[0], 3);
+        case 2:
+            context = row(bitmap, x - 1, y, 2) | row(bitmap, x + 2, y - 1, 5) << 2
+                    | row(bitmap, x + 1, y - 2, 3) << 7;
+            return at(context, bitmap, x, y, atX[0], atY[0], 2);
+        case 3:
+            context = row(bitmap, x - 1, y, 4) | row(bitmap, x + 2, y - 1, 6) << 4;
+            return at(context, bitmap, x, y, atX[0], atY[0], 4);
+        default:
+            throw new IllegalArgumentException("Unsupported template: " + template);
+        }
+    }
+
+    /**
+     * Collects {@code count} pixels of row y, starting at x and going left, into the bits 0 to count - 1.
+     */
+    private static int row(Bitmap bitmap, int x, int y, int count)
+    {
+        int bits = 0;
+        for (int i = 0; i < count; i++)
+        {
+            bits |= pixel(bitmap, x - i, y) << i;
+        }
+        return bits;
+    }
+
+    private static int at(int context, Bitmap bitmap, int x, int y, int atX, int atY, int bit)
+    {
+        return context & ~(1 << bit) | pixel(bitmap, x + atX, y + atY) << bit;
+    }
+
+    private static int pixel(Bitmap bitmap, int x, int y)
+    {
+        if (x < 0 || y < 0 || x >= bitmap.getWidth() || y >= bitmap.getHeight())
+        {
+            return 0;
+        }
+        return bitmap.getPixel(x, y);
+    }
+
+    private static boolean isLineAboveEqual(Bitmap bitmap, int y)
+    {
+        for (int x = 0; x < bitmap.getWidth(); x++)
+        {
+            if (pixel(bitmap, x, y) != pixel(bitmap, x, y - 1))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
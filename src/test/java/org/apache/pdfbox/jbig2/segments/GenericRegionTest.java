@@ -19,15 +19,23 @@ package org.apache.pdfbox.jbig2.segments;
 
 import static org.junit.Assume.assumeTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Random;
 
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 
+import org.apache.pdfbox.jbig2.Bitmap;
+import org.apache.pdfbox.jbig2.JBIG2StreamDecoder;
+import org.apache.pdfbox.jbig2.RowSink;
 import org.apache.pdfbox.jbig2.TestImage;
+import org.apache.pdfbox.jbig2.decoder.arithmetic.ArithmeticDecoder;
 import org.apache.pdfbox.jbig2.err.InvalidHeaderValueException;
 import org.apache.pdfbox.jbig2.image.Bitmaps;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
@@ -78,6 +86,352 @@ public class GenericRegionTest
         Assert.assertEquals(-2, gbAtY[3]);
     }
 
+    @Test
+    public void decodeEncodedRegionsTest() throws IOException
+    {
+        final Random random = new Random(42);
+        for (int template = 0; template < 4; template++)
+        {
+            for (int i = 0; i < 4; i++)
+            {
+                final Bitmap bitmap = createTextLikeBitmap(random, 40 + random.nextInt(300),
+                        20 + random.nextInt(100));
+                final boolean isTPGDon = (i & 1) != 0;
+                final short[] atX = GenericRegionEncoder.nominalAtX(template);
+                final short[] atY = GenericRegionEncoder.nominalAtY(template);
+                if (i >= 2)
+                {
+                    // move the first AT pixel away from its nominal position
+                    atX[0] = (short) -(1 + random.nextInt(4));
+                    atY[0] = (short) -random.nextInt(3);
+                }
+                assertDecodesTo(bitmap, template, isTPGDon, atX, atY);
+            }
+        }
+    }
+
+    @Test
+    public void decodeEncodedRegionsAtWordBoundariesTest() throws IOException
+    {
+        final Random random = new Random(17);
+        final int[] widths = { 1, 7, 8, 9, 60, 63, 64, 65, 127, 128, 129, 200 };
+        for (int template = 0; template < 4; template++)
+        {
+            for (int width : widths)
+            {
+                final Bitmap bitmap = createTextLikeBitmap(random, width, 30);
+                // a column of black pixels at the right edge
+                for (int y = 0; y < 30; y += 2)
+                {
+                    bitmap.setPixel(width - 1, y, (byte) 1);
+                }
+                assertDecodesTo(bitmap, template, false, GenericRegionEncoder.nominalAtX(template),
+                        GenericRegionEncoder.nominalAtY(template));
+            }
+        }
+    }
+
+    @Test
+    public void decodeEncodedRegionsWithMovedAtPixelsTest() throws IOException
+    {
+        final Random random = new Random(20);
+        for (int template = 0; template < 4; template++)
+        {
+            for (int i = 0; i < 12; i++)
+            {
+                final Bitmap bitmap = createTextLikeBitmap(random, 1 + random.nextInt(260),
+                        1 + random.nextInt(60));
+                final short[] atX = GenericRegionEncoder.nominalAtX(template);
+                final short[] atY = GenericRegionEncoder.nominalAtY(template);
+                for (int j = 0; j < atX.length; j++)
+                {
+                    switch (random.nextInt(3))
+                    {
+                    case 0:
+                        // in the current line, also further left than a word
+                        atX[j] = (short) -(1 + random.nextInt(80));
+                        atY[j] = 0;
+                        break;
+                    case 1:
+                        atX[j] = (short) (random.nextInt(41) - 20);
+                        atY[j] = (short) -(1 + random.nextInt(4));
+                        break;
+                    default:
+                        atX[j] = (short) (random.nextInt(256) - 128);
+                        atY[j] = (short) -(1 + random.nextInt(128));
+                        break;
+                    }
+                }
+                assertDecodesTo(bitmap, template, (i & 1) != 0, atX, atY);
+            }
+        }
+    }
+
+    @Test
+    public void decodeEncodedRegionsWithSkippedPixelsTest() throws IOException
+    {
+        final Random random = new Random(21);
+        for (int template = 0; template < 4; template++)
+        {
+            for (int i = 0; i < 6; i++)
+            {
+                final int width = 1 + random.nextInt(200);
+                final int height = 1 + random.nextInt(40);
+                final Bitmap bitmap = createTextLikeBitmap(random, width, height);
+
+                // skip the pixels outside of a slanted band, as for a rotated halftone grid
+                final Bitmap skip = new Bitmap(width, height);
+                for (int y = 0; y < height; y++)
+                {
+                    for (int x = 0; x < width; x++)
+                    {
+                        if (x < y - 10 || x > y + width / 2 || random.nextInt(50) == 0)
+                        {
+                            skip.setPixel(x, y, (byte) 1);
+                            bitmap.setPixel(x, y, (byte) 0);
+                        }
+                    }
+                }
+
+                final short[] atX = GenericRegionEncoder.nominalAtX(template);
+                final short[] atY = GenericRegionEncoder.nominalAtY(template);
+                if (i >= 4)
+                {
+                    // moved AT pixels together with skipped pixels are decoded a byte at a time
+                    atX[0] = -2;
+                    atY[0] = -1;
+                }
+
+                final byte[] data = GenericRegionEncoder.encode(bitmap, template, false, atX, atY,
+                        skip);
+                final GenericRegion gr = new GenericRegion(new SubInputStream(
+                        new MemoryCacheImageInputStream(new ByteArrayInputStream(data)), 0,
+                        data.length));
+                gr.setParameters(false, 0, data.length, height, width, (byte) template, false, true,
+                        skip, atX, atY);
+                final Bitmap decoded = gr.getRegionBitmap();
+                gr.release();
+
+                Assert.assertArrayEquals("template " + template, bitmap.getByteArray(),
+                        decoded.getByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void typicalLinesAreDuplicateRowsTest() throws IOException
+    {
+        final Bitmap bitmap = createTextLikeBitmap(new Random(19), 300, 200);
+        final byte[] data = GenericRegionEncoder.encode(bitmap, 0, true,
+                GenericRegionEncoder.nominalAtX(0), GenericRegionEncoder.nominalAtY(0));
+        final GenericRegion gr = new GenericRegion(new SubInputStream(
+                new MemoryCacheImageInputStream(new ByteArrayInputStream(data)), 0, data.length));
+        gr.setParameters(false, (byte) 0, true, false, GenericRegionEncoder.nominalAtX(0),
+                GenericRegionEncoder.nominalAtY(0), bitmap.getWidth(), bitmap.getHeight(), null,
+                new ArithmeticDecoder(data, 0, data.length));
+        final Bitmap decoded = gr.getRegionBitmap();
+        gr.release();
+
+        final int rowStride = decoded.getRowStride();
+        for (int y = 1; y < decoded.getHeight(); y++)
+        {
+            boolean identical = true;
+            for (int i = 0; i < rowStride; i++)
+            {
+                identical &= decoded.getByte(y * rowStride + i) == decoded
+                        .getByte((y - 1) * rowStride + i);
+            }
+            // the encoder marks every line that is a copy of the line above as typical
+            Assert.assertEquals("row " + y, identical, decoded.isDuplicateRow(y));
+        }
+    }
+
+    @Test
+    public void decodeRegionRowsTest() throws IOException
+    {
+        final Random random = new Random(22);
+        for (int template = 0; template < 4; template++)
+        {
+            for (int i = 0; i < 6; i++)
+            {
+                final Bitmap bitmap = createTextLikeBitmap(random, 1 + random.nextInt(200),
+                        1 + random.nextInt(200));
+                final short[] atX = GenericRegionEncoder.nominalAtX(template);
+                final short[] atY = GenericRegionEncoder.nominalAtY(template);
+                if (i >= 4)
+                {
+                    // an AT pixel further up than the band of rows
+                    atX[0] = (short) (random.nextInt(21) - 10);
+                    atY[0] = (short) -(30 + random.nextInt(30));
+                }
+                final boolean isTPGDon = (i & 1) != 0;
+
+                final byte[] data = GenericRegionEncoder.encode(bitmap, template, isTPGDon, atX,
+                        atY);
+                final GenericRegion gr = new GenericRegion(new SubInputStream(
+                        new MemoryCacheImageInputStream(new ByteArrayInputStream(data)), 0,
+                        data.length));
+                gr.setParameters(false, (byte) template, isTPGDon, false, atX, atY,
+                        bitmap.getWidth(), bitmap.getHeight(), null,
+                        new ArithmeticDecoder(data, 0, data.length));
+
+                final Bitmap streamed = new Bitmap(bitmap.getWidth(), bitmap.getHeight());
+                final int[] next = new int[1];
+                gr.getRegionRows(new RowSink()
+                {
+                    @Override
+                    public void putRows(Bitmap rows, int row, int y, int count)
+                    {
+                        // the rows arrive in order, each once
+                        Assert.assertEquals(next[0], y);
+                        Assert.assertTrue(count > 0);
+                        System.arraycopy(rows.getByteArray(), row * rows.getRowStride(),
+                                streamed.getByteArray(), y * streamed.getRowStride(),
+                                count * streamed.getRowStride());
+                        next[0] = y + count;
+                    }
+                });
+                gr.release();
+
+                Assert.assertEquals(bitmap.getHeight(), next[0]);
+                Assert.assertArrayEquals("template " + template + ", TPGDON " + isTPGDon,
+                        bitmap.getByteArray(), streamed.getByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void composePageOfGenericRegionsTest() throws IOException
+    {
+        final Random random = new Random(23);
+        final CombinationOperator[] operators = CombinationOperator.values();
+        for (int page = 0; page < 20; page++)
+        {
+            final int defaultPixelValue = page & 1;
+            final Bitmap expected = new Bitmap(150, 120);
+            expected.fillBitmap(defaultPixelValue != 0 ? (byte) 0xff : 0);
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+
+            // page information: 150 x 120, combination operator override allowed
+            writeSegmentHeader(out, 0, 48, 19);
+            out.writeInt(150);
+            out.writeInt(120);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(0x40 | defaultPixelValue << 2);
+            out.writeShort(0);
+
+            final int regions = 1 + random.nextInt(5);
+            for (int i = 0; i < regions; i++)
+            {
+                final int width = 1 + random.nextInt(120);
+                final int height = 1 + random.nextInt(100);
+                final int x = random.nextInt(150 - width + 1);
+                final int y = random.nextInt(120 - height + 1);
+                final CombinationOperator op = operators[random.nextInt(operators.length)];
+                final int template = random.nextInt(4);
+                final boolean isTPGDon = random.nextBoolean();
+                final Bitmap bitmap = createTextLikeBitmap(random, width, height);
+                final short[] atX = GenericRegionEncoder.nominalAtX(template);
+                final short[] atY = GenericRegionEncoder.nominalAtY(template);
+                final byte[] data = GenericRegionEncoder.encode(bitmap, template, isTPGDon, atX,
+                        atY);
+
+                // immediate generic region
+                writeSegmentHeader(out, 1 + i, 38, 18 + 2 * atX.length + data.length);
+                out.writeInt(width);
+                out.writeInt(height);
+                out.writeInt(x);
+                out.writeInt(y);
+                out.writeByte(op.ordinal());
+                out.writeByte(template << 1 | (isTPGDon ? 0x08 : 0));
+                for (int j = 0; j < atX.length; j++)
+                {
+                    out.writeByte(atX[j]);
+                    out.writeByte(atY[j]);
+                }
+                out.write(data);
+
+                for (int py = 0; py < height; py++)
+                {
+                    for (int px = 0; px < width; px++)
+                    {
+                        final int old = expected.getPixel(x + px, y + py);
+                        final int pixel = Bitmaps.combineBytes((byte) old,
+                                bitmap.getPixel(px, py), op) & 1;
+                        expected.setPixel(x + px, y + py, (byte) pixel);
+                    }
+                }
+            }
+
+            // end of page
+            writeSegmentHeader(out, 1 + regions, 49, 0);
+
+            final Bitmap decoded = new JBIG2StreamDecoder(
+                    new ByteArrayInputStream(bytes.toByteArray())).nextPage();
+            Assert.assertArrayEquals("page " + page, expected.getByteArray(),
+                    decoded.getByteArray());
+        }
+    }
+
+    private static void writeSegmentHeader(DataOutputStream out, int segmentNumber, int type,
+            int dataLength) throws IOException
+    {
+        out.writeInt(segmentNumber);
+        out.writeByte(type);
+        // no referred-to segments
+        out.writeByte(0);
+        // page association
+        out.writeByte(1);
+        out.writeInt(dataLength);
+    }
+
+    /**
+     * Decodes the given bitmap encoded as generic region and compares the result with the bitmap.
+     */
+    static void assertDecodesTo(Bitmap bitmap, int template, boolean isTPGDon, short[] atX,
+            short[] atY) throws IOException
+    {
+        final byte[] data = GenericRegionEncoder.encode(bitmap, template, isTPGDon, atX, atY);
+        final GenericRegion gr = new GenericRegion(new SubInputStream(
+                new MemoryCacheImageInputStream(new ByteArrayInputStream(data)), 0, data.length));
+        gr.setParameters(false, (byte) template, isTPGDon, false, atX, atY, bitmap.getWidth(),
+                bitmap.getHeight(), null, new ArithmeticDecoder(data, 0, data.length));
+        final Bitmap decoded = gr.getRegionBitmap();
+        gr.release();
+
+        Assert.assertArrayEquals("template " + template + ", TPGDON " + isTPGDon,
+                bitmap.getByteArray(), decoded.getByteArray());
+    }
+
+    /**
+     * Creates a mostly white bitmap with some dark blobs and repeated lines, like a scanned page of text.
+     */
+    static Bitmap createTextLikeBitmap(Random random, int width, int height)
+    {
+        final Bitmap bitmap = new Bitmap(width, height);
+        for (int i = width * height / 400; i >= 0; i--)
+        {
+            final int x0 = random.nextInt(width);
+            final int y0 = random.nextInt(height);
+            final int w = 1 + random.nextInt(12);
+            final int h = 1 + random.nextInt(16);
+            for (int y = y0; y < Math.min(height, y0 + h); y++)
+            {
+                for (int x = x0; x < Math.min(width, x0 + w); x++)
+                {
+                    if (random.nextInt(8) != 0)
+                    {
+                        bitmap.setPixel(x, y, (byte) 1);
+                    }
+                }
+            }
+        }
+        return bitmap;
+    }
+
     // TESTS WITH TESTOUTPUT
     // Ignore in build process
 
@@ -23,10 +23,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Random;
 
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 
+import org.apache.pdfbox.jbig2.Bitmap;
 import org.apache.pdfbox.jbig2.err.InvalidHeaderValueException;
 import org.apache.pdfbox.jbig2.io.SubInputStream;
 import org.apache.pdfbox.jbig2.util.CombinationOperator;
@@ -67,4 +69,43 @@ public class HalftoneRegionTest
 
     }
 
+    @Test
+    public void computeHSkipTest()
+    {
+        final Random random = new Random(21);
+        for (int i = 0; i < 200; i++)
+        {
+            final int hGridWidth = 1 + random.nextInt(90);
+            final int hGridHeight = 1 + random.nextInt(40);
+            final int hGridX = random.nextInt(40000) - 20000;
+            final int hGridY = random.nextInt(40000) - 20000;
+            // axis-parallel grids as well as rotated ones
+            final int hRegionX = i % 4 == 0 ? 0 : random.nextInt(4000) - 2000;
+            final int hRegionY = i % 4 == 1 ? 0 : random.nextInt(4000) - 2000;
+            final int hPatternWidth = 1 + random.nextInt(12);
+            final int hPatternHeight = 1 + random.nextInt(12);
+            final int hbw = 1 + random.nextInt(300);
+            final int hbh = 1 + random.nextInt(300);
+
+            final Bitmap hSkip = HalftoneRegion.computeHSkip(hGridWidth, hGridHeight, hGridX,
+                    hGridY, hRegionX, hRegionY, hPatternWidth, hPatternHeight, hbw, hbh);
+
+            // 6.6.5.1, pixel by pixel
+            final Bitmap expected = new Bitmap(hGridWidth, hGridHeight);
+            for (int m = 0; m < hGridHeight; m++)
+            {
+                for (int n = 0; n < hGridWidth; n++)
+                {
+                    final int x = (hGridX + m * hRegionY + n * hRegionX) >> 8;
+                    final int y = (hGridY + m * hRegionX - n * hRegionY) >> 8;
+                    if (x + hPatternWidth <= 0 || x >= hbw || y + hPatternHeight <= 0 || y >= hbh)
+                    {
+                        expected.setPixel(n, m, (byte) 1);
+                    }
+                }
+            }
+            Assert.assertArrayEquals("grid " + i, expected.getByteArray(), hSkip.getByteArray());
+        }
+    }
+
 }